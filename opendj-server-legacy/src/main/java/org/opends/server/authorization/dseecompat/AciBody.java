@@ -32,6 +32,7 @@ import static org.opends.server.authorization.dseecompat.EnumEvalResult.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -299,7 +300,7 @@ public class AciBody {
             if(!p.hasRights(getEvalRights(evalCtx))) {
                 continue;
             }
-            res=p.getBindRule().evaluate(evalCtx);
+            res=evaluate(p.getBindRule(), evalCtx);
             // The evaluation result could be FAIL. Stop processing and return
             //FAIL. Maybe an internal search failed.
             if(res != TRUE && res != FALSE) {
@@ -319,6 +320,28 @@ public class AciBody {
         return res;
     }
 
+    /**
+     * Evaluates a bind rule, reusing the result of a previous evaluation for
+     * the same client when the bind rule only depends on the client identity.
+     * @param bindRule The bind rule to evaluate.
+     * @param evalCtx The evaluation context to evaluate against.
+     * @return An enumeration result of the evaluation.
+     */
+    private EnumEvalResult evaluate(BindRule bindRule, AciEvalContext evalCtx) {
+        final Map<BindRule, EnumEvalResult> decisions = evalCtx.getBindRuleDecisions();
+        if (decisions == null || !bindRule.dependsOnClientIdentityOnly()) {
+            return bindRule.evaluate(evalCtx);
+        }
+        EnumEvalResult res = decisions.get(bindRule);
+        if (res == null) {
+            res = bindRule.evaluate(evalCtx);
+            if (res == TRUE || res == FALSE) {
+                decisions.put(bindRule, res);
+            }
+        }
+        return res;
+    }
+
   /**
    * Returns the name string.
    * @return The name string.
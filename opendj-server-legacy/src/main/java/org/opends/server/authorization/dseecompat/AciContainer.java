@@ -35,12 +35,16 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.api.ClientConnection;
 import org.opends.server.api.Group;
 import org.opends.server.controls.GetEffectiveRightsRequestControl;
 import org.opends.server.core.AddOperation;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.GroupManager;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.protocols.ldap.LDAPClientConnection;
 import org.opends.server.types.*;
@@ -196,6 +200,21 @@ implements AciTargetMatchContext, AciEvalContext {
      */
     private String summaryString;
 
+    /**
+     * The results of the bind rules already evaluated for the client, or null
+     * if they must not be cached.
+     */
+    private Map<BindRule, EnumEvalResult> bindRuleDecisions;
+
+    /**
+     * The DNs of the groups of the client, resolved once for all the group
+     * bind rules evaluated with this container.
+     */
+    private Set<DN> clientGroupDNs;
+
+    /** The client DN whose groups are held in clientGroupDNs. */
+    private DN clientGroupsOwnerDN;
+
    /**
     * Flag used to determine if ACI all attributes target matched.
     */
@@ -735,18 +754,16 @@ implements AciTargetMatchContext, AciEvalContext {
     /** {@inheritDoc} */
     @Override
     public boolean isMemberOf(Group<?> group) {
-        try {
-            if(useAuthzid) {
-                return group.isMember(this.authzid);
-            }
-            Entry e = getClientEntry();
-            if (e != null) {
-                return group.isMember(e);
-            }
-            return group.isMember(getClientDN());
-        } catch (DirectoryException ex) {
-            return false;
+        final DN clientDN = getClientDN();
+        if (clientGroupDNs == null || !clientDN.equals(clientGroupsOwnerDN)) {
+            final GroupManager groupManager = DirectoryServer.getGroupManager();
+            final Entry e = useAuthzid ? null : getClientEntry();
+            clientGroupDNs = e != null
+                ? groupManager.getGroupMemberships(e)
+                : groupManager.getGroupMemberships(clientDN);
+            clientGroupsOwnerDN = clientDN;
         }
+        return clientGroupDNs.contains(group.getGroupDN());
     }
 
   /**
@@ -888,6 +905,22 @@ implements AciTargetMatchContext, AciEvalContext {
       return clientConnection.getSSF();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public Map<BindRule, EnumEvalResult> getBindRuleDecisions() {
+      return bindRuleDecisions;
+  }
+
+  /**
+   * Sets the results of the bind rules already evaluated for the client.
+   *
+   * @param bindRuleDecisions The results of the bind rules already evaluated
+   * for the client, or {@code null} if they must not be cached.
+   */
+  void setBindRuleDecisions(Map<BindRule, EnumEvalResult> bindRuleDecisions) {
+      this.bindRuleDecisions = bindRuleDecisions;
+  }
+
   /** {@inheritDoc} */
   @Override
   public String toString()
@@ -0,0 +1,154 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.authorization.dseecompat;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.DN;
+
+/**
+ * Caches, for each client identity, the results of the bind rules which only
+ * depend on the client identity and on its group memberships, so that they
+ * are evaluated once per client instead of once per accessed entry and
+ * attribute.
+ * <p>
+ * The cached results are discarded when the ACI list or the group instances
+ * change, and the results cached for a client are discarded when the entry of
+ * the client is changed.
+ */
+final class AciDecisionCache
+{
+  /** The maximum number of clients whose bind rule results are cached. */
+  private static final int MAX_CACHED_CLIENTS = 10000;
+
+  /** The bind rule results of a client. */
+  private static final class Decisions
+  {
+    /** The generation of the ACI list when these results were cached. */
+    private final long aciGeneration;
+    /** The group manager membership token when these results were cached. */
+    private final long groupToken;
+    /** The bind rule results. */
+    private final Map<BindRule, EnumEvalResult> results = new ConcurrentHashMap<>();
+
+    private Decisions(long aciGeneration, long groupToken)
+    {
+      this.aciGeneration = aciGeneration;
+      this.groupToken = groupToken;
+    }
+
+    private boolean isValid(long aciGeneration, long groupToken)
+    {
+      return this.aciGeneration == aciGeneration && this.groupToken == groupToken;
+    }
+  }
+
+  /** The ACI list holding the cached bind rules. */
+  private final AciList aciList;
+
+  /** The bind rule results of the authenticated clients, keyed by client DN. */
+  private final ConcurrentHashMap<DN, Decisions> clientDecisions = new ConcurrentHashMap<>();
+
+  /** The bind rule results of the anonymous clients. */
+  private volatile Decisions anonymousDecisions;
+
+  /**
+   * Creates a new decision cache for the provided ACI list.
+   *
+   * @param aciList
+   *          The ACI list holding the cached bind rules.
+   */
+  AciDecisionCache(AciList aciList)
+  {
+    this.aciList = aciList;
+  }
+
+  /**
+   * Returns the bind rule results cached for the client of the provided
+   * container.
+   *
+   * @param container
+   *          The container holding the client being evaluated.
+   * @return The bind rule results cached for the client, or {@code null} if
+   *         bind rule results must not be cached for this container.
+   */
+  Map<BindRule, EnumEvalResult> getDecisions(AciContainer container)
+  {
+    if (container.hasGetEffectiveRightsControl()
+        || container.isGetEffectiveRightsEval())
+    {
+      // The client DN may be replaced by the authzid of the control.
+      return null;
+    }
+
+    final long aciGeneration = aciList.getGeneration();
+    final long groupToken = DirectoryServer.getGroupManager().membershipToken();
+    if (container.isAnonymousUser())
+    {
+      Decisions decisions = anonymousDecisions;
+      if (decisions == null || !decisions.isValid(aciGeneration, groupToken))
+      {
+        decisions = new Decisions(aciGeneration, groupToken);
+        anonymousDecisions = decisions;
+      }
+      return decisions.results;
+    }
+
+    final DN clientDN = container.getClientDN();
+    Decisions decisions = clientDecisions.get(clientDN);
+    if (decisions == null || !decisions.isValid(aciGeneration, groupToken))
+    {
+      if (decisions == null && clientDecisions.size() >= MAX_CACHED_CLIENTS)
+      {
+        clientDecisions.clear();
+      }
+      decisions = new Decisions(aciGeneration, groupToken);
+      clientDecisions.put(clientDN, decisions);
+    }
+    return decisions.results;
+  }
+
+  /**
+   * Discards the bind rule results cached for a client, because its entry
+   * has been changed.
+   *
+   * @param clientDN
+   *          The DN of the client entry.
+   */
+  void invalidate(DN clientDN)
+  {
+    clientDecisions.remove(clientDN);
+  }
+
+  /** Discards all the cached bind rule results. */
+  void clear()
+  {
+    clientDecisions.clear();
+    anonymousDecisions = null;
+  }
+}
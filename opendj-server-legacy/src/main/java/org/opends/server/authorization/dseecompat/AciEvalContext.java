@@ -33,6 +33,7 @@ import org.opends.server.api.Group;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface that provides a view of the AciContainer that is
@@ -306,4 +307,15 @@ public interface AciEvalContext
      * @return The current SSF of the connection.
      */
     int getCurrentSSF();
+
+    /**
+     * Returns the results of the bind rules already evaluated for the client,
+     * keyed by bind rule. Only the results of the bind rules depending on the
+     * client identity only can be taken from or stored into this map.
+     *
+     * @return The results of the bind rules already evaluated for the client,
+     *         or {@code null} if bind rule results must not be cached for this
+     *         evaluation.
+     */
+    Map<BindRule, EnumEvalResult> getBindRuleDecisions();
 }
@@ -141,6 +141,9 @@ public final class AciHandler extends
   /** The list that holds that ACIs keyed by the DN of the entry holding the ACI. */
   private AciList aciList;
 
+  /** The results of the bind rules already evaluated, cached per client. */
+  private AciDecisionCache decisionCache;
+
   /**
    * The listener that handles ACI changes caused by LDAP operations,
    * ACI decode failure alert logging and backend initialization ACI list adjustment.
@@ -198,7 +201,8 @@ public final class AciHandler extends
     initStatics();
     DN configurationDN = configuration.dn();
     aciList = new AciList(configurationDN);
-    aciListenerMgr = new AciListenerManager(aciList, configurationDN);
+    decisionCache = new AciDecisionCache(aciList);
+    aciListenerMgr = new AciListenerManager(aciList, decisionCache, configurationDN);
     processGlobalAcis(configuration);
     processConfigAcis();
     DirectoryServer.registerSupportedControl(OID_GET_EFFECTIVE_RIGHTS);
@@ -554,7 +558,9 @@ public final class AciHandler extends
      * candidate ACI against the container's target match view.
      */
     createApplicableList(candidates, container);
-    // Evaluate the applicable list.
+    // Evaluate the applicable list, reusing the bind rule results already
+    // computed for this client.
+    container.setBindRuleDecisions(decisionCache.getDecisions(container));
     final boolean ret = testApplicableLists(container);
     // Build summary string if doing geteffectiverights eval.
     if (container.isGetEffectiveRightsEval())
@@ -59,6 +59,12 @@ public class AciList {
   private final ReentrantReadWriteLock lock =
           new ReentrantReadWriteLock();
 
+  /**
+   * Incremented each time the ACI list is changed, so that decisions cached
+   * on top of this list can be discarded.
+   */
+  private volatile long generation;
+
   /** The configuration DN used to compare against the global ACI entry DN. */
   private DN configDN;
 
@@ -131,6 +137,16 @@ public class AciList {
     return candidates;
   }
 
+  /**
+   * Returns the generation of this ACI list, which changes each time an ACI is
+   * added, removed or renamed.
+   *
+   * @return The generation of this ACI list.
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
   /**
    * Add all the ACI from a set of entries to the ACI list. There is no need
    * to check for global ACIs since they are processe by the AciHandler at
@@ -148,6 +164,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       for (Entry entry : entries) {
         DN dn=entry.getName();
         List<Attribute> attributeList =
@@ -177,6 +194,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       aciList.put(dn, new LinkedList<>(acis));
     }
     finally
@@ -204,6 +222,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       //Process global "ds-cfg-global-aci" attribute type. The oldentry
       //DN is checked to verify it is equal to the config DN. If not those
       //attributes are skipped.
@@ -292,6 +311,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       List<LocalizableMessage> failedACIMsgs=new LinkedList<>();
       //Process "aci" attribute types.
       if(hasAci) {
@@ -356,6 +376,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       if (hasGlobalAci && entryDN.equals(configDN) &&
           aciList.remove(DN.rootDN()) == null)
       {
@@ -384,6 +405,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
               aciList.entrySet().iterator();
       while (iterator.hasNext())
@@ -415,6 +437,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      generation++;
       Map<DN,List<Aci>> tempAciList = new HashMap<>();
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
               aciList.entrySet().iterator();
@@ -226,6 +226,7 @@ public class AciListenerManager implements
 
     private void doPostAdd(Entry addedEntry)
     {
+      decisionCache.invalidate(addedEntry.getName());
       // This entry might have both global and aci attribute types.
       boolean hasAci = addedEntry.hasOperationalAttribute(AciHandler.aciType);
       boolean hasGlobalAci = addedEntry.hasAttribute(AciHandler.globalAciType);
@@ -243,6 +244,7 @@ public class AciListenerManager implements
 
     private void doPostDelete(Entry deletedEntry)
     {
+      decisionCache.invalidate(deletedEntry.getName());
       // This entry might have both global and aci attribute types.
       boolean hasAci = deletedEntry.hasOperationalAttribute(
               AciHandler.aciType);
@@ -255,6 +257,8 @@ public class AciListenerManager implements
 
     private void doPostModifyDN(DN fromDN, DN toDN)
     {
+      // The renamed subtree may contain any number of client entries.
+      decisionCache.clear();
       aciList.renameAci(fromDN, toDN);
     }
 
@@ -263,6 +267,9 @@ public class AciListenerManager implements
     private void doPostModify(List<Modification> mods, Entry oldEntry,
         Entry newEntry)
     {
+      // The new entry contents may change the dynamic groups of the client.
+      decisionCache.invalidate(oldEntry.getName());
+
       // A change to the ACI list is expensive so let's first make sure
       // that the modification included changes to the ACI. We'll check
       // for both "aci" attribute types and global "ds-cfg-global-aci"
@@ -307,6 +314,9 @@ public class AciListenerManager implements
   /** The AciList caches the ACIs. */
   private AciList aciList;
 
+  /** The results of the bind rules already evaluated, cached per client. */
+  private final AciDecisionCache decisionCache;
+
   /** Search filter used in context search for "aci" attribute types. */
   private static SearchFilter aciFilter;
 
@@ -345,12 +355,17 @@ public class AciListenerManager implements
    *
    * @param aciList
    *          The list object created and loaded by the handler.
+   * @param decisionCache
+   *          The bind rule results cached by the handler, invalidated when
+   *          client entries are changed.
    * @param cfgDN
    *          The DN of the access control configuration entry.
    */
-  public AciListenerManager(AciList aciList, DN cfgDN)
+  public AciListenerManager(AciList aciList, AciDecisionCache decisionCache,
+      DN cfgDN)
   {
     this.aciList = aciList;
+    this.decisionCache = decisionCache;
     this.configurationDN = cfgDN;
     this.plugin = new AciChangeListenerPlugin();
 
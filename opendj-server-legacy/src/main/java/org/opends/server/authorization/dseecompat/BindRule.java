@@ -55,6 +55,12 @@ public class BindRule {
     /** The keyword of a simple bind rule. */
     private EnumBindRuleKeyword keyword;
 
+    /**
+     * True if the evaluation of this bind rule only depends on the identity of
+     * the client and on its group memberships.
+     */
+    private final boolean dependsOnClientIdentityOnly;
+
     /** Regular expression group position of a bind rule keyword. */
     private static final int keywordPos = 1;
     /** Regular expression group position of a bind rule operation. */
@@ -99,6 +105,8 @@ public class BindRule {
     private BindRule(EnumBindRuleKeyword keyword, KeywordBindRule rule) {
         this.keyword=keyword;
         this.keywordRuleMap.put(keyword.toString(), rule);
+        this.dependsOnClientIdentityOnly = rule instanceof GroupDN
+            || (rule instanceof UserDN && ((UserDN) rule).dependsOnClientDNOnly());
     }
 
 
@@ -139,6 +147,8 @@ public class BindRule {
         this.booleanType = booleanType;
         this.left = left;
         this.right = right;
+        this.dependsOnClientIdentityOnly = left.dependsOnClientIdentityOnly
+            && right.dependsOnClientIdentityOnly;
     }
 
     /*
@@ -460,6 +470,20 @@ public class BindRule {
        return EnumEvalResult.FALSE;
     }
 
+    /**
+     * Indicates whether the evaluation of this bind rule only depends on the
+     * identity of the client and on its group memberships, in which case its
+     * result can be reused for all the entries accessed by the same client.
+     * Bind rules using the resource entry, the client entry contents or the
+     * client connection (self, parent, userattr, ip, dns, authmethod, ssf,
+     * dayofweek, timeofday...) must be evaluated each time.
+     * @return True if the result of this bind rule may be cached for the
+     * client.
+     */
+    boolean dependsOnClientIdentityOnly() {
+        return dependsOnClientIdentityOnly;
+    }
+
     /**
      * Evaluate an bind rule against an evaluation context. If it is a simple
      * bind rule (no boolean type) then grab the keyword rule from the map
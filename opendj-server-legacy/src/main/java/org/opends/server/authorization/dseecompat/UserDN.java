@@ -169,6 +169,27 @@ public class UserDN implements KeywordBindRule {
         return type;
     }
 
+    /**
+     * Indicates whether the evaluation of this userdn bind rule only depends
+     * on the client DN, which is the case unless it refers to the resource
+     * entry (self and parent) or filters the client entry (full URLs).
+     * @return True if the evaluation only depends on the client DN.
+     */
+    boolean dependsOnClientDNOnly() {
+        for (UserDNTypeURL dnTypeURL : urlList) {
+            switch (dnTypeURL.getUserDNType()) {
+            case ANYONE:
+            case ALL:
+            case DN:
+            case DNPATTERN:
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Performs the evaluation of a userdn bind rule based on the
      * evaluation context passed to it. The evaluation stops when there
@@ -254,7 +275,7 @@ public class UserDN implements KeywordBindRule {
             }
             case DNPATTERN:
             {
-                matched = evalDNPattern(evalCtx, url);
+                matched = evalDNPattern(evalCtx, dnTypeURL);
                 break;
             }
             case DN:
@@ -297,18 +318,13 @@ public class UserDN implements KeywordBindRule {
     /**
      * This method evaluates a DN pattern userdn expression.
      * @param evalCtx  The evaluation context to use.
-     * @param url The LDAP URL containing the pattern.
+     * @param dnTypeURL The URL dn type mapping containing the pattern.
      * @return An enumeration evaluation result.
      */
-    private EnumEvalResult evalDNPattern(AciEvalContext evalCtx, LDAPURL url) {
-        PatternDN pattern;
-        try {
-          pattern = PatternDN.decode(url.getRawBaseDN());
-        } catch (DirectoryException ex) {
-          return EnumEvalResult.FALSE;
-        }
-
-        return pattern.matchesDN(evalCtx.getClientDN()) ?
+    private EnumEvalResult evalDNPattern(AciEvalContext evalCtx,
+                                         UserDNTypeURL dnTypeURL) {
+        PatternDN pattern = dnTypeURL.getPattern();
+        return pattern != null && pattern.matchesDN(evalCtx.getClientDN()) ?
              EnumEvalResult.TRUE : EnumEvalResult.FALSE;
     }
 
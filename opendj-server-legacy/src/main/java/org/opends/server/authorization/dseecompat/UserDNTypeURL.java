@@ -26,6 +26,7 @@
  */
 package org.opends.server.authorization.dseecompat;
 
+import org.opends.server.types.DirectoryException;
 import org.opends.server.types.LDAPURL;
 
 /**
@@ -40,6 +41,12 @@ public class UserDNTypeURL {
     /** The URL value. Maybe a dummy value for types such as ANYONE or SELF. */
     private LDAPURL url;
 
+    /**
+     * The DN pattern decoded from the URL for the DNPATTERN type, or
+     * {@code null} if the type is not DNPATTERN or the pattern is invalid.
+     */
+    private PatternDN pattern;
+
     /**
      * Create a class representing the "userdn" URL decoded by the
      * UserDN.decode() method.
@@ -50,6 +57,13 @@ public class UserDNTypeURL {
     UserDNTypeURL(EnumUserDNType dnType, LDAPURL url) {
         this.url=url;
         this.dnType=dnType;
+        if (dnType == EnumUserDNType.DNPATTERN) {
+            try {
+                this.pattern = PatternDN.decode(url.getRawBaseDN());
+            } catch (DirectoryException ex) {
+                // Invalid patterns never match, see getPattern().
+            }
+        }
     }
 
     /**
@@ -66,4 +80,14 @@ public class UserDNTypeURL {
     public LDAPURL getURL() {
         return this.url;
     }
+
+    /**
+     * Returns the DN pattern decoded from the URL when this URL was created,
+     * so that it does not need to be decoded at each evaluation.
+     * @return The DN pattern of a DNPATTERN URL, or {@code null} if the type
+     * is not DNPATTERN or the pattern is invalid.
+     */
+    PatternDN getPattern() {
+        return this.pattern;
+    }
 }
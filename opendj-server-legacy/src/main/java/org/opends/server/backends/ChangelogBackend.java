@@ -36,17 +36,28 @@ import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -59,6 +70,7 @@ import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.opends.server.admin.Configuration;
 import org.opends.server.api.Backend;
+import org.opends.server.api.DirectoryThread;
 import org.opends.server.config.ConfigConstants;
 import org.opends.server.controls.EntryChangelogNotificationControl;
 import org.opends.server.controls.ExternalChangelogRequestControl;
@@ -68,6 +80,7 @@ import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.PersistentSearch;
+import org.opends.server.core.PersistentSearch.CancellationCallback;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.core.ServerContext;
 import org.opends.server.replication.common.CSN;
@@ -101,6 +114,7 @@ import org.opends.server.types.CanceledOperationException;
 import org.opends.server.types.Control;
 import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
 import org.opends.server.types.Entry;
 import org.opends.server.types.FilterType;
 import org.opends.server.types.IndexType;
@@ -164,6 +178,19 @@ import org.opends.server.util.StaticUtils;
  * </ol>
  * </li>
  * </ul>
+ * <p>
+ * For cookie based persistent searches, {@link #notifyCookieEntryAdded(DN, UpdateMsg)}
+ * builds the changelog entry once for all the persistent searches, and evaluates the
+ * base, scope and filter once for all the persistent searches sharing them. The
+ * entries are then queued to each persistent search and sent by a pool of threads,
+ * so that a slow client does not hold the thread notifying the change. Each
+ * thread sends a limited number of entries to a persistent search before letting
+ * the other persistent searches use it. When the queue of a persistent search is
+ * full, the persistent search is marked as overflowed. Once it is in the "persistent
+ * search" phase, its queued entries are dropped, and the changes are read from the
+ * changelog DB starting at the last cookie sent, the same way as the "initial search"
+ * phase. The changelog DB is read by the same threads, a limited number of changes
+ * at a time, keeping the cursor open between two runs.
  *
  * @see ReplicationServer
  */
@@ -179,6 +206,14 @@ public class ChangelogBackend extends Backend<Configuration>
   private static final String CHANGE_NUMBER_ATTR = "changeNumber";
   private static final String CHANGE_NUMBER_ATTR_LC = CHANGE_NUMBER_ATTR.toLowerCase();
   private static final String ENTRY_SENDER_ATTACHMENT = OID_ECL_COOKIE_EXCHANGE_CONTROL + ".entrySender";
+  private static final String CHANGELOG_COOKIE_ATTR_LC = "changelogcookie";
+
+  /** The maximum number of entries queued to a cookie based persistent search. */
+  private static final int MAX_QUEUED_PERSISTENT_SEARCH_ENTRIES = 1000;
+  /** The maximum number of queued entries sent to a cookie based persistent search before yielding its thread. */
+  private static final int MAX_PERSISTENT_SEARCH_ENTRIES_PER_RUN = 100;
+  /** The maximum number of threads sending the queued entries to cookie based persistent searches. */
+  private static final int MAX_PERSISTENT_SEARCH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 
   /** The set of objectclasses that will be used in root entry. */
   private static final Map<ObjectClass, String>
@@ -236,6 +271,8 @@ public class ChangelogBackend extends Backend<Configuration>
   /** The set of change number-based persistent searches registered with this backend. */
   private final ConcurrentLinkedQueue<PersistentSearch> changeNumberBasedPersistentSearches =
       new ConcurrentLinkedQueue<>();
+  /** The threads sending the queued entries to the cookie-based persistent searches. */
+  private volatile ExecutorService persistentSearchExecutor;
 
   /**
    * Creates a new backend with the provided replication server.
@@ -291,11 +328,37 @@ public class ChangelogBackend extends Backend<Configuration>
       throw new InitializationException(
           ERR_BACKEND_CANNOT_REGISTER_BASEDN.get(DN_EXTERNAL_CHANGELOG_ROOT, getExceptionMessage(e)), e);
     }
+
+    // Threads are created on demand, and discarded after being idle for a while.
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        MAX_PERSISTENT_SEARCH_THREADS, MAX_PERSISTENT_SEARCH_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new DirectoryThread.Factory("Changelog Persistent Search Sender"));
+    executor.allowCoreThreadTimeOut(true);
+    persistentSearchExecutor = executor;
+  }
+
+  /**
+   * Sets the threads sending the queued entries to the cookie-based persistent searches.
+   * <p>
+   * Package private for testing.
+   *
+   * @param executor
+   *          the threads sending the queued entries, or {@code null} to send them from the notifying thread
+   */
+  void setPersistentSearchExecutor(ExecutorService executor)
+  {
+    persistentSearchExecutor = executor;
   }
 
   @Override
   public void closeBackend()
   {
+    final ExecutorService executor = persistentSearchExecutor;
+    if (executor != null)
+    {
+      executor.shutdownNow();
+      persistentSearchExecutor = null;
+    }
     try
     {
       DirectoryServer.deregisterBaseDN(CHANGELOG_BASE_DN);
@@ -397,18 +460,23 @@ public class ChangelogBackend extends Backend<Configuration>
    */
   public void notifyCookieEntryAdded(DN baseDN, UpdateMsg updateMsg) throws ChangelogException
   {
-    if (!(updateMsg instanceof LDAPUpdateMsg))
+    if (!(updateMsg instanceof LDAPUpdateMsg)
+        || cookieBasedPersistentSearches.isEmpty())
     {
       return;
     }
 
     try
     {
+      // cookie entry is shared with all the persistent searches, each of them sets its own cookie
+      final Entry entry = createEntryFromMsg(baseDN, 0, null, updateMsg);
+      final Map<List<Object>, Boolean> matchResults = new HashMap<>();
       for (PersistentSearch pSearch : cookieBasedPersistentSearches)
       {
         final SearchOperation searchOp = pSearch.getSearchOperation();
         final CookieEntrySender entrySender = searchOp.getAttachment(ENTRY_SENDER_ATTACHMENT);
-        entrySender.persistentSearchSendEntry(baseDN, updateMsg);
+        final Boolean matches = matchBaseAndScopeAndFilter(searchOp, entry, matchResults);
+        entrySender.queuePersistentSearchEntry(new CookieEntry(baseDN, updateMsg, entry, matches));
       }
     }
     catch (DirectoryException e)
@@ -826,11 +894,13 @@ public class ChangelogBackend extends Backend<Configuration>
       return;
     }
 
-    final ReplicationDomainDB replicationDomainDB = getChangelogDB().getReplicationDomainDB();
-    CursorOptions options = new CursorOptions(GREATER_THAN_OR_EQUAL_TO_KEY, AFTER_MATCHING_KEY);
-    try (final MultiDomainDBCursor cursor =
-        replicationDomainDB.getCursorFrom(entrySender.cookie, options, entrySender.excludedBaseDNs);
-        ECLMultiDomainDBCursor replicaUpdatesCursor = new ECLMultiDomainDBCursor(domainPredicate, cursor))
+    searchFromCookie(entrySender);
+  }
+
+  /** Sends the changes following the cookie of the entry sender, then moves it to the "persistent search" phase. */
+  private void searchFromCookie(final CookieEntrySender entrySender) throws DirectoryException, ChangelogException
+  {
+    try (ECLMultiDomainDBCursor replicaUpdatesCursor = getCursorFromCookie(entrySender))
     {
       if (sendCookieEntriesFromCursor(entrySender, replicaUpdatesCursor))
       {
@@ -844,6 +914,16 @@ public class ChangelogBackend extends Backend<Configuration>
     }
   }
 
+  /** Returns a cursor on the changes following the cookie of the entry sender. */
+  private ECLMultiDomainDBCursor getCursorFromCookie(final CookieEntrySender entrySender) throws ChangelogException
+  {
+    final ReplicationDomainDB replicationDomainDB = getChangelogDB().getReplicationDomainDB();
+    CursorOptions options = new CursorOptions(GREATER_THAN_OR_EQUAL_TO_KEY, AFTER_MATCHING_KEY);
+    final MultiDomainDBCursor cursor =
+        replicationDomainDB.getCursorFrom(entrySender.cookie, options, entrySender.excludedBaseDNs);
+    return new ECLMultiDomainDBCursor(domainPredicate, cursor);
+  }
+
   private CookieEntrySender getCookieEntrySender(SearchPhase startPhase, final SearchOperation searchOperation,
       MultiDomainServerState cookie, Set<DN> excludedBaseDNs, boolean isPersistentSearch)
   {
@@ -851,7 +931,7 @@ public class ChangelogBackend extends Backend<Configuration>
     {
       return searchOperation.getAttachment(ENTRY_SENDER_ATTACHMENT);
     }
-    return new CookieEntrySender(searchOperation, startPhase, cookie, excludedBaseDNs);
+    return new CookieEntrySender(this, searchOperation, null, startPhase, cookie, excludedBaseDNs);
   }
 
   private boolean sendCookieEntriesFromCursor(final CookieEntrySender entrySender,
@@ -892,6 +972,19 @@ public class ChangelogBackend extends Backend<Configuration>
     {
       changeNumberBasedPersistentSearches.add(pSearch);
     }
+    pSearch.registerCancellationCallback(new CancellationCallback()
+    {
+      @Override
+      public void persistentSearchCancelled(PersistentSearch psearch)
+      {
+        if (cookieBasedPersistentSearches.remove(psearch))
+        {
+          final CookieEntrySender entrySender = psearch.getSearchOperation().getAttachment(ENTRY_SENDER_ATTACHMENT);
+          entrySender.clearPersistentSearchEntries();
+        }
+        changeNumberBasedPersistentSearches.remove(psearch);
+      }
+    });
     super.registerPersistentSearch(pSearch);
   }
 
@@ -914,7 +1007,7 @@ public class ChangelogBackend extends Backend<Configuration>
       final Set<DN> excludedBaseDNs = getExcludedBaseDNs();
       final MultiDomainServerState cookie = getCookie(pSearch.isChangesOnly(), searchOp, excludedBaseDNs);
       searchOp.setAttachment(ENTRY_SENDER_ATTACHMENT,
-          new CookieEntrySender(searchOp, startPhase, cookie, excludedBaseDNs));
+          new CookieEntrySender(this, searchOp, pSearch, startPhase, cookie, excludedBaseDNs));
     }
     else
     {
@@ -1087,17 +1180,26 @@ public class ChangelogBackend extends Backend<Configuration>
     }
   }
 
+  /**
+   * Returns a cursor on the replica update messages positioned on the update
+   * message corresponding to the provided change number index record.
+   * <p>
+   * The change number index records are ordered like the update messages of the
+   * ECL enabled domains, so this single cursor is then only moved forward to
+   * find the update messages of the next index records. Every replica is
+   * positioned at the CSN of the provided record, rather than at its oldest
+   * change, and the domains excluded from the changelog are not read at all, so
+   * that the cursor does not have to skip the changes older than the first
+   * requested change number.
+   */
   private MultiDomainDBCursor initializeReplicaUpdatesCursor(
-      final ChangeNumberIndexRecord cnIndexRecord) throws ChangelogException
+      final ChangeNumberIndexRecord cnIndexRecord) throws ChangelogException, DirectoryException
   {
-    final MultiDomainServerState state = new MultiDomainServerState();
-    state.update(cnIndexRecord.getBaseDN(), cnIndexRecord.getCSN());
-
     // No need for ECLMultiDomainDBCursor in this case
     // as updateMsg will be matched with cnIndexRecord
-    CursorOptions options = new CursorOptions(GREATER_THAN_OR_EQUAL_TO_KEY, ON_MATCHING_KEY);
-    final MultiDomainDBCursor replicaUpdatesCursor =
-        getChangelogDB().getReplicationDomainDB().getCursorFrom(state, options);
+    CursorOptions options = new CursorOptions(GREATER_THAN_OR_EQUAL_TO_KEY, ON_MATCHING_KEY, cnIndexRecord.getCSN());
+    final MultiDomainDBCursor replicaUpdatesCursor = getChangelogDB().getReplicationDomainDB()
+        .getCursorFrom(new MultiDomainServerState(), options, getExcludedBaseDNs());
     replicaUpdatesCursor.next();
     return replicaUpdatesCursor;
   }
@@ -1108,7 +1210,7 @@ public class ChangelogBackend extends Backend<Configuration>
    *
    * @return the update message, which may be {@code null} if the update message
    *         could not be found because it was purged or because corresponding
-   *         baseDN was removed from the changelog
+   *         baseDN was removed or excluded from the changelog
    * @throws DirectoryException
    *           If inconsistency is detected between the available update
    *           messages and the provided cnIndexRecord
@@ -1119,6 +1221,11 @@ public class ChangelogBackend extends Backend<Configuration>
     while (true)
     {
       final UpdateMsg updateMsg = replicaUpdatesCursor.getRecord();
+      if (updateMsg == null)
+      {
+        // No more update messages to read, the remaining index records belong to excluded domains
+        return null;
+      }
       final int compareIndexWithUpdateMsg = csn.compareTo(updateMsg.getCSN());
       if (compareIndexWithUpdateMsg < 0) {
         // Either update message has been purged or baseDN has been removed from changelogDB,
@@ -1371,7 +1478,7 @@ public class ChangelogBackend extends Backend<Configuration>
       addAttributeByType("targetentryuuid", "targetEntryUUID", targetUUID, userAttrs, opAttrs);
     }
     final String cookie2 = cookie != null ? cookie : "";
-    addAttributeByType("changelogcookie", "changeLogCookie", cookie2, userAttrs, opAttrs);
+    addAttributeByType(CHANGELOG_COOKIE_ATTR_LC, "changeLogCookie", cookie2, userAttrs, opAttrs);
 
     final List<RawAttribute> includedAttributes = msg.getEclIncludes();
     if (includedAttributes != null && !includedAttributes.isEmpty())
@@ -1418,6 +1525,53 @@ public class ChangelogBackend extends Backend<Configuration>
         && searchOp.getFilter().matchesEntry(entry);
   }
 
+  /**
+   * Indicates if the provided entry matches the filter, base and scope, reusing the result computed for a previous
+   * search operation with the same filter, base and scope.
+   *
+   * @return whether the entry matches, or {@code null} if the filter depends on the cookie of the search operation
+   */
+  private static Boolean matchBaseAndScopeAndFilter(SearchOperation searchOp, Entry entry,
+      Map<List<Object>, Boolean> matchResults) throws DirectoryException
+  {
+    final SearchFilter filter = searchOp.getFilter();
+    if (dependsOnCookie(filter))
+    {
+      return null;
+    }
+    final List<Object> key = Arrays.<Object> asList(searchOp.getBaseDN(), searchOp.getScope(), filter);
+    Boolean matches = matchResults.get(key);
+    if (matches == null)
+    {
+      matches = matchBaseAndScopeAndFilter(searchOp, entry);
+      matchResults.put(key, matches);
+    }
+    return matches;
+  }
+
+  /** Indicates if the provided filter may evaluate the changelog cookie attribute. */
+  private static boolean dependsOnCookie(SearchFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+    case AND:
+    case OR:
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        if (dependsOnCookie(component))
+        {
+          return true;
+        }
+      }
+      return false;
+    case NOT:
+      return dependsOnCookie(filter.getNotComponent());
+    default:
+      final AttributeType attrType = filter.getAttributeType();
+      return attrType == null || attrType.hasName(CHANGELOG_COOKIE_ATTR_LC);
+    }
+  }
+
   private static List<Control> getControls(String cookie)
   {
     if (cookie != null)
@@ -1569,6 +1723,11 @@ public class ChangelogBackend extends Backend<Configuration>
       searchPhase.set(SearchPhase.TRANSITIONING);
     }
 
+    private void restartInitialSearch()
+    {
+      searchPhase.set(SearchPhase.INITIAL);
+    }
+
     private void initialSearchSendsEntry(final K key)
     {
       lastKeySentByInitialSearch = key;
@@ -1601,13 +1760,20 @@ public class ChangelogBackend extends Backend<Configuration>
             }
           }
         }
-        return key.compareTo(lastKeySentByInitialSearch) > 0;
+        return isAfterLastKeySentByInitialSearch(key);
       case PERSISTENT:
-        return true;
+        // the change may have been notified before the end of the "initial search" phase, which also sent it
+        return isAfterLastKeySentByInitialSearch(key);
       default:
         throw new RuntimeException("Not implemented for " + stateValue);
       }
     }
+
+    private boolean isAfterLastKeySentByInitialSearch(K key)
+    {
+      final K lastKey = lastKeySentByInitialSearch;
+      return lastKey == null || key.compareTo(lastKey) > 0;
+    }
   }
 
   /** Sends entries to clients for change number searches. */
@@ -1671,34 +1837,90 @@ public class ChangelogBackend extends Backend<Configuration>
     }
   }
 
+  /** A changelog entry queued to a cookie-based persistent search. */
+  private static final class CookieEntry
+  {
+    private final DN baseDN;
+    private final UpdateMsg updateMsg;
+    /** The changelog entry shared by all the persistent searches, without cookie. */
+    private final Entry entry;
+    /** Whether the entry matches the search, or {@code null} if it must be evaluated with the cookie. */
+    private final Boolean matches;
+
+    private CookieEntry(DN baseDN, UpdateMsg updateMsg, Entry entry, Boolean matches)
+    {
+      this.baseDN = baseDN;
+      this.updateMsg = updateMsg;
+      this.entry = entry;
+      this.matches = matches;
+    }
+  }
+
   /** Sends entries to clients for cookie-based searches. */
   private static class CookieEntrySender {
+    private final ChangelogBackend backend;
     private final SearchOperation searchOp;
-    private final SearchPhase startPhase;
+    /** The persistent search, or {@code null} if the search is not persistent. */
+    private final PersistentSearch persistentSearch;
+    /** The phase of the whole search, also the phase of the replicas not known yet. */
+    private volatile SearchPhase searchPhase;
     private final Set<DN> excludedBaseDNs;
     private final MultiDomainServerState cookie;
     private final ConcurrentSkipListMap<ReplicaId, SendEntryData<CSN>> replicaIdToSendEntryData =
         new ConcurrentSkipListMap<>();
-
-    private CookieEntrySender(SearchOperation searchOp, SearchPhase startPhase, MultiDomainServerState cookie,
-        Set<DN> excludedBaseDNs)
-    {
+    /** The entries waiting to be sent by the "persistent search" phase. */
+    private final BlockingQueue<CookieEntry> queuedEntries =
+        new ArrayBlockingQueue<>(MAX_QUEUED_PERSISTENT_SEARCH_ENTRIES);
+    /** Whether a thread is currently sending the queued entries, or catching up with the changelog DB. */
+    private final AtomicBoolean sendingQueuedEntries = new AtomicBoolean();
+    /** Whether an entry could not be queued because the queue was full. */
+    private volatile boolean overflowed;
+    /** Whether the persistent search has been cancelled. */
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private CookieEntrySender(ChangelogBackend backend, SearchOperation searchOp, PersistentSearch persistentSearch,
+        SearchPhase startPhase, MultiDomainServerState cookie, Set<DN> excludedBaseDNs)
+    {
+      this.backend = backend;
       this.searchOp = searchOp;
-      this.startPhase = startPhase;
+      this.persistentSearch = persistentSearch;
+      this.searchPhase = startPhase;
       this.cookie = cookie;
       this.excludedBaseDNs = excludedBaseDNs;
     }
 
     private void finalizeInitialSearch()
     {
+      searchPhase = SearchPhase.PERSISTENT;
       for (SendEntryData<CSN> sendEntryData : replicaIdToSendEntryData.values())
       {
         sendEntryData.finalizeInitialSearch();
       }
+      if (persistentSearch != null)
+      {
+        // send the entries queued while transitioning, or catch up if the queue overflowed meanwhile
+        scheduleSendingQueuedEntries();
+      }
+    }
+
+    /**
+     * Goes back to the "initial search" phase after the queue overflowed. The dropped entries are already persisted
+     * in the changelog DB, from where they are read again starting at the last cookie sent.
+     */
+    private void restartInitialSearch()
+    {
+      searchPhase = SearchPhase.INITIAL;
+      for (SendEntryData<CSN> sendEntryData : replicaIdToSendEntryData.values())
+      {
+        sendEntryData.restartInitialSearch();
+      }
+      queuedEntries.clear();
+      overflowed = false;
     }
 
     private void transitioningToPersistentSearchPhase()
     {
+      searchPhase = SearchPhase.TRANSITIONING;
       for (SendEntryData<CSN> sendEntryData : replicaIdToSendEntryData.values())
       {
         sendEntryData.transitioningToPersistentSearchPhase();
@@ -1711,9 +1933,18 @@ public class ChangelogBackend extends Backend<Configuration>
       SendEntryData<CSN> data = replicaIdToSendEntryData.get(replicaId);
       if (data == null)
       {
-        final SendEntryData<CSN> newData = new SendEntryData<>(startPhase);
+        final SendEntryData<CSN> newData = new SendEntryData<>(searchPhase);
         data = replicaIdToSendEntryData.putIfAbsent(replicaId, newData);
-        return data == null ? newData : data;
+        if (data != null)
+        {
+          return data;
+        }
+        if (searchPhase == SearchPhase.PERSISTENT)
+        {
+          // the "initial search" phase may have completed without seeing this replica
+          newData.finalizeInitialSearch();
+        }
+        return newData;
       }
       return data;
     }
@@ -1728,19 +1959,256 @@ public class ChangelogBackend extends Backend<Configuration>
       return sendEntryIfMatches(searchOp, entry, cookieString);
     }
 
-    private void persistentSearchSendEntry(DN baseDN, UpdateMsg updateMsg)
-        throws DirectoryException
+    /**
+     * Queues an entry to be sent by the "persistent search" phase, without waiting. If the queue is full, the
+     * persistent search is marked as overflowed, and its changes are read from the changelog DB instead.
+     * <p>
+     * The entry is dropped during the "initial search" phase, which will read it from the changelog DB where it is
+     * already persisted. The entries queued while transitioning to the "persistent search" phase are only sent
+     * once the transition is over.
+     */
+    private void queuePersistentSearchEntry(CookieEntry cookieEntry)
     {
-      final CSN csn = updateMsg.getCSN();
-      final SendEntryData<CSN> sendEntryData = getSendEntryData(baseDN, csn);
+      if (cancelled.get() || searchPhase == SearchPhase.INITIAL)
+      {
+        return;
+      }
+      if (!queuedEntries.offer(cookieEntry))
+      {
+        overflowed = true;
+      }
+      if (searchPhase == SearchPhase.PERSISTENT)
+      {
+        scheduleSendingQueuedEntries();
+      }
+    }
+
+    private void clearPersistentSearchEntries()
+    {
+      // also stops catching up with the changelog DB
+      cancelled.set(true);
+      queuedEntries.clear();
+    }
+
+    private void scheduleSendingQueuedEntries()
+    {
+      if (!sendingQueuedEntries.compareAndSet(false, true))
+      {
+        // the thread sending the queued entries will send this one too
+        return;
+      }
+
+      final boolean scheduled = execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          sendQueuedEntries();
+        }
+      });
+      if (!scheduled)
+      {
+        // the backend is closing
+        sendingQueuedEntries.set(false);
+      }
+    }
+
+    /**
+     * Runs a task on the threads sending the entries to the persistent searches, or on the current thread when there
+     * are none.
+     *
+     * @return {@code false} if the task was rejected because the backend is closing
+     */
+    private boolean execute(Runnable task)
+    {
+      final Executor executor = backend.persistentSearchExecutor;
+      if (executor == null)
+      {
+        task.run();
+        return true;
+      }
+      try
+      {
+        executor.execute(task);
+        return true;
+      }
+      catch (RejectedExecutionException e)
+      {
+        return false;
+      }
+    }
+
+    /**
+     * Sends the queued entries in order, only one thread at a time doing so for this search. At most
+     * {@link #MAX_PERSISTENT_SEARCH_ENTRIES_PER_RUN} entries are sent before the thread is yielded to the other
+     * persistent searches, the remaining entries being sent by a new run. When the queue overflowed, the queued
+     * entries are dropped and the changes are read from the changelog DB instead.
+     */
+    private void sendQueuedEntries()
+    {
+      if (overflowed)
+      {
+        logger.warn(WARN_CHANGELOG_PERSISTENT_SEARCH_TOO_SLOW.get(
+            searchOp.getConnectionID(), searchOp.getOperationID(), MAX_QUEUED_PERSISTENT_SEARCH_ENTRIES));
+        restartInitialSearch();
+        new CatchUpFromCookie().run();
+        return;
+      }
+
+      try
+      {
+        CookieEntry cookieEntry;
+        int sentEntries = 0;
+        while (!overflowed
+            && sentEntries < MAX_PERSISTENT_SEARCH_ENTRIES_PER_RUN
+            && (cookieEntry = queuedEntries.poll()) != null)
+        {
+          persistentSearchSendEntry(cookieEntry);
+          sentEntries++;
+        }
+      }
+      catch (Throwable t)
+      {
+        cancel(t);
+      }
+      doneSendingQueuedEntries();
+    }
+
+    /** Lets another thread send the queued entries, and schedules it if some are left. */
+    private void doneSendingQueuedEntries()
+    {
+      sendingQueuedEntries.set(false);
+      if (!cancelled.get()
+          && searchPhase == SearchPhase.PERSISTENT
+          && (overflowed || !queuedEntries.isEmpty()))
+      {
+        // more entries than can be sent by one run, or an entry was queued after the loop ended,
+        // but before the flag was reset
+        scheduleSendingQueuedEntries();
+      }
+    }
+
+    /**
+     * Reads the changelog DB from the last cookie sent after the queue overflowed, and sends the changes the same
+     * way as the "initial search" phase. At most {@link #MAX_PERSISTENT_SEARCH_ENTRIES_PER_RUN} changes are read
+     * before the thread is yielded to the other persistent searches, the cursor being kept open for the next run.
+     * The search goes back to the "persistent search" phase once the cursor has reached the end of the changelog DB.
+     */
+    private final class CatchUpFromCookie implements Runnable
+    {
+      private ECLMultiDomainDBCursor cursor;
+
+      @Override
+      public void run()
+      {
+        boolean catchingUp = false;
+        try
+        {
+          do
+          {
+            catchingUp = sendNextChanges();
+          }
+          while (catchingUp && backend.persistentSearchExecutor == null);
+        }
+        catch (Throwable t)
+        {
+          catchingUp = false;
+          cancel(t);
+        }
+        if (!catchingUp || !execute(this))
+        {
+          close(cursor);
+          finalizeInitialSearch();
+          doneSendingQueuedEntries();
+        }
+      }
+
+      /** @return whether there may be more changes to send */
+      private boolean sendNextChanges() throws ChangelogException, DirectoryException
+      {
+        if (cancelled.get())
+        {
+          return false;
+        }
+        if (cursor == null)
+        {
+          cursor = backend.getCursorFromCookie(CookieEntrySender.this);
+        }
+        for (int readChanges = 0; readChanges < MAX_PERSISTENT_SEARCH_ENTRIES_PER_RUN; readChanges++)
+        {
+          if (!cursor.next())
+          {
+            if (searchPhase != SearchPhase.INITIAL)
+            {
+              return false;
+            }
+            // read the changes persisted before the new changes are queued again
+            transitioningToPersistentSearchPhase();
+          }
+          else if (!initialSearchSendEntry(cursor.getRecord(), cursor.getData()))
+          {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+
+    /**
+     * Cancels the persistent search after it failed to send an entry, and disconnects its client so that it can
+     * resume from the last cookie it received.
+     */
+    private void cancel(Throwable t)
+    {
+      logger.traceException(t);
+      if (!cancelled.compareAndSet(false, true))
+      {
+        return;
+      }
+      final LocalizableMessage message = ERR_CHANGELOG_PERSISTENT_SEARCH_SEND_FAILED.get(
+          searchOp.getConnectionID(), searchOp.getOperationID(), getCancelReason(t));
+      logger.error(message);
+      queuedEntries.clear();
+      if (persistentSearch != null)
+      {
+        persistentSearch.cancel();
+      }
+      searchOp.getClientConnection().disconnect(DisconnectReason.SERVER_ERROR, true, message);
+    }
+
+    private Object getCancelReason(Throwable t)
+    {
+      if (t instanceof DirectoryException)
+      {
+        return ((DirectoryException) t).getMessageObject();
+      }
+      else if (t instanceof ChangelogException)
+      {
+        return ((ChangelogException) t).getMessageObject();
+      }
+      // the search would otherwise silently stop receiving entries
+      return stackTraceToSingleLineString(t);
+    }
+
+    private void persistentSearchSendEntry(CookieEntry cookieEntry) throws DirectoryException
+    {
+      final CSN csn = cookieEntry.updateMsg.getCSN();
+      final SendEntryData<CSN> sendEntryData = getSendEntryData(cookieEntry.baseDN, csn);
       if (sendEntryData.persistentSearchCanSendEntry(csn))
       {
         // multi threaded case: wait for the "initial search" phase to set the cookie
-        final String cookieString = updateCookie(baseDN, updateMsg.getCSN());
-        final Entry cookieEntry = createEntryFromMsg(baseDN, 0, cookieString, updateMsg);
-        // FIXME JNR use this instead of previous line:
-        // entry.replaceAttribute(Attributes.create("changelogcookie", cookieString));
-        sendEntryIfMatches(searchOp, cookieEntry, cookieString);
+        final String cookieString = updateCookie(cookieEntry.baseDN, csn);
+        if (Boolean.FALSE.equals(cookieEntry.matches))
+        {
+          return;
+        }
+        final Entry entry = cookieEntry.entry.duplicate(false);
+        entry.replaceAttribute(Attributes.create(
+            DirectoryServer.getAttributeTypeOrDefault(CHANGELOG_COOKIE_ATTR_LC, "changeLogCookie"), cookieString));
+        if (cookieEntry.matches != null || matchBaseAndScopeAndFilter(searchOp, entry))
+        {
+          searchOp.returnEntry(entry, getControls(cookieString));
+        }
       }
     }
 
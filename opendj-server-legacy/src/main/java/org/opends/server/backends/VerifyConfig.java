@@ -43,6 +43,8 @@ public class VerifyConfig
   private ArrayList<String> completeList = new ArrayList<>();
   /** The names of indexes to be verified for cleanliness. */
   private ArrayList<String> cleanList = new ArrayList<>();
+  /** The number of threads used to verify the backend. */
+  private int threadCount = 1;
 
   /**
    * Get the base DN to be verified.
@@ -99,4 +101,22 @@ public class VerifyConfig
     Reject.ifNull(index);
     cleanList.add(index);
   }
+
+  /**
+   * Get the number of threads used to verify the backend.
+   * @return The number of threads used to verify the backend.
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+  /**
+   * Set the number of threads used to verify the backend.
+   * @param threadCount The number of threads used to verify the backend.
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
 }
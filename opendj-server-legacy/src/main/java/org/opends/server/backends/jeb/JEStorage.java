@@ -51,6 +51,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -502,6 +503,58 @@ public final class JEStorage implements Storage, Backupable, ConfigurationChange
       }
     }
 
+    @Override
+    public void updateAll(final TreeName treeName,
+        final SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      // A single cursor visits the ordered keys, each one read once under a write lock as update() does.
+      try (final com.sleepycat.je.Cursor cursor = getOrOpenTree(treeName).openCursor(txn, null))
+      {
+        final DatabaseEntry dbKey = new DatabaseEntry();
+        final DatabaseEntry dbValue = new DatabaseEntry();
+        for (Map.Entry<? extends ByteSequence, ? extends UpdateFunction> update : updates.entrySet())
+        {
+          setData(dbKey, update.getKey());
+          update(cursor, dbKey, dbValue, update.getValue());
+        }
+      }
+      catch (DatabaseException e)
+      {
+        throw new StorageRuntimeException(e);
+      }
+    }
+
+    private void update(final com.sleepycat.je.Cursor cursor, final DatabaseEntry dbKey,
+        final DatabaseEntry dbValue, final UpdateFunction f)
+    {
+      for (;;)
+      {
+        final boolean isDefined = cursor.getSearchKey(dbKey, dbValue, RMW) == SUCCESS;
+        final ByteSequence oldValue = valueToBytes(dbValue, isDefined);
+        final ByteSequence newValue = f.computeNewValue(oldValue);
+        if (Objects.equals(newValue, oldValue))
+        {
+          return;
+        }
+        if (newValue == null)
+        {
+          cursor.delete();
+          return;
+        }
+        setData(dbValue, newValue);
+        if (isDefined)
+        {
+          cursor.putCurrent(dbValue);
+          return;
+        }
+        else if (cursor.putNoOverwrite(dbKey, dbValue) == SUCCESS)
+        {
+          return;
+        }
+        // else retry due to phantom read: another thread inserted a record
+      }
+    }
+
     @Override
     public void openTree(final TreeName treeName, boolean createOnDemand)
     {
@@ -586,6 +639,12 @@ public final class JEStorage implements Storage, Backupable, ConfigurationChange
       throw new ReadOnlyStorageException();
     }
 
+    @Override
+    public void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      throw new ReadOnlyStorageException();
+    }
+
     @Override
     public boolean delete(TreeName treeName, ByteSequence key)
     {
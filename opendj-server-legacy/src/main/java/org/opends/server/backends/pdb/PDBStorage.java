@@ -51,6 +51,7 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -554,25 +555,26 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
     {
       try
       {
+        return update(getExchangeFromCache(treeName), key, f);
+      }
+      catch (final PersistitException | RollbackException e)
+      {
+        throw new StorageRuntimeException(e);
+      }
+    }
+
+    @Override
+    public void updateAll(final TreeName treeName,
+        final SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      try
+      {
+        // Each key is updated in turn as update() does, the only saving being the reuse of the cached exchange.
         final Exchange ex = getExchangeFromCache(treeName);
-        bytesToKey(ex.getKey(), key);
-        ex.fetch();
-        final ByteSequence oldValue = valueToBytes(ex.getValue());
-        final ByteSequence newValue = f.computeNewValue(oldValue);
-        if (!Objects.equals(newValue, oldValue))
+        for (Map.Entry<? extends ByteSequence, ? extends UpdateFunction> update : updates.entrySet())
         {
-          if (newValue == null)
-          {
-            ex.remove();
-          }
-          else
-          {
-            ex.getValue().clear().putByteArray(newValue.toByteArray());
-            ex.store();
-          }
-          return true;
+          update(ex, update.getKey(), update.getValue());
         }
-        return false;
       }
       catch (final PersistitException | RollbackException e)
       {
@@ -580,6 +582,29 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
       }
     }
 
+    private boolean update(final Exchange ex, final ByteSequence key, final UpdateFunction f)
+        throws PersistitException
+    {
+      bytesToKey(ex.getKey(), key);
+      ex.fetch();
+      final ByteSequence oldValue = valueToBytes(ex.getValue());
+      final ByteSequence newValue = f.computeNewValue(oldValue);
+      if (!Objects.equals(newValue, oldValue))
+      {
+        if (newValue == null)
+        {
+          ex.remove();
+        }
+        else
+        {
+          ex.getValue().clear().putByteArray(newValue.toByteArray());
+          ex.store();
+        }
+        return true;
+      }
+      return false;
+    }
+
     private void openCreateTree(final TreeName treeName)
     {
       Exchange ex = null;
@@ -701,6 +726,12 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
       throw new ReadOnlyStorageException();
     }
 
+    @Override
+    public void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      throw new ReadOnlyStorageException();
+    }
+
     @Override
     public boolean delete(TreeName treeName, ByteSequence key)
     {
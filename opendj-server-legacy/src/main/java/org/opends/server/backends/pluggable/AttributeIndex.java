@@ -51,6 +51,7 @@ import org.forgerock.opendj.ldap.spi.IndexingOptions;
 import org.opends.server.admin.server.ConfigurationChangeListener;
 import org.opends.server.admin.std.meta.BackendIndexCfgDefn.IndexType;
 import org.opends.server.admin.std.server.BackendIndexCfg;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
@@ -421,6 +422,61 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     }
   }
 
+  /**
+   * Returns the approximate number of keys of the indexes read to evaluate a filter of the provided type, which can be
+   * used to estimate the number of entries matching the filter. The counts are only read again from the storage
+   * once they are older than {@link DefaultIndex#KEY_COUNT_REFRESH_INTERVAL_IN_MILLIS}.
+   *
+   * @param txn
+   *          a non null transaction
+   * @param indexFilterType
+   *          The type of the filter to evaluate.
+   * @return The approximate number of keys, or -1 if it is not known.
+   */
+  long getKeyCount(ReadableTransaction txn, IndexFilterType indexFilterType)
+  {
+    final Collection<? extends Indexer> indexers = getIndexers(indexFilterType);
+    if (indexers.isEmpty())
+    {
+      return -1;
+    }
+    long keyCount = 0;
+    for (Indexer indexer : indexers)
+    {
+      final MatchingRuleIndex index = indexIdToIndexes.get(indexer.getIndexID());
+      final long indexKeyCount = index != null ? index.getEstimatedKeyCount(txn) : -1;
+      if (indexKeyCount < 0)
+      {
+        return -1;
+      }
+      keyCount += indexKeyCount;
+    }
+    return keyCount;
+  }
+
+  private Collection<? extends Indexer> getIndexers(IndexFilterType indexFilterType)
+  {
+    final AttributeType attributeType = getAttributeType();
+    switch (indexFilterType)
+    {
+    case PRESENCE:
+      return Collections.singletonList(PRESENCE_INDEXER);
+    case EQUALITY:
+      return getIndexers(attributeType.getEqualityMatchingRule());
+    case SUBSTRING:
+      return getIndexers(attributeType.getSubstringMatchingRule());
+    case APPROXIMATE:
+      return getIndexers(attributeType.getApproximateMatchingRule());
+    default:
+      return Collections.emptyList();
+    }
+  }
+
+  private Collection<? extends Indexer> getIndexers(MatchingRule rule)
+  {
+    return rule != null ? rule.createIndexers(indexingOptions) : Collections.<Indexer> emptyList();
+  }
+
   /**
    * Update the attribute index for a new entry.
    *
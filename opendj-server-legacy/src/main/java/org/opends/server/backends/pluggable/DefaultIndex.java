@@ -32,6 +32,9 @@ import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
 
 import java.util.EnumSet;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteSequence;
@@ -41,6 +44,7 @@ import org.opends.server.backends.pluggable.CursorTransformer.ValueTransformer;
 import org.opends.server.backends.pluggable.EntryIDSet.EntryIDSetCodec;
 import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
@@ -56,11 +60,38 @@ class DefaultIndex extends AbstractTree implements Index
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  private static final ByteString KEY_COUNT_KEY = ByteString.valueOfUtf8("nbKeys");
+
+  /** The delay after which the estimated count of keys is read again from the storage. */
+  static final long KEY_COUNT_REFRESH_INTERVAL_IN_MILLIS = 1000;
+
   /** The limit on the number of entry IDs that may be indexed by one key. */
   private final State state;
   private final EntryContainer entryContainer;
   private int indexEntryLimit;
-  private EntryIDSetCodec codec;
+  private volatile EntryIDSetCodec codec;
+
+  /**
+   * The count of keys in this index, used to estimate the number of entries indexed by one key. It is updated in the
+   * same transactions as the keys, and read again when planning a search, so that it never counts the keys of aborted
+   * or retried transactions.
+   */
+  private final ShardedCounter counter;
+
+  /**
+   * A flag to indicate if the count of keys is consistent with this index, which is only the case if it has been
+   * maintained since the index was empty or since the index was last imported or rebuilt.
+   */
+  private volatile boolean keyCounted;
+
+  /**
+   * A flag to indicate that the count of keys has been imported along with the keys of this index, so that it can be
+   * maintained again as soon as the index is trusted.
+   */
+  private volatile boolean keyCountImported;
+
+  /** The count of keys last read from the storage, used to plan searches without reading the storage each time. */
+  private volatile KeyCountEstimate keyCountEstimate;
 
   /**
    * A flag to indicate if this index should be trusted to be consistent with the entries tree.
@@ -95,22 +126,106 @@ class DefaultIndex extends AbstractTree implements Index
     this.indexEntryLimit = indexEntryLimit;
     this.state = state;
     this.entryContainer = entryContainer;
+    this.counter = new ShardedCounter(new TreeName(name.getBaseDN(), "counter." + name.getIndexId()));
   }
 
   @Override
   final void afterOpen(WriteableTransaction txn, boolean createOnDemand)
   {
+    counter.open(txn, createOnDemand);
     final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
-    codec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+    codec = getCodec(flags);
     trusted = flags.contains(TRUSTED);
+    keyCounted = trusted && flags.contains(KEY_COUNTED);
     if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
       // If there are no entries in the entry container then there
-      // is no reason why this index can't be upgraded to trusted.
+      // is no reason why this index can't be upgraded to trusted,
+      // and its count of keys is known to be zero.
+      keyCountImported = true;
       setTrusted(txn, true);
     }
   }
 
+  private static EntryIDSetCodec getCodec(EnumSet<IndexFlag> flags)
+  {
+    if (flags.contains(COMPACTED))
+    {
+      return flags.contains(BITMAP_ENCODED) ? CODEC_V3 : CODEC_V2;
+    }
+    return CODEC_V1;
+  }
+
+  @Override
+  final void beforeDelete(WriteableTransaction txn)
+  {
+    counter.delete(txn);
+  }
+
+  /**
+   * Imports the count of keys of this index, once all its keys have been imported.
+   *
+   * @param importer
+   *          The importer writing this index.
+   * @param count
+   *          The number of keys imported into this index.
+   */
+  final void importKeyCount(Importer importer, long count)
+  {
+    counter.importPut(importer, KEY_COUNT_KEY, count);
+    keyCountImported = true;
+  }
+
+  /**
+   * Returns the number of keys in this index, which can be used to estimate the number of entries indexed by one
+   * key.
+   *
+   * @param txn
+   *          a non null transaction
+   * @return the number of keys in this index, or -1 if it is not known because the index has not been rebuilt since
+   *         its keys are counted.
+   */
+  final long getKeyCount(ReadableTransaction txn)
+  {
+    return keyCounted ? counter.getCount(txn, KEY_COUNT_KEY) : -1;
+  }
+
+  /**
+   * Returns the number of keys in this index as last read from the storage, reading it again if it has been read more
+   * than {@link #KEY_COUNT_REFRESH_INTERVAL_IN_MILLIS} ago. This avoids opening a cursor on the counter each time a
+   * search is planned, at the cost of an estimate lagging behind the latest updates.
+   *
+   * @param txn
+   *          a non null transaction
+   * @return the number of keys in this index as last read, or -1 if it is not known.
+   * @see #getKeyCount(ReadableTransaction)
+   */
+  final long getEstimatedKeyCount(ReadableTransaction txn)
+  {
+    final KeyCountEstimate estimate = keyCountEstimate;
+    final long now = System.currentTimeMillis();
+    if (estimate != null && now < estimate.expirationTime)
+    {
+      return estimate.count;
+    }
+    final long count = getKeyCount(txn);
+    keyCountEstimate = new KeyCountEstimate(count, now + KEY_COUNT_REFRESH_INTERVAL_IN_MILLIS);
+    return count;
+  }
+
+  /** A count of keys read from the storage, along with the time after which it must be read again. */
+  private static final class KeyCountEstimate
+  {
+    private final long count;
+    private final long expirationTime;
+
+    private KeyCountEstimate(long count, long expirationTime)
+    {
+      this.count = count;
+      this.expirationTime = expirationTime;
+    }
+  }
+
   @Override
   public String valueToString(ByteString value)
   {
@@ -173,35 +288,112 @@ class DefaultIndex extends AbstractTree implements Index
     }
 
     // The record is going to be changed in some way.
-    txn.update(getName(), key, new UpdateFunction()
+    final EntryIDSetUpdate entryIDSetUpdate = new EntryIDSetUpdate(txn, key, deletedIDs, addedIDs);
+    txn.update(getName(), key, entryIDSetUpdate);
+    updateKeyCount(txn, entryIDSetUpdate.keyCountDelta);
+  }
+
+  @Override
+  public final void update(final WriteableTransaction txn,
+      final SortedMap<ByteString, ? extends EntryIDSetChanges> changes) throws StorageRuntimeException
+  {
+    final SortedMap<ByteString, EntryIDSetUpdate> updates = new TreeMap<>();
+    for (Map.Entry<ByteString, ? extends EntryIDSetChanges> change : changes.entrySet())
+    {
+      final ByteString key = change.getKey();
+      final EntryIDSet deletedIDs = change.getValue().getDeletedIDs();
+      final EntryIDSet addedIDs = change.getValue().getAddedIDs();
+      // Records which hit the index entry limit are left unchanged by the update function itself: unlike when
+      // updating a single key, they are not read beforehand.
+      if (!isNullOrEmpty(deletedIDs) || !isNullOrEmpty(addedIDs))
+      {
+        updates.put(key, new EntryIDSetUpdate(txn, key, deletedIDs, addedIDs));
+      }
+    }
+
+    if (updates.size() == 1)
+    {
+      final ByteString key = updates.firstKey();
+      txn.update(getName(), key, updates.get(key));
+    }
+    else if (!updates.isEmpty())
+    {
+      txn.updateAll(getName(), updates);
+    }
+
+    int keyCountDelta = 0;
+    for (EntryIDSetUpdate update : updates.values())
+    {
+      keyCountDelta += update.keyCountDelta;
+    }
+    updateKeyCount(txn, keyCountDelta);
+  }
+
+  private void updateKeyCount(WriteableTransaction txn, int keyCountDelta)
+  {
+    if (keyCounted && keyCountDelta != 0)
+    {
+      counter.addCount(txn, KEY_COUNT_KEY, keyCountDelta);
+    }
+  }
+
+  /** Computes the new entry IDs of a key, remembering whether the key has been added to or removed from the index. */
+  private final class EntryIDSetUpdate implements UpdateFunction
+  {
+    private final WriteableTransaction txn;
+    private final ByteString key;
+    private final EntryIDSet deletedIDs;
+    private final EntryIDSet addedIDs;
+    /** The variation of the count of keys caused by the last computed value, the function can be called again. */
+    private int keyCountDelta;
+
+    EntryIDSetUpdate(WriteableTransaction txn, ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs)
+    {
+      this.txn = txn;
+      this.key = key;
+      this.deletedIDs = deletedIDs;
+      this.addedIDs = addedIDs;
+    }
+
+    @Override
+    public ByteSequence computeNewValue(final ByteSequence oldValue)
     {
-      @Override
-      public ByteSequence computeNewValue(final ByteSequence oldValue)
+      keyCountDelta = 0;
+      if (oldValue != null)
       {
-        if (oldValue != null)
+        EntryIDSet entryIDSet = decodeValue(key, oldValue.toByteString());
+        if (!entryIDSet.isDefined())
         {
-          EntryIDSet entryIDSet = computeEntryIDSet(key, oldValue.toByteString(), deletedIDs, addedIDs);
-          /*
-           * If there are no more IDs then return null indicating that the record should be removed.
-           * If index is not trusted then this will cause all subsequent reads for this key to
-           * return undefined set.
-           */
-          return entryIDSet.size() == 0 ? null : toValue(entryIDSet);
+          // The record has hit the index entry limit: leave it unchanged.
+          return oldValue;
         }
-        else if (trusted)
+        entryIDSet = computeEntryIDSet(key, entryIDSet, deletedIDs, addedIDs);
+        /*
+         * If there are no more IDs then return null indicating that the record should be removed.
+         * If index is not trusted then this will cause all subsequent reads for this key to
+         * return undefined set.
+         */
+        if (entryIDSet.size() == 0)
         {
-          if (deletedIDs != null)
-          {
-            logIndexCorruptError(txn, key);
-          }
-          if (isNotEmpty(addedIDs))
-          {
-            return toValue(addedIDs);
-          }
+          keyCountDelta = -1;
+          return null;
         }
-        return null; // no change.
+        return toValue(entryIDSet);
       }
-    });
+      else if (trusted)
+      {
+        if (deletedIDs != null)
+        {
+          logIndexCorruptError(txn, key);
+        }
+        if (isNotEmpty(addedIDs))
+        {
+          keyCountDelta = 1;
+          return toValue(addedIDs);
+        }
+      }
+      return null; // no change.
+    }
   }
 
   private static boolean isNullOrEmpty(EntryIDSet entryIDSet)
@@ -214,12 +406,12 @@ class DefaultIndex extends AbstractTree implements Index
     return entryIDSet != null && entryIDSet.size() > 0;
   }
 
-  private EntryIDSet computeEntryIDSet(ByteString key, ByteString value, EntryIDSet deletedIDs, EntryIDSet addedIDs)
+  private EntryIDSet computeEntryIDSet(ByteString key, EntryIDSet entryIDSet, EntryIDSet deletedIDs,
+      EntryIDSet addedIDs)
   {
-    EntryIDSet entryIDSet = decodeValue(key, value);
     if (addedIDs != null)
     {
-      if (entryIDSet.isDefined() && indexEntryLimit > 0)
+      if (indexEntryLimit > 0)
       {
         final long nbDeleted = deletedIDs != null ? deletedIDs.size() : 0;
         final long idCountDelta = addedIDs.size() - nbDeleted;
@@ -290,14 +482,38 @@ class DefaultIndex extends AbstractTree implements Index
   @Override
   public final synchronized void setTrusted(WriteableTransaction txn, boolean trusted) throws StorageRuntimeException
   {
+    final boolean wasTrusted = this.trusted;
     this.trusted = trusted;
-    if (trusted)
+    keyCountEstimate = null;
+    if (trusted && !wasTrusted)
+    {
+      final EnumSet<IndexFlag> flags = EnumSet.of(TRUSTED);
+      if (keyCountImported)
+      {
+        // The index is either empty or has just been imported or rebuilt along with its count of keys. Otherwise, e.g.
+        // when only clearing its degraded state, its count of keys has not been maintained and stays unknown.
+        keyCountImported = false;
+        keyCounted = true;
+        flags.add(KEY_COUNTED);
+      }
+      if (codec == CODEC_V2)
+      {
+        // The content of the index has just been entirely written: records may now be bitmap encoded.
+        codec = CODEC_V3;
+        flags.add(BITMAP_ENCODED);
+      }
+      state.addFlagsToIndex(txn, getName(), flags.toArray(new IndexFlag[flags.size()]));
+    }
+    else if (trusted)
     {
       state.addFlagsToIndex(txn, getName(), TRUSTED);
     }
     else
     {
-      state.removeFlagsFromIndex(txn, getName(), TRUSTED);
+      // Keys are not added to untrusted indexes, hence their count cannot be maintained.
+      keyCountImported = false;
+      keyCounted = false;
+      state.removeFlagsFromIndex(txn, getName(), TRUSTED, KEY_COUNTED);
     }
   }
 
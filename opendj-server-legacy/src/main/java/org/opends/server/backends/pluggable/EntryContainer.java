@@ -32,21 +32,24 @@ import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.DnKeyFormat.*;
 import static org.opends.server.backends.pluggable.IndexFilter.*;
 import static org.opends.server.backends.pluggable.VLVIndex.*;
+import static org.opends.server.backends.pluggable.VLVKeySorter.*;
 import static org.opends.server.core.DirectoryServer.*;
 import static org.opends.server.protocols.ldap.LDAPResultCode.*;
 import static org.opends.server.types.AdditionalLogItem.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -92,6 +95,7 @@ import org.opends.server.controls.VLVResponseControl;
 import org.opends.server.core.AddOperation;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.MemoryQuota;
 import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.SearchOperation;
@@ -136,6 +140,13 @@ public class EntryContainer
   /** The name of the state tree. */
   private static final String STATE_TREE_NAME = STATE_INDEX_NAME;
 
+  /** The directory where server side sorts write the sorted runs exceeding their memory budget. */
+  private static final String SORT_TMP_DIR = "sort-tmp";
+  /** The minimum amount of memory used by a server side sort which cannot be processed using a VLV index. */
+  private static final long MIN_SORT_MEMORY = 1024 * 1024;
+  /** The maximum amount of memory used by a server side sort which cannot be processed using a VLV index. */
+  private static final long MAX_SORT_MEMORY = 64 * 1024 * 1024;
+
   /** The attribute index configuration manager. */
   private final AttributeIndexCfgManager attributeIndexCfgManager;
   /** The vlv index configuration manager. */
@@ -149,6 +160,8 @@ public class EntryContainer
   private final DN baseDN;
   /** The root container in which this entryContainer belongs. */
   private final RootContainer rootContainer;
+  /** The candidate entries of the paged searches waiting for their next page. */
+  private final PagedResultsCache pagedResultsCache;
   /** The tree storage. */
   private final Storage storage;
 
@@ -418,6 +431,8 @@ public class EntryContainer
     this.dn2id = new DN2ID(getIndexName(DN2ID_TREE_NAME), baseDN);
     this.dn2uri = new DN2URI(getIndexName(REFERRAL_TREE_NAME), this);
     this.state = new State(getIndexName(STATE_TREE_NAME));
+    this.pagedResultsCache =
+        new PagedResultsCache(config.getPagedResultsCacheSize(), config.getPagedResultsCacheTimeout());
 
     config.addPluggableChangeListener(this);
 
@@ -503,6 +518,7 @@ public class EntryContainer
   {
     closeSilently(attrIndexMap.values());
     closeSilently(vlvIndexMap.values());
+    pagedResultsCache.clear();
 
     // Deregister any listeners.
     config.removePluggableChangeListener(this);
@@ -780,6 +796,25 @@ public class EntryContainer
             debugBuffer = new StringBuilder();
           }
 
+          // The next pages of a paged search can be returned from the candidates cached with the previous page.
+          if (pageRequest != null && pageRequest.getCookie().length() != 0 && debugBuffer == null)
+          {
+            final PagedResultsCache.Candidates candidates =
+                pagedResultsCache.remove(searchOperation, pageRequest.getCookie());
+            if (candidates != null)
+            {
+              searchOperation.getResponseControls().addAll(candidates.getResponseControls());
+              rootContainer.getMonitorProvider().incrementIndexedSearchCount();
+              searchIndexed(txn, candidates.getEntryIDs(), candidates.areCandidatesInScope(), searchOperation,
+                  pageRequest, candidates);
+              return null;
+            }
+          }
+          // Check out the candidates before evaluating them, so that the updates made meanwhile outdate them
+          final PagedResultsCache.Candidates pagedCandidates =
+              pageRequest != null ? pagedResultsCache.checkOut(searchOperation) : null;
+          final int responseControlsCount = searchOperation.getResponseControls().size();
+
           EntryIDSet entryIDSet = null;
           boolean candidatesAreInScope = false;
           if (sortRequest != null)
@@ -815,8 +850,8 @@ public class EntryContainer
             }
 
             // Create an index filter to get the search result candidate entries
-            IndexFilter indexFilter = new IndexFilter(
-                EntryContainer.this, txn, searchOperation, debugBuffer, rootContainer.getMonitorProvider());
+            IndexFilter indexFilter = new IndexFilter(EntryContainer.this, txn, searchOperation, debugBuffer,
+                rootContainer.getMonitorProvider(), rootContainer.getIndexLookupExecutor());
 
             // Evaluate the filter against the attribute indexes.
             entryIDSet = indexFilter.evaluate();
@@ -905,7 +940,14 @@ public class EntryContainer
           if (entryIDReorderedSet != null)
           {
             rootContainer.getMonitorProvider().incrementIndexedSearchCount();
-            searchIndexed(txn, entryIDReorderedSet, candidatesAreInScope, searchOperation, pageRequest);
+            if (pagedCandidates != null)
+            {
+              final List<Control> responseControls = searchOperation.getResponseControls();
+              pagedCandidates.setEvaluation(candidatesAreInScope, entryIDReorderedSet,
+                  new ArrayList<>(responseControls.subList(responseControlsCount, responseControls.size())));
+            }
+            searchIndexed(txn, entryIDReorderedSet, candidatesAreInScope, searchOperation, pageRequest,
+                pagedCandidates);
           }
           else
           {
@@ -1004,6 +1046,10 @@ public class EntryContainer
     {
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    finally
+    {
+      pagedResultsCache.release(searchOperation);
+    }
   }
 
   private static EntryIDSet newIDSetFromCursor(SequentialCursor<?, EntryID> cursor, boolean includeCurrent,
@@ -1300,12 +1346,14 @@ public class EntryContainer
    *          The search operation.
    * @param pageRequest
    *          A Paged Results control, or null if none.
+   * @param pagedCandidates
+   *          The candidates to cache when a page is returned, or null if none.
    * @throws DirectoryException
    *           If an error prevented the search from being processed.
    */
   private void searchIndexed(ReadableTransaction txn, long[] entryIDReorderedSet, boolean candidatesAreInScope,
-      SearchOperation searchOperation, PagedResultsControl pageRequest) throws DirectoryException,
-      CanceledOperationException
+      SearchOperation searchOperation, PagedResultsControl pageRequest, PagedResultsCache.Candidates pagedCandidates)
+      throws DirectoryException, CanceledOperationException
   {
     SearchScope searchScope = searchOperation.getScope();
     DN aBaseDN = searchOperation.getBaseDN();
@@ -1348,7 +1396,9 @@ public class EntryContainer
     if (continueSearch)
     {
       final SearchFilter filter = searchOperation.getFilter();
-      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet); i < entryIDReorderedSet.length; i++)
+      final int startIndexHint = pagedCandidates != null ? pagedCandidates.getNextIndex() : 0;
+      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet, startIndexHint);
+          i < entryIDReorderedSet.length; i++)
       {
         EntryID entryID = new EntryID(entryIDReorderedSet[i]);
         Entry entry;
@@ -1376,6 +1426,10 @@ public class EntryContainer
               ByteString cookie = entryID.toByteString();
               Control control = new PagedResultsControl(pageRequest.isCritical(), 0, cookie);
               searchOperation.getResponseControls().add(control);
+              if (pagedCandidates != null)
+              {
+                pagedResultsCache.put(pagedCandidates, cookie, i);
+              }
               return;
             }
 
@@ -1412,13 +1466,17 @@ public class EntryContainer
     }
   }
 
-  private int findStartIndex(Long beginEntryID, long[] entryIDReorderedSet)
+  private int findStartIndex(Long beginEntryID, long[] entryIDReorderedSet, int startIndexHint)
   {
     if (beginEntryID == null)
     {
       return 0;
     }
     final long begin = beginEntryID.longValue();
+    if (startIndexHint < entryIDReorderedSet.length && entryIDReorderedSet[startIndexHint] == begin)
+    {
+      return startIndexHint;
+    }
     for (int i = 0; i < entryIDReorderedSet.length; i++)
     {
       if (entryIDReorderedSet[i] == begin)
@@ -1557,6 +1615,7 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    pagedResultsCache.invalidate(entry.getName());
 
     final EntryCache<?> entryCache = DirectoryServer.getEntryCache();
     if (entryCache != null)
@@ -1779,6 +1838,7 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    pagedResultsCache.invalidate(entryDN);
   }
 
   /**
@@ -2001,6 +2061,8 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    pagedResultsCache.invalidate(newEntry.getName(),
+        modifyOperation != null ? modifyOperation.getModifications() : null);
   }
 
   /**
@@ -2251,6 +2313,8 @@ public class EntryContainer
       writeTrustState(indexBuffer);
       throwAllowedExceptionTypes(e, DirectoryException.class, CanceledOperationException.class);
     }
+    pagedResultsCache.invalidate(oldTargetDN);
+    pagedResultsCache.invalidate(newTargetEntry.getName());
   }
 
   /**
@@ -2509,6 +2573,7 @@ public class EntryContainer
           DataConfig entryDataConfig = new DataConfig(cfg.isEntriesCompressed(),
               cfg.isCompactEncoding(), rootContainer.getCompressedSchema());
           id2entry.setDataConfig(entryDataConfig);
+          pagedResultsCache.setConfiguration(cfg.getPagedResultsCacheSize(), cfg.getPagedResultsCacheTimeout());
 
           EntryContainer.this.config = cfg;
         }
@@ -2553,6 +2618,10 @@ public class EntryContainer
     {
       throw new StorageRuntimeException(e);
     }
+    finally
+    {
+      pagedResultsCache.clear();
+    }
   }
 
   List<Tree> listTrees()
@@ -2650,11 +2719,60 @@ public class EntryContainer
       return null;
     }
 
+    final MemoryQuota memoryQuota = DirectoryServer.getInstance().getServerContext().getMemoryQuota();
+    final long sortMemory = Math.min(memoryQuota.getAvailableMemory() / 16, MAX_SORT_MEMORY);
+    final boolean isSortMemoryReserved = sortMemory > MIN_SORT_MEMORY && memoryQuota.acquireMemory(sortMemory);
+    final long memoryBudget = isSortMemoryReserved ? sortMemory : MIN_SORT_MEMORY;
+    try
+    {
+      // See if there is a VLV request to further pare down the set of results, and if there is where it should be
+      // processed by offset or assertion value.
+      if (vlvRequest == null)
+      {
+        try (VLVKeySorter sorter = newSorter(ASCENDING_ORDER, Integer.MAX_VALUE, memoryBudget))
+        {
+          addMatchingEntries(txn, entryIDSet, searchOperation, sortOrder, null, null, sorter);
+          return toEntryIDs(sorter.iterator(), toInt(sorter.size()));
+        }
+      }
+
+      if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
+      {
+        return sortByOffset(txn, entryIDSet, searchOperation, sortOrder, vlvRequest, memoryBudget);
+      }
+      return sortByGreaterThanOrEqualAssertion(txn, entryIDSet, searchOperation, sortOrder, vlvRequest, memoryBudget);
+    }
+    catch (IOException | StorageRuntimeException e)
+    {
+      LocalizableMessage message = ERR_ENTRYIDSORTER_CANNOT_SORT_ENTRIES.get(stackTraceToSingleLineString(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
+    }
+    finally
+    {
+      if (isSortMemoryReserved)
+      {
+        memoryQuota.releaseMemory(sortMemory);
+      }
+    }
+  }
+
+  private VLVKeySorter newSorter(Comparator<ByteString> comparator, int maxKeys, long memoryBudget)
+  {
+    return new VLVKeySorter(comparator, maxKeys, memoryBudget, new File(getFileForPath(SORT_TMP_DIR), backendID));
+  }
+
+  /**
+   * Adds the VLV keys of the candidate entries matching the search to the provided sorters. When a target key is
+   * provided, the keys lower than the target key are added to the first sorter, the others to the second sorter.
+   */
+  private void addMatchingEntries(ReadableTransaction txn, EntryIDSet entryIDSet, SearchOperation searchOperation,
+      SortOrder sortOrder, ByteSequence targetKey, VLVKeySorter keysBeforeTarget, VLVKeySorter keys)
+      throws DirectoryException
+  {
     final DN baseDN = searchOperation.getBaseDN();
     final SearchScope scope = searchOperation.getScope();
     final SearchFilter filter = searchOperation.getFilter();
 
-    final TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
     for (EntryID id : entryIDSet)
     {
       try
@@ -2662,7 +2780,15 @@ public class EntryContainer
         Entry e = getEntry(txn, id);
         if (e.matchesBaseAndScope(baseDN, scope) && filter.matchesEntry(e))
         {
-          sortMap.put(encodeVLVKey(sortOrder, e, id.longValue()), id);
+          final ByteString key = encodeVLVKey(sortOrder, e, id.longValue());
+          if (targetKey != null && key.compareTo(targetKey) < 0)
+          {
+            keysBeforeTarget.add(key);
+          }
+          else
+          {
+            keys.add(key);
+          }
         }
       }
       catch (Exception e)
@@ -2671,157 +2797,128 @@ public class EntryContainer
         throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
       }
     }
-
-    // See if there is a VLV request to further pare down the set of results, and if there is where it should be
-    // processed by offset or assertion value.
-    if (vlvRequest == null)
-    {
-      return toArray(sortMap.values());
-    }
-
-    if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
-    {
-      return sortByOffset(searchOperation, vlvRequest, sortMap);
-    }
-    return sortByGreaterThanOrEqualAssertion(searchOperation, vlvRequest, sortOrder, sortMap);
   }
 
-  private static final long[] toArray(Collection<EntryID> entryIDs)
+  private static long[] toEntryIDs(Iterator<ByteString> keys, int count)
   {
-    final long[] array = new long[entryIDs.size()];
+    final long[] entryIDs = new long[count];
     int i = 0;
-    for (EntryID entryID : entryIDs)
+    while (i < count && keys.hasNext())
     {
-      array[i++] = entryID.longValue();
+      entryIDs[i++] = decodeEntryIDFromVLVKey(keys.next());
     }
-    return array;
+    return i < count ? Arrays.copyOf(entryIDs, i) : entryIDs;
   }
 
-  private static final long[] sortByGreaterThanOrEqualAssertion(SearchOperation searchOperation,
-      VLVRequestControl vlvRequest, SortOrder sortOrder, final TreeMap<ByteString, EntryID> sortMap)
-      throws DirectoryException
+  private static int toInt(long value)
+  {
+    return (int) Math.min(value, Integer.MAX_VALUE);
+  }
+
+  private long[] sortByGreaterThanOrEqualAssertion(ReadableTransaction txn, EntryIDSet entryIDSet,
+      SearchOperation searchOperation, SortOrder sortOrder, VLVRequestControl vlvRequest, long memoryBudget)
+      throws DirectoryException, IOException
   {
     ByteString assertionValue = vlvRequest.getGreaterThanOrEqualAssertion();
     ByteSequence encodedTargetAssertion =
-        encodeTargetAssertion(sortOrder, assertionValue, searchOperation, sortMap.size());
+        encodeTargetAssertion(sortOrder, assertionValue, searchOperation, toInt(entryIDSet.size()));
 
-    boolean targetFound = false;
-    int index = 0;
-    int targetIndex = 0;
-    int startIndex = 0;
-    int includedAfterCount = 0;
-    long[] idSet = new long[sortMap.size()];
-    for (Map.Entry<ByteString, EntryID> entry : sortMap.entrySet())
+    // Only the closest entries before the target and the first entries from the target need to be retained.
+    final int beforeCount = vlvRequest.getBeforeCount();
+    final int fromTargetCount = 1 + Math.max(vlvRequest.getAfterCount(), 1);
+    try (VLVKeySorter keysBeforeTarget = newSorter(DESCENDING_ORDER, beforeCount, memoryBudget / 2);
+        VLVKeySorter keysFromTarget = newSorter(ASCENDING_ORDER, fromTargetCount, memoryBudget / 2))
     {
-      ByteString vlvKey = entry.getKey();
-      EntryID id = entry.getValue();
-      idSet[index++] = id.longValue();
+      addMatchingEntries(txn, entryIDSet, searchOperation, sortOrder, encodedTargetAssertion, keysBeforeTarget,
+          keysFromTarget);
+      final int resultSetSize = toInt(keysBeforeTarget.size() + keysFromTarget.size());
 
-      if (targetFound)
+      final int targetIndex;
+      final long[] result;
+      if (keysFromTarget.size() > 0)
       {
-        includedAfterCount++;
-        if (includedAfterCount >= vlvRequest.getAfterCount())
+        targetIndex = toInt(keysBeforeTarget.size()) + 1;
+        final long[] idsBeforeTarget = toEntryIDs(keysBeforeTarget.iterator(), beforeCount);
+        final long[] idsFromTarget = toEntryIDs(keysFromTarget.iterator(), fromTargetCount);
+        result = new long[idsBeforeTarget.length + idsFromTarget.length];
+        for (int i = 0; i < idsBeforeTarget.length; i++)
         {
-          break;
+          result[idsBeforeTarget.length - 1 - i] = idsBeforeTarget[i];
         }
+        System.arraycopy(idsFromTarget, 0, result, idsBeforeTarget.length, idsFromTarget.length);
       }
       else
       {
-        targetFound = vlvKey.compareTo(encodedTargetAssertion) >= 0;
-        if (targetFound)
-        {
-          startIndex = Math.max(0, targetIndex - vlvRequest.getBeforeCount());
-        }
-        targetIndex++;
+        /*
+         * No entry was found to be greater than or equal to the sort key, so the target offset will
+         * be one greater than the content count.
+         */
+        targetIndex = resultSetSize + 1;
+        result = new long[0];
       }
+      searchOperation.addResponseControl(new VLVResponseControl(targetIndex, resultSetSize, LDAPResultCode.SUCCESS));
+      return result;
     }
-
-    final long[] result;
-    if (targetFound)
-    {
-      final long[] array = new long[index - startIndex];
-      System.arraycopy(idSet, startIndex, array, 0, array.length);
-      result = array;
-    }
-    else
-    {
-      /*
-       * No entry was found to be greater than or equal to the sort key, so the target offset will
-       * be one greater than the content count.
-       */
-      targetIndex = sortMap.size() + 1;
-      result = new long[0];
-    }
-    searchOperation.addResponseControl(new VLVResponseControl(targetIndex, sortMap.size(), LDAPResultCode.SUCCESS));
-    return result;
   }
 
-  private static final long[] sortByOffset(SearchOperation searchOperation, VLVRequestControl vlvRequest,
-      TreeMap<ByteString, EntryID> sortMap) throws DirectoryException
+  private long[] sortByOffset(ReadableTransaction txn, EntryIDSet entryIDSet, SearchOperation searchOperation,
+      SortOrder sortOrder, VLVRequestControl vlvRequest, long memoryBudget) throws DirectoryException, IOException
   {
     int targetOffset = vlvRequest.getOffset();
-    if (targetOffset < 0)
+
+    // Only the entries up to the end of the requested page need to be retained.
+    final int maxKeys = targetOffset < 0 ? 0 : toInt((long) Math.max(targetOffset, 1) + vlvRequest.getAfterCount());
+    try (VLVKeySorter sorter = newSorter(ASCENDING_ORDER, maxKeys, memoryBudget))
     {
-      // The client specified a negative target offset. This
-      // should never be allowed.
-      searchOperation.addResponseControl(new VLVResponseControl(targetOffset, sortMap.size(),
-          LDAPResultCode.OFFSET_RANGE_ERROR));
+      addMatchingEntries(txn, entryIDSet, searchOperation, sortOrder, null, null, sorter);
+      final int resultSetSize = toInt(sorter.size());
+      if (targetOffset < 0)
+      {
+        // The client specified a negative target offset. This
+        // should never be allowed.
+        searchOperation.addResponseControl(new VLVResponseControl(targetOffset, resultSetSize,
+            LDAPResultCode.OFFSET_RANGE_ERROR));
 
-      LocalizableMessage message = ERR_ENTRYIDSORTER_NEGATIVE_START_POS.get();
-      throw new DirectoryException(ResultCode.VIRTUAL_LIST_VIEW_ERROR, message);
-    }
+        LocalizableMessage message = ERR_ENTRYIDSORTER_NEGATIVE_START_POS.get();
+        throw new DirectoryException(ResultCode.VIRTUAL_LIST_VIEW_ERROR, message);
+      }
 
-    // This is an easy mistake to make, since VLV offsets start at 1 instead of 0. We'll assume the client meant
-    // to use 1.
-    targetOffset = (targetOffset == 0) ? 1 : targetOffset;
+      // This is an easy mistake to make, since VLV offsets start at 1 instead of 0. We'll assume the client meant
+      // to use 1.
+      targetOffset = (targetOffset == 0) ? 1 : targetOffset;
 
-    int beforeCount = vlvRequest.getBeforeCount();
-    int afterCount = vlvRequest.getAfterCount();
-    int listOffset = targetOffset - 1; // VLV offsets start at 1, not 0.
-    int startPos = listOffset - beforeCount;
-    if (startPos < 0)
-    {
-      // This can happen if beforeCount >= offset, and in this case we'll just adjust the start position to ignore
-      // the range of beforeCount that doesn't exist.
-      startPos = 0;
-      beforeCount = listOffset;
-    }
-    else if (startPos >= sortMap.size())
-    {
-      // The start position is beyond the end of the list. In this case, we'll assume that the start position was
-      // one greater than the size of the list and will only return the beforeCount entries.
-      targetOffset = sortMap.size() + 1;
-      listOffset = sortMap.size();
-      startPos = listOffset - beforeCount;
-      afterCount = 0;
-    }
-
-    int count = 1 + beforeCount + afterCount;
-    long[] sortedIDs = new long[count];
-    int treePos = 0;
-    int arrayPos = 0;
-    for (EntryID id : sortMap.values())
-    {
-      if (treePos++ < startPos)
+      int beforeCount = vlvRequest.getBeforeCount();
+      int afterCount = vlvRequest.getAfterCount();
+      int listOffset = targetOffset - 1; // VLV offsets start at 1, not 0.
+      int startPos = listOffset - beforeCount;
+      if (startPos < 0)
       {
-        continue;
+        // This can happen if beforeCount >= offset, and in this case we'll just adjust the start position to ignore
+        // the range of beforeCount that doesn't exist.
+        startPos = 0;
+        beforeCount = listOffset;
+      }
+      else if (startPos >= resultSetSize)
+      {
+        // The start position is beyond the end of the list. In this case, we'll assume that the start position was
+        // one greater than the size of the list and will only return the beforeCount entries.
+        targetOffset = resultSetSize + 1;
+        listOffset = resultSetSize;
+        startPos = listOffset - beforeCount;
+        afterCount = 0;
       }
 
-      sortedIDs[arrayPos++] = id.longValue();
-      if (arrayPos >= count)
+      final Iterator<ByteString> keys = sorter.iterator();
+      for (int i = 0; i < startPos && keys.hasNext(); i++)
       {
-        break;
+        keys.next();
       }
-    }
+      // We may not have enough entries in the set to meet the requested page size, in which case the array is shorter.
+      final long[] sortedIDs = toEntryIDs(keys, 1 + beforeCount + afterCount);
 
-    if (arrayPos < count)
-    {
-      // We don't have enough entries in the set to meet the requested page size, so we'll need to shorten the array.
-      sortedIDs = Arrays.copyOf(sortedIDs, arrayPos);
+      searchOperation.addResponseControl(new VLVResponseControl(targetOffset, resultSetSize, LDAPResultCode.SUCCESS));
+      return sortedIDs;
     }
-
-    searchOperation.addResponseControl(new VLVResponseControl(targetOffset, sortMap.size(), LDAPResultCode.SUCCESS));
-    return sortedIDs;
   }
 
   /** Get the exclusive lock. */
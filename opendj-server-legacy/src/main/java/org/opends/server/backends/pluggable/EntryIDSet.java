@@ -50,10 +50,15 @@ final class EntryIDSet implements Iterable<EntryID>
 {
   public static final EntryIDSetCodec CODEC_V1 = new EntryIDSetCodecV1();
   public static final EntryIDSetCodec CODEC_V2 = new EntryIDSetCodecV2();
+  public static final EntryIDSetCodec CODEC_V3 = new EntryIDSetCodecV3();
 
   private static final ByteSequence NO_KEY = ByteString.valueOfUtf8("<none>");
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
   private static final long[] NO_ENTRY_IDS_RANGE = new long[] { 0, 0 };
+  /** Sparse chunks of a compressed bitmap holding up to this number of IDs are stored as sorted arrays. */
+  private static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+  /** Number of longs needed to store the 2^16 bits of a dense chunk of a compressed bitmap. */
+  private static final int BITMAP_CONTAINER_WORDS = 1024;
 
   /** Interface for EntryIDSet concrete implementations. */
   private interface EntryIDSetImplementor extends Iterable<EntryID>
@@ -381,6 +386,892 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Concrete implementation representing a set of EntryIDs as a roaring-style compressed bitmap. The IDs are split in
+   * chunks of 2^16 IDs sharing the same upper 48 bits. Each chunk is held by a {@link Container} storing the lower 16
+   * bits of its IDs either as a sorted array (sparse chunk) or as a fixed size bitmap (dense chunk). Logical operations
+   * are performed chunk by chunk without materializing the IDs.
+   */
+  private static final class BitmapImpl implements EntryIDSetImplementor
+  {
+    /** The upper 48 bits of the IDs held by each container, in ascending order. */
+    private long[] keys;
+    private Container[] containers;
+    private int nbContainers;
+    private long size;
+    /** Lazily materialized IDs, discarded whenever this set is modified. */
+    private long[] entryIDs;
+
+    BitmapImpl()
+    {
+      this(new long[4], new Container[4], 0);
+    }
+
+    BitmapImpl(long[] keys, Container[] containers, int nbContainers)
+    {
+      replace(keys, containers, nbContainers);
+    }
+
+    static BitmapImpl valueOf(long[] sortedEntryIDs)
+    {
+      final BitmapImpl bitmap = new BitmapImpl();
+      int i = 0;
+      while (i < sortedEntryIDs.length)
+      {
+        final long key = highBits(sortedEntryIDs[i]);
+        int j = i;
+        while (j < sortedEntryIDs.length && highBits(sortedEntryIDs[j]) == key)
+        {
+          j++;
+        }
+        final char[] values = new char[j - i];
+        for (int k = i; k < j; k++)
+        {
+          values[k - i] = (char) lowBits(sortedEntryIDs[k]);
+        }
+        final ArrayContainer container = new ArrayContainer(values, values.length);
+        bitmap.insertAt(bitmap.nbContainers,
+            key, values.length > MAX_ARRAY_CONTAINER_SIZE ? container.toBitmapContainer() : container);
+        i = j;
+      }
+      return bitmap;
+    }
+
+    @Override
+    public long size()
+    {
+      return size;
+    }
+
+    @Override
+    public void toString(StringBuilder buffer)
+    {
+      buffer.append("[COUNT:").append(size()).append("]");
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return true;
+    }
+
+    @Override
+    public long[] getRange()
+    {
+      if (nbContainers != 0)
+      {
+        return new long[] {
+          toID(keys[0], containers[0].first()),
+          toID(keys[nbContainers - 1], containers[nbContainers - 1].last()) };
+      }
+      return NO_ENTRY_IDS_RANGE;
+    }
+
+    @Override
+    public long[] getIDs()
+    {
+      if (entryIDs == null)
+      {
+        final long[] ids = new long[(int) size];
+        int offset = 0;
+        for (int i = 0; i < nbContainers; i++)
+        {
+          offset = containers[i].copyTo(keys[i], ids, offset);
+        }
+        entryIDs = ids;
+      }
+      return entryIDs;
+    }
+
+    @Override
+    public boolean add(EntryID entryID)
+    {
+      return add(entryID.longValue());
+    }
+
+    private boolean add(long id)
+    {
+      final long key = highBits(id);
+      final int pos = indexOf(key);
+      if (pos < 0)
+      {
+        insertAt(-(pos + 1), key, new ArrayContainer(new char[] { (char) lowBits(id) }, 1));
+        return true;
+      }
+      final Container container = containers[pos];
+      return update(pos, container.cardinality(), container.add(lowBits(id)));
+    }
+
+    @Override
+    public boolean remove(EntryID entryID)
+    {
+      return remove(entryID.longValue());
+    }
+
+    private boolean remove(long id)
+    {
+      final int pos = indexOf(highBits(id));
+      if (pos < 0)
+      {
+        return false;
+      }
+      final Container container = containers[pos];
+      return update(pos, container.cardinality(), container.remove(lowBits(id)));
+    }
+
+    @Override
+    public boolean contains(EntryID entryID)
+    {
+      return contains(entryID.longValue());
+    }
+
+    private boolean contains(long id)
+    {
+      final int pos = indexOf(highBits(id));
+      return pos >= 0 && containers[pos].contains(lowBits(id));
+    }
+
+    @Override
+    public void addAll(EntryIDSet that)
+    {
+      or(asBitmap(that));
+    }
+
+    @Override
+    public void removeAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        andNot((BitmapImpl) that.concreteImpl);
+        return;
+      }
+      for (long id : that.getIDs())
+      {
+        remove(id);
+      }
+    }
+
+    /**
+     * Returns the IDs of the provided sorted array which are contained in this set. This is cheaper than converting
+     * the array to a bitmap when intersecting a small set with a large one.
+     */
+    long[] retainedFrom(long[] sortedEntryIDs)
+    {
+      final long[] retained = new long[sortedEntryIDs.length];
+      int nbRetained = 0;
+      for (long id : sortedEntryIDs)
+      {
+        if (contains(id))
+        {
+          retained[nbRetained++] = id;
+        }
+      }
+      return nbRetained < retained.length ? Arrays.copyOf(retained, nbRetained) : retained;
+    }
+
+    void or(BitmapImpl that)
+    {
+      final long[] newKeys = new long[nbContainers + that.nbContainers];
+      final Container[] newContainers = new Container[newKeys.length];
+      int i = 0, j = 0, n = 0;
+      while (i < nbContainers && j < that.nbContainers)
+      {
+        if (keys[i] < that.keys[j])
+        {
+          newKeys[n] = keys[i];
+          newContainers[n++] = containers[i++];
+        }
+        else if (keys[i] > that.keys[j])
+        {
+          newKeys[n] = that.keys[j];
+          newContainers[n++] = that.containers[j++].copy();
+        }
+        else
+        {
+          newKeys[n] = keys[i];
+          newContainers[n++] = containers[i++].or(that.containers[j++]);
+        }
+      }
+      for (; i < nbContainers; i++, n++)
+      {
+        newKeys[n] = keys[i];
+        newContainers[n] = containers[i];
+      }
+      for (; j < that.nbContainers; j++, n++)
+      {
+        newKeys[n] = that.keys[j];
+        newContainers[n] = that.containers[j].copy();
+      }
+      replace(newKeys, newContainers, n);
+    }
+
+    void and(BitmapImpl that)
+    {
+      final long[] newKeys = new long[Math.min(nbContainers, that.nbContainers)];
+      final Container[] newContainers = new Container[newKeys.length];
+      int i = 0, j = 0, n = 0;
+      while (i < nbContainers && j < that.nbContainers)
+      {
+        if (keys[i] < that.keys[j])
+        {
+          i++;
+        }
+        else if (keys[i] > that.keys[j])
+        {
+          j++;
+        }
+        else
+        {
+          final Container container = containers[i].and(that.containers[j]);
+          if (container.cardinality() != 0)
+          {
+            newKeys[n] = keys[i];
+            newContainers[n++] = container;
+          }
+          i++;
+          j++;
+        }
+      }
+      replace(newKeys, newContainers, n);
+    }
+
+    void andNot(BitmapImpl that)
+    {
+      final long[] newKeys = new long[nbContainers];
+      final Container[] newContainers = new Container[nbContainers];
+      int n = 0;
+      for (int i = 0, j = 0; i < nbContainers; i++)
+      {
+        while (j < that.nbContainers && that.keys[j] < keys[i])
+        {
+          j++;
+        }
+        final Container container =
+            j < that.nbContainers && that.keys[j] == keys[i] ? containers[i].andNot(that.containers[j]) : containers[i];
+        if (container.cardinality() != 0)
+        {
+          newKeys[n] = keys[i];
+          newContainers[n++] = container;
+        }
+      }
+      replace(newKeys, newContainers, n);
+    }
+
+    BitmapImpl copy()
+    {
+      final Container[] copies = new Container[nbContainers];
+      for (int i = 0; i < nbContainers; i++)
+      {
+        copies[i] = containers[i].copy();
+      }
+      return new BitmapImpl(Arrays.copyOf(keys, nbContainers), copies, nbContainers);
+    }
+
+    @Override
+    public Iterator<EntryID> iterator()
+    {
+      return new BitmapIterator(0);
+    }
+
+    @Override
+    public Iterator<EntryID> iterator(EntryID begin)
+    {
+      if (begin == null || !contains(begin.longValue()))
+      {
+        // Same behavior as DefinedImpl: iterate from the first ID when begin is not part of this set
+        return iterator();
+      }
+      final BitmapIterator iterator = new BitmapIterator(indexOf(highBits(begin.longValue())));
+      iterator.skipTo(begin.longValue());
+      return iterator;
+    }
+
+    private int indexOf(long key)
+    {
+      return Arrays.binarySearch(keys, 0, nbContainers, key);
+    }
+
+    private boolean update(int pos, int previousCardinality, Container container)
+    {
+      if (container.cardinality() == 0)
+      {
+        System.arraycopy(keys, pos + 1, keys, pos, nbContainers - pos - 1);
+        System.arraycopy(containers, pos + 1, containers, pos, nbContainers - pos - 1);
+        containers[--nbContainers] = null;
+      }
+      else
+      {
+        containers[pos] = container;
+      }
+      final int delta = container.cardinality() - previousCardinality;
+      size += delta;
+      if (delta != 0)
+      {
+        entryIDs = null;
+        return true;
+      }
+      return false;
+    }
+
+    private void insertAt(int pos, long key, Container container)
+    {
+      if (nbContainers == keys.length)
+      {
+        final int newCapacity = Math.max(4, nbContainers * 2);
+        keys = Arrays.copyOf(keys, newCapacity);
+        containers = Arrays.copyOf(containers, newCapacity);
+      }
+      System.arraycopy(keys, pos, keys, pos + 1, nbContainers - pos);
+      System.arraycopy(containers, pos, containers, pos + 1, nbContainers - pos);
+      keys[pos] = key;
+      containers[pos] = container;
+      nbContainers++;
+      size += container.cardinality();
+      entryIDs = null;
+    }
+
+    private void replace(long[] keys, Container[] containers, int nbContainers)
+    {
+      this.keys = keys;
+      this.containers = containers;
+      this.nbContainers = nbContainers;
+      this.entryIDs = null;
+      long newSize = 0;
+      for (int i = 0; i < nbContainers; i++)
+      {
+        newSize += containers[i].cardinality();
+      }
+      this.size = newSize;
+    }
+
+    /** Iterates over the IDs of the bitmap by materializing one container at a time. */
+    private final class BitmapIterator implements Iterator<EntryID>
+    {
+      private int containerIndex;
+      private long[] buffer = EMPTY_LONG_ARRAY;
+      private int bufferSize;
+      private int bufferIndex;
+
+      BitmapIterator(int containerIndex)
+      {
+        this.containerIndex = containerIndex;
+      }
+
+      void skipTo(long id)
+      {
+        if (hasNext())
+        {
+          bufferIndex = Math.max(0, Arrays.binarySearch(buffer, 0, bufferSize, id));
+        }
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+        while (bufferIndex >= bufferSize && containerIndex < nbContainers)
+        {
+          final Container container = containers[containerIndex];
+          if (buffer.length < container.cardinality())
+          {
+            buffer = new long[container.cardinality()];
+          }
+          bufferSize = container.copyTo(keys[containerIndex], buffer, 0);
+          bufferIndex = 0;
+          containerIndex++;
+        }
+        return bufferIndex < bufferSize;
+      }
+
+      @Override
+      public EntryID next()
+      {
+        if (hasNext())
+        {
+          return new EntryID(buffer[bufferIndex++]);
+        }
+        throw new NoSuchElementException();
+      }
+
+      @Override
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+    }
+  }
+
+  /**
+   * Holds the lower 16 bits of the IDs of a {@link BitmapImpl} chunk. Logical operations never modify their operands
+   * and may return a container of a different type depending on the resulting cardinality.
+   */
+  private abstract static class Container
+  {
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /** Adds the value, possibly in place, and returns the container holding the result. */
+    abstract Container add(int low);
+
+    /** Removes the value, possibly in place, and returns the container holding the result. */
+    abstract Container remove(int low);
+
+    abstract Container and(Container that);
+
+    abstract Container or(Container that);
+
+    abstract Container andNot(Container that);
+
+    abstract int first();
+
+    abstract int last();
+
+    /** Copies the IDs of this container into target starting at offset and returns the offset following them. */
+    abstract int copyTo(long key, long[] target, int offset);
+
+    abstract Container copy();
+
+    abstract void encode(ByteStringBuilder builder);
+
+    static Container newContainer(long[] words, int cardinality)
+    {
+      final BitmapContainer container = new BitmapContainer(words, cardinality);
+      return cardinality > MAX_ARRAY_CONTAINER_SIZE ? container : container.toArrayContainer();
+    }
+  }
+
+  /** Container storing the values of a sparse chunk as a sorted array. */
+  private static final class ArrayContainer extends Container
+  {
+    private static final byte TYPE = 0;
+
+    private char[] values;
+    private int cardinality;
+
+    ArrayContainer(char[] values, int cardinality)
+    {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, (char) low) >= 0;
+    }
+
+    @Override
+    Container add(int low)
+    {
+      int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        return this;
+      }
+      if (cardinality >= MAX_ARRAY_CONTAINER_SIZE)
+      {
+        return toBitmapContainer().add(low);
+      }
+      pos = -(pos + 1);
+      if (cardinality == values.length)
+      {
+        values = Arrays.copyOf(values, Math.min(Math.max(4, cardinality * 2), MAX_ARRAY_CONTAINER_SIZE));
+      }
+      System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+      values[pos] = (char) low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(int low)
+    {
+      final int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        System.arraycopy(values, pos + 1, values, pos, cardinality - pos - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      final char[] result = new char[cardinality];
+      int n = 0;
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        for (int i = 0, j = 0; i < cardinality && j < other.cardinality;)
+        {
+          if (values[i] < other.values[j])
+          {
+            i++;
+          }
+          else if (values[i] > other.values[j])
+          {
+            j++;
+          }
+          else
+          {
+            result[n++] = values[i++];
+            j++;
+          }
+        }
+      }
+      else
+      {
+        for (int i = 0; i < cardinality; i++)
+        {
+          if (that.contains(values[i]))
+          {
+            result[n++] = values[i];
+          }
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      if (!(that instanceof ArrayContainer))
+      {
+        return that.or(this);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      if (cardinality + other.cardinality > MAX_ARRAY_CONTAINER_SIZE)
+      {
+        return toBitmapContainer().or(other);
+      }
+      final char[] result = new char[cardinality + other.cardinality];
+      int i = 0, j = 0, n = 0;
+      while (i < cardinality && j < other.cardinality)
+      {
+        if (values[i] < other.values[j])
+        {
+          result[n++] = values[i++];
+        }
+        else if (values[i] > other.values[j])
+        {
+          result[n++] = other.values[j++];
+        }
+        else
+        {
+          result[n++] = values[i++];
+          j++;
+        }
+      }
+      System.arraycopy(values, i, result, n, cardinality - i);
+      n += cardinality - i;
+      System.arraycopy(other.values, j, result, n, other.cardinality - j);
+      n += other.cardinality - j;
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final char[] result = new char[cardinality];
+      int n = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (!that.contains(values[i]))
+        {
+          result[n++] = values[i];
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    int first()
+    {
+      return values[0];
+    }
+
+    @Override
+    int last()
+    {
+      return values[cardinality - 1];
+    }
+
+    @Override
+    int copyTo(long key, long[] target, int offset)
+    {
+      for (int i = 0; i < cardinality; i++)
+      {
+        target[offset++] = toID(key, values[i]);
+      }
+      return offset;
+    }
+
+    @Override
+    Container copy()
+    {
+      return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+    }
+
+    @Override
+    void encode(ByteStringBuilder builder)
+    {
+      builder.appendByte(TYPE);
+      builder.appendCompactUnsigned(cardinality);
+      int previous = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        builder.appendCompactUnsigned(values[i] - previous);
+        previous = values[i];
+      }
+    }
+
+    static ArrayContainer decode(ByteSequenceReader reader)
+    {
+      final int cardinality = reader.readCompactUnsignedInt();
+      final char[] values = new char[cardinality];
+      int previous = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        previous += reader.readCompactUnsignedInt();
+        values[i] = (char) previous;
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+
+    private BitmapContainer toBitmapContainer()
+    {
+      final long[] words = new long[BITMAP_CONTAINER_WORDS];
+      for (int i = 0; i < cardinality; i++)
+      {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return new BitmapContainer(words, cardinality);
+    }
+  }
+
+  /** Container storing the values of a dense chunk as a bitmap of 2^16 bits. */
+  private static final class BitmapContainer extends Container
+  {
+    private static final byte TYPE = 1;
+
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer(long[] words, int cardinality)
+    {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Container add(int low)
+    {
+      if (!contains(low))
+      {
+        words[low >>> 6] |= 1L << low;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(int low)
+    {
+      if (contains(low))
+      {
+        words[low >>> 6] &= ~(1L << low);
+        cardinality--;
+      }
+      return cardinality > MAX_ARRAY_CONTAINER_SIZE ? this : toArrayContainer();
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      if (that instanceof ArrayContainer)
+      {
+        return that.and(this);
+      }
+      final long[] otherWords = ((BitmapContainer) that).words;
+      final long[] result = new long[BITMAP_CONTAINER_WORDS];
+      int resultCardinality = 0;
+      for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+      {
+        result[i] = words[i] & otherWords[i];
+        resultCardinality += Long.bitCount(result[i]);
+      }
+      return newContainer(result, resultCardinality);
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      final long[] result = words.clone();
+      int resultCardinality = cardinality;
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        for (int i = 0; i < other.cardinality; i++)
+        {
+          final char value = other.values[i];
+          final long mask = 1L << value;
+          if ((result[value >>> 6] & mask) == 0)
+          {
+            result[value >>> 6] |= mask;
+            resultCardinality++;
+          }
+        }
+      }
+      else
+      {
+        final long[] otherWords = ((BitmapContainer) that).words;
+        resultCardinality = 0;
+        for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+        {
+          result[i] |= otherWords[i];
+          resultCardinality += Long.bitCount(result[i]);
+        }
+      }
+      return new BitmapContainer(result, resultCardinality);
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final long[] result = words.clone();
+      int resultCardinality = cardinality;
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        for (int i = 0; i < other.cardinality; i++)
+        {
+          final char value = other.values[i];
+          final long mask = 1L << value;
+          if ((result[value >>> 6] & mask) != 0)
+          {
+            result[value >>> 6] &= ~mask;
+            resultCardinality--;
+          }
+        }
+      }
+      else
+      {
+        final long[] otherWords = ((BitmapContainer) that).words;
+        resultCardinality = 0;
+        for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+        {
+          result[i] &= ~otherWords[i];
+          resultCardinality += Long.bitCount(result[i]);
+        }
+      }
+      return newContainer(result, resultCardinality);
+    }
+
+    @Override
+    int first()
+    {
+      for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+      {
+        if (words[i] != 0)
+        {
+          return (i << 6) + Long.numberOfTrailingZeros(words[i]);
+        }
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    int last()
+    {
+      for (int i = BITMAP_CONTAINER_WORDS - 1; i >= 0; i--)
+      {
+        if (words[i] != 0)
+        {
+          return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    int copyTo(long key, long[] target, int offset)
+    {
+      for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          target[offset++] = toID(key, (i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    @Override
+    Container copy()
+    {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    void encode(ByteStringBuilder builder)
+    {
+      builder.appendByte(TYPE);
+      builder.appendCompactUnsigned(cardinality);
+      for (long word : words)
+      {
+        builder.appendLong(word);
+      }
+    }
+
+    static BitmapContainer decode(ByteSequenceReader reader)
+    {
+      final int cardinality = reader.readCompactUnsignedInt();
+      final long[] words = new long[BITMAP_CONTAINER_WORDS];
+      for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+      {
+        words[i] = reader.readLong();
+      }
+      return new BitmapContainer(words, cardinality);
+    }
+
+    private ArrayContainer toArrayContainer()
+    {
+      final char[] values = new char[cardinality];
+      int n = 0;
+      for (int i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, n);
+    }
+  }
+
   /** Iterator for a set of Entry IDs. It must return values in order of ID. */
   private static final class IDSetIterator implements Iterator<EntryID>
   {
@@ -565,6 +1456,102 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Compressed bitmap EntryIDSet codec implementation. Large defined sets are stored as a roaring-style bitmap so that
+   * they can be decoded straight into a {@link BitmapImpl} on which logical operations are performed chunk by chunk.
+   * Small defined sets are still stored with the {@link EntryIDSetCodecV2} encoding which is more compact for them.
+   * As a consequence, this codec is also able to read the records written by {@link EntryIDSetCodecV2}: such records
+   * are transparently upgraded the next time they are written.
+   */
+  private static final class EntryIDSetCodecV3 implements EntryIDSetCodec
+  {
+    private static final byte UNDEFINED_SET = (byte) 0xFF;
+    /**
+     * Marks a bitmap encoded set. This value cannot start a record written by {@link EntryIDSetCodecV2} because it
+     * would denote a compacted set size requiring 8 bytes.
+     */
+    private static final byte BITMAP_SET = (byte) 0xFE;
+    /** Defined sets smaller than this are encoded with {@link EntryIDSetCodecV2}. */
+    private static final int MIN_BITMAP_SET_SIZE = 1024;
+
+    @Override
+    public ByteString encode(EntryIDSet idSet)
+    {
+      checkNotNull(idSet, "idSet must not be null");
+      if (!idSet.isDefined() || idSet.size() < MIN_BITMAP_SET_SIZE)
+      {
+        return CODEC_V2.encode(idSet);
+      }
+      final BitmapImpl bitmap = asBitmap(idSet);
+      final ByteStringBuilder builder = new ByteStringBuilder(getEstimatedSize(bitmap));
+      builder.appendByte(BITMAP_SET);
+      builder.appendCompactUnsigned(bitmap.nbContainers);
+      long previousKey = 0;
+      for (int i = 0; i < bitmap.nbContainers; i++)
+      {
+        builder.appendCompactUnsigned(bitmap.keys[i] - previousKey);
+        previousKey = bitmap.keys[i];
+        bitmap.containers[i].encode(builder);
+      }
+      return ByteString.wrap(builder.getBackingArray(), 0, builder.length());
+    }
+
+    @Override
+    public EntryIDSet decode(ByteSequence key, ByteString value)
+    {
+      checkNotNull(key, "key must not be null");
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == UNDEFINED_SET)
+      {
+        return newUndefinedSetWithKey(key);
+      }
+      else if (value.byteAt(0) != BITMAP_SET)
+      {
+        return CODEC_V2.decode(key, value);
+      }
+
+      final ByteSequenceReader reader = value.asReader();
+      reader.readByte();
+      final int nbContainers = reader.readCompactUnsignedInt();
+      final long[] keys = new long[nbContainers];
+      final Container[] containers = new Container[nbContainers];
+      long containerKey = 0;
+      for (int i = 0; i < nbContainers; i++)
+      {
+        containerKey += reader.readCompactUnsignedLong();
+        keys[i] = containerKey;
+        containers[i] = decodeContainer(reader);
+      }
+      return new EntryIDSet(new BitmapImpl(keys, containers, nbContainers));
+    }
+
+    private static Container decodeContainer(ByteSequenceReader reader)
+    {
+      final byte type = reader.readByte();
+      switch (type)
+      {
+      case ArrayContainer.TYPE:
+        return ArrayContainer.decode(reader);
+      case BitmapContainer.TYPE:
+        return BitmapContainer.decode(reader);
+      default:
+        throw new IllegalArgumentException("Unknown container type " + type);
+      }
+    }
+
+    private static int getEstimatedSize(BitmapImpl bitmap)
+    {
+      int size = 1 + INT_SIZE;
+      for (int i = 0; i < bitmap.nbContainers; i++)
+      {
+        final Container container = bitmap.containers[i];
+        size += 1 + 2 * ByteStringBuilder.MAX_COMPACT_SIZE;
+        size += container instanceof BitmapContainer ? BITMAP_CONTAINER_WORDS * LONG_SIZE : container.cardinality() * 3;
+      }
+      return size;
+    }
+  }
+
   static EntryIDSet newUndefinedSet()
   {
     return newUndefinedSetWithKey(NO_KEY);
@@ -653,6 +1640,16 @@ final class EntryIDSet implements Iterable<EntryID>
       return newUndefinedSet();
     }
 
+    if (containsBitmapSet(sets))
+    {
+      final BitmapImpl union = new BitmapImpl();
+      for (EntryIDSet l : sets)
+      {
+        union.or(asBitmap(l));
+      }
+      return new EntryIDSet(union);
+    }
+
     boolean needSort = false;
     long[] n = new long[count];
     int pos = 0;
@@ -687,6 +1684,42 @@ final class EntryIDSet implements Iterable<EntryID>
     return newDefinedSet(Arrays.copyOf(n1, j));
   }
 
+  private static boolean containsBitmapSet(List<EntryIDSet> sets)
+  {
+    for (EntryIDSet set : sets)
+    {
+      if (set.concreteImpl instanceof BitmapImpl)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static BitmapImpl asBitmap(EntryIDSet set)
+  {
+    if (set.concreteImpl instanceof BitmapImpl)
+    {
+      return (BitmapImpl) set.concreteImpl;
+    }
+    return BitmapImpl.valueOf(set.getIDs());
+  }
+
+  private static long highBits(long id)
+  {
+    return id >>> 16;
+  }
+
+  private static int lowBits(long id)
+  {
+    return (int) (id & 0xFFFF);
+  }
+
+  private static long toID(long highBits, int lowBits)
+  {
+    return (highBits << 16) | lowBits;
+  }
+
   private EntryIDSetImplementor concreteImpl;
 
   private EntryIDSet(EntryIDSetImplementor concreteImpl)
@@ -813,6 +1846,11 @@ final class EntryIDSet implements Iterable<EntryID>
   {
     checkNotNull(that, "that must not be null");
     Reject.ifFalse(that.isDefined(), "that must be defined");
+    if (concreteImpl instanceof DefinedImpl && that.concreteImpl instanceof BitmapImpl)
+    {
+      // The union will be at least as large as the bitmap: keep it compressed
+      concreteImpl = BitmapImpl.valueOf(concreteImpl.getIDs());
+    }
     concreteImpl.addAll(that);
   }
 
@@ -829,7 +1867,9 @@ final class EntryIDSet implements Iterable<EntryID>
     checkNotNull(that, "that must not be null");
     if (!concreteImpl.isDefined())
     {
-      if ( that.isDefined() ) {
+      if (that.concreteImpl instanceof BitmapImpl) {
+        concreteImpl = ((BitmapImpl) that.concreteImpl).copy();
+      } else if ( that.isDefined() ) {
         // NOTE: It's ok to share the same array instance here thanks to the copy-on-write
         // performed by the implementation.
         concreteImpl = new DefinedImpl(that.getIDs());
@@ -843,6 +1883,24 @@ final class EntryIDSet implements Iterable<EntryID>
       return;
     }
 
+    if (concreteImpl instanceof BitmapImpl)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        ((BitmapImpl) concreteImpl).and((BitmapImpl) that.concreteImpl);
+      }
+      else
+      {
+        concreteImpl = new DefinedImpl(((BitmapImpl) concreteImpl).retainedFrom(that.getIDs()));
+      }
+      return;
+    }
+    else if (that.concreteImpl instanceof BitmapImpl)
+    {
+      concreteImpl = new DefinedImpl(((BitmapImpl) that.concreteImpl).retainedFrom(getIDs()));
+      return;
+    }
+
     final boolean thatSetOverlap = compareForOverlap(getRange(), that.getRange()) == 0;
     if (thatSetOverlap)
     {
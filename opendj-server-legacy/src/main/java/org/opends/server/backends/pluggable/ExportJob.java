@@ -26,14 +26,25 @@
  */
 package org.opends.server.backends.pluggable;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.api.CompressedSchema;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
@@ -44,13 +55,29 @@ import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.StaticUtils;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 
-/** Export a backend to LDIF. */
+/**
+ * Export a backend to LDIF.
+ * <p>
+ * The id2entry tree of each entry container is read sequentially by the
+ * calling thread, which hands batches of raw records to a pool of export
+ * workers decoding and formatting them to LDIF concurrently. The formatted
+ * batches are written in the order they were read, so that the output is
+ * identical to a sequential export, and parent entries are still written
+ * before their children.
+ */
 class ExportJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The name template of the export worker threads. */
+  private static final String EXPORT_WORKER_THREAD_NAME = "EXPORT-WORKER-%d";
+
+  /** The number of id2entry records decoded and formatted together by an export worker. */
+  private static final int BATCH_SIZE = 256;
+
   /** The requested LDIF export configuration. */
   private final LDIFExportConfig exportConfig;
 
@@ -58,10 +85,10 @@ class ExportJob
   private final long progressInterval = 10000;
 
   /** The current number of entries exported. */
-  private long exportedCount;
+  private final AtomicLong exportedCount = new AtomicLong();
 
   /** The current number of entries skipped. */
-  private long skippedCount;
+  private final AtomicLong skippedCount = new AtomicLong();
 
   /**
    * Create a new export job.
@@ -118,6 +145,11 @@ class ExportJob
     TimerTask progressTask = new ProgressTask();
     timer.scheduleAtFixedRate(progressTask, progressInterval, progressInterval);
 
+    final int threadCount = exportConfig.getThreadCount() > 0 ? exportConfig.getThreadCount()
+                                                              : Runtime.getRuntime().availableProcessors();
+    final ExecutorService workers =
+        Executors.newFixedThreadPool(threadCount, newThreadFactory(null, EXPORT_WORKER_THREAD_NAME, true));
+
     // Iterate through the containers.
     try
     {
@@ -136,7 +168,7 @@ class ExportJob
             exportContainer.sharedLock.lock();
             try
             {
-              exportContainer(txn, exportContainer);
+              exportContainer(txn, exportContainer, workers, 2 * threadCount);
             }
             finally
             {
@@ -153,6 +185,7 @@ class ExportJob
     }
     finally
     {
+      workers.shutdownNow();
       timer.cancel();
     }
 
@@ -162,10 +195,10 @@ class ExportJob
     float rate = 0;
     if (totalTime > 0)
     {
-      rate = 1000f*exportedCount / totalTime;
+      rate = 1000f*exportedCount.get() / totalTime;
     }
 
-    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount, skippedCount, totalTime/1000, rate);
+    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount.get(), skippedCount.get(), totalTime/1000, rate);
   }
 
   /**
@@ -173,25 +206,154 @@ class ExportJob
    * one of the base DNs.
    * @param entryContainer The entry container that holds the entries to be
    *                       exported.
+   * @param workers The export workers decoding and formatting the entries.
+   * @param maxPendingBatches The maximum number of batches submitted to the
+   *                          export workers and not yet written.
    * @throws StorageRuntimeException If an error occurs in the storage.
    * @throws IOException If an error occurs while writing an entry.
    * @throws  LDIFException  If an error occurs while trying to determine
    *                         whether to write an entry.
    */
-  private void exportContainer(ReadableTransaction txn, EntryContainer entryContainer)
-       throws StorageRuntimeException, IOException, LDIFException
+  private void exportContainer(ReadableTransaction txn, EntryContainer entryContainer,
+      ExecutorService workers, int maxPendingBatches) throws StorageRuntimeException, IOException, LDIFException
   {
+    final CompressedSchema compressedSchema = entryContainer.getRootContainer().getCompressedSchema();
+    final Deque<Future<ExportBatch>> pendingBatches = new ArrayDeque<>();
     Cursor<ByteString, ByteString> cursor = txn.openCursor(entryContainer.getID2Entry().getName());
     try
     {
+      ExportBatch batch = new ExportBatch(compressedSchema);
       while (cursor.next())
+      {
+        if (exportConfig.isCancelled())
+        {
+          return;
+        }
+
+        batch.add(cursor.getKey(), cursor.getValue());
+        if (batch.size() == BATCH_SIZE)
+        {
+          pendingBatches.addLast(workers.submit(batch));
+          batch = new ExportBatch(compressedSchema);
+          // Apply back pressure on the cursor when the workers or the writer fall behind.
+          while (pendingBatches.size() >= maxPendingBatches)
+          {
+            writeBatch(pendingBatches.removeFirst());
+          }
+        }
+      }
+      if (batch.size() > 0)
+      {
+        pendingBatches.addLast(workers.submit(batch));
+      }
+
+      while (!pendingBatches.isEmpty() && !exportConfig.isCancelled())
+      {
+        writeBatch(pendingBatches.removeFirst());
+      }
+    }
+    finally
+    {
+      for (Future<ExportBatch> pendingBatch : pendingBatches)
+      {
+        pendingBatch.cancel(true);
+      }
+      cursor.close();
+    }
+  }
+
+  /**
+   * Waits for a batch to be formatted, then writes it to the LDIF output.
+   * @param future The batch submitted to the export workers.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   * @throws IOException If an error occurs while writing an entry.
+   * @throws  LDIFException  If an error occurs while trying to determine
+   *                         whether to write an entry.
+   */
+  private void writeBatch(Future<ExportBatch> future) throws StorageRuntimeException, IOException, LDIFException
+  {
+    final ExportBatch batch;
+    try
+    {
+      batch = future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new StorageRuntimeException(e);
+    }
+    catch (ExecutionException e)
+    {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+      {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof LDIFException)
+      {
+        throw (LDIFException) cause;
+      }
+      else if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageRuntimeException(cause);
+    }
+
+    if (batch.exported > 0)
+    {
+      exportConfig.getWriter().write(batch.ldif);
+    }
+    exportedCount.addAndGet(batch.exported);
+    skippedCount.addAndGet(batch.skipped);
+  }
+
+  /**
+   * A batch of consecutive id2entry records, decoded and formatted to LDIF by
+   * an export worker.
+   */
+  private final class ExportBatch implements Callable<ExportBatch>
+  {
+    private final CompressedSchema compressedSchema;
+    private final List<ByteString> keys = new ArrayList<>(BATCH_SIZE);
+    private final List<ByteString> values = new ArrayList<>(BATCH_SIZE);
+
+    /** The LDIF form of the exported entries, available once the batch has been processed. */
+    private String ldif;
+    /** The number of entries of this batch actually exported. */
+    private long exported;
+    /** The number of entries of this batch skipped. */
+    private long skipped;
+
+    private ExportBatch(CompressedSchema compressedSchema)
+    {
+      this.compressedSchema = compressedSchema;
+    }
+
+    private void add(ByteString key, ByteString value)
+    {
+      keys.add(key);
+      values.add(value);
+    }
+
+    private int size()
+    {
+      return keys.size();
+    }
+
+    @Override
+    public ExportBatch call() throws IOException, LDIFException
+    {
+      final StringWriter stringWriter = new StringWriter();
+      final BufferedWriter writer = new BufferedWriter(stringWriter);
+      for (int i = 0; i < keys.size(); i++)
       {
         if (exportConfig.isCancelled())
         {
           break;
         }
 
-        ByteString key = cursor.getKey();
+        ByteString key = keys.get(i);
         EntryID entryID = null;
         try
         {
@@ -205,7 +367,7 @@ class ExportJob
 
             logger.trace("Malformed id2entry ID %s.%n", StaticUtils.bytesToHex(key));
           }
-          skippedCount++;
+          skipped++;
           continue;
         }
 
@@ -215,12 +377,11 @@ class ExportJob
           continue;
         }
 
-        ByteString value = cursor.getValue();
+        ByteString value = values.get(i);
         Entry entry = null;
         try
         {
-          entry = ID2Entry.entryFromDatabase(value,
-                       entryContainer.getRootContainer().getCompressedSchema());
+          entry = ID2Entry.entryFromDatabase(value, compressedSchema);
         }
         catch (Exception e)
         {
@@ -231,23 +392,22 @@ class ExportJob
             logger.trace("Malformed id2entry record for ID %d:%n%s%n",
                        entryID, StaticUtils.bytesToHex(value));
           }
-          skippedCount++;
+          skipped++;
           continue;
         }
 
-        if (entry.toLDIF(exportConfig))
+        if (entry.toLDIF(exportConfig, writer))
         {
-          exportedCount++;
+          exported++;
         }
         else
         {
-          skippedCount++;
+          skipped++;
         }
       }
-    }
-    finally
-    {
-      cursor.close();
+      writer.flush();
+      ldif = stringWriter.toString();
+      return this;
     }
   }
 
@@ -270,7 +430,7 @@ class ExportJob
     @Override
     public void run()
     {
-      long latestCount = exportedCount;
+      long latestCount = exportedCount.get();
       long deltaCount = latestCount - previousCount;
       long latestTime = System.currentTimeMillis();
       long deltaTime = latestTime - previousTime;
@@ -282,7 +442,7 @@ class ExportJob
 
       float rate = 1000f*deltaCount / deltaTime;
 
-      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount, rate);
+      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount.get(), rate);
 
       previousCount = latestCount;
       previousTime = latestTime;
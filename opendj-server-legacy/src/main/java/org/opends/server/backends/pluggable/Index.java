@@ -26,6 +26,8 @@
  */
 package org.opends.server.backends.pluggable;
 
+import java.util.SortedMap;
+
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.backends.pluggable.spi.Cursor;
@@ -39,6 +41,14 @@ import org.opends.server.backends.pluggable.spi.WriteableTransaction;
  */
 interface Index extends Tree
 {
+  /** The entry IDs to delete from and to add to an index key, any of which can be {@code null}. */
+  interface EntryIDSetChanges
+  {
+    EntryIDSet getDeletedIDs();
+
+    EntryIDSet getAddedIDs();
+  }
+
   EntryIDSet get(ReadableTransaction txn, ByteSequence key);
 
   int getIndexEntryLimit();
@@ -52,4 +62,6 @@ interface Index extends Tree
   void setTrusted(WriteableTransaction txn, boolean trusted);
 
   void update(WriteableTransaction txn, ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs);
+
+  void update(WriteableTransaction txn, SortedMap<ByteString, ? extends EntryIDSetChanges> changes);
 }
@@ -36,6 +36,7 @@ import java.util.TreeSet;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.util.Reject;
+import org.opends.server.backends.pluggable.Index.EntryIDSetChanges;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
 import org.opends.server.types.DirectoryException;
@@ -96,11 +97,23 @@ class IndexBuffer
      * A simple class representing a pair of added and deleted indexed IDs. Initially both addedIDs and deletedIDs are
      * {@code null} indicating that that the whole record should be deleted.
      */
-    private static class BufferedIndexValues
+    private static class BufferedIndexValues implements EntryIDSetChanges
     {
       private EntryIDSet addedEntryIDs;
       private EntryIDSet deletedEntryIDs;
 
+      @Override
+      public EntryIDSet getDeletedIDs()
+      {
+        return deletedEntryIDs;
+      }
+
+      @Override
+      public EntryIDSet getAddedIDs()
+      {
+        return addedEntryIDs;
+      }
+
       void addEntryID(EntryID entryID)
       {
         if (!remove(deletedEntryIDs, entryID))
@@ -208,7 +221,8 @@ class IndexBuffer
       // Indexes are stored in sorted map to prevent deadlock during flush with DB using pessimistic lock strategies.
       for (Entry<Index, SortedMap<ByteString, BufferedIndexValues>> entry : bufferedIndexes.entrySet())
       {
-        flushIndex(entry.getKey(), txn, entry.getValue());
+        // All the buffered keys of an index are updated in a single ordered pass.
+        entry.getKey().update(txn, entry.getValue());
       }
 
       for (Entry<VLVIndex, BufferedVLVIndexValues> entry : bufferedVLVIndexes.entrySet())
@@ -256,16 +270,6 @@ class IndexBuffer
       createOrGetBufferedIndexValues(index, key).deleteEntryID(entryID);
     }
 
-    private static void flushIndex(Index index, WriteableTransaction txn,
-        Map<ByteString, BufferedIndexValues> bufferedValues)
-    {
-      for (Entry<ByteString, BufferedIndexValues> entry : bufferedValues.entrySet())
-      {
-        final BufferedIndexValues values = entry.getValue();
-        index.update(txn, entry.getKey(), values.deletedEntryIDs, values.addedEntryIDs);
-      }
-    }
-
     @Override
     public void reset()
     {
@@ -30,11 +30,20 @@ import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.types.AttributeType;
 import org.opends.server.types.FilterType;
@@ -55,6 +64,12 @@ class IndexFilter
   /** Limit on the number of entry IDs that may be retrieved by cursoring through an index. */
   static final int CURSOR_ENTRY_LIMIT = 100000;
 
+  /**
+   * The number of filter components which may be read by the index lookup threads ahead of the component evaluated by
+   * the search thread.
+   */
+  static final int INDEX_LOOKUP_READ_AHEAD = 2;
+
   /** The entry container holding the attribute indexes. */
   private final EntryContainer entryContainer;
   private final ReadableTransaction txn;
@@ -72,6 +87,9 @@ class IndexFilter
   private final StringBuilder buffer;
   private final BackendMonitor monitor;
 
+  /** The executor reading concurrently the indexes of the filter components, or null to read them serially. */
+  private final Executor indexLookupExecutor;
+
   /**
    * Construct an index filter for a search operation.
    *
@@ -82,15 +100,19 @@ class IndexFilter
    * @param debugBuilder If not null, a diagnostic string will be written
    *                     which will help determine how the indexes contributed
    *                     to this search.
+   * @param indexLookupExecutor If not null, the executor reading concurrently
+   *                     the indexes of the components of AND and OR filters,
+   *                     each one within its own read transaction.
    */
   IndexFilter(EntryContainer entryContainer, ReadableTransaction txn, SearchOperation searchOp,
-      StringBuilder debugBuilder, BackendMonitor monitor)
+      StringBuilder debugBuilder, BackendMonitor monitor, Executor indexLookupExecutor)
   {
     this.entryContainer = entryContainer;
     this.txn = txn;
     this.searchOp = searchOp;
     this.buffer = debugBuilder;
     this.monitor = monitor;
+    this.indexLookupExecutor = indexLookupExecutor;
   }
 
   /**
@@ -215,11 +237,20 @@ class IndexFilter
       }
     }
 
-    EntryIDSet results = newUndefinedSet();
-    // First, process the fast components.
-    results = applyFiltersUntilThreshold(results, fastComps);
-    // Next, process the other (non-range) components.
-    results = applyFiltersUntilThreshold(results, otherComps);
+    if (fastComps.size() + otherComps.size() > 1)
+    {
+      // Within each group, read first the indexes expected to return the fewest candidates.
+      appendToDebugBuffer("[PLAN:");
+      fastComps = planFilters(fastComps);
+      otherComps = planFilters(otherComps);
+      appendToDebugBuffer("]");
+    }
+
+    // First, process the fast components, next the other (non-range) components.
+    final ArrayList<SearchFilter> comps = new ArrayList<>(fastComps.size() + otherComps.size());
+    comps.addAll(fastComps);
+    comps.addAll(otherComps);
+    EntryIDSet results = applyFiltersUntilThreshold(newUndefinedSet(), comps);
 
     if ( isBelowFilterThreshold(results) || rangeComps.isEmpty() ) {
       return results;
@@ -269,15 +300,118 @@ class IndexFilter
     return applyFiltersUntilThreshold(results, remainComps);
   }
 
-  private EntryIDSet applyFiltersUntilThreshold(EntryIDSet results, ArrayList<SearchFilter> filters)
+  /**
+   * Orders the provided filters by increasing estimated number of candidates, so that the evaluation of an AND filter
+   * can stop as soon as possible on the candidate threshold. The estimate of a filter is the inverse of the number of
+   * keys of the index it reads, i.e. the fraction of the entries expected to match one key. Filters whose estimate is
+   * not known are considered to match all the entries, and keep their relative order.
+   */
+  private ArrayList<SearchFilter> planFilters(ArrayList<SearchFilter> filters)
+  {
+    final List<PlannedFilter> plan = new ArrayList<>(filters.size());
+    for (SearchFilter filter : filters)
+    {
+      plan.add(new PlannedFilter(filter, getKeyCount(filter)));
+    }
+    Collections.sort(plan);
+
+    final ArrayList<SearchFilter> plannedFilters = new ArrayList<>(filters.size());
+    for (PlannedFilter plannedFilter : plan)
+    {
+      if (buffer != null)
+      {
+        plannedFilter.toString(buffer);
+      }
+      plannedFilters.add(plannedFilter.filter);
+    }
+    return plannedFilters;
+  }
+
+  private long getKeyCount(SearchFilter filter)
+  {
+    final IndexFilterType indexFilterType = toIndexFilterType(filter.getFilterType());
+    if (indexFilterType != null)
+    {
+      final AttributeIndex attributeIndex = entryContainer.getAttributeIndex(filter.getAttributeType());
+      if (attributeIndex != null)
+      {
+        return attributeIndex.getKeyCount(txn, indexFilterType);
+      }
+    }
+    return -1;
+  }
+
+  private static IndexFilterType toIndexFilterType(FilterType filterType)
+  {
+    switch (filterType)
+    {
+    case EQUALITY:
+      return IndexFilterType.EQUALITY;
+    case PRESENT:
+      return IndexFilterType.PRESENCE;
+    case APPROXIMATE_MATCH:
+      return IndexFilterType.APPROXIMATE;
+    case SUBSTRING:
+      return IndexFilterType.SUBSTRING;
+    default:
+      return null;
+    }
+  }
+
+  /** A filter component of an AND filter along with the estimated fraction of the entries it matches. */
+  private static final class PlannedFilter implements Comparable<PlannedFilter>
+  {
+    private final SearchFilter filter;
+    private final long keyCount;
+    private final double estimate;
+
+    PlannedFilter(SearchFilter filter, long keyCount)
+    {
+      this.filter = filter;
+      this.keyCount = keyCount;
+      if (keyCount < 0)
+      {
+        estimate = 1.0;
+      }
+      else
+      {
+        // An index without any key does not match any entry.
+        estimate = keyCount == 0 ? 0.0 : 1.0 / keyCount;
+      }
+    }
+
+    @Override
+    public int compareTo(PlannedFilter o)
+    {
+      return Double.compare(estimate, o.estimate);
+    }
+
+    void toString(StringBuilder sb)
+    {
+      filter.toString(sb);
+      sb.append(keyCount >= 0 ? "[KEYS:" + keyCount + "]" : "[KEYS:?]");
+    }
+  }
+
+  private EntryIDSet applyFiltersUntilThreshold(EntryIDSet results, List<SearchFilter> filters)
   {
-    for(SearchFilter filter : filters) {
-      if (isBelowFilterThreshold(results)) {
-        return results;
+    final FilterComponents components = new FilterComponents(filters);
+    try
+    {
+      for (int i = 0; i < filters.size(); i++)
+      {
+        if (isBelowFilterThreshold(results))
+        {
+          return results;
+        }
+        results.retainAll(components.evaluate(i));
       }
-      results.retainAll(evaluateFilter(filter));
+      return results;
+    }
+    finally
+    {
+      components.cancel();
     }
-    return results;
   }
 
   static boolean isBelowFilterThreshold(EntryIDSet set)
@@ -293,19 +427,153 @@ class IndexFilter
    */
   private EntryIDSet evaluateLogicalOrFilter(SearchFilter orFilter)
   {
-    ArrayList<EntryIDSet> candidateSets = new ArrayList<>(orFilter.getFilterComponents().size());
+    final List<SearchFilter> filters = new ArrayList<>(orFilter.getFilterComponents());
+    final ArrayList<EntryIDSet> candidateSets = new ArrayList<>(filters.size());
+    final FilterComponents components = new FilterComponents(filters);
+    try
+    {
+      for (int i = 0; i < filters.size(); i++)
+      {
+        EntryIDSet set = components.evaluate(i);
+        if (!set.isDefined())
+        {
+          // There is no point continuing.
+          return set;
+        }
+        candidateSets.add(set);
+      }
+      return newSetFromUnion(candidateSets);
+    }
+    finally
+    {
+      components.cancel();
+    }
+  }
+
+  /**
+   * The components of an AND or OR filter, evaluated in turn. The index lookup threads read the next few components
+   * while the current thread evaluates the current one, so that the components which are not needed once the
+   * evaluation stops early are never read. The first component is always evaluated by the current thread, which would
+   * otherwise just wait for the others.
+   */
+  private final class FilterComponents
+  {
+    private final List<SearchFilter> filters;
+    /** The index lookups of the submitted filters, {@code null} for those evaluated by the current thread. */
+    private final IndexLookup[] lookups;
+    private int nbSubmitted = 1;
+
+    FilterComponents(List<SearchFilter> filters)
+    {
+      this.filters = filters;
+      this.lookups = new IndexLookup[filters.size()];
+    }
+
+    /** Evaluates the filter component at the provided index, components must be evaluated in order. */
+    EntryIDSet evaluate(int index)
+    {
+      final int end = Math.min(index + 1 + INDEX_LOOKUP_READ_AHEAD, filters.size());
+      for (; nbSubmitted < end; nbSubmitted++)
+      {
+        lookups[nbSubmitted] = submitIndexLookup(filters.get(nbSubmitted));
+      }
+      return evaluateFilter(filters.get(index), lookups[index]);
+    }
 
-    for (SearchFilter filter : orFilter.getFilterComponents())
+    void cancel()
     {
-      EntryIDSet set = evaluateFilter(filter);
-      if (!set.isDefined())
+      for (IndexLookup lookup : lookups)
       {
-        // There is no point continuing.
-        return set;
+        if (lookup != null)
+        {
+          lookup.cancel(false);
+        }
       }
-      candidateSets.add(set);
     }
-    return newSetFromUnion(candidateSets);
+  }
+
+  private IndexLookup submitIndexLookup(SearchFilter filter)
+  {
+    if (indexLookupExecutor == null)
+    {
+      return null;
+    }
+    final StringBuilder debugBuffer = buffer != null ? new StringBuilder() : null;
+    final IndexLookup lookup = new IndexLookup(newIndexLookupTask(filter, debugBuffer), debugBuffer);
+    try
+    {
+      indexLookupExecutor.execute(lookup);
+      return lookup;
+    }
+    catch (RejectedExecutionException e)
+    {
+      // All the index lookup threads are busy.
+      return null;
+    }
+  }
+
+  private EntryIDSet evaluateFilter(SearchFilter filter, IndexLookup lookup)
+  {
+    if (lookup == null)
+    {
+      return evaluateFilter(filter);
+    }
+    try
+    {
+      final EntryIDSet candidates = lookup.get();
+      if (buffer != null)
+      {
+        buffer.append(lookup.debugBuffer);
+      }
+      return candidates;
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new StorageRuntimeException(e);
+    }
+    catch (ExecutionException e)
+    {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageRuntimeException(cause);
+    }
+  }
+
+  /** Evaluates a filter against the indexes within its own read transaction. */
+  private Callable<EntryIDSet> newIndexLookupTask(final SearchFilter filter, final StringBuilder debugBuffer)
+  {
+    return new Callable<EntryIDSet>()
+    {
+      @Override
+      public EntryIDSet call() throws Exception
+      {
+        return entryContainer.getRootContainer().getStorage().read(new ReadOperation<EntryIDSet>()
+        {
+          @Override
+          public EntryIDSet run(ReadableTransaction txn) throws Exception
+          {
+            // Nested filters are evaluated serially, index lookup threads never wait for each other.
+            return new IndexFilter(entryContainer, txn, searchOp, debugBuffer, monitor, null).evaluateFilter(filter);
+          }
+        });
+      }
+    };
+  }
+
+  /** The evaluation of a filter by an index lookup thread, along with its diagnostic string. */
+  private static final class IndexLookup extends FutureTask<EntryIDSet>
+  {
+    private final StringBuilder debugBuffer;
+
+    IndexLookup(Callable<EntryIDSet> task, StringBuilder debugBuffer)
+    {
+      super(task);
+      this.debugBuffer = debugBuffer;
+    }
   }
 
   private EntryIDSet evaluateFilterWithDiagnostic(IndexFilterType indexFilterType, SearchFilter filter)
@@ -59,6 +59,7 @@ import java.util.NavigableSet;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TimerTask;
 import java.util.TreeMap;
@@ -982,6 +983,11 @@ final class OnDiskMergeImporter
     final Callable<Void> newChunkCopierTask(TreeName treeName, final Chunk source,
         PhaseTwoProgressReporter progressReporter)
     {
+      final DefaultIndex index = getIndex(entryContainers.get(treeName.getBaseDN()), treeName);
+      if (index != null)
+      {
+        return new IndexImporterTask(progressReporter, source, index, importer);
+      }
       return new ChunkCopierTask(progressReporter, source, treeName, importer);
     }
 
@@ -1317,6 +1323,12 @@ final class OnDiskMergeImporter
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public Cursor<ByteString, ByteString> openCursor(TreeName treeName)
     {
@@ -2231,6 +2243,34 @@ final class OnDiskMergeImporter
     }
   }
 
+  /** Task to copy an attribute index chunk into a database tree, then import the count of its keys. */
+  private static final class IndexImporterTask implements Callable<Void>
+  {
+    private final PhaseTwoProgressReporter reporter;
+    private final DefaultIndex index;
+    private final Importer destination;
+    private final Chunk source;
+
+    IndexImporterTask(PhaseTwoProgressReporter reporter, Chunk source, DefaultIndex index, Importer destination)
+    {
+      this.source = source;
+      this.index = index;
+      this.destination = destination;
+      this.reporter = reporter;
+    }
+
+    @Override
+    public Void call()
+    {
+      try (final SequentialCursor<ByteString, ByteString> sourceCursor = trackCursorProgress(reporter, source.flip()))
+      {
+        final long nbKeys = copyIntoChunk(sourceCursor, asChunk(index.getName(), destination));
+        index.importKeyCount(destination, nbKeys);
+        return null;
+      }
+    }
+  }
+
   /** Task to copy VLV's counter chunks into a database tree. */
   private static final class VLVIndexImporterTask implements Callable<Void>
   {
@@ -3736,6 +3776,15 @@ final class OnDiskMergeImporter
       return false;
     }
 
+    @Override
+    public void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      for (Map.Entry<? extends ByteSequence, ? extends UpdateFunction> update : updates.entrySet())
+      {
+        update(treeName, update.getKey(), update.getValue());
+      }
+    }
+
     @Override
     public Cursor<ByteString, ByteString> openCursor(TreeName treeName)
     {
@@ -0,0 +1,450 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.controls.ServerSideSortRequestControl;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Modification;
+import org.opends.server.types.SearchFilter;
+
+/**
+ * Caches the candidate entries of the searches using the simple paged results
+ * control, so that the pages following the first one do not need to evaluate
+ * the search filter against the indexes again.
+ * <p>
+ * The candidates of a paged search are cached when a page is returned, along
+ * with the cookie returned to the client and the position of the next page in
+ * the candidates. They are removed from the cache when the next page is
+ * requested, when they are not requested within the configured timeout, or
+ * when the least recently cached candidates must be evicted to keep the cache
+ * within its configured size. Updates to the entries within the scope of a
+ * cached search discard its candidates, except for modifications to attributes
+ * which are not used by its filter.
+ * <p>
+ * The candidates being evaluated or used to return a page are checked out of
+ * the cache by their search. Updates to the entries within their scope mark
+ * them as outdated, so that they are not cached again once the page has been
+ * returned, while unrelated updates have no effect on them.
+ */
+final class PagedResultsCache
+{
+  /** Estimated memory overhead of cached candidates, in addition to the entry IDs. */
+  private static final int CANDIDATES_OVERHEAD = 512;
+
+  /** The cached candidates, in least recently cached order. */
+  private final Map<String, Candidates> cachedCandidates = new LinkedHashMap<>();
+  /** The estimated amount of memory used by the cached candidates. */
+  private long cachedSize;
+  /** The candidates checked out by the searches being processed. */
+  private final Map<SearchOperation, Candidates> checkedOutCandidates = new IdentityHashMap<>();
+  /**
+   * The number of cached and checked out candidates, read without locking so that updates do not contend on this
+   * cache while it holds no candidates.
+   */
+  private volatile int candidatesCount;
+  private long maxSize;
+  private long timeoutInMillis;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize
+   *          the maximum amount of memory in bytes used by the cached candidates, 0 disables the cache
+   * @param timeoutInMillis
+   *          the length of time cached candidates are kept
+   */
+  PagedResultsCache(long maxSize, long timeoutInMillis)
+  {
+    this.maxSize = maxSize;
+    this.timeoutInMillis = timeoutInMillis;
+  }
+
+  /**
+   * Changes the maximum size and the timeout of this cache.
+   *
+   * @param maxSize
+   *          the maximum amount of memory in bytes used by the cached candidates, 0 disables the cache
+   * @param timeoutInMillis
+   *          the length of time cached candidates are kept
+   */
+  synchronized void setConfiguration(long maxSize, long timeoutInMillis)
+  {
+    this.maxSize = maxSize;
+    this.timeoutInMillis = timeoutInMillis;
+    evict(0);
+    updateCandidatesCount();
+  }
+
+  /**
+   * Returns the candidates which must be used to process the provided paged search, and checks them out of this
+   * cache until {@link #release(SearchOperation)} is called for the search.
+   *
+   * @param searchOperation
+   *          the paged search
+   * @param cookie
+   *          the cookie provided in the paged results control of the search
+   * @return the cached candidates, or {@code null} if the candidates of the search are not cached
+   */
+  synchronized Candidates remove(SearchOperation searchOperation, ByteString cookie)
+  {
+    final String key = newKey(searchOperation);
+    final Candidates candidates = cachedCandidates.get(key);
+    if (candidates == null
+        || !candidates.cookie.equals(cookie)
+        || candidates.expirationTime < System.currentTimeMillis())
+    {
+      return null;
+    }
+    cachedCandidates.remove(key);
+    cachedSize -= candidates.size();
+    checkedOutCandidates.put(searchOperation, candidates);
+    updateCandidatesCount();
+    return candidates;
+  }
+
+  /**
+   * Creates the candidates of a paged search before they are evaluated, and checks them out of this cache until
+   * {@link #release(SearchOperation)} is called for the search. They can be cached once one of the pages of the search
+   * has been returned, unless entries within the scope of the search are updated in the meantime.
+   *
+   * @param searchOperation
+   *          the paged search
+   * @return the candidates of the search, which must be provided with the evaluated entry IDs
+   */
+  synchronized Candidates checkOut(SearchOperation searchOperation)
+  {
+    final Candidates candidates = new Candidates(searchOperation);
+    checkedOutCandidates.put(searchOperation, candidates);
+    updateCandidatesCount();
+    return candidates;
+  }
+
+  /**
+   * Releases the candidates checked out by the provided search, once it has been processed.
+   *
+   * @param searchOperation
+   *          the processed search
+   */
+  synchronized void release(SearchOperation searchOperation)
+  {
+    if (!checkedOutCandidates.isEmpty())
+    {
+      checkedOutCandidates.remove(searchOperation);
+      updateCandidatesCount();
+    }
+  }
+
+  /**
+   * Caches the candidates of a paged search once one of its pages has been returned.
+   *
+   * @param candidates
+   *          the candidates of the search
+   * @param cookie
+   *          the cookie returned to the client with the page
+   * @param nextIndex
+   *          the index of the first entry of the next page in the candidates
+   */
+  synchronized void put(Candidates candidates, ByteString cookie, int nextIndex)
+  {
+    if (candidates.outdated || candidates.entryIDs == null || candidates.size() > maxSize)
+    {
+      // The candidates have been outdated by an update, or can never fit in the cache
+      return;
+    }
+    final Candidates previous = cachedCandidates.remove(candidates.key);
+    if (previous != null)
+    {
+      cachedSize -= previous.size();
+    }
+    evict(candidates.size());
+    candidates.cookie = cookie;
+    candidates.nextIndex = nextIndex;
+    candidates.expirationTime = System.currentTimeMillis() + timeoutInMillis;
+    cachedCandidates.put(candidates.key, candidates);
+    cachedSize += candidates.size();
+    updateCandidatesCount();
+  }
+
+  /**
+   * Discards the cached candidates of the searches whose scope contains the provided entry DN, or whose base DN is
+   * below it, following the addition, deletion or renaming of the entry.
+   *
+   * @param entryDN
+   *          the DN of the updated entry
+   */
+  void invalidate(DN entryDN)
+  {
+    invalidate(entryDN, null);
+  }
+
+  /**
+   * Discards the cached candidates of the searches whose scope contains the provided entry DN, or whose base DN is
+   * below it, and whose filter uses one of the modified attributes. Such candidates checked out by a search are
+   * marked as outdated.
+   *
+   * @param entryDN
+   *          the DN of the modified entry
+   * @param modifications
+   *          the modifications applied to the entry, or {@code null} if they are unknown
+   */
+  void invalidate(DN entryDN, Collection<Modification> modifications)
+  {
+    if (candidatesCount != 0)
+    {
+      invalidate0(entryDN, modifications);
+    }
+  }
+
+  private synchronized void invalidate0(DN entryDN, Collection<Modification> modifications)
+  {
+    for (Iterator<Candidates> it = cachedCandidates.values().iterator(); it.hasNext();)
+    {
+      final Candidates candidates = it.next();
+      if (candidates.isAffectedBy(entryDN, modifications))
+      {
+        it.remove();
+        cachedSize -= candidates.size();
+      }
+    }
+    for (Candidates candidates : checkedOutCandidates.values())
+    {
+      if (candidates.isAffectedBy(entryDN, modifications))
+      {
+        candidates.outdated = true;
+      }
+    }
+    updateCandidatesCount();
+  }
+
+  /** Discards all the cached candidates, and marks all the checked out candidates as outdated. */
+  synchronized void clear()
+  {
+    for (Candidates candidates : checkedOutCandidates.values())
+    {
+      candidates.outdated = true;
+    }
+    cachedCandidates.clear();
+    cachedSize = 0;
+    updateCandidatesCount();
+  }
+
+  private void updateCandidatesCount()
+  {
+    candidatesCount = cachedCandidates.size() + checkedOutCandidates.size();
+  }
+
+  /** Evicts expired and least recently cached candidates until the provided size can be added to the cache. */
+  private void evict(long sizeToAdd)
+  {
+    final long now = System.currentTimeMillis();
+    for (Iterator<Candidates> it = cachedCandidates.values().iterator(); it.hasNext();)
+    {
+      final Candidates candidates = it.next();
+      if (candidates.expirationTime >= now && cachedSize + sizeToAdd <= maxSize)
+      {
+        break;
+      }
+      it.remove();
+      cachedSize -= candidates.size();
+    }
+  }
+
+  private static String newKey(SearchOperation searchOperation)
+  {
+    final StringBuilder key = new StringBuilder();
+    key.append(searchOperation.getConnectionID());
+    key.append(' ').append(searchOperation.getBaseDN());
+    key.append(' ').append(searchOperation.getScope());
+    key.append(' ').append(searchOperation.getFilter());
+    try
+    {
+      final ServerSideSortRequestControl sortRequest =
+          searchOperation.getRequestControl(ServerSideSortRequestControl.DECODER);
+      if (sortRequest != null)
+      {
+        key.append(' ');
+        sortRequest.toString(key);
+      }
+    }
+    catch (DirectoryException e)
+    {
+      // Cannot happen since the control was already decoded when processing the search
+      key.append(" ?");
+    }
+    return key.toString();
+  }
+
+  /** The candidate entries of a paged search. */
+  static final class Candidates
+  {
+    private final String key;
+    private final DN baseDN;
+    private final SearchScope scope;
+    /** The attribute types used by the search filter, or {@code null} if the filter can match any attribute. */
+    private final Set<AttributeType> filterAttributeTypes;
+    private boolean candidatesAreInScope;
+    private long[] entryIDs;
+    private List<Control> responseControls;
+    /** Whether entries within the scope of the search have been updated since the candidates were checked out. */
+    private boolean outdated;
+
+    private ByteString cookie;
+    private int nextIndex;
+    private long expirationTime;
+
+    private Candidates(SearchOperation searchOperation)
+    {
+      this.key = newKey(searchOperation);
+      this.baseDN = searchOperation.getBaseDN();
+      this.scope = searchOperation.getScope();
+      this.filterAttributeTypes = getAttributeTypes(searchOperation.getFilter(), new HashSet<AttributeType>());
+    }
+
+    /**
+     * Provides the evaluated candidates of the search.
+     *
+     * @param candidatesAreInScope
+     *          whether it is certain that every candidate entry is in the search scope
+     * @param entryIDs
+     *          the candidate entry IDs, in the order they are returned
+     * @param responseControls
+     *          the response controls added to the search while evaluating its candidates
+     */
+    void setEvaluation(boolean candidatesAreInScope, long[] entryIDs, List<Control> responseControls)
+    {
+      this.candidatesAreInScope = candidatesAreInScope;
+      this.entryIDs = entryIDs;
+      this.responseControls = responseControls;
+    }
+
+    private static Set<AttributeType> getAttributeTypes(SearchFilter filter, Set<AttributeType> attributeTypes)
+    {
+      switch (filter.getFilterType())
+      {
+      case AND:
+      case OR:
+        for (SearchFilter component : filter.getFilterComponents())
+        {
+          if (getAttributeTypes(component, attributeTypes) == null)
+          {
+            return null;
+          }
+        }
+        return attributeTypes;
+      case NOT:
+        return getAttributeTypes(filter.getNotComponent(), attributeTypes);
+      default:
+        if (filter.getAttributeType() == null)
+        {
+          // Extensible match filter without an attribute description
+          return null;
+        }
+        attributeTypes.add(filter.getAttributeType());
+        return attributeTypes;
+      }
+    }
+
+    private boolean isAffectedBy(DN entryDN, Collection<Modification> modifications)
+    {
+      if (!entryDN.matchesBaseAndScope(baseDN, scope) && !entryDN.isAncestorOf(baseDN))
+      {
+        return false;
+      }
+      if (modifications == null || filterAttributeTypes == null)
+      {
+        return true;
+      }
+      for (Modification modification : modifications)
+      {
+        if (filterAttributeTypes.contains(modification.getAttribute().getAttributeType()))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private long size()
+    {
+      return 8L * entryIDs.length + 2L * key.length() + CANDIDATES_OVERHEAD;
+    }
+
+    /**
+     * Returns whether it is certain that every candidate entry is in the search scope.
+     *
+     * @return whether it is certain that every candidate entry is in the search scope
+     */
+    boolean areCandidatesInScope()
+    {
+      return candidatesAreInScope;
+    }
+
+    /**
+     * Returns the candidate entry IDs, in the order they are returned.
+     *
+     * @return the candidate entry IDs
+     */
+    long[] getEntryIDs()
+    {
+      return entryIDs;
+    }
+
+    /**
+     * Returns the response controls which were added to the search while evaluating its candidates.
+     *
+     * @return the response controls which were added to the search while evaluating its candidates
+     */
+    List<Control> getResponseControls()
+    {
+      return responseControls;
+    }
+
+    /**
+     * Returns the index of the first entry of the next page in the candidates.
+     *
+     * @return the index of the first entry of the next page in the candidates
+     */
+    int getNextIndex()
+    {
+      return nextIndex;
+    }
+  }
+}
@@ -26,6 +26,7 @@
  */
 package org.opends.server.backends.pluggable;
 
+import static org.forgerock.util.Utils.newThreadFactory;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.util.StaticUtils.*;
 
@@ -36,6 +37,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -70,6 +75,13 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  private static final String INDEX_LOOKUP_THREAD_NAME = "INDEX-LOOKUP-%d";
+
+  /** Time after which idle index lookup threads are stopped. */
+  private static final long INDEX_LOOKUP_THREAD_KEEP_ALIVE_SECONDS = 60;
+  /** The time given to the index lookups in progress to complete when closing the storage. */
+  private static final long INDEX_LOOKUP_TERMINATION_TIMEOUT_SECONDS = 30;
+
   /** The tree storage. */
   private final Storage storage;
 
@@ -89,6 +101,9 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
   /** The compressed schema manager for this backend. */
   private PersistentCompressedSchema compressedSchema;
 
+  /** The threads reading concurrently the indexes of complex search filters, or null if disabled. */
+  private volatile ThreadPoolExecutor indexLookupExecutor;
+
   /**
    * Creates a new RootContainer object representing a storage.
    *
@@ -106,6 +121,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
     getMonitorProvider().enableFilterUseStats(config.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(config.getIndexFilterAnalyzerMaxFilters());
+    setIndexLookupThreads(config.getIndexLookupThreads());
 
     config.addPluggableChangeListener(this);
   }
@@ -273,6 +289,62 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     return monitor;
   }
 
+  /**
+   * Returns the executor reading concurrently the indexes of complex search filters. Its threads are all bound to
+   * the executor, which rejects the reads submitted when they are all busy.
+   *
+   * @return the executor reading concurrently the indexes of complex search filters, or {@code null} if index reads
+   *         must be performed by the threads processing the searches
+   */
+  Executor getIndexLookupExecutor()
+  {
+    return indexLookupExecutor;
+  }
+
+  private static void awaitTermination(ThreadPoolExecutor executor)
+  {
+    try
+    {
+      executor.awaitTermination(INDEX_LOOKUP_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      logger.traceException(e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized void setIndexLookupThreads(int threadCount)
+  {
+    final ThreadPoolExecutor executor = indexLookupExecutor;
+    if (threadCount == 0)
+    {
+      indexLookupExecutor = null;
+      if (executor != null)
+      {
+        executor.shutdown();
+      }
+    }
+    else if (executor == null)
+    {
+      final ThreadPoolExecutor newExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+          INDEX_LOOKUP_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+          newThreadFactory(null, INDEX_LOOKUP_THREAD_NAME, true));
+      newExecutor.allowCoreThreadTimeOut(true);
+      indexLookupExecutor = newExecutor;
+    }
+    else if (threadCount > executor.getMaximumPoolSize())
+    {
+      executor.setMaximumPoolSize(threadCount);
+      executor.setCorePoolSize(threadCount);
+    }
+    else
+    {
+      executor.setCorePoolSize(threadCount);
+      executor.setMaximumPoolSize(threadCount);
+    }
+  }
+
   /**
    * Preload the tree cache. There is no preload if the configured preload
    * time limit is zero.
@@ -337,6 +409,13 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
       }
     }
     config.removePluggableChangeListener(this);
+    final ThreadPoolExecutor executor = indexLookupExecutor;
+    setIndexLookupThreads(0);
+    if (executor != null)
+    {
+      // Do not close the storage while index lookups may still be reading it
+      awaitTermination(executor);
+    }
     if (storage != null)
     {
       storage.close();
@@ -455,6 +534,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
   {
     getMonitorProvider().enableFilterUseStats(configuration.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(configuration.getIndexFilterAnalyzerMaxFilters());
+    setIndexLookupThreads(configuration.getIndexLookupThreads());
 
     return new ConfigChangeResult();
   }
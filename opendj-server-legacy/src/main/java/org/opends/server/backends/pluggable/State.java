@@ -50,11 +50,11 @@ import org.opends.server.util.StaticUtils;
 class State extends AbstractTree
 {
   /**
-   * Use COMPACTED serialization for new indexes.
-   * @see {@link EntryIDSet.EntryIDSetCodecV2}
+   * Use COMPACTED and BITMAP_ENCODED serialization for new indexes.
+   * @see {@link EntryIDSet.EntryIDSetCodecV3}
    */
   private static final Collection<IndexFlag> DEFAULT_FLAGS = Collections.unmodifiableCollection(Arrays
-      .asList(IndexFlag.COMPACTED));
+      .asList(IndexFlag.COMPACTED, IndexFlag.BITMAP_ENCODED));
 
   /**
    * Bit-field containing possible flags that an index can have
@@ -65,7 +65,20 @@ class State extends AbstractTree
     TRUSTED(0x01),
 
     /** Use compact encoding for indexes' ID storage. */
-    COMPACTED(0x02);
+    COMPACTED(0x02),
+
+    /**
+     * The count of keys of the index is consistent with its content, and can be used to estimate the selectivity of
+     * the index. Indexes which existed before their keys were counted need to be rebuilt for this flag to be set.
+     */
+    KEY_COUNTED(0x04),
+
+    /**
+     * Records of the compacted index are read and written with {@link EntryIDSet#CODEC_V3}, which still reads records
+     * written by {@link EntryIDSet#CODEC_V2}. Only set on indexes created or rebuilt since CODEC_V3 exists, so that
+     * CODEC_V2 indexes are not silently filled with records the previous versions cannot read.
+     */
+    BITMAP_ENCODED(0x08);
 
     static final EnumSet<IndexFlag> ALL_FLAGS = EnumSet.allOf(IndexFlag.class);
 
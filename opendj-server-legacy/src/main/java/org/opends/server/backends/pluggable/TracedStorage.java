@@ -27,6 +27,7 @@ package org.opends.server.backends.pluggable;
 
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigException;
@@ -409,6 +410,15 @@ final class TracedStorage implements Storage
       return isUpdated;
     }
 
+    @Override
+    public void updateAll(final TreeName name,
+        final SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      traceEnter("updateAll", "name", name, "keys", updates.size());
+      txn.updateAll(name, updates);
+      traceLeave("updateAll", "name", name, "keys", updates.size());
+    }
+
     private int id()
     {
       return System.identityHashCode(this);
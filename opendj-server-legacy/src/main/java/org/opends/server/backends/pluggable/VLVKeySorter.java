@@ -0,0 +1,329 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.forgerock.util.Utils.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+
+/**
+ * Sorts the VLV keys of the entries returned by a server side sort which could
+ * not be processed using a VLV index.
+ * <p>
+ * Only the {@code maxKeys} first keys are retained: the keys are buffered in
+ * memory and the buffer is sorted and truncated to its {@code maxKeys} first
+ * keys each time it holds twice this number of keys, so that small windows are
+ * sorted in bounded memory. When the buffered keys exceed the memory budget,
+ * they are written as a sorted run in a temporary file, and the runs are merged
+ * when the sorted keys are read.
+ */
+final class VLVKeySorter implements Closeable
+{
+  /** Estimated memory overhead of a key buffered in memory, in addition to its bytes. */
+  private static final int KEY_OVERHEAD = 64;
+
+  /** Sorts the keys in ascending order. */
+  static final Comparator<ByteString> ASCENDING_ORDER = new Comparator<ByteString>()
+  {
+    @Override
+    public int compare(ByteString key1, ByteString key2)
+    {
+      return key1.compareTo(key2);
+    }
+  };
+  /** Sorts the keys in descending order. */
+  static final Comparator<ByteString> DESCENDING_ORDER = Collections.reverseOrder(ASCENDING_ORDER);
+
+  private final Comparator<ByteString> comparator;
+  private final int maxKeys;
+  private final long memoryBudget;
+  private final File tmpDir;
+
+  private final List<ByteString> keys = new ArrayList<>();
+  private long keysMemory;
+  private final List<File> runs = new ArrayList<>();
+  private final List<RunCursor> cursors = new ArrayList<>();
+  private long size;
+
+  /**
+   * Creates a new sorter.
+   *
+   * @param comparator
+   *          the order in which the keys are sorted
+   * @param maxKeys
+   *          the maximum number of sorted keys to return
+   * @param memoryBudget
+   *          the amount of memory in bytes that can be used to buffer keys
+   * @param tmpDir
+   *          the directory where sorted runs are written when the memory budget is exceeded
+   */
+  VLVKeySorter(Comparator<ByteString> comparator, int maxKeys, long memoryBudget, File tmpDir)
+  {
+    this.comparator = comparator;
+    this.maxKeys = maxKeys;
+    this.memoryBudget = memoryBudget;
+    this.tmpDir = tmpDir;
+  }
+
+  /**
+   * Adds a key to this sorter.
+   *
+   * @param key
+   *          the key to add
+   * @throws IOException
+   *           if the buffered keys could not be written to a temporary file
+   */
+  void add(ByteString key) throws IOException
+  {
+    size++;
+    if (maxKeys == 0)
+    {
+      return;
+    }
+    keys.add(key);
+    keysMemory += key.length() + KEY_OVERHEAD;
+    if (keys.size() >= 2L * maxKeys)
+    {
+      sortAndTruncate();
+    }
+    if (keysMemory > memoryBudget)
+    {
+      sortAndTruncate();
+      if (keysMemory > memoryBudget / 2)
+      {
+        writeRun();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of keys added to this sorter, including the ones which
+   * were not retained.
+   *
+   * @return the number of keys added to this sorter
+   */
+  long size()
+  {
+    return size;
+  }
+
+  /**
+   * Returns an iterator over the {@code maxKeys} first added keys, in sorted
+   * order. No more keys can be added once this method has been called.
+   *
+   * @return an iterator over the sorted keys
+   * @throws IOException
+   *           if the sorted runs could not be read
+   */
+  Iterator<ByteString> iterator() throws IOException
+  {
+    sortAndTruncate();
+    if (runs.isEmpty())
+    {
+      return keys.iterator();
+    }
+
+    final PriorityQueue<RunCursor> queue = new PriorityQueue<>(runs.size() + 1, new Comparator<RunCursor>()
+    {
+      @Override
+      public int compare(RunCursor c1, RunCursor c2)
+      {
+        return comparator.compare(c1.key, c2.key);
+      }
+    });
+    addIfNotEmpty(queue, new RunCursor(keys.iterator()));
+    for (File run : runs)
+    {
+      final RunCursor cursor = new RunCursor(run);
+      cursors.add(cursor);
+      addIfNotEmpty(queue, cursor);
+    }
+    return new MergeIterator(queue);
+  }
+
+  private static void addIfNotEmpty(PriorityQueue<RunCursor> queue, RunCursor cursor) throws IOException
+  {
+    if (cursor.next())
+    {
+      queue.add(cursor);
+    }
+  }
+
+  private void sortAndTruncate()
+  {
+    Collections.sort(keys, comparator);
+    if (keys.size() > maxKeys)
+    {
+      keys.subList(maxKeys, keys.size()).clear();
+      keysMemory = 0;
+      for (ByteString key : keys)
+      {
+        keysMemory += key.length() + KEY_OVERHEAD;
+      }
+    }
+  }
+
+  private void writeRun() throws IOException
+  {
+    tmpDir.mkdirs();
+    final File run = File.createTempFile("sort", ".run", tmpDir);
+    runs.add(run);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run))))
+    {
+      for (ByteString key : keys)
+      {
+        out.writeInt(key.length());
+        key.copyTo(out);
+      }
+    }
+    keys.clear();
+    keysMemory = 0;
+  }
+
+  @Override
+  public void close()
+  {
+    closeSilently(cursors);
+    cursors.clear();
+    for (File run : runs)
+    {
+      run.delete();
+    }
+    runs.clear();
+    keys.clear();
+  }
+
+  /** Reads the keys of a sorted run, either buffered in memory or written to a temporary file. */
+  private static final class RunCursor implements Closeable
+  {
+    private final Iterator<ByteString> keys;
+    private final DataInputStream in;
+    private ByteString key;
+
+    private RunCursor(Iterator<ByteString> keys)
+    {
+      this.keys = keys;
+      this.in = null;
+    }
+
+    private RunCursor(File run) throws IOException
+    {
+      this.keys = null;
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+    }
+
+    private boolean next() throws IOException
+    {
+      if (keys != null)
+      {
+        key = keys.hasNext() ? keys.next() : null;
+      }
+      else if (in.available() > 0)
+      {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        key = ByteString.wrap(bytes);
+      }
+      else
+      {
+        key = null;
+      }
+      return key != null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      if (in != null)
+      {
+        in.close();
+      }
+    }
+  }
+
+  /** Merges the sorted runs, up to {@code maxKeys} keys. */
+  private final class MergeIterator implements Iterator<ByteString>
+  {
+    private final PriorityQueue<RunCursor> queue;
+    private int returnedKeys;
+
+    private MergeIterator(PriorityQueue<RunCursor> queue)
+    {
+      this.queue = queue;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return returnedKeys < maxKeys && !queue.isEmpty();
+    }
+
+    @Override
+    public ByteString next()
+    {
+      if (!hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+      final RunCursor cursor = queue.poll();
+      final ByteString key = cursor.key;
+      returnedKeys++;
+      try
+      {
+        addIfNotEmpty(queue, cursor);
+      }
+      catch (IOException e)
+      {
+        throw new StorageRuntimeException(e);
+      }
+      return key;
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -26,6 +26,7 @@
  */
 package org.opends.server.backends.pluggable;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.DnKeyFormat.*;
 import static org.opends.server.backends.pluggable.SuffixContainer.*;
@@ -46,7 +47,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteSequence;
@@ -67,11 +74,29 @@ import org.opends.server.types.Entry;
 import org.opends.server.util.ServerConstants;
 import org.opends.server.util.StaticUtils;
 
-/** This class is used to run an index verification process on the backend. */
+/**
+ * This class is used to run an index verification process on the backend.
+ * <p>
+ * When several threads are requested, the entries of id2entry are partitioned
+ * in ranges of entry IDs which are verified concurrently by a pool of verify
+ * workers, each one reading in its own transaction. In clean mode, the
+ * matching rule indexes of an attribute index are verified concurrently.
+ * <p>
+ * Since the workers do not read in the transaction which counted the
+ * id2entry records, verifying a backend which is being updated may report
+ * an entry count differing from the number of verified entries, where a
+ * sequential verification reading a single transaction would not.
+ */
 class VerifyJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The name template of the verify worker threads. */
+  private static final String VERIFY_WORKER_THREAD_NAME = "VERIFY-WORKER-%d";
+
+  /** The number of id2entry ranges per verify worker, so that workers finishing early can verify more ranges. */
+  private static final int RANGES_PER_THREAD = 4;
+
   /** The verify configuration. */
   private final VerifyConfig verifyConfig;
   /** The root container used for the verify job. */
@@ -79,10 +104,12 @@ class VerifyJob
 
   /** The number of milliseconds between job progress reports. */
   private final long progressInterval = 10000;
+  /** The number of threads verifying the backend. */
+  private final int threadCount;
   /** The number of index keys processed. */
-  private long keyCount;
+  private final AtomicLong keyCount = new AtomicLong();
   /** The number of errors found. */
-  private long errorCount;
+  private final AtomicLong errorCount = new AtomicLong();
   /** The number of records that have exceeded the entry limit. */
   private long entryLimitExceededCount;
   /** The number of records that reference more than one entry. */
@@ -122,6 +149,7 @@ class VerifyJob
   {
     this.rootContainer = rootContainer;
     this.verifyConfig = verifyConfig;
+    this.threadCount = verifyConfig.getThreadCount();
   }
 
   /**
@@ -281,19 +309,19 @@ class VerifyJob
       float rate = 0;
       if (totalTime > 0)
       {
-        rate = 1000f*keyCount / totalTime;
+        rate = 1000f*keyCount.get() / totalTime;
       }
 
       if (cleanMode)
       {
-        logger.info(NOTE_VERIFY_CLEAN_FINAL_STATUS, keyCount, errorCount, totalTime/1000, rate);
+        logger.info(NOTE_VERIFY_CLEAN_FINAL_STATUS, keyCount.get(), errorCount.get(), totalTime/1000, rate);
 
         if (multiReferenceCount > 0)
         {
           float averageEntryReferences = 0;
-          if (keyCount > 0)
+          if (keyCount.get() > 0)
           {
-            averageEntryReferences = entryReferencesCount/keyCount;
+            averageEntryReferences = entryReferencesCount/keyCount.get();
           }
 
           if (logger.isDebugEnabled())
@@ -307,7 +335,7 @@ class VerifyJob
       }
       else
       {
-        logger.info(NOTE_VERIFY_FINAL_STATUS, keyCount, errorCount, totalTime/1000, rate);
+        logger.info(NOTE_VERIFY_FINAL_STATUS, keyCount.get(), errorCount.get(), totalTime/1000, rate);
         if (!entryLimitMap.isEmpty())
         {
           logger.debug(INFO_VERIFY_ENTRY_LIMIT_STATS_HEADER);
@@ -341,7 +369,7 @@ class VerifyJob
     {
       entryContainer.sharedLock.unlock();
     }
-    return errorCount;
+    return errorCount.get();
   }
 
   /**
@@ -352,11 +380,78 @@ class VerifyJob
    * @throws StorageRuntimeException If an error occurs in the storage.
    */
   private void iterateID2Entry(ReadableTransaction txn) throws StorageRuntimeException
+  {
+    final long storedEntryCount = id2entry.getRecordCount(txn);
+    if (threadCount > 1)
+    {
+      iterateID2EntryInParallel(txn);
+    }
+    else
+    {
+      iterateID2Entry(txn, null, null);
+    }
+    if (keyCount.get() != storedEntryCount)
+    {
+      errorCount.incrementAndGet();
+      logger.error(ERR_VERIFY_WRONG_ENTRY_COUNT, storedEntryCount, keyCount.get());
+    }
+  }
+
+  /**
+   * Partitions id2entry in ranges of entry IDs, and verifies the entries of
+   * these ranges concurrently.
+   *
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateID2EntryInParallel(ReadableTransaction txn) throws StorageRuntimeException
+  {
+    final EntryContainer entryContainer = rootContainer.getEntryContainer(verifyConfig.getBaseDN());
+    final long highestID = entryContainer.getHighestEntryID(txn).longValue();
+    final int nbRanges = threadCount * RANGES_PER_THREAD;
+    final long rangeSize = highestID / nbRanges + 1;
+
+    // The first and last ranges are unbounded so that malformed keys are verified too
+    final List<ReadOperation<Void>> verifications = new ArrayList<>(nbRanges);
+    ByteString fromKey = null;
+    for (int i = 1; i <= nbRanges; i++)
+    {
+      final ByteString toKey = i < nbRanges ? new EntryID(i * rangeSize).toByteString() : null;
+      verifications.add(newID2EntryVerification(fromKey, toKey));
+      fromKey = toKey;
+    }
+    runInParallel(verifications);
+  }
+
+  private ReadOperation<Void> newID2EntryVerification(final ByteString fromKey, final ByteString toKey)
+  {
+    return new ReadOperation<Void>()
+    {
+      @Override
+      public Void run(ReadableTransaction txn) throws Exception
+      {
+        iterateID2Entry(txn, fromKey, toKey);
+        return null;
+      }
+    };
+  }
+
+  /**
+   * Iterate through a range of the entries in id2entry to perform a check for
+   * index completeness.
+   *
+   * @param fromKey The key where to start the iteration, inclusive, or
+   *                {@code null} to start from the first key.
+   * @param toKey The key where to stop the iteration, exclusive, or
+   *              {@code null} to stop after the last key.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateID2Entry(ReadableTransaction txn, ByteString fromKey, ByteString toKey)
+      throws StorageRuntimeException
   {
     try(final Cursor<ByteString, ByteString> cursor = txn.openCursor(id2entry.getName()))
     {
-      long storedEntryCount = id2entry.getRecordCount(txn);
-      while (cursor.next())
+      boolean found = fromKey != null ? cursor.positionToKeyOrNext(fromKey) : cursor.next();
+      for (; found && (toKey == null || cursor.getKey().compareTo(toKey) < 0); found = cursor.next())
       {
         ByteString key = cursor.getKey();
         ByteString value = cursor.getValue();
@@ -368,7 +463,7 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           if (logger.isTraceEnabled())
           {
             logger.traceException(e);
@@ -378,7 +473,7 @@ class VerifyJob
           continue;
         }
 
-        keyCount++;
+        keyCount.incrementAndGet();
 
         Entry entry;
         try
@@ -387,7 +482,7 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           if (logger.isTraceEnabled())
           {
             logger.traceException(e);
@@ -399,12 +494,57 @@ class VerifyJob
 
         verifyEntry(txn, entryID, entry);
       }
-      if (keyCount != storedEntryCount)
+    }
+  }
+
+  /**
+   * Runs the provided verifications concurrently, each one in its own read
+   * transaction, and waits for all of them to complete.
+   *
+   * @param verifications The verifications to run.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void runInParallel(List<ReadOperation<Void>> verifications) throws StorageRuntimeException
+  {
+    final ExecutorService workers = Executors.newFixedThreadPool(
+        Math.min(threadCount, verifications.size()), newThreadFactory(null, VERIFY_WORKER_THREAD_NAME, true));
+    try
+    {
+      final List<Future<Void>> futures = new ArrayList<>(verifications.size());
+      for (final ReadOperation<Void> verification : verifications)
       {
-        errorCount++;
-        logger.error(ERR_VERIFY_WRONG_ENTRY_COUNT, storedEntryCount, keyCount);
+        futures.add(workers.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() throws Exception
+          {
+            return rootContainer.getStorage().read(verification);
+          }
+        }));
+      }
+      for (Future<Void> future : futures)
+      {
+        future.get();
       }
     }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new StorageRuntimeException(e);
+    }
+    catch (ExecutionException e)
+    {
+      final Throwable cause = e.getCause();
+      if (cause instanceof StorageRuntimeException)
+      {
+        throw (StorageRuntimeException) cause;
+      }
+      throw new StorageRuntimeException(cause);
+    }
+    finally
+    {
+      workers.shutdownNow();
+    }
   }
 
   /**
@@ -428,9 +568,16 @@ class VerifyJob
     else if (!attrIndexList.isEmpty())
     {
       AttributeIndex attrIndex = attrIndexList.get(0);
-      for (MatchingRuleIndex index : attrIndex.getNameToIndexes().values())
+      if (threadCount > 1)
       {
-        iterateAttrIndex(txn, index);
+        iterateAttrIndexesInParallel(attrIndex);
+      }
+      else
+      {
+        for (MatchingRuleIndex index : attrIndex.getNameToIndexes().values())
+        {
+          iterateAttrIndex(txn, index);
+        }
       }
     }
     else if (!vlvIndexList.isEmpty())
@@ -439,6 +586,34 @@ class VerifyJob
     }
   }
 
+  /**
+   * Verifies the matching rule indexes of an attribute index concurrently, to
+   * perform a check for index cleanliness.
+   *
+   * @param attrIndex The attribute index to be checked.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  private void iterateAttrIndexesInParallel(AttributeIndex attrIndex) throws StorageRuntimeException
+  {
+    final List<ReadOperation<Void>> verifications = new ArrayList<>();
+    for (final MatchingRuleIndex index : attrIndex.getNameToIndexes().values())
+    {
+      verifications.add(new ReadOperation<Void>()
+      {
+        @Override
+        public Void run(ReadableTransaction txn) throws Exception
+        {
+          iterateAttrIndex(txn, index);
+          return null;
+        }
+      });
+    }
+    if (!verifications.isEmpty())
+    {
+      runInParallel(verifications);
+    }
+  }
+
   /**
    * Iterate through the entries in DN2ID to perform a check for
    * index cleanliness.
@@ -454,7 +629,7 @@ class VerifyJob
     {
       while (cursor.next())
       {
-        keyCount++;
+        keyCount.incrementAndGet();
 
         final ByteString key = cursor.getKey();
         final EntryID entryID;
@@ -464,7 +639,7 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.trace("File dn2id has malformed ID for DN <%s>", key, e);
           continue;
         }
@@ -478,19 +653,19 @@ class VerifyJob
         }
         catch (Exception e)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.traceException(e);
           continue;
         }
 
         if (entry == null)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.error(ERR_VERIFY_DN2ID_UNKNOWN_ID, key, entryID.longValue());
         }
         else if (!key.equals(dnToDNKey(entry.getName(), verifyConfig.getBaseDN().size())))
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.error(ERR_VERIFY_DN2ID_WRONG_ENTRY, key, entry.getName());
         }
       }
@@ -526,7 +701,7 @@ class VerifyJob
     final long currentValue = id2childrenCount.getCount(txn, parent.entryID);
     if (expected != currentValue)
     {
-      errorCount++;
+      errorCount.incrementAndGet();
       logger.error(ERR_VERIFY_ID2COUNT_WRONG_COUNT, parent.baseDN, currentValue, expected);
     }
   }
@@ -541,7 +716,7 @@ class VerifyJob
         if (!id2entry.containsEntryID(txn, entryID))
         {
           logger.error(ERR_VERIFY_ID2COUNT_WRONG_ID, entryID.longValue());
-          errorCount++;
+          errorCount.incrementAndGet();
         }
       }
     }
@@ -555,7 +730,7 @@ class VerifyJob
    * @param index The index containing the key.
    * @param key A key that has exceeded the entry limit.
    */
-  private void incrEntryLimitStats(Index index, ByteString key)
+  private synchronized void incrEntryLimitStats(Index index, ByteString key)
   {
     HashMap<ByteString,Long> hashMap = entryLimitMap.get(index);
     if (hashMap == null)
@@ -575,12 +750,33 @@ class VerifyJob
     hashMap.put(key, counter);
   }
 
+  /**
+   * Returns the number of times the keys of the provided index which have exceeded the entry limit have been
+   * referenced by the verified entries.
+   *
+   * @param index The index containing the keys.
+   * @return The number of references to the keys of the index which have exceeded the entry limit.
+   */
+  synchronized long getEntryLimitExceededReferenceCount(Index index)
+  {
+    long count = 0;
+    final HashMap<ByteString, Long> hashMap = entryLimitMap.get(index);
+    if (hashMap != null)
+    {
+      for (Long counter : hashMap.values())
+      {
+        count += counter;
+      }
+    }
+    return count;
+  }
+
   /**
    * Update the statistical information for an index record.
    *
    * @param entryIDSet The set of entry IDs for the index record.
    */
-  private void updateIndexStats(EntryIDSet entryIDSet)
+  private synchronized void updateIndexStats(EntryIDSet entryIDSet)
   {
     if (!entryIDSet.isDefined())
     {
@@ -629,13 +825,13 @@ class VerifyJob
         catch (Exception e)
         {
           logger.traceException(e);
-          errorCount++;
+          errorCount.incrementAndGet();
           continue;
         }
 
         if (entry == null)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.error(ERR_VERIFY_UNKNOWN_ID, id, keyDump(vlvIndex, key));
           continue;
         }
@@ -643,7 +839,7 @@ class VerifyJob
         ByteString expectedKey = vlvIndex.toKey(entry, id);
         if (expectedKey.compareTo(key) != 0)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.error(ERR_VERIFY_ENTRY_NON_MATCHING_KEY, id, keyDump(vlvIndex, expectedKey));
         }
       }
@@ -667,7 +863,7 @@ class VerifyJob
     {
       while (cursor.next())
       {
-        keyCount++;
+        keyCount.incrementAndGet();
 
         final ByteString key = cursor.getKey();
 
@@ -677,13 +873,13 @@ class VerifyJob
           entryIDSet = cursor.getValue();
           if (entryIDSet.size() == 0)
           {
-            errorCount++;
+            errorCount.incrementAndGet();
             logger.error(ERR_VERIFY_EMPTY_IDSET, keyDump(index, key));
           }
         }
         catch (Exception e)
         {
-          errorCount++;
+          errorCount.incrementAndGet();
           logger.traceException(e);
           logger.trace("Malformed ID list: %n%s", keyDump(index, key));
           continue;
@@ -711,13 +907,13 @@ class VerifyJob
             catch (Exception e)
             {
               logger.traceException(e);
-              errorCount++;
+              errorCount.incrementAndGet();
               continue;
             }
 
             if (entry == null)
             {
-              errorCount++;
+              errorCount.incrementAndGet();
               logger.error(ERR_VERIFY_UNKNOWN_REFERENCE, id.longValue(), keyDump(index, key));
               continue;
             }
@@ -766,7 +962,7 @@ class VerifyJob
 
             if (!foundMatchingKey.get())
             {
-              errorCount++;
+              errorCount.incrementAndGet();
               logger.error(ERR_VERIFY_UNEXPECTED_REFERENCE, entry.getName(), keyDump(index, key));
             }
           }
@@ -807,12 +1003,12 @@ class VerifyJob
       if (id == null)
       {
         logger.error(ERR_VERIFY_DN2ID_MISSING_KEY, dn);
-        errorCount++;
+        errorCount.incrementAndGet();
       }
       else if (!id.equals(entryID))
       {
         logger.error(ERR_VERIFY_DN2ID_WRONG_ID, id.longValue(), entryID.longValue(), dn);
-        errorCount++;
+        errorCount.incrementAndGet();
       }
     }
     catch (Exception e)
@@ -822,7 +1018,7 @@ class VerifyJob
         logger.traceException(e);
         logger.trace("File dn2id has error reading key %s: %s.%n", dn, e.getMessage());
       }
-      errorCount++;
+      errorCount.incrementAndGet();
     }
 
     // Check the parent DN is in dn2id.
@@ -835,7 +1031,7 @@ class VerifyJob
         if (id == null)
         {
           logger.error(ERR_VERIFY_DN2ID_MISSING_KEY, parentDN);
-          errorCount++;
+          errorCount.incrementAndGet();
         }
       }
       catch (Exception e)
@@ -845,7 +1041,7 @@ class VerifyJob
           logger.traceException(e);
           logger.trace("File dn2id has error reading key %s: %s.%n", parentDN, e.getMessage());
         }
-        errorCount++;
+        errorCount.incrementAndGet();
       }
     }
   }
@@ -890,7 +1086,7 @@ class VerifyJob
         if (vlvIndex.verifyEntry(txn, entryID, entry))
         {
           logger.error(ERR_VERIFY_MISSING_ENTRY_VLV, entry.getName(), vlvIndex.getName());
-          errorCount++;
+          errorCount.incrementAndGet();
         }
       }
       catch (DirectoryException e)
@@ -901,7 +1097,7 @@ class VerifyJob
           logger.trace("Error checking entry %s against filter or base DN for VLV index %s: %s",
                      entry.getName(), vlvIndex.getName(), e.getMessageObject());
         }
-        errorCount++;
+        errorCount.incrementAndGet();
       }
       catch (StorageRuntimeException e)
       {
@@ -911,7 +1107,7 @@ class VerifyJob
           logger.trace("Error reading VLV index %s for entry %s: %s",
               vlvIndex.getName(), entry.getName(), StaticUtils.getBacktrace(e));
         }
-        errorCount++;
+        errorCount.incrementAndGet();
       }
     }
   }
@@ -937,7 +1133,7 @@ class VerifyJob
       if (cr == ConditionResult.FALSE)
       {
         logger.error(ERR_VERIFY_MISSING_ID, entryID.longValue(), keyDump(index, key));
-        errorCount++;
+        errorCount.incrementAndGet();
       }
       else if (cr == ConditionResult.UNDEFINED)
       {
@@ -952,7 +1148,7 @@ class VerifyJob
 
         logger.trace("Error reading tree: %s%n%s", e.getMessage(), keyDump(index, key));
       }
-      errorCount++;
+      errorCount.incrementAndGet();
     }
   }
 
@@ -1056,7 +1252,7 @@ class VerifyJob
     @Override
     public void run()
     {
-      long latestCount = keyCount;
+      long latestCount = keyCount.get();
       long deltaCount = latestCount - previousCount;
       long latestTime = System.currentTimeMillis();
       long deltaTime = latestTime - previousTime;
@@ -1068,7 +1264,7 @@ class VerifyJob
 
       float rate = 1000f*deltaCount / deltaTime;
 
-      logger.info(NOTE_VERIFY_PROGRESS_REPORT, latestCount, totalCount, errorCount, rate);
+      logger.info(NOTE_VERIFY_PROGRESS_REPORT, latestCount, totalCount, errorCount.get(), rate);
 
       try
       {
@@ -25,6 +25,8 @@
  */
 package org.opends.server.backends.pluggable.spi;
 
+import java.util.SortedMap;
+
 import org.forgerock.opendj.ldap.ByteSequence;
 
 /**
@@ -77,6 +79,22 @@ public interface WriteableTransaction extends ReadableTransaction
    */
   boolean update(TreeName treeName, ByteSequence key, UpdateFunction f);
 
+  /**
+   * Atomically adds, deletes, or replaces the records with the provided keys according to the new
+   * values computed by their update functions, as if {@link #update(TreeName, ByteSequence, UpdateFunction)}
+   * was called for each key in turn, in the order of the keys. Storage engines are not required to
+   * batch the updates: they may simply update each key in turn, reusing the resources (cursor,
+   * exchange) opened for the tree. Each record is read once, and is only written when its update
+   * function changes it.
+   *
+   * @param treeName
+   *          the tree name
+   * @param updates
+   *          the update functions of the records, sorted by key
+   * @see UpdateFunction#computeNewValue(ByteSequence)
+   */
+  void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates);
+
   /**
    * Deletes the record with the provided key, in the tree whose name is provided.
    *
@@ -4183,6 +4183,15 @@ public final class ConfigConstants
 
 
 
+  /**
+   * The name of the attribute in an export task definition that specifies the
+   * thread count to be used during the export.
+   */
+  public static final String ATTR_TASK_EXPORT_THREAD_COUNT =
+       NAME_PREFIX_TASK + "export-thread-count";
+
+
+
   /**
    * The name of the objectclass that will be used for a Directory Server
    * restore task definition.
@@ -48,6 +48,7 @@ import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.util.Utils;
@@ -67,6 +68,7 @@ import org.opends.server.api.plugin.InternalDirectoryServerPlugin;
 import org.opends.server.api.plugin.PluginResult;
 import org.opends.server.api.plugin.PluginResult.PostOperation;
 import org.opends.server.api.plugin.PluginType;
+import org.opends.server.monitors.StaticGroupMonitor;
 import org.opends.server.protocols.internal.InternalClientConnection;
 import org.opends.server.protocols.internal.InternalSearchOperation;
 import org.opends.server.protocols.internal.SearchRequest;
@@ -115,6 +117,13 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private volatile long refreshToken;
 
+  /**
+   * Incremented each time group memberships may have changed, either because
+   * group instances have been registered or deregistered, or because the
+   * members of a group instance have been updated in place.
+   */
+  private volatile long membershipToken;
+
   /**
    * A mapping between the DNs of the config entries and the associated group
    * implementations.
@@ -127,6 +136,12 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private DITCacheMap<Group<?>> groupInstances;
 
+  /** The reverse index of the memberships of the group instances. */
+  private final GroupMembershipIndex membershipIndex = new GroupMembershipIndex();
+
+  /** The monitor reporting the members of the static groups. */
+  private final StaticGroupMonitor staticGroupMonitor = new StaticGroupMonitor(this);
+
   /** Lock to protect internal data structures. */
   private final ReentrantReadWriteLock lock;
 
@@ -215,6 +230,8 @@ public class GroupManager extends InternalDirectoryServerPlugin
         }
       }
     }
+
+    DirectoryServer.registerMonitorProvider(staticGroupMonitor);
   }
 
 
@@ -312,6 +329,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           if (g.getClass().getName().equals(group.getClass().getName()))
           {
             iterator.remove();
+            unindexGroup(g);
           }
         }
       }
@@ -379,6 +397,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
               if (g.getClass().getName().equals(group.getClass().getName()))
               {
                 iterator.remove();
+                unindexGroup(g);
               }
             }
           }
@@ -500,6 +519,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
   {
     DirectoryServer.deregisterInternalPlugin(this);
     DirectoryServer.deregisterBackendInitializationListener(this);
+    DirectoryServer.deregisterMonitorProvider(staticGroupMonitor);
 
     deregisterAllGroups();
 
@@ -550,6 +570,26 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
 
 
+  /**
+   * Retrieves the number of group instances defined in the server.
+   *
+   * @return  The number of group instances defined in the server.
+   */
+  public int getGroupCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return groupInstances.size();
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
   /**
    * Retrieves the group instance defined in the entry with the specified DN.
    *
@@ -646,7 +686,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
             try
             {
               Group<?> groupInstance = groupImplementation.newInstance(null, entry);
-              groupInstances.put(entry.getName(), groupInstance);
+              putGroupInstance(entry.getName(), groupInstance);
               refreshToken++;
             }
             catch (DirectoryException e)
@@ -684,6 +724,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (backend.handlesEntry(groupEntryDN))
         {
           iterator.remove();
+          unindexGroup(mapEntry.getValue());
         }
       }
     }
@@ -753,8 +794,13 @@ public class GroupManager extends InternalDirectoryServerPlugin
     lock.writeLock().lock();
     try
     {
-      if (groupInstances.removeSubtree(entry.getName(), null))
+      Set<Group<?>> groupSet = new HashSet<>();
+      if (groupInstances.removeSubtree(entry.getName(), groupSet))
       {
+        for (Group<?> group : groupSet)
+        {
+          unindexGroup(group);
+        }
         refreshToken++;
       }
     }
@@ -803,7 +849,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (! oldEntry.getName().equals(newEntry.getName()))
         {
           // This should never happen, but check for it anyway.
-          groupInstances.remove(oldEntry.getName());
+          unindexGroup(groupInstances.remove(oldEntry.getName()));
         }
         createAndRegisterGroup(newEntry);
       }
@@ -842,8 +888,9 @@ public class GroupManager extends InternalDirectoryServerPlugin
       {
         final DN groupDN = group.getGroupDN();
         final DN renamedGroupDN = groupDN.rename(oldDN, newDN);
+        unindexGroup(group);
         group.setGroupDN(renamedGroupDN);
-        groupInstances.put(renamedGroupDN, group);
+        putGroupInstance(renamedGroupDN, group);
       }
       if (!groupSet.isEmpty())
       {
@@ -998,7 +1045,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           lock.writeLock().lock();
           try
           {
-            groupInstances.put(entry.getName(), groupInstance);
+            putGroupInstance(entry.getName(), groupInstance);
             refreshToken++;
           }
           finally
@@ -1027,6 +1074,85 @@ public class GroupManager extends InternalDirectoryServerPlugin
     try
     {
       groupInstances.clear();
+      membershipIndex.clear();
+      membershipToken++;
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Registers a group instance, replacing any group instance registered with
+   * the same DN, and indexes its members. The write lock must be held.
+   */
+  private void putGroupInstance(DN groupDN, Group<?> group)
+  {
+    unindexGroup(groupInstances.put(groupDN, group));
+    membershipIndex.addGroup(group);
+    membershipToken++;
+  }
+
+  /**
+   * Removes the members of a deregistered group instance from the membership
+   * index. The write lock must be held.
+   */
+  private void unindexGroup(Group<?> group)
+  {
+    if (group != null)
+    {
+      membershipIndex.removeGroup(group.getGroupDN());
+      membershipToken++;
+    }
+  }
+
+  /**
+   * Indicates that a member has been added in place to a registered static
+   * group instance, so that the membership index is updated.
+   *
+   * @param group
+   *          The group instance whose members have changed.
+   * @param memberDN
+   *          The DN of the member added to the group.
+   */
+  public void groupMemberAdded(Group<?> group, CompactDn memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      if (groupInstances.get(group.getGroupDN()) == group)
+      {
+        membershipIndex.addMember(group.getGroupDN(), memberDN);
+      }
+      membershipToken++;
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Indicates that a member has been removed in place from a registered
+   * static group instance, so that the membership index is updated.
+   *
+   * @param group
+   *          The group instance whose members have changed.
+   * @param memberDN
+   *          The DN of the member removed from the group.
+   */
+  public void groupMemberRemoved(Group<?> group, CompactDn memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      if (groupInstances.get(group.getGroupDN()) == group)
+      {
+        membershipIndex.removeMember(group.getGroupDN(), memberDN);
+      }
+      membershipToken++;
     }
     finally
     {
@@ -1034,6 +1160,76 @@ public class GroupManager extends InternalDirectoryServerPlugin
     }
   }
 
+  /**
+   * Retrieves the DNs of the groups the provided user entry is a member of,
+   * either directly or through nested groups. Static group memberships are
+   * read from a reverse index of their members, so the cost of this method
+   * does not depend on the number of static groups.
+   *
+   * @param userEntry
+   *          The entry of the user.
+   * @return The DNs of the groups the user is a member of.
+   */
+  public Set<DN> getGroupMemberships(Entry userEntry)
+  {
+    return getGroupMemberships(userEntry.getName(), userEntry);
+  }
+
+  /**
+   * Retrieves the DNs of the groups the user with the provided DN is a member
+   * of, either directly or through nested groups.
+   *
+   * @param userDN
+   *          The DN of the user.
+   * @return The DNs of the groups the user is a member of.
+   * @see #getGroupMemberships(Entry)
+   */
+  public Set<DN> getGroupMemberships(DN userDN)
+  {
+    return getGroupMemberships(userDN, null);
+  }
+
+  private Set<DN> getGroupMemberships(DN userDN, Entry userEntry)
+  {
+    final List<Group<?>> nonIndexedGroups;
+    lock.readLock().lock();
+    try
+    {
+      nonIndexedGroups = membershipIndex.getNonIndexedGroups();
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+
+    // Dynamic groups may need to read entries, do not hold the lock meanwhile
+    final List<DN> nonIndexedGroupDNs = new ArrayList<>();
+    for (Group<?> group : nonIndexedGroups)
+    {
+      try
+      {
+        if (userEntry != null ? group.isMember(userEntry) : group.isMember(userDN))
+        {
+          nonIndexedGroupDNs.add(group.getGroupDN());
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+
+    lock.readLock().lock();
+    try
+    {
+      return membershipIndex.getGroups(userDN, nonIndexedGroupDNs);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
 
   /**
    * Compare the specified token against the current group manager
@@ -1058,5 +1254,16 @@ public class GroupManager extends InternalDirectoryServerPlugin
   public long refreshToken() {
     return this.refreshToken;
   }
+
+  /**
+   * Return the current membership token value, which changes each time group
+   * memberships may have changed. Can be used to discard cached group
+   * memberships.
+   *
+   * @return The current membership token value.
+   */
+  public long membershipToken() {
+    return this.membershipToken;
+  }
 }
 
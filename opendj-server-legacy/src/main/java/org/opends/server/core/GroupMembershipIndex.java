@@ -0,0 +1,248 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forgerock.opendj.adapter.server3x.Converters;
+import org.forgerock.opendj.ldap.DN.CompactDn;
+import org.opends.server.api.Group;
+import org.opends.server.extensions.StaticGroup;
+import org.opends.server.types.DN;
+
+/**
+ * A reverse index of the static group memberships, mapping the DN of each
+ * member explicitly listed by a static group to the DNs of the static groups
+ * listing it. Nested memberships are resolved by walking this index upwards
+ * from the member, instead of asking each group instance whether it contains
+ * the member.
+ * <p>
+ * Groups which do not list their members explicitly, such as dynamic and
+ * virtual static groups, cannot be indexed and must be evaluated for each
+ * member. Static groups listing more than {@link #MAX_INDEXED_MEMBERS} members
+ * are not indexed either, because their compact member set already answers
+ * membership checks cheaply and indexing them would hold an index entry per
+ * member.
+ * <p>
+ * This class is not thread safe: the group manager holds its write lock when
+ * updating the index, and its read lock when reading it.
+ */
+final class GroupMembershipIndex
+{
+  /** The maximum number of members of a static group for it to be indexed. */
+  static final int MAX_INDEXED_MEMBERS = 10000;
+
+  /** The DNs of the static groups explicitly listing each member. */
+  private final Map<CompactDn, Set<DN>> groupsByMember = new HashMap<>();
+
+  /**
+   * The DNs of the members recorded in this index for each indexed static
+   * group, so that a group is removed from this index whatever its current
+   * members are.
+   */
+  private final Map<DN, Set<CompactDn>> membersByGroup = new HashMap<>();
+
+  /** The groups which are not indexed and must be evaluated for each member, keyed by DN. */
+  private final Map<DN, Group<?>> nonIndexedGroups = new HashMap<>();
+
+  /** A snapshot of the values of {@link #nonIndexedGroups}. */
+  private List<Group<?>> nonIndexedGroupList = Collections.emptyList();
+
+  /**
+   * Adds the members of a group instance to this index.
+   *
+   * @param group
+   *          The registered group instance.
+   */
+  void addGroup(Group<?> group)
+  {
+    final DN groupDN = group.getGroupDN();
+    if (group instanceof StaticGroup && ((StaticGroup) group).getMemberCount() <= MAX_INDEXED_MEMBERS)
+    {
+      membersByGroup.put(groupDN, new HashSet<CompactDn>());
+      for (CompactDn memberDN : ((StaticGroup) group).getMemberDNs())
+      {
+        addMember(groupDN, memberDN);
+      }
+    }
+    else
+    {
+      nonIndexedGroups.put(groupDN, group);
+      nonIndexedGroupList = new ArrayList<>(nonIndexedGroups.values());
+    }
+  }
+
+  /**
+   * Removes a group from this index, along with all the members recorded for
+   * it. The members of the group instance are not read, as they may have
+   * changed since they were last reported to this index.
+   *
+   * @param groupDN
+   *          The DN of the deregistered group.
+   */
+  void removeGroup(DN groupDN)
+  {
+    if (nonIndexedGroups.remove(groupDN) != null)
+    {
+      nonIndexedGroupList = new ArrayList<>(nonIndexedGroups.values());
+      return;
+    }
+    final Set<CompactDn> memberDNs = membersByGroup.remove(groupDN);
+    if (memberDNs != null)
+    {
+      for (CompactDn memberDN : memberDNs)
+      {
+        removeListingGroup(memberDN, groupDN);
+      }
+    }
+  }
+
+  /**
+   * Records that a static group explicitly lists a member. Members of groups
+   * which are not indexed are ignored.
+   *
+   * @param groupDN
+   *          The DN of the static group.
+   * @param memberDN
+   *          The DN of the member.
+   */
+  void addMember(DN groupDN, CompactDn memberDN)
+  {
+    if (nonIndexedGroups.containsKey(groupDN))
+    {
+      return;
+    }
+    Set<CompactDn> memberDNs = membersByGroup.get(groupDN);
+    if (memberDNs == null)
+    {
+      memberDNs = new HashSet<>();
+      membersByGroup.put(groupDN, memberDNs);
+    }
+    memberDNs.add(memberDN);
+
+    Set<DN> groupDNs = groupsByMember.get(memberDN);
+    if (groupDNs == null)
+    {
+      groupDNs = new HashSet<>(2);
+      groupsByMember.put(memberDN, groupDNs);
+    }
+    groupDNs.add(groupDN);
+  }
+
+  /**
+   * Records that a static group no longer lists a member.
+   *
+   * @param groupDN
+   *          The DN of the static group.
+   * @param memberDN
+   *          The DN of the member.
+   */
+  void removeMember(DN groupDN, CompactDn memberDN)
+  {
+    final Set<CompactDn> memberDNs = membersByGroup.get(groupDN);
+    if (memberDNs != null && memberDNs.remove(memberDN))
+    {
+      removeListingGroup(memberDN, groupDN);
+    }
+  }
+
+  private void removeListingGroup(CompactDn memberDN, DN groupDN)
+  {
+    final Set<DN> groupDNs = groupsByMember.get(memberDN);
+    if (groupDNs != null && groupDNs.remove(groupDN) && groupDNs.isEmpty())
+    {
+      groupsByMember.remove(memberDN);
+    }
+  }
+
+  /** Removes all the groups from this index. */
+  void clear()
+  {
+    groupsByMember.clear();
+    membersByGroup.clear();
+    nonIndexedGroups.clear();
+    nonIndexedGroupList = Collections.emptyList();
+  }
+
+  /**
+   * Returns the groups which do not list their members explicitly and must be
+   * evaluated for each member.
+   *
+   * @return An unmodifiable snapshot of the groups not indexed.
+   */
+  List<Group<?>> getNonIndexedGroups()
+  {
+    return Collections.unmodifiableList(nonIndexedGroupList);
+  }
+
+  /**
+   * Returns the DNs of the groups a member belongs to, either directly or
+   * through nested groups.
+   *
+   * @param memberDN
+   *          The DN of the member.
+   * @param nonIndexedGroupDNs
+   *          The DNs of the groups not indexed which contain the member.
+   * @return The DNs of the groups the member belongs to.
+   */
+  Set<DN> getGroups(DN memberDN, Collection<DN> nonIndexedGroupDNs)
+  {
+    final Set<DN> groupDNs = new LinkedHashSet<>(nonIndexedGroupDNs);
+    final Deque<DN> toVisit = new ArrayDeque<>(nonIndexedGroupDNs);
+    addListingGroups(memberDN, groupDNs, toVisit);
+    DN groupDN;
+    while ((groupDN = toVisit.poll()) != null)
+    {
+      addListingGroups(groupDN, groupDNs, toVisit);
+    }
+    return groupDNs;
+  }
+
+  private void addListingGroups(DN memberDN, Set<DN> groupDNs, Deque<DN> toVisit)
+  {
+    final Set<DN> listingGroupDNs = groupsByMember.get(Converters.from(memberDN).compact());
+    if (listingGroupDNs != null)
+    {
+      for (DN groupDN : listingGroupDNs)
+      {
+        if (groupDNs.add(groupDN))
+        {
+          toVisit.add(groupDN);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A semaphore bounding the number of operations held by a work queue, whose number of permits can be reduced when
+ * the capacity of the queue is reduced.
+ */
+final class CapacitySemaphore extends Semaphore
+{
+  private static final long serialVersionUID = 4306815185843914734L;
+
+  /** Creates a new semaphore without any permits, which are released once the capacity of the queue is known. */
+  CapacitySemaphore()
+  {
+    super(0);
+  }
+
+  @Override
+  protected void reducePermits(int reduction)
+  {
+    super.reducePermits(reduction);
+  }
+}
@@ -0,0 +1,593 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.ElasticWorkQueueCfg;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.ElasticWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * This class defines a Directory Server work queue which runs each operation
+ * on its own thread, up to a maximum number of concurrent operations.
+ * <p>
+ * Unlike the traditional work queue, this work queue does not rely on a fixed
+ * number of worker threads: threads are created on demand when operations are
+ * submitted and are discarded once they have been idle for some time. This
+ * prevents operations blocked on I/O or on remote servers from starving the
+ * other operations, as long as the maximum number of concurrent operations is
+ * not reached.
+ */
+public class ElasticWorkQueue extends WorkQueue<ElasticWorkQueueCfg>
+    implements ConfigurationChangeListener<ElasticWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The number of seconds an idle thread waits for a new operation before exiting. */
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+  /** The executor running the operations. */
+  private ThreadPoolExecutor executor;
+
+  /** The operations currently being processed. */
+  private final Set<Operation> activeOperations =
+      Collections.newSetFromMap(new ConcurrentHashMap<Operation, Boolean>());
+
+  /** The number of operations that have been submitted to the work queue for processing. */
+  private final AtomicLong opsSubmitted = new AtomicLong();
+
+  /**
+   * The number of times that an attempt to submit a new request has been
+   * rejected because the work queue is already at its maximum capacity.
+   */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /** The largest number of operations which have been processed concurrently. */
+  private final AtomicInteger peakActiveOperations = new AtomicInteger();
+
+  /**
+   * The available capacity of the work queue, one permit per operation which
+   * may still be waiting for a thread.
+   */
+  private final CapacitySemaphore capacity = new CapacitySemaphore();
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The maximum number of operations processed concurrently. */
+  private volatile int maxConcurrentOperations;
+
+  /**
+   * The maximum number of pending requests that this work queue will allow
+   * before it will start rejecting them.
+   */
+  private volatile int maxCapacity;
+
+  /**
+   * The queue overflow policy: true indicates that operations will be blocked
+   * until the queue has available capacity, otherwise operations will be
+   * rejected.
+   * <p>
+   * This is hard-coded to true for now because a reject on full policy does not
+   * seem to have a valid use case.
+   * </p>
+   */
+  private final boolean isBlocking = true;
+
+
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public ElasticWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeWorkQueue(ElasticWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+
+    // Register to be notified of any configuration changes.
+    configuration.addElasticChangeListener(this);
+
+    // Get the necessary configuration from the provided entry.
+    maxConcurrentOperations = configuration.getMaxConcurrentOperations();
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    capacity.release(maxCapacity);
+
+    // Threads are created on demand up to the core pool size, and all of them
+    // are discarded after being idle for a while.
+    executor = new ThreadPoolExecutor(maxConcurrentOperations, maxConcurrentOperations,
+        THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new DirectoryThread.Factory("Worker Thread"));
+    executor.allowCoreThreadTimeOut(true);
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      ElasticWorkQueueMonitor monitor = new ElasticWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, ElasticWorkQueueMonitor.class, e);
+    }
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // Send responses to any operations in the pending queue to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    List<Runnable> pendingTasks = new ArrayList<>();
+    executor.getQueue().drainTo(pendingTasks);
+    for (Runnable task : pendingTasks)
+    {
+      Operation o = ((OperationTask) task).operation;
+      try
+      {
+        // The operation has no chance of responding to the cancel
+        // request so avoid waiting for a cancel response.
+        if (o.getCancelResult() == null)
+        {
+          o.abort(cancelRequest);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+
+    // Cancel the operations in progress and let the threads exit once they
+    // are done.
+    executor.shutdown();
+    cancelRequest = new CancelRequest(true, INFO_CANCELED_BY_SHUTDOWN.get());
+    for (Operation o : activeOperations)
+    {
+      try
+      {
+        o.cancel(cancelRequest);
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+      }
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has recieved a request to shut
+   *         down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+
+
+  /**
+   * Submits an operation to be processed on its own thread.
+   *
+   * @param operation
+   *          The operation to be processed.
+   * @throws DirectoryException
+   *           If the provided operation is not accepted for some reason (e.g.,
+   *           if the server is shutting down or the pending operation queue is
+   *           already at its maximum capacity).
+   */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, isBlocking);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean trySubmitOperation(Operation operation)
+      throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation,
+      boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+
+    if (blockEnqueuingWhenFull)
+    {
+      try
+      {
+        // Periodically wake up in order to notice a shutdown.
+        while (!capacity.tryAcquire(1, TimeUnit.SECONDS))
+        {
+          if (shutdownRequested)
+          {
+            LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+            throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+          }
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // We cannot handle the interruption here. Reject the request and
+        // re-interrupt this thread.
+        Thread.currentThread().interrupt();
+
+        queueFullRejects.incrementAndGet();
+
+        LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get();
+        throw new DirectoryException(ResultCode.BUSY, message);
+      }
+    }
+    else if (!capacity.tryAcquire())
+    {
+      queueFullRejects.incrementAndGet();
+
+      LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity);
+      throw new DirectoryException(ResultCode.BUSY, message);
+    }
+
+    try
+    {
+      executor.execute(new OperationTask(operation));
+    }
+    catch (RejectedExecutionException e)
+    {
+      // The executor has been shut down concurrently.
+      capacity.release();
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+    opsSubmitted.incrementAndGet();
+  }
+
+
+
+  /** Processes an operation, making sure that the client receives a response. */
+  private void process(Operation operation)
+  {
+    activeOperations.add(operation);
+    // The operation is no longer waiting for a thread.
+    capacity.release();
+
+    int active = activeOperations.size();
+    int peak;
+    while (active > (peak = peakActiveOperations.get())
+        && !peakActiveOperations.compareAndSet(peak, active))
+    {
+      // Retry until the peak is updated or a larger peak has been recorded.
+    }
+
+    try
+    {
+      operation.run();
+      operation.operationCompleted();
+    }
+    catch (Throwable t)
+    {
+      String threadName = Thread.currentThread().getName();
+      if (logger.isTraceEnabled())
+      {
+        logger.trace(
+          "Uncaught exception in worker thread while processing " +
+              "operation %s: %s", operation, t);
+        logger.traceException(t);
+      }
+
+      try
+      {
+        LocalizableMessage message =
+            ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(threadName, operation, stackTraceToSingleLineString(t));
+        logger.error(message);
+
+        // Ensure that the client receives some kind of result so that it does
+        // not hang.
+        operation.setResultCode(DirectoryServer.getServerErrorResultCode());
+        operation.appendErrorMessage(message);
+        operation.getClientConnection().sendResponse(operation);
+      }
+      catch (Throwable t2)
+      {
+        if (logger.isTraceEnabled())
+        {
+          logger.trace(
+            "Exception in worker thread while trying to log a " +
+                "message about an uncaught exception %s: %s", t, t2);
+
+          logger.traceException(t2);
+        }
+      }
+
+      try
+      {
+        LocalizableMessage message = ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(
+            threadName, operation, stackTraceToSingleLineString(t));
+
+        operation.disconnectClient(DisconnectReason.SERVER_ERROR, true, message);
+      }
+      catch (Throwable t2)
+      {
+        logger.traceException(t2);
+      }
+    }
+    finally
+    {
+      activeOperations.remove(operation);
+    }
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup. This does
+   * not include operations that have been rejected for some reason like the
+   * queue already at its maximum capacity.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    return opsSubmitted.longValue();
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.longValue();
+  }
+
+
+
+  /**
+   * Retrieves the number of pending operations in the queue that are waiting
+   * for a thread to process them.
+   *
+   * @return The number of pending operations in the queue that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    return Math.max(0, maxCapacity - capacity.availablePermits());
+  }
+
+
+
+  /**
+   * Retrieves the number of operations currently being processed.
+   *
+   * @return The number of operations currently being processed.
+   */
+  public int getActiveOperations()
+  {
+    return activeOperations.size();
+  }
+
+
+
+  /**
+   * Retrieves the largest number of operations which have been processed
+   * concurrently since startup.
+   *
+   * @return The largest number of operations which have been processed
+   *         concurrently since startup.
+   */
+  public int getPeakActiveOperations()
+  {
+    return peakActiveOperations.get();
+  }
+
+
+
+  /**
+   * Retrieves the number of threads currently available for processing
+   * operations, whether they are busy or idle.
+   *
+   * @return The number of threads currently available for processing
+   *         operations.
+   */
+  public int getPoolSize()
+  {
+    return executor.getPoolSize();
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of operations that can be processed
+   * concurrently.
+   *
+   * @return The maximum number of operations that can be processed
+   *         concurrently.
+   */
+  public int getMaxConcurrentOperations()
+  {
+    return maxConcurrentOperations;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      ElasticWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized ConfigChangeResult applyConfigurationChange(
+      ElasticWorkQueueCfg configuration)
+  {
+    int newMaxConcurrentOperations = configuration.getMaxConcurrentOperations();
+    int newMaxCapacity = configuration.getMaxWorkQueueCapacity();
+
+    // Apply a change to the maximum number of concurrent operations if
+    // appropriate. Extra threads exit once their current operation completes.
+    if (newMaxConcurrentOperations > maxConcurrentOperations)
+    {
+      executor.setMaximumPoolSize(newMaxConcurrentOperations);
+      executor.setCorePoolSize(newMaxConcurrentOperations);
+    }
+    else if (newMaxConcurrentOperations < maxConcurrentOperations)
+    {
+      executor.setCorePoolSize(newMaxConcurrentOperations);
+      executor.setMaximumPoolSize(newMaxConcurrentOperations);
+    }
+    maxConcurrentOperations = newMaxConcurrentOperations;
+
+    // Apply a change to the maximum capacity if appropriate. Operations
+    // already queued beyond a reduced capacity are kept, and new operations
+    // are blocked until the backlog has dropped below the new capacity.
+    if (newMaxCapacity > maxCapacity)
+    {
+      capacity.release(newMaxCapacity - maxCapacity);
+    }
+    else if (newMaxCapacity < maxCapacity)
+    {
+      capacity.reducePermits(maxCapacity - newMaxCapacity);
+    }
+    maxCapacity = newMaxCapacity;
+
+    return new ConfigChangeResult();
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdle()
+  {
+    return size() == 0 && activeOperations.isEmpty();
+  }
+
+  /**
+   * Return the maximum number of threads used by this WorkQueue.
+   *
+   * @return the maximum number of threads used by this WorkQueue
+   */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return maxConcurrentOperations;
+  }
+
+  /** The task processing an operation on a thread of the executor. */
+  private final class OperationTask implements Runnable
+  {
+    private final Operation operation;
+
+    private OperationTask(Operation operation)
+    {
+      this.operation = operation;
+    }
+
+    @Override
+    public void run()
+    {
+      process(operation);
+    }
+  }
+}
@@ -38,10 +38,12 @@ import java.util.SortedSet;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizableMessageDescriptor;
+import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.types.Attribute;
 import org.opends.server.types.Attributes;
 import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.opends.server.types.SearchFilter;
 
@@ -427,5 +429,32 @@ public class EntryCacheCommon
     return attrs;
   }
 
-}
+  /**
+   * Estimates the amount of memory used by the provided entry when it is held
+   * in an entry cache. The estimate accounts for the entry DN and for the
+   * attribute values plus a fixed overhead per object, which is accurate
+   * enough to bound the memory used by the cache without having to serialize
+   * the entry.
+   *
+   * @param entry  The entry for which to estimate the size.
+   *
+   * @return  The estimated size of the entry, in bytes.
+   */
+  public static long estimateEntrySize(Entry entry)
+  {
+    // Entry, CacheEntry, DN and cache bookkeeping objects.
+    long size = 256 + 2L * entry.getName().toString().length();
+    for (Attribute attribute : entry.getAttributes())
+    {
+      // Attribute object and its value set.
+      size += 96;
+      for (ByteString value : attribute)
+      {
+        // ByteString object and its backing array.
+        size += 48 + value.length();
+      }
+    }
+    return size;
+  }
 
+}
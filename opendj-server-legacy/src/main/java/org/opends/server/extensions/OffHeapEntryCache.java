@@ -0,0 +1,848 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.OffHeapEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.CompressedSchema;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which stores the cached
+ * entries outside of the JVM heap, so that the size of the cache does not
+ * impact the garbage collector.
+ * <BR><BR>
+ * Entries are encoded with the same encoding as the one used by the backends
+ * to store them, which tokenizes the attribute descriptions and object class
+ * sets with the server compressed schema. The encoded entries are appended to
+ * a ring of fixed size slabs allocated in direct memory, and they are only
+ * decoded when they are read from the cache. Only the DN, backend ID, entry ID
+ * and location of each cached entry are held on the heap.
+ * <BR><BR>
+ * When the slab being written is full, the next slab of the ring is recycled:
+ * all the entries it holds are removed from the cache at once. This makes the
+ * eviction policy a FIFO at the slab granularity, and it avoids any memory
+ * fragmentation. Readers copy the encoded entry out of its slab while holding
+ * the slab read lock, which prevents the slab from being recycled underneath
+ * them.
+ */
+public class OffHeapEntryCache
+       extends EntryCache<OffHeapEntryCacheCfg>
+       implements ConfigurationChangeListener<OffHeapEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The number of slabs the cache memory is split into, unless slabs would be larger than the maximum size. */
+  private static final int DEFAULT_SLAB_COUNT = 16;
+
+  /** The maximum size of a slab. */
+  private static final int MAX_SLAB_SIZE = 1 << 30;
+
+  /** Initial size of the per-thread buffers used to encode entries. */
+  private static final int BUFFER_INIT_SIZE = 512;
+
+  /** The per-thread buffers used to encode entries. */
+  private static final ThreadLocal<ByteStringBuilder> ENCODE_BUFFER = new ThreadLocal<ByteStringBuilder>()
+  {
+    @Override
+    protected ByteStringBuilder initialValue()
+    {
+      return new ByteStringBuilder(BUFFER_INIT_SIZE);
+    }
+  };
+
+  /** The mapping between DNs and cached entry locations. */
+  private final ConcurrentMap<DN, Location> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and cached entry locations. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Location>> idMap = new ConcurrentHashMap<>();
+
+  /** Lock serializing the writers and guarding the slabs ring. */
+  private final ReentrantLock allocationLock = new ReentrantLock();
+
+  /** The ring of slabs holding the encoded entries, guarded by the allocation lock. */
+  private Slab[] slabs = new Slab[0];
+
+  /** Index of the slab currently being written, guarded by the allocation lock. */
+  private int currentSlab;
+
+  /** The maximum number of entries which may be held in each slab. */
+  private long maxEntriesPerSlab;
+
+  /** The size of each slab, which is also the maximum size of a cached entry. */
+  private volatile int slabSize;
+
+  /** The number of bytes used in the slabs. */
+  private final AtomicLong cacheSize = new AtomicLong();
+
+  /** The configuration used to encode the cached entries. */
+  private volatile EntryEncodeConfig encodeConfig;
+
+  /** The maximum amount of direct memory used by this cache. */
+  private volatile long maxMemorySize;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private OffHeapEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this off-heap entry cache. */
+  public OffHeapEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(OffHeapEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addOffHeapChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_OFFHEAPCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeOffHeapChangeListener(this);
+
+    // Release all memory currently in use by this cache. The direct memory
+    // will be freed once the slabs are garbage collected.
+    allocationLock.lock();
+    try
+    {
+      clear();
+      slabs = new Slab[0];
+      slabSize = 0;
+      maxEntries = 0;
+      maxMemorySize = 0;
+    }
+    finally
+    {
+      allocationLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    Location location = dnMap.get(entryDN);
+    if (location != null)
+    {
+      Entry entry = decode(location);
+      if (entry != null)
+      {
+        // Indicate cache hit.
+        cacheHits.getAndIncrement();
+        return entry;
+      }
+    }
+    // Indicate cache miss.
+    cacheMisses.getAndIncrement();
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    Location location = dnMap.get(entryDN);
+    return location != null ? location.entryID : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    Map<Long, Location> backendMap = idMap.get(backendID);
+    if (backendMap != null)
+    {
+      Location location = backendMap.get(entryID);
+      if (location != null)
+      {
+        return location.dn;
+      }
+    }
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    byte[] encodedEntry = encode(entry);
+    if (encodedEntry == null)
+    {
+      return;
+    }
+
+    allocationLock.lock();
+    try
+    {
+      store(entry.getName(), backendID, entryID, encodedEntry);
+    }
+    finally
+    {
+      allocationLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    if (dnMap.containsKey(entry.getName()))
+    {
+      return false;
+    }
+
+    byte[] encodedEntry = encode(entry);
+    if (encodedEntry == null)
+    {
+      // We'll always return true in this case, even if we didn't actually add
+      // the entry due to memory constraints.
+      return true;
+    }
+
+    allocationLock.lock();
+    try
+    {
+      if (dnMap.containsKey(entry.getName()))
+      {
+        return false;
+      }
+      store(entry.getName(), backendID, entryID, encodedEntry);
+      return true;
+    }
+    finally
+    {
+      allocationLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    // The encoded entry stays in its slab until the slab gets recycled.
+    Location location = dnMap.remove(entryDN);
+    if (location != null)
+    {
+      removeFromIDMap(location);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    allocationLock.lock();
+    try
+    {
+      for (Slab slab : slabs)
+      {
+        recycle(slab);
+      }
+      currentSlab = 0;
+    }
+    finally
+    {
+      allocationLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    Map<Long, Location> map = idMap.remove(backendID);
+    if (map == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (Location location : map.values())
+    {
+      dnMap.remove(location.dn, location);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    Map<Long, Location> map = idMap.get(backend.getBackendID());
+    if (map != null)
+    {
+      for (Location location : map.values())
+      {
+        if (location.dn.isDescendantOf(baseDN))
+        {
+          map.remove(location.entryID, location);
+          dnMap.remove(location.dn, location);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    // The cached entries are not held on the heap, but their keys are. Drop
+    // 10% of the slabs, starting with the oldest ones.
+    allocationLock.lock();
+    try
+    {
+      int numToDrop = Math.max(1, slabs.length / 10);
+      for (int i = 1; i <= slabs.length && numToDrop > 0; i++)
+      {
+        Slab slab = slabs[(currentSlab + i) % slabs.length];
+        if (!slab.locations.isEmpty())
+        {
+          recycle(slab);
+          numToDrop--;
+        }
+      }
+    }
+    finally
+    {
+      allocationLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    OffHeapEntryCacheCfg config = (OffHeapEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      OffHeapEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons)
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(OffHeapEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      OffHeapEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxEntries = configuration.getMaxEntries();
+    long newMaxMemorySize = configuration.getMaxMemorySize();
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable()
+        && (newMaxEntries != maxEntries || newMaxMemorySize != maxMemorySize))
+    {
+      allocationLock.lock();
+      try
+      {
+        clear();
+        slabs = new Slab[0];
+        slabSize = 0;
+        maxEntries = 0;
+        maxMemorySize = 0;
+        allocateSlabs(newMaxEntries, newMaxMemorySize);
+        maxEntries = newMaxEntries;
+        maxMemorySize = newMaxMemorySize;
+      }
+      catch (OutOfMemoryError e)
+      {
+        logger.traceException(e);
+        slabs = new Slab[0];
+        errorHandler.reportError(
+            ERR_OFFHEAPCACHE_CANNOT_ALLOCATE_MEMORY.get(newMaxMemorySize, stackTraceToSingleLineString(e)),
+            false, DirectoryServer.getServerErrorResultCode());
+      }
+      finally
+      {
+        allocationLock.unlock();
+      }
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      encodeConfig = new EntryEncodeConfig(false, true, true, DirectoryServer.getDefaultCompressedSchema());
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /**
+   * Splits the cache memory into slabs. There are never more slabs than the
+   * maximum number of entries, so that each slab holds at least one entry.
+   * The caller must hold the allocation lock.
+   */
+  private void allocateSlabs(long newMaxEntries, long newMaxMemorySize)
+  {
+    long slabCount = Math.max(DEFAULT_SLAB_COUNT, (newMaxMemorySize + MAX_SLAB_SIZE - 1) / MAX_SLAB_SIZE);
+    slabCount = Math.max(1, Math.min(slabCount, newMaxEntries));
+    int newSlabSize = (int) Math.min(MAX_SLAB_SIZE, newMaxMemorySize / slabCount);
+    Slab[] newSlabs = new Slab[(int) slabCount];
+    for (int i = 0; i < newSlabs.length; i++)
+    {
+      newSlabs[i] = new Slab(ByteBuffer.allocateDirect(newSlabSize));
+    }
+    slabs = newSlabs;
+    slabSize = newSlabSize;
+    currentSlab = 0;
+    maxEntriesPerSlab = newMaxEntries / slabCount;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      return EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        Long.valueOf(cacheMisses.longValue()),
+        Long.valueOf(cacheSize.longValue()),
+        Long.valueOf(maxMemorySize),
+        Long.valueOf(dnMap.size()),
+        Long.valueOf(
+            (maxEntries != Integer.MAX_VALUE && maxEntries != Long.MAX_VALUE) ? maxEntries : 0)
+        );
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check dnMap first.
+    for (Location location : dnMap.values()) {
+      sb.append(location.dn);
+      sb.append(":");
+      sb.append(location.entryID);
+      sb.append(":");
+      sb.append(location.backendID);
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Location>> backendCache : idMap.entrySet()) {
+      for (Location location : backendCache.getValue().values()) {
+        if (dnMap.get(location.dn) != location) {
+          sb.append(location.dn);
+          sb.append(":");
+          sb.append(location.entryID);
+          sb.append(":");
+          sb.append(backendCache.getKey());
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  /**
+   * Encodes the provided entry, returning {@code null} if it cannot be encoded
+   * or if it is too large to fit in a slab.
+   */
+  private byte[] encode(Entry entry)
+  {
+    final ByteStringBuilder buffer = ENCODE_BUFFER.get();
+    try
+    {
+      buffer.clear();
+      entry.encode(buffer, encodeConfig);
+      return buffer.length() <= slabSize ? buffer.toByteArray() : null;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+    finally
+    {
+      buffer.clearAndTruncate(BUFFER_INIT_SIZE, BUFFER_INIT_SIZE);
+    }
+  }
+
+  /**
+   * Decodes the entry stored at the provided location, returning {@code null}
+   * if the slab holding it has been recycled in the meantime.
+   */
+  private Entry decode(Location location)
+  {
+    final byte[] encodedEntry = new byte[location.length];
+    final Slab slab = location.slab;
+    slab.lock.readLock().lock();
+    try
+    {
+      if (slab.generation != location.generation)
+      {
+        return null;
+      }
+      final ByteBuffer buffer = slab.buffer.duplicate();
+      buffer.position(location.offset);
+      buffer.get(encodedEntry);
+    }
+    finally
+    {
+      slab.lock.readLock().unlock();
+    }
+
+    try
+    {
+      final CompressedSchema compressedSchema = encodeConfig.getCompressedSchema();
+      return Entry.decode(ByteString.wrap(encodedEntry).asReader(), compressedSchema);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      if (dnMap.remove(location.dn, location))
+      {
+        removeFromIDMap(location);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Appends the provided encoded entry to the current slab, moving to the
+   * next slab of the ring if the current one is full. The caller must hold
+   * the allocation lock.
+   */
+  private void store(DN dn, String backendID, long entryID, byte[] encodedEntry)
+  {
+    if (slabs.length == 0)
+    {
+      return;
+    }
+
+    Slab slab = slabs[currentSlab];
+    if (slab.writeOffset + encodedEntry.length > slab.buffer.capacity()
+        || slab.locations.size() >= maxEntriesPerSlab)
+    {
+      currentSlab = (currentSlab + 1) % slabs.length;
+      slab = slabs[currentSlab];
+      recycle(slab);
+      if (encodedEntry.length > slab.buffer.capacity())
+      {
+        return;
+      }
+    }
+
+    // The bytes after the write offset are not visible to the readers, which
+    // will only see them once the location has been published in the maps.
+    final ByteBuffer buffer = slab.buffer.duplicate();
+    buffer.position(slab.writeOffset);
+    buffer.put(encodedEntry);
+
+    final Location location = new Location(
+        dn, backendID, entryID, slab, slab.generation, slab.writeOffset, encodedEntry.length);
+    slab.writeOffset += encodedEntry.length;
+    slab.locations.add(location);
+    cacheSize.addAndGet(encodedEntry.length);
+
+    final Location previous = dnMap.put(dn, location);
+    if (previous != null)
+    {
+      removeFromIDMap(previous);
+    }
+    getBackendMap(backendID).put(entryID, location);
+  }
+
+  /**
+   * Removes all the entries held by the provided slab from the cache and
+   * makes it available for new entries. The caller must hold the allocation
+   * lock.
+   */
+  private void recycle(Slab slab)
+  {
+    slab.lock.writeLock().lock();
+    try
+    {
+      slab.generation++;
+    }
+    finally
+    {
+      slab.lock.writeLock().unlock();
+    }
+
+    for (Location location : slab.locations)
+    {
+      if (dnMap.remove(location.dn, location))
+      {
+        removeFromIDMap(location);
+      }
+    }
+    slab.locations.clear();
+    cacheSize.addAndGet(-slab.writeOffset);
+    slab.writeOffset = 0;
+  }
+
+  private void removeFromIDMap(Location location)
+  {
+    Map<Long, Location> map = idMap.get(location.backendID);
+    if (map != null)
+    {
+      map.remove(location.entryID, location);
+    }
+  }
+
+  private ConcurrentMap<Long, Location> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, Location> map = idMap.get(backendID);
+    if (map == null)
+    {
+      map = new ConcurrentHashMap<>();
+      ConcurrentMap<Long, Location> existingMap = idMap.putIfAbsent(backendID, map);
+      if (existingMap != null)
+      {
+        map = existingMap;
+      }
+    }
+    return map;
+  }
+
+  /** A region of direct memory holding encoded entries. */
+  private static final class Slab
+  {
+    private final ByteBuffer buffer;
+    /** Prevents the slab from being recycled while entries are read from it. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Incremented each time the slab is recycled, guarded by the lock. */
+    private int generation;
+    /** The following fields are guarded by the allocation lock. */
+    private int writeOffset;
+    private final List<Location> locations = new ArrayList<>();
+
+    Slab(ByteBuffer buffer)
+    {
+      this.buffer = buffer;
+    }
+  }
+
+  /** The location of an encoded entry in the slabs. */
+  private static final class Location
+  {
+    private final DN dn;
+    private final String backendID;
+    private final long entryID;
+    private final Slab slab;
+    private final int generation;
+    private final int offset;
+    private final int length;
+
+    Location(DN dn, String backendID, long entryID, Slab slab, int generation, int offset, int length)
+    {
+      this.dn = dn;
+      this.backendID = backendID;
+      this.entryID = entryID;
+      this.slab = slab;
+      this.generation = generation;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
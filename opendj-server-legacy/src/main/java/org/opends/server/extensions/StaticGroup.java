@@ -26,14 +26,13 @@
  */
 package org.opends.server.extensions;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.forgerock.i18n.LocalizableMessage;
-import org.forgerock.i18n.LocalizedIllegalArgumentException;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.adapter.server3x.Converters;
 import org.forgerock.opendj.config.server.ConfigException;
@@ -46,6 +45,7 @@ import org.opends.server.admin.std.server.GroupImplementationCfg;
 import org.opends.server.admin.std.server.StaticGroupImplementationCfg;
 import org.opends.server.api.Group;
 import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.GroupManager;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.ModifyOperationBasis;
 import org.opends.server.core.ServerContext;
@@ -95,11 +95,15 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   /** The DN of the entry that holds the definition for this group. */
   private DN groupEntryDN;
 
-  /** The set of the DNs of the members for this group. */
-  private LinkedHashSet<CompactDn> memberDNs;
+  /**
+   * The set of the DNs of the members for this group. Readers use the current
+   * snapshot without locking, writers replace it while holding the lock on
+   * this group.
+   */
+  private volatile StaticGroupMemberSet memberDNs;
 
   /** The list of nested group DNs for this group. */
-  private LinkedList<DN> nestedGroups = new LinkedList<>();
+  private volatile LinkedList<DN> nestedGroups = new LinkedList<>();
 
   /** Passed to the group manager to see if the nested group list needs to be refreshed. */
   private long nestedGroupRefreshToken = DirectoryServer.getGroupManager().refreshToken();
@@ -126,7 +130,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
    *                              group.
    */
   private StaticGroup(ServerContext serverContext, DN groupEntryDN, AttributeType memberAttributeType,
-      LinkedHashSet<CompactDn> memberDNs)
+      StaticGroupMemberSet memberDNs)
   {
     super();
     ifNull(groupEntryDN, memberAttributeType, memberDNs);
@@ -197,15 +201,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     }
 
     List<Attribute> memberAttrList = groupEntry.getAttribute(someMemberAttributeType);
-    int membersCount = 0;
-    if (memberAttrList != null)
-    {
-      for (Attribute a : memberAttrList)
-      {
-        membersCount += a.size();
-      }
-    }
-    LinkedHashSet<CompactDn> someMemberDNs = new LinkedHashSet<>(membersCount);
+    List<DN> someMemberDNs = new ArrayList<>();
     if (memberAttrList != null)
     {
       for (Attribute a : memberAttrList)
@@ -214,9 +210,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         {
           try
           {
-            someMemberDNs.add(org.forgerock.opendj.ldap.DN.valueOf(v.toString()).compact());
+            someMemberDNs.add(DN.decode(v));
           }
-          catch (LocalizedIllegalArgumentException e)
+          catch (DirectoryException e)
           {
             logger.traceException(e);
             logger.error(ERR_STATICGROUP_CANNOT_DECODE_MEMBER_VALUE_AS_DN, v,
@@ -225,7 +221,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         }
       }
     }
-    return new StaticGroup(serverContext, groupEntry.getName(), someMemberAttributeType, someMemberDNs);
+    return new StaticGroup(serverContext, groupEntry.getName(), someMemberAttributeType,
+        StaticGroupMemberSet.valueOf(someMemberDNs));
   }
 
   /** {@inheritDoc} */
@@ -337,10 +334,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newNestedGroups.add(nestedGroupDN);
       nestedGroups = newNestedGroups;
       //Add it to the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.add(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.with(nestedGroupDN);
     }
+    getGroupManager().groupMemberAdded(this, toCompactDn(nestedGroupDN));
   }
 
   /** {@inheritDoc} */
@@ -371,10 +367,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newNestedGroups.remove(nestedGroupDN);
       nestedGroups = newNestedGroups;
       //Remove it from the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.without(nestedGroupDN);
     }
+    getGroupManager().groupMemberRemoved(this, toCompactDn(nestedGroupDN));
   }
 
   /** {@inheritDoc} */
@@ -382,8 +377,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   public boolean isMember(DN userDN, Set<DN> examinedGroups) throws DirectoryException
   {
     reloadIfNeeded();
-    CompactDn compactUserDN = toCompactDn(userDN);
-    if (memberDNs.contains(compactUserDN))
+    if (memberDNs.contains(userDN))
     {
       return true;
     }
@@ -430,30 +424,48 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         if (thisGroup == null) {
           throw new DirectoryException(ResultCode.NO_SUCH_ATTRIBUTE,
                   ERR_STATICGROUP_GROUP_INSTANCE_INVALID.get(groupEntryDN));
+        } else if (thisGroup != this && thisGroup instanceof StaticGroup) {
+          memberDNs = ((StaticGroup) thisGroup).memberDNs;
         } else if (thisGroup != this) {
-          LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>();
+          List<DN> newMemberDNs = new ArrayList<>();
           MemberList memberList = thisGroup.getMembers();
           while (memberList.hasMoreMembers())
           {
             try
             {
-              newMemberDNs.add(toCompactDn(memberList.nextMemberDN()));
+              newMemberDNs.add(memberList.nextMemberDN());
             }
             catch (MembershipException ex)
             {
               // TODO: should we throw an exception there instead of silently fail ?
             }
           }
-          memberDNs = newMemberDNs;
+          memberDNs = StaticGroupMemberSet.valueOf(newMemberDNs);
         }
+        // Iterate over the smaller of the member set and the group instances,
+        // as either of them may be very large.
         LinkedList<DN> newNestedGroups = new LinkedList<>();
-        for (CompactDn compactDn : memberDNs)
+        StaticGroupMemberSet members = memberDNs;
+        GroupManager groupManager = DirectoryServer.getGroupManager();
+        if (members.size() < groupManager.getGroupCount())
         {
-          DN dn = fromCompactDn(compactDn);
-          Group<?> group = DirectoryServer.getGroupManager().getGroupInstance(dn);
-          if (group != null)
+          for (CompactDn compactMemberDN : members)
           {
-            newNestedGroups.add(group.getGroupDN());
+            DN memberDN = fromCompactDn(compactMemberDN);
+            if (groupManager.getGroupInstance(memberDN) != null)
+            {
+              newNestedGroups.add(memberDN);
+            }
+          }
+        }
+        else
+        {
+          for (Group<?> group : groupManager.getGroupInstances())
+          {
+            if (members.contains(group.getGroupDN()))
+            {
+              newNestedGroups.add(group.getGroupDN());
+            }
           }
         }
         nestedGroupRefreshToken = DirectoryServer.getGroupManager().refreshToken();
@@ -462,6 +474,40 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     }
   }
 
+  /**
+   * Retrieves the DNs of the members explicitly listed by this group, without
+   * expanding the members of its nested groups.
+   *
+   * @return An unmodifiable view of the DNs of the members listed by this
+   *         group.
+   */
+  public Set<CompactDn> getMemberDNs()
+  {
+    return memberDNs;
+  }
+
+  /**
+   * Retrieves the number of members explicitly listed by this group.
+   *
+   * @return The number of members explicitly listed by this group.
+   */
+  public int getMemberCount()
+  {
+    return memberDNs.size();
+  }
+
+  /**
+   * Retrieves an estimate of the memory used to hold the members explicitly
+   * listed by this group.
+   *
+   * @return An estimate of the memory used by the members of this group, in
+   *         bytes.
+   */
+  public long getMemberMemoryUsage()
+  {
+    return memberDNs.getMemoryUsage();
+  }
+
   /** {@inheritDoc} */
   @Override
   public MemberList getMembers() throws DirectoryException
@@ -498,9 +544,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     synchronized (this)
     {
       DN userDN = userEntry.getName();
-      CompactDn compactUserDN = toCompactDn(userDN);
 
-      if (memberDNs.contains(compactUserDN))
+      if (memberDNs.contains(userDN))
       {
         LocalizableMessage message = ERR_STATICGROUP_ADD_MEMBER_ALREADY_EXISTS.get(userDN, groupEntryDN);
         throw new DirectoryException(ResultCode.ATTRIBUTE_OR_VALUE_EXISTS, message);
@@ -514,10 +559,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_ADD_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<CompactDn>(memberDNs);
-      newMemberDNs.add(compactUserDN);
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.with(userDN);
     }
+    getGroupManager().groupMemberAdded(this, toCompactDn(userEntry.getName()));
   }
 
   /** {@inheritDoc} */
@@ -526,10 +570,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     ifNull(userDN);
 
-    CompactDn compactUserDN = toCompactDn(userDN);
     synchronized (this)
     {
-      if (! memberDNs.contains(compactUserDN))
+      if (! memberDNs.contains(userDN))
       {
         LocalizableMessage message = ERR_STATICGROUP_REMOVE_MEMBER_NO_SUCH_MEMBER.get(userDN, groupEntryDN);
         throw new DirectoryException(ResultCode.NO_SUCH_ATTRIBUTE, message);
@@ -543,9 +586,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_REMOVE_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(compactUserDN);
-      memberDNs = newMemberDNs;
+      memberDNs = memberDNs.without(userDN);
       //If it is in the nested group list remove it.
       if(nestedGroups.contains(userDN)) {
         LinkedList<DN> newNestedGroups = new LinkedList<>(nestedGroups);
@@ -553,6 +594,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         nestedGroups = newNestedGroups;
       }
     }
+    getGroupManager().groupMemberRemoved(this, toCompactDn(userDN));
   }
 
   private ModifyOperation newModifyOperation(ModificationType modType, DN userDN)
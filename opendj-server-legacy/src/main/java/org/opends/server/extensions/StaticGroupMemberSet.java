@@ -0,0 +1,522 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.DN.CompactDn;
+import org.opends.server.types.DN;
+
+/**
+ * An immutable set of the DNs of the members of a static group, stored in a
+ * compact form suitable for groups with millions of members.
+ * <p>
+ * The members are packed in byte arrays sorted by normalized DN, each member
+ * costing its normalized DN, its user provided DN and a few bytes, instead of
+ * several objects per member. Lookups are binary searches which do not need
+ * any lock, since instances are never modified.
+ * <p>
+ * Adding or removing a member returns a new set sharing the sorted members of
+ * this set, and recording the change in small sorted arrays of added and
+ * removed members. These arrays are merged into the sorted members once they
+ * grow larger than the square root of the number of members, so that an
+ * update costs O(sqrt(n)) amortized instead of a copy of the whole set.
+ */
+final class StaticGroupMemberSet extends AbstractSet<CompactDn>
+{
+  /** The empty set. */
+  static final StaticGroupMemberSet EMPTY =
+      new StaticGroupMemberSet(PackedMembers.EMPTY, PackedMembers.EMPTY, PackedMembers.EMPTY);
+
+  /** The minimum number of changes recorded before they are merged into the sorted members. */
+  private static final int MIN_MERGE_THRESHOLD = 64;
+
+  /** An estimate of the memory used by the header of an object. */
+  private static final int OBJECT_OVERHEAD = 16;
+
+  /** The sorted members. */
+  private final PackedMembers members;
+
+  /** The members added since the last merge, which are not in {@link #members}. */
+  private final PackedMembers added;
+
+  /** The members of {@link #members} removed since the last merge, without their user provided DN. */
+  private final PackedMembers removed;
+
+  private StaticGroupMemberSet(PackedMembers members, PackedMembers added, PackedMembers removed)
+  {
+    this.members = members;
+    this.added = added;
+    this.removed = removed;
+  }
+
+  /**
+   * Creates a new set containing the provided DNs.
+   *
+   * @param dns
+   *          The DNs of the members, which may contain duplicates.
+   * @return A new set containing the provided DNs.
+   */
+  static StaticGroupMemberSet valueOf(Collection<DN> dns)
+  {
+    final List<byte[]> entries = new ArrayList<>(dns.size());
+    for (DN dn : dns)
+    {
+      entries.add(encodeEntry(dn.toNormalizedByteString(), getBytes(dn.toString())));
+    }
+    Collections.sort(entries, new Comparator<byte[]>()
+    {
+      @Override
+      public int compare(byte[] entry1, byte[] entry2)
+      {
+        return compareKeys(entry1, 0, entry2, 0);
+      }
+    });
+
+    final ByteStringBuilder data = new ByteStringBuilder();
+    final int[] offsets = new int[entries.size()];
+    int count = 0;
+    byte[] previous = null;
+    for (byte[] entry : entries)
+    {
+      if (previous == null || compareKeys(previous, 0, entry, 0) != 0)
+      {
+        offsets[count++] = data.length();
+        data.appendBytes(entry);
+        previous = entry;
+      }
+    }
+    if (count == 0)
+    {
+      return EMPTY;
+    }
+    return new StaticGroupMemberSet(
+        new PackedMembers(data.toByteArray(), Arrays.copyOf(offsets, count)), PackedMembers.EMPTY, PackedMembers.EMPTY);
+  }
+
+  /**
+   * Indicates whether this set contains the provided DN.
+   *
+   * @param dn
+   *          The DN to look for.
+   * @return {@code true} if this set contains the provided DN.
+   */
+  boolean contains(DN dn)
+  {
+    final ByteString key = dn.toNormalizedByteString();
+    if (added.indexOf(key) >= 0)
+    {
+      return true;
+    }
+    return members.indexOf(key) >= 0 && removed.indexOf(key) < 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean contains(Object o)
+  {
+    return o instanceof CompactDn && contains(StaticGroup.fromCompactDn((CompactDn) o));
+  }
+
+  /**
+   * Returns a set containing the members of this set and the provided DN.
+   *
+   * @param dn
+   *          The DN to add.
+   * @return A set containing the members of this set and the provided DN,
+   *         which is this set if it already contains the DN.
+   */
+  StaticGroupMemberSet with(DN dn)
+  {
+    final ByteString key = dn.toNormalizedByteString();
+    if (added.indexOf(key) >= 0)
+    {
+      return this;
+    }
+    final int memberIndex = members.indexOf(key);
+    if (memberIndex >= 0)
+    {
+      final int removedIndex = removed.indexOf(key);
+      return removedIndex < 0 ? this : newSet(added, removed.delete(removedIndex));
+    }
+    final int addedIndex = added.indexOf(key);
+    return newSet(added.insert(-addedIndex - 1, encodeEntry(key, getBytes(dn.toString()))), removed);
+  }
+
+  /**
+   * Returns a set containing the members of this set except the provided DN.
+   *
+   * @param dn
+   *          The DN to remove.
+   * @return A set containing the members of this set except the provided DN,
+   *         which is this set if it does not contain the DN.
+   */
+  StaticGroupMemberSet without(DN dn)
+  {
+    final ByteString key = dn.toNormalizedByteString();
+    final int addedIndex = added.indexOf(key);
+    if (addedIndex >= 0)
+    {
+      return newSet(added.delete(addedIndex), removed);
+    }
+    final int removedIndex = removed.indexOf(key);
+    if (members.indexOf(key) < 0 || removedIndex >= 0)
+    {
+      return this;
+    }
+    return newSet(added, removed.insert(-removedIndex - 1, encodeEntry(key, new byte[0])));
+  }
+
+  private StaticGroupMemberSet newSet(PackedMembers newAdded, PackedMembers newRemoved)
+  {
+    final int changes = newAdded.size() + newRemoved.size();
+    if (changes > Math.max(MIN_MERGE_THRESHOLD, (int) Math.sqrt(members.size())))
+    {
+      return new StaticGroupMemberSet(merge(members, newAdded, newRemoved), PackedMembers.EMPTY, PackedMembers.EMPTY);
+    }
+    return new StaticGroupMemberSet(members, newAdded, newRemoved);
+  }
+
+  private static PackedMembers merge(PackedMembers members, PackedMembers added, PackedMembers removed)
+  {
+    final int count = members.size() + added.size() - removed.size();
+    if (count == 0)
+    {
+      return PackedMembers.EMPTY;
+    }
+    final ByteStringBuilder data = new ByteStringBuilder(members.data.length + added.data.length);
+    final int[] offsets = new int[count];
+    int i = 0, a = 0, r = 0, n = 0;
+    while (i < members.size() || a < added.size())
+    {
+      if (i < members.size() && r < removed.size() && members.compareKeys(i, removed, r) == 0)
+      {
+        i++;
+        r++;
+      }
+      else if (a >= added.size() || (i < members.size() && members.compareKeys(i, added, a) < 0))
+      {
+        offsets[n++] = data.length();
+        members.appendEntry(i++, data);
+      }
+      else
+      {
+        offsets[n++] = data.length();
+        added.appendEntry(a++, data);
+      }
+    }
+    return new PackedMembers(data.toByteArray(), offsets);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size()
+  {
+    return members.size() - removed.size() + added.size();
+  }
+
+  /**
+   * Returns an estimate of the memory used by this set, in bytes.
+   *
+   * @return An estimate of the memory used by this set, in bytes.
+   */
+  long getMemoryUsage()
+  {
+    return OBJECT_OVERHEAD + members.getMemoryUsage() + added.getMemoryUsage() + removed.getMemoryUsage();
+  }
+
+  /**
+   * Returns an iterator over the members of this set, in the order of their
+   * normalized DNs.
+   *
+   * @return An iterator over the members of this set.
+   */
+  @Override
+  public Iterator<CompactDn> iterator()
+  {
+    return new Iterator<CompactDn>()
+    {
+      private int i;
+      private int a;
+      private int r;
+
+      @Override
+      public boolean hasNext()
+      {
+        skipRemoved();
+        return i < members.size() || a < added.size();
+      }
+
+      @Override
+      public CompactDn next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        final String dn;
+        if (a >= added.size() || (i < members.size() && members.compareKeys(i, added, a) < 0))
+        {
+          dn = members.getDN(i++);
+        }
+        else
+        {
+          dn = added.getDN(a++);
+        }
+        return org.forgerock.opendj.ldap.DN.valueOf(dn).compact();
+      }
+
+      private void skipRemoved()
+      {
+        while (i < members.size() && r < removed.size())
+        {
+          final int c = members.compareKeys(i, removed, r);
+          if (c == 0)
+          {
+            i++;
+            r++;
+          }
+          else if (c > 0)
+          {
+            r++;
+          }
+          else
+          {
+            return;
+          }
+        }
+      }
+
+      @Override
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static byte[] encodeEntry(ByteSequence key, byte[] dn)
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder(key.length() + dn.length + 10);
+    builder.appendBERLength(key.length());
+    builder.appendBytes(key);
+    builder.appendBERLength(dn.length);
+    builder.appendBytes(dn);
+    return builder.toByteArray();
+  }
+
+  /** Reads the BER encoded length at the provided position. */
+  private static int readLength(byte[] data, int pos)
+  {
+    final int first = data[pos] & 0xFF;
+    if ((first & 0x80) == 0)
+    {
+      return first;
+    }
+    int length = 0;
+    for (int i = 1; i <= (first & 0x7F); i++)
+    {
+      length = (length << 8) | (data[pos + i] & 0xFF);
+    }
+    return length;
+  }
+
+  /** Returns the number of bytes used by the BER encoded length at the provided position. */
+  private static int lengthSize(byte[] data, int pos)
+  {
+    final int first = data[pos] & 0xFF;
+    return (first & 0x80) == 0 ? 1 : 1 + (first & 0x7F);
+  }
+
+  /** Compares the keys of the entries starting at the provided positions, as unsigned bytes. */
+  private static int compareKeys(byte[] data1, int pos1, byte[] data2, int pos2)
+  {
+    final int length1 = readLength(data1, pos1);
+    final int length2 = readLength(data2, pos2);
+    final int start1 = pos1 + lengthSize(data1, pos1);
+    final int start2 = pos2 + lengthSize(data2, pos2);
+    for (int i = 0; i < length1 && i < length2; i++)
+    {
+      final int c = (data1[start1 + i] & 0xFF) - (data2[start2 + i] & 0xFF);
+      if (c != 0)
+      {
+        return c;
+      }
+    }
+    return length1 - length2;
+  }
+
+  /**
+   * Members packed in a single byte array, sorted by normalized DN. Each
+   * member is encoded as the BER length and the bytes of its normalized DN,
+   * followed by the BER length and the UTF-8 bytes of its user provided DN.
+   */
+  private static final class PackedMembers
+  {
+    private static final PackedMembers EMPTY = new PackedMembers(new byte[0], new int[0]);
+
+    /** The encoded members. */
+    private final byte[] data;
+    /** The offset of each member in {@link #data}. */
+    private final int[] offsets;
+
+    private PackedMembers(byte[] data, int[] offsets)
+    {
+      this.data = data;
+      this.offsets = offsets;
+    }
+
+    private int size()
+    {
+      return offsets.length;
+    }
+
+    private int end(int index)
+    {
+      return index + 1 < offsets.length ? offsets[index + 1] : data.length;
+    }
+
+    private long getMemoryUsage()
+    {
+      return 3 * OBJECT_OVERHEAD + data.length + 4L * offsets.length;
+    }
+
+    /**
+     * Returns the index of the member with the provided normalized DN, or
+     * {@code (-(insertion point) - 1)} if there is none.
+     */
+    private int indexOf(ByteSequence key)
+    {
+      int low = 0;
+      int high = offsets.length - 1;
+      while (low <= high)
+      {
+        final int mid = (low + high) >>> 1;
+        final int c = compareKey(mid, key);
+        if (c < 0)
+        {
+          low = mid + 1;
+        }
+        else if (c > 0)
+        {
+          high = mid - 1;
+        }
+        else
+        {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    private int compareKey(int index, ByteSequence key)
+    {
+      final int pos = offsets[index];
+      final int length = readLength(data, pos);
+      final int start = pos + lengthSize(data, pos);
+      final int keyLength = key.length();
+      for (int i = 0; i < length && i < keyLength; i++)
+      {
+        final int c = (data[start + i] & 0xFF) - (key.byteAt(i) & 0xFF);
+        if (c != 0)
+        {
+          return c;
+        }
+      }
+      return length - keyLength;
+    }
+
+    private int compareKeys(int index, PackedMembers other, int otherIndex)
+    {
+      return StaticGroupMemberSet.compareKeys(data, offsets[index], other.data, other.offsets[otherIndex]);
+    }
+
+    private String getDN(int index)
+    {
+      int pos = offsets[index];
+      pos += lengthSize(data, pos) + readLength(data, pos);
+      final int length = readLength(data, pos);
+      return ByteString.wrap(data, pos + lengthSize(data, pos), length).toString();
+    }
+
+    private void appendEntry(int index, ByteStringBuilder builder)
+    {
+      builder.appendBytes(data, offsets[index], end(index) - offsets[index]);
+    }
+
+    private PackedMembers insert(int index, byte[] entry)
+    {
+      final int pos = index < offsets.length ? offsets[index] : data.length;
+      final byte[] newData = new byte[data.length + entry.length];
+      System.arraycopy(data, 0, newData, 0, pos);
+      System.arraycopy(entry, 0, newData, pos, entry.length);
+      System.arraycopy(data, pos, newData, pos + entry.length, data.length - pos);
+
+      final int[] newOffsets = new int[offsets.length + 1];
+      System.arraycopy(offsets, 0, newOffsets, 0, index);
+      newOffsets[index] = pos;
+      for (int i = index; i < offsets.length; i++)
+      {
+        newOffsets[i + 1] = offsets[i] + entry.length;
+      }
+      return new PackedMembers(newData, newOffsets);
+    }
+
+    private PackedMembers delete(int index)
+    {
+      if (offsets.length == 1)
+      {
+        return EMPTY;
+      }
+      final int pos = offsets[index];
+      final int length = end(index) - pos;
+      final byte[] newData = new byte[data.length - length];
+      System.arraycopy(data, 0, newData, 0, pos);
+      System.arraycopy(data, pos + length, newData, pos, data.length - pos - length);
+
+      final int[] newOffsets = new int[offsets.length - 1];
+      System.arraycopy(offsets, 0, newOffsets, 0, index);
+      for (int i = index + 1; i < offsets.length; i++)
+      {
+        newOffsets[i - 1] = offsets[i] - length;
+      }
+      return new PackedMembers(newData, newOffsets);
+    }
+  }
+}
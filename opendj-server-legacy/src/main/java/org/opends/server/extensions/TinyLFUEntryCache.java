@@ -0,0 +1,1110 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.TinyLFUEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.CacheEntry;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which does not serialize
+ * its readers and writers on a global lock, and which uses the access
+ * frequency of the entries to decide which ones should be kept.
+ * <BR><BR>
+ * Entries are held by concurrent hash maps which are read and updated without
+ * locking. The eviction policy is W-TinyLFU: new entries first go through a
+ * small LRU admission window, then compete for a place in a segmented LRU main
+ * space (probation and protected segments) against the entry which would be
+ * evicted to make room for them. The winner is the entry having the highest
+ * access frequency as estimated by a compact count-min sketch which is
+ * periodically aged. This keeps frequently used entries in the cache even when
+ * large searches stream many entries which are used only once.
+ * <BR><BR>
+ * The policy data structures are not thread safe. Accesses and updates are
+ * recorded in lossy striped read buffers and in a write buffer, which are
+ * replayed against the policy by whichever thread manages to acquire the
+ * eviction lock without waiting for it.
+ * <BR><BR>
+ * The cache is bounded by a maximum number of entries and by a maximum amount
+ * of memory, expressed as the sum of the estimated sizes of the cached entries.
+ */
+public class TinyLFUEntryCache
+       extends EntryCache<TinyLFUEntryCacheCfg>
+       implements ConfigurationChangeListener<TinyLFUEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Percentage of the cache capacity dedicated to the admission window. */
+  private static final int WINDOW_PERCENT = 1;
+
+  /** Percentage of the main space capacity dedicated to the protected segment. */
+  private static final int PROTECTED_PERCENT = 80;
+
+  /** Number of read buffer stripes, must be a power of 2. */
+  private static final int READ_BUFFER_STRIPES =
+      ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+  /** Number of slots of each read buffer stripe, must be a power of 2. */
+  private static final int READ_BUFFER_SIZE = 32;
+
+  /** The mapping between DNs and cached entries. */
+  private final ConcurrentMap<DN, Node> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and cached entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Node>> idMap = new ConcurrentHashMap<>();
+
+  /** Lock guarding the eviction policy data structures. */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  /** Policy updates which have not been applied yet. */
+  private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+
+  /** Lossy striped buffers of accessed entries which have not been applied to the policy yet. */
+  private final AtomicReferenceArray<Node> readBuffer =
+      new AtomicReferenceArray<>(READ_BUFFER_STRIPES * READ_BUFFER_SIZE);
+  private final AtomicLongArray readBufferWriteCounts = new AtomicLongArray(READ_BUFFER_STRIPES);
+  private final AtomicLongArray readBufferReadCounts = new AtomicLongArray(READ_BUFFER_STRIPES);
+
+  /** The LRU admission window, guarded by the eviction lock. */
+  private final AccessOrderDeque window = new AccessOrderDeque();
+
+  /** The main space segment holding entries accessed once since admission, guarded by the eviction lock. */
+  private final AccessOrderDeque probation = new AccessOrderDeque();
+
+  /** The main space segment holding entries accessed several times, guarded by the eviction lock. */
+  private final AccessOrderDeque protectedSegment = new AccessOrderDeque();
+
+  /** The access frequency sketch, guarded by the eviction lock. */
+  private FrequencySketch sketch;
+
+  /** The estimated size of the cached entries, in bytes. */
+  private final AtomicLong cacheSize = new AtomicLong();
+
+  /** Number of entries evicted because the cache was full. */
+  private final AtomicLong cacheEvictions = new AtomicLong();
+
+  /** Number of new entries which were not admitted because they were accessed less frequently than the victims. */
+  private final AtomicLong cacheRejections = new AtomicLong();
+
+  /** The maximum estimated size of the cached entries, in bytes. */
+  private volatile long maxMemorySize;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private TinyLFUEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this TinyLFU entry cache. */
+  public TinyLFUEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(TinyLFUEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addTinyLFUChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_TINYLFUCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeTinyLFUChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    Node node = dnMap.get(entryDN);
+    if (node == null) {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    afterRead(node);
+    return node.cacheEntry.getEntry();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    Node node = dnMap.get(entryDN);
+    return node != null ? node.cacheEntry.getEntryID() : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    Map<Long, Node> backendMap = idMap.get(backendID);
+    if (backendMap != null) {
+      Node node = backendMap.get(entryID);
+      if (node != null) {
+        return node.cacheEntry.getDN();
+      }
+    }
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    Node node = newNode(entry, backendID, entryID);
+    if (node == null)
+    {
+      return;
+    }
+
+    Node previous = dnMap.put(entry.getName(), node);
+    if (previous != null)
+    {
+      retire(previous);
+    }
+    putInIDMap(node);
+    afterWrite(new AddTask(node));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    if (dnMap.containsKey(entry.getName()))
+    {
+      return false;
+    }
+
+    Node node = newNode(entry, backendID, entryID);
+    if (node == null)
+    {
+      // We'll always return true in this case, even if we didn't actually add
+      // the entry due to memory constraints.
+      return true;
+    }
+
+    if (dnMap.putIfAbsent(entry.getName(), node) != null)
+    {
+      return false;
+    }
+    putInIDMap(node);
+    afterWrite(new AddTask(node));
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    Node node = dnMap.remove(entryDN);
+    if (node != null)
+    {
+      retire(node);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    for (Node node : dnMap.values())
+    {
+      if (dnMap.remove(node.dn, node))
+      {
+        retire(node);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    Map<Long, Node> map = idMap.remove(backendID);
+    if (map == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (Node node : map.values())
+    {
+      if (dnMap.remove(node.dn, node))
+      {
+        retire(node);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    Map<Long, Node> map = idMap.get(backend.getBackendID());
+    if (map != null)
+    {
+      for (Node node : map.values())
+      {
+        if (node.dn.isDescendantOf(baseDN) && dnMap.remove(node.dn, node))
+        {
+          retire(node);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    evictionLock.lock();
+    try
+    {
+      drainBuffers();
+
+      // See how many entries are in the cache.  If there are less than 1000,
+      // then we'll dump all of them.  Otherwise, we'll dump 10% of the
+      // entries, starting with the ones the least likely to be used again.
+      int numEntries = dnMap.size();
+      int numToDrop = numEntries < 1000 ? numEntries : numEntries / 10;
+      for (; numToDrop > 0; numToDrop--)
+      {
+        Node victim = firstVictim();
+        if (victim == null)
+        {
+          break;
+        }
+        evict(victim);
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    TinyLFUEntryCacheCfg config = (TinyLFUEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      TinyLFUEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons)
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(TinyLFUEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      TinyLFUEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxEntries = configuration.getMaxEntries();
+    long newMaxMemorySize = configuration.getMaxMemorySize();
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      evictionLock.lock();
+      try
+      {
+        maxEntries = newMaxEntries;
+        maxMemorySize = newMaxMemorySize;
+        sketch = new FrequencySketch(Math.min(newMaxEntries, newMaxMemorySize / 1024));
+        drainBuffers();
+        evictEntries(0);
+      }
+      finally
+      {
+        evictionLock.unlock();
+      }
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      List<Attribute> attrs = EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        Long.valueOf(cacheMisses.longValue()),
+        Long.valueOf(cacheSize.longValue()),
+        Long.valueOf(maxMemorySize),
+        Long.valueOf(dnMap.size()),
+        Long.valueOf(
+            (maxEntries != Integer.MAX_VALUE && maxEntries != Long.MAX_VALUE) ? maxEntries : 0)
+        );
+      attrs.add(Attributes.create("entryCacheEvictions", String.valueOf(cacheEvictions.longValue())));
+      attrs.add(Attributes.create("entryCacheAdmissionRejections", String.valueOf(cacheRejections.longValue())));
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check dnMap first.
+    for (Node node : dnMap.values()) {
+      sb.append(node.dn);
+      sb.append(":");
+      sb.append(node.cacheEntry.getEntryID());
+      sb.append(":");
+      sb.append(node.cacheEntry.getBackendID());
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Node>> backendCache : idMap.entrySet()) {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, Node> entry : backendCache.getValue().entrySet()) {
+        final Node node = entry.getValue();
+        if (dnMap.get(node.dn) != node) {
+          sb.append(node.dn);
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  /**
+   * Returns a new node for the provided entry, or {@code null} if the entry is
+   * too large to ever fit in the cache.
+   */
+  private Node newNode(Entry entry, String backendID, long entryID)
+  {
+    long weight = EntryCacheCommon.estimateEntrySize(entry);
+    if (weight > maxMemorySize || maxEntries <= 0)
+    {
+      cacheRejections.getAndIncrement();
+      return null;
+    }
+    return new Node(new CacheEntry(entry, backendID, entryID), weight);
+  }
+
+  private ConcurrentMap<Long, Node> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, Node> map = idMap.get(backendID);
+    if (map == null)
+    {
+      map = new ConcurrentHashMap<>();
+      ConcurrentMap<Long, Node> existingMap = idMap.putIfAbsent(backendID, map);
+      if (existingMap != null)
+      {
+        map = existingMap;
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Maps the entry ID of the provided node, which has just been added to the DN
+   * map, to the node. The node may have been removed from the DN map and
+   * retired concurrently, before it was added to the ID map: in that case it is
+   * removed from the ID map again, so that it does not outlive its removal.
+   */
+  private void putInIDMap(Node node)
+  {
+    ConcurrentMap<Long, Node> map = getBackendMap(node.cacheEntry.getBackendID());
+    map.put(node.cacheEntry.getEntryID(), node);
+    if (node.isRetired())
+    {
+      map.remove(node.cacheEntry.getEntryID(), node);
+    }
+  }
+
+  /**
+   * Marks the provided node, which has already been removed from the DN map, as
+   * no longer part of the cache and schedules its removal from the policy.
+   */
+  private void retire(Node node)
+  {
+    if (!node.retire())
+    {
+      return;
+    }
+    Map<Long, Node> map = idMap.get(node.cacheEntry.getBackendID());
+    if (map != null)
+    {
+      map.remove(node.cacheEntry.getEntryID(), node);
+    }
+    afterWrite(new RemoveTask(node));
+  }
+
+  /**
+   * Records an access to the provided node in the read buffer of the current
+   * thread. The access is simply dropped if the buffer is full: the frequency
+   * sketch and the LRU ordering do not need to be exact.
+   */
+  private void afterRead(Node node)
+  {
+    final int stripe = (int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1);
+    final long writeCount = readBufferWriteCounts.get(stripe);
+    final long pending = writeCount - readBufferReadCounts.get(stripe);
+    if (pending < READ_BUFFER_SIZE
+        && readBufferWriteCounts.compareAndSet(stripe, writeCount, writeCount + 1))
+    {
+      readBuffer.lazySet(stripe * READ_BUFFER_SIZE + (int) (writeCount & (READ_BUFFER_SIZE - 1)), node);
+    }
+    if (pending >= READ_BUFFER_SIZE / 2)
+    {
+      tryToDrainBuffers();
+    }
+  }
+
+  private void afterWrite(Runnable task)
+  {
+    writeBuffer.add(task);
+    tryToDrainBuffers();
+  }
+
+  /**
+   * Applies the pending reads and writes to the policy if the eviction lock is
+   * available. Tasks added while the lock is held by another thread will be
+   * applied by that thread before it gives up.
+   */
+  private void tryToDrainBuffers()
+  {
+    do
+    {
+      if (!evictionLock.tryLock())
+      {
+        return;
+      }
+      try
+      {
+        drainBuffers();
+      }
+      finally
+      {
+        evictionLock.unlock();
+      }
+    }
+    while (!writeBuffer.isEmpty());
+  }
+
+  /** Applies the pending reads and writes to the policy. The caller must hold the eviction lock. */
+  private void drainBuffers()
+  {
+    for (int stripe = 0; stripe < READ_BUFFER_STRIPES; stripe++)
+    {
+      long readCount = readBufferReadCounts.get(stripe);
+      final long writeCount = readBufferWriteCounts.get(stripe);
+      for (; readCount < writeCount; readCount++)
+      {
+        final int index = stripe * READ_BUFFER_SIZE + (int) (readCount & (READ_BUFFER_SIZE - 1));
+        final Node node = readBuffer.get(index);
+        if (node == null)
+        {
+          // The reader has not published its node yet, we will get it next time
+          break;
+        }
+        readBuffer.lazySet(index, null);
+        onAccess(node);
+      }
+      readBufferReadCounts.lazySet(stripe, readCount);
+    }
+
+    int nbCandidates = 0;
+    Runnable task;
+    while ((task = writeBuffer.poll()) != null)
+    {
+      task.run();
+      if (task instanceof AddTask)
+      {
+        nbCandidates += evictFromWindow();
+      }
+    }
+    evictEntries(nbCandidates);
+  }
+
+  /** Updates the policy after an access to the provided node. The caller must hold the eviction lock. */
+  private void onAccess(Node node)
+  {
+    if (node.owner == null)
+    {
+      // Not yet added or already removed
+      return;
+    }
+    sketch.increment(node.dn.hashCode());
+    if (node.owner == probation)
+    {
+      // Promote the entry to the protected segment
+      probation.remove(node);
+      protectedSegment.addLast(node);
+      final long mainMaxWeight = maxMemorySize - windowMaxWeight();
+      final long mainMaxCount = maxEntries - windowMaxCount();
+      while (protectedSegment.first != null
+          && (protectedSegment.weight > mainMaxWeight * PROTECTED_PERCENT / 100
+              || protectedSegment.count > mainMaxCount * PROTECTED_PERCENT / 100))
+      {
+        final Node demoted = protectedSegment.first;
+        protectedSegment.remove(demoted);
+        probation.addLast(demoted);
+      }
+    }
+    else
+    {
+      node.owner.moveToBack(node);
+    }
+  }
+
+  /**
+   * Moves the entries which overflow the admission window to the probation
+   * segment where they become candidates for admission in the main space. The
+   * caller must hold the eviction lock.
+   *
+   * @return the number of candidates moved to the probation segment.
+   */
+  private int evictFromWindow()
+  {
+    int nbCandidates = 0;
+    while (window.first != null && (window.weight > windowMaxWeight() || window.count > windowMaxCount()))
+    {
+      final Node candidate = window.first;
+      window.remove(candidate);
+      probation.addLast(candidate);
+      nbCandidates++;
+    }
+    return nbCandidates;
+  }
+
+  /**
+   * Evicts entries until the cache fits within its bounds. The most recent
+   * candidates moved out of the admission window are only admitted if they
+   * are accessed more frequently than the victim of the main space. The
+   * caller must hold the eviction lock.
+   */
+  private void evictEntries(int nbCandidates)
+  {
+    Node candidate = nbCandidates > 0 ? probation.last : null;
+    while (cacheSize.get() > maxMemorySize || window.count + probation.count + protectedSegment.count > maxEntries)
+    {
+      final Node victim = firstVictim();
+      if (victim == null)
+      {
+        return;
+      }
+      if (candidate == null || candidate == victim)
+      {
+        candidate = null;
+        evict(victim);
+        continue;
+      }
+
+      nbCandidates--;
+      final Node previous = nbCandidates > 0 ? candidate.prev : null;
+      if (sketch.frequency(candidate.dn.hashCode()) > sketch.frequency(victim.dn.hashCode()))
+      {
+        evict(victim);
+        candidate = previous != victim ? previous : null;
+      }
+      else
+      {
+        evict(candidate);
+        cacheRejections.getAndIncrement();
+        candidate = previous;
+      }
+    }
+  }
+
+  private Node firstVictim()
+  {
+    if (probation.first != null)
+    {
+      return probation.first;
+    }
+    else if (protectedSegment.first != null)
+    {
+      return protectedSegment.first;
+    }
+    return window.first;
+  }
+
+  /** Removes the provided node from the cache and from the policy. The caller must hold the eviction lock. */
+  private void evict(Node node)
+  {
+    if (dnMap.remove(node.dn, node) && node.retire())
+    {
+      Map<Long, Node> map = idMap.get(node.cacheEntry.getBackendID());
+      if (map != null)
+      {
+        map.remove(node.cacheEntry.getEntryID(), node);
+      }
+      cacheEvictions.getAndIncrement();
+    }
+    unlink(node);
+  }
+
+  /** Removes the provided node from the policy. The caller must hold the eviction lock. */
+  private void unlink(Node node)
+  {
+    if (node.owner != null)
+    {
+      node.owner.remove(node);
+      cacheSize.addAndGet(-node.weight);
+    }
+  }
+
+  private long windowMaxWeight()
+  {
+    return maxMemorySize * WINDOW_PERCENT / 100;
+  }
+
+  private long windowMaxCount()
+  {
+    return Math.max(1, maxEntries * WINDOW_PERCENT / 100);
+  }
+
+  private static int ceilingPowerOfTwo(int value)
+  {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  /** Adds a new node to the admission window of the policy. */
+  private final class AddTask implements Runnable
+  {
+    private final Node node;
+
+    AddTask(Node node)
+    {
+      this.node = node;
+    }
+
+    @Override
+    public void run()
+    {
+      if (!node.isRetired())
+      {
+        sketch.increment(node.dn.hashCode());
+        window.addLast(node);
+        cacheSize.addAndGet(node.weight);
+      }
+    }
+  }
+
+  /** Removes a node which is no longer in the cache from the policy. */
+  private final class RemoveTask implements Runnable
+  {
+    private final Node node;
+
+    RemoveTask(Node node)
+    {
+      this.node = node;
+    }
+
+    @Override
+    public void run()
+    {
+      unlink(node);
+    }
+  }
+
+  /** A cached entry along with its policy data, which is guarded by the eviction lock. */
+  private static final class Node
+  {
+    private static final AtomicIntegerFieldUpdater<Node> RETIRED =
+        AtomicIntegerFieldUpdater.newUpdater(Node.class, "retired");
+
+    private final DN dn;
+    private final CacheEntry cacheEntry;
+    private final long weight;
+    /** Whether this node has been removed from the DN map: 0 while it is live, 1 once it has been retired. */
+    private volatile int retired;
+    private AccessOrderDeque owner;
+    private Node prev;
+    private Node next;
+
+    Node(CacheEntry cacheEntry, long weight)
+    {
+      this.dn = cacheEntry.getDN();
+      this.cacheEntry = cacheEntry;
+      this.weight = weight;
+    }
+
+    /**
+     * Marks this node as retired, once it has been removed from the DN map.
+     *
+     * @return {@code true} if this node was live, {@code false} if it had already been retired
+     */
+    boolean retire()
+    {
+      return RETIRED.compareAndSet(this, 0, 1);
+    }
+
+    boolean isRetired()
+    {
+      return retired != 0;
+    }
+  }
+
+  /** A doubly linked list of nodes ordered from the least to the most recently accessed. */
+  private static final class AccessOrderDeque
+  {
+    private Node first;
+    private Node last;
+    private long count;
+    private long weight;
+
+    void addLast(Node node)
+    {
+      node.owner = this;
+      node.prev = last;
+      node.next = null;
+      if (last == null)
+      {
+        first = node;
+      }
+      else
+      {
+        last.next = node;
+      }
+      last = node;
+      count++;
+      weight += node.weight;
+    }
+
+    void remove(Node node)
+    {
+      if (node.prev == null)
+      {
+        first = node.next;
+      }
+      else
+      {
+        node.prev.next = node.next;
+      }
+      if (node.next == null)
+      {
+        last = node.prev;
+      }
+      else
+      {
+        node.next.prev = node.prev;
+      }
+      node.owner = null;
+      node.prev = null;
+      node.next = null;
+      count--;
+      weight -= node.weight;
+    }
+
+    void moveToBack(Node node)
+    {
+      if (node != last)
+      {
+        remove(node);
+        addLast(node);
+      }
+    }
+  }
+
+  /**
+   * A count-min sketch estimating the access frequency of the entries with
+   * 4 bits counters. All the counters are halved once the number of recorded
+   * accesses reaches a sample size proportional to the cache capacity, so
+   * that entries which were popular in the past eventually lose their
+   * advantage.
+   */
+  static final class FrequencySketch
+  {
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_TABLE_SIZE = 1 << 20;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(long expectedEntries)
+    {
+      final int capacity = (int) Math.max(64, Math.min(expectedEntries, MAX_TABLE_SIZE));
+      table = new long[ceilingPowerOfTwo(capacity)];
+      sampleSize = 10 * capacity;
+    }
+
+    int frequency(int hashCode)
+    {
+      final int hash = spread(hashCode);
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++)
+      {
+        final int offset = (start + i) << 2;
+        final int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(int hashCode)
+    {
+      final int hash = spread(hashCode);
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++)
+      {
+        final int index = indexOf(hash, i);
+        final int offset = (start + i) << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask)
+        {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++size == sampleSize)
+      {
+        reset();
+      }
+    }
+
+    private void reset()
+    {
+      for (int i = 0; i < table.length; i++)
+      {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size /= 2;
+    }
+
+    private int indexOf(int hash, int i)
+    {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int) h & (table.length - 1);
+    }
+
+    private static int spread(int x)
+    {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+}
@@ -0,0 +1,661 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.WorkStealingWorkQueueCfg;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.WorkStealingWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * This class defines a Directory Server work queue where each worker thread
+ * has its own queue of pending operations, so that submitting and retrieving
+ * operations does not contend on a single shared queue.
+ * <p>
+ * Operations are queued to the worker thread associated with their client
+ * connection, which keeps the operations of a connection on the same thread
+ * when possible. Worker threads which have no more operations to process steal
+ * the oldest pending operations of the other worker threads.
+ */
+public class WorkStealingWorkQueue extends WorkQueue<WorkStealingWorkQueueCfg>
+    implements ConfigurationChangeListener<WorkStealingWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The length of time idle worker threads wait before checking for a shutdown or a stolen operation. */
+  private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  /**
+   * The set of worker threads that will be used to process this work queue.
+   * Replaced as a whole when the number of worker threads changes.
+   */
+  private volatile WorkStealingWorkerThread[] workerThreads = new WorkStealingWorkerThread[0];
+
+  /** The worker threads waiting for operations to process. */
+  private final ConcurrentLinkedQueue<WorkStealingWorkerThread> idleWorkerThreads = new ConcurrentLinkedQueue<>();
+
+  /** The lock used to serialize initialization, configuration changes and shutdown. */
+  private final Object configLock = new Object();
+
+  /** The number of operations that have been submitted to the work queue for processing. */
+  private final AtomicLong opsSubmitted = new AtomicLong();
+
+  /**
+   * The number of times that an attempt to submit a new request has been
+   * rejected because the work queue is already at its maximum capacity.
+   */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /** The number of operations that have been processed by another worker thread than the one they were queued to. */
+  private final AtomicLong opsStolen = new AtomicLong();
+
+  /** The available capacity of the work queue, one permit per operation which may still be queued. */
+  private final CapacitySemaphore capacity = new CapacitySemaphore();
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The thread number used for the last worker thread that was created. */
+  private int lastThreadNumber;
+
+  /**
+   * The maximum number of pending requests that this work queue will allow
+   * before it will start rejecting them.
+   */
+  private volatile int maxCapacity;
+
+  /**
+   * The queue overflow policy: true indicates that operations will be blocked
+   * until the queue has available capacity, otherwise operations will be
+   * rejected.
+   * <p>
+   * This is hard-coded to true for now because a reject on full policy does not
+   * seem to have a valid use case.
+   * </p>
+   */
+  private final boolean isBlocking = true;
+
+
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public WorkStealingWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeWorkQueue(WorkStealingWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    synchronized (configLock)
+    {
+      shutdownRequested = false;
+
+      // Register to be notified of any configuration changes.
+      configuration.addWorkStealingChangeListener(this);
+
+      // Get the necessary configuration from the provided entry.
+      int numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+      maxCapacity = configuration.getMaxWorkQueueCapacity();
+      capacity.release(maxCapacity);
+
+      // Create the set of worker threads that should be used to service the
+      // work queue.
+      WorkStealingWorkerThread[] newWorkerThreads = new WorkStealingWorkerThread[numWorkerThreads];
+      for (lastThreadNumber = 0; lastThreadNumber < numWorkerThreads; lastThreadNumber++)
+      {
+        newWorkerThreads[lastThreadNumber] = new WorkStealingWorkerThread(this, lastThreadNumber);
+      }
+      workerThreads = newWorkerThreads;
+      for (WorkStealingWorkerThread t : newWorkerThreads)
+      {
+        t.start();
+      }
+
+      // Create and register a monitor provider for the work queue.
+      try
+      {
+        WorkStealingWorkQueueMonitor monitor = new WorkStealingWorkQueueMonitor(this);
+        monitor.initializeMonitorProvider(null);
+        DirectoryServer.registerMonitorProvider(monitor);
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, WorkStealingWorkQueueMonitor.class, e);
+      }
+    }
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    WorkStealingWorkerThread[] threads;
+    synchronized (configLock)
+    {
+      shutdownRequested = true;
+      threads = workerThreads;
+    }
+
+    // From now on no more operations can be enqueued or dequeued.
+
+    // Send responses to any operations in the pending queues to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    for (WorkStealingWorkerThread t : threads)
+    {
+      Operation o;
+      while ((o = t.pollOperation()) != null)
+      {
+        try
+        {
+          // The operation has no chance of responding to the cancel
+          // request so avoid waiting for a cancel response.
+          if (o.getCancelResult() == null)
+          {
+            o.abort(cancelRequest);
+          }
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+          logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+        }
+      }
+    }
+
+    // Notify all the worker threads of the shutdown.
+    for (WorkStealingWorkerThread t : threads)
+    {
+      try
+      {
+        t.shutDown();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_NOTIFY_THREAD, t.getName(), e);
+      }
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has recieved a request to shut
+   *         down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+
+
+  /**
+   * Submits an operation to be processed by one of the worker threads
+   * associated with this work queue.
+   *
+   * @param operation
+   *          The operation to be processed.
+   * @throws DirectoryException
+   *           If the provided operation is not accepted for some reason (e.g.,
+   *           if the server is shutting down or the pending operation queue is
+   *           already at its maximum capacity).
+   */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, isBlocking);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean trySubmitOperation(Operation operation)
+      throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation,
+      boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+
+    if (blockEnqueuingWhenFull)
+    {
+      try
+      {
+        // Periodically wake up in order to notice a shutdown.
+        while (!capacity.tryAcquire(1, TimeUnit.SECONDS))
+        {
+          if (shutdownRequested)
+          {
+            LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+            throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+          }
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // We cannot handle the interruption here. Reject the request and
+        // re-interrupt this thread.
+        Thread.currentThread().interrupt();
+
+        queueFullRejects.incrementAndGet();
+
+        LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get();
+        throw new DirectoryException(ResultCode.BUSY, message);
+      }
+    }
+    else if (!capacity.tryAcquire())
+    {
+      queueFullRejects.incrementAndGet();
+
+      LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity);
+      throw new DirectoryException(ResultCode.BUSY, message);
+    }
+
+    enqueue(operation);
+    opsSubmitted.incrementAndGet();
+
+    if (shutdownRequested && removeOperation(operation))
+    {
+      // The queue has been shut down concurrently and will not process the operation.
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+  }
+
+  /**
+   * Queues the provided operation to the worker thread associated with its
+   * client connection, and makes sure a worker thread will pick it up.
+   */
+  private void enqueue(Operation operation)
+  {
+    WorkStealingWorkerThread[] threads = workerThreads;
+    WorkStealingWorkerThread worker = threads[affinity(operation, threads.length)];
+    worker.offerOperation(operation);
+
+    if (worker.isRetired() && worker.removeOperation(operation))
+    {
+      // The number of worker threads has been reduced concurrently and the
+      // retired worker thread may already have exited.
+      enqueue(operation);
+    }
+    else if (!worker.wakeUpIfIdle())
+    {
+      // The worker thread is busy: wake up an idle worker thread so that it
+      // steals the operation.
+      WorkStealingWorkerThread idleWorker = idleWorkerThreads.poll();
+      if (idleWorker != null)
+      {
+        idleWorker.wakeUpIfIdle();
+      }
+    }
+  }
+
+  private static int affinity(Operation operation, int numWorkerThreads)
+  {
+    // Internal operations use negative connection IDs.
+    return (int) ((operation.getConnectionID() & Long.MAX_VALUE) % numWorkerThreads);
+  }
+
+  private boolean removeOperation(Operation operation)
+  {
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      if (t.removeOperation(operation))
+      {
+        capacity.release();
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+  /**
+   * Retrieves the next operation that should be processed by the provided
+   * worker thread, blocking if necessary until a new request arrives. The
+   * worker thread first processes the operations queued to it, then steals
+   * the operations queued to the other worker threads. This method should
+   * only be called by a worker thread associated with this work queue.
+   *
+   * @param workerThread
+   *          The worker thread that is requesting the operation.
+   * @return The next operation that should be processed, or <CODE>null</CODE>
+   *         if the server is shutting down or if the worker thread has been
+   *         retired because the number of worker threads was reduced.
+   */
+  public Operation nextOperation(WorkStealingWorkerThread workerThread)
+  {
+    while (!shutdownRequested)
+    {
+      Operation nextOperation = pollOrSteal(workerThread);
+      if (nextOperation != null)
+      {
+        return nextOperation;
+      }
+      if (workerThread.isRetired())
+      {
+        // All the operations queued to this thread have been processed. An
+        // operation may still have been queued to it concurrently with its
+        // retirement by a submitter which saw it as not retired yet: hand such
+        // operations over to the remaining worker threads.
+        Operation strandedOperation;
+        while ((strandedOperation = workerThread.pollOperation()) != null)
+        {
+          enqueue(strandedOperation);
+        }
+        return null;
+      }
+
+      // Advertise this worker thread as idle before checking the queues one
+      // last time: a concurrent submitter either sees it idle and wakes it
+      // up, or queued the operation before this last check.
+      workerThread.setIdle(true);
+      idleWorkerThreads.add(workerThread);
+      nextOperation = pollOrSteal(workerThread);
+      if (nextOperation == null && !shutdownRequested)
+      {
+        LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+      }
+      workerThread.setIdle(false);
+      idleWorkerThreads.remove(workerThread);
+      // Clear any interruption, shutdown is checked by the loop.
+      Thread.interrupted();
+
+      if (nextOperation != null)
+      {
+        return nextOperation;
+      }
+    }
+    return null;
+  }
+
+  private Operation pollOrSteal(WorkStealingWorkerThread workerThread)
+  {
+    Operation operation = workerThread.pollOperation();
+    if (operation == null && !workerThread.isRetired())
+    {
+      operation = steal(workerThread);
+    }
+    if (operation != null)
+    {
+      capacity.release();
+    }
+    return operation;
+  }
+
+  /** Steals the oldest operation queued to another worker thread, starting from a random one. */
+  private Operation steal(WorkStealingWorkerThread thief)
+  {
+    WorkStealingWorkerThread[] threads = workerThreads;
+    int start = ThreadLocalRandom.current().nextInt(threads.length);
+    for (int i = 0; i < threads.length; i++)
+    {
+      WorkStealingWorkerThread victim = threads[(start + i) % threads.length];
+      if (victim != thief)
+      {
+        Operation operation = victim.pollOperation();
+        if (operation != null)
+        {
+          opsStolen.incrementAndGet();
+          return operation;
+        }
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup. This does
+   * not include operations that have been rejected for some reason like the
+   * queue already at its maximum capacity.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    return opsSubmitted.longValue();
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.longValue();
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been processed by
+   * another worker thread than the one associated with their client
+   * connection.
+   *
+   * @return The total number of operations that have been stolen by idle
+   *         worker threads since startup.
+   */
+  public long getOpsStolen()
+  {
+    return opsStolen.longValue();
+  }
+
+
+
+  /**
+   * Retrieves the number of pending operations in the queue that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queue that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    return Math.max(0, maxCapacity - capacity.availablePermits());
+  }
+
+
+
+  /**
+   * Retrieves the largest number of pending operations queued to a single
+   * worker thread. Note that this method is not a constant-time operation and
+   * can be relatively inefficient, so it should be used sparingly.
+   *
+   * @return The largest number of pending operations queued to a single worker
+   *         thread.
+   */
+  public int maxWorkerThreadSize()
+  {
+    int max = 0;
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      max = Math.max(max, t.size());
+    }
+    return max;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      WorkStealingWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(
+      WorkStealingWorkQueueCfg configuration)
+  {
+    int newNumThreads =
+        computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    int newMaxCapacity = configuration.getMaxWorkQueueCapacity();
+
+    synchronized (configLock)
+    {
+      if (shutdownRequested)
+      {
+        return new ConfigChangeResult();
+      }
+
+      // Apply a change to the number of worker threads if appropriate.
+      WorkStealingWorkerThread[] currentThreads = workerThreads;
+      if (newNumThreads > currentThreads.length)
+      {
+        WorkStealingWorkerThread[] newThreads = Arrays.copyOf(currentThreads, newNumThreads);
+        for (int i = currentThreads.length; i < newNumThreads; i++)
+        {
+          newThreads[i] = new WorkStealingWorkerThread(this, lastThreadNumber++);
+        }
+        workerThreads = newThreads;
+        for (int i = currentThreads.length; i < newNumThreads; i++)
+        {
+          newThreads[i].start();
+        }
+      }
+      else if (newNumThreads < currentThreads.length)
+      {
+        // The retired worker threads will exit as soon as they have processed
+        // the operations already queued to them.
+        workerThreads = Arrays.copyOf(currentThreads, newNumThreads);
+        for (int i = newNumThreads; i < currentThreads.length; i++)
+        {
+          currentThreads[i].retire();
+        }
+      }
+
+      // Apply a change to the maximum capacity if appropriate. Operations
+      // already queued beyond a reduced capacity are kept, and new operations
+      // are blocked until the backlog has dropped below the new capacity.
+      if (newMaxCapacity > maxCapacity)
+      {
+        capacity.release(newMaxCapacity - maxCapacity);
+      }
+      else if (newMaxCapacity < maxCapacity)
+      {
+        capacity.reducePermits(maxCapacity - newMaxCapacity);
+      }
+      maxCapacity = newMaxCapacity;
+    }
+
+    return new ConfigChangeResult();
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdle()
+  {
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      if (t.size() > 0 || t.isActive())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the number of worker threads used by this WorkQueue.
+   *
+   * @return the number of worker threads used by this WorkQueue
+   */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return workerThreads.length;
+  }
+}
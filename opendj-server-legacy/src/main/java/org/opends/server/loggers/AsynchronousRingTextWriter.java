@@ -0,0 +1,462 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.loggers;
+
+import static org.opends.server.util.ServerConstants.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.ServerShutdownListener;
+import org.opends.server.core.DirectoryServer;
+
+/**
+ * A Text Writer which writes log records asynchronously to a multi-file text
+ * writer, in large blocks.
+ * <p>
+ * Contrary to the {@link AsynchronousTextWriter}, the log records are not
+ * queued as strings: the logging threads reserve a slot in a bounded ring
+ * without locking, and encode the log record in UTF-8 directly into the
+ * reusable byte buffer of this slot. The writer thread then copies the
+ * consecutive published records into a block which is written to the log file
+ * with a single call, so that logging a record does not allocate any memory
+ * once the slot buffers have grown to the usual record size.
+ */
+class AsynchronousRingTextWriter
+    implements ServerShutdownListener, TextWriter
+{
+  /** The initial size in bytes of the slot buffers. */
+  private static final int INITIAL_SLOT_SIZE = 256;
+
+  /** The size above which a slot buffer grown for a large record is released once the record is written. */
+  private static final int MAX_RETAINED_SLOT_SIZE = 8192;
+
+  /** The maximum time the writer thread waits for new records before checking again. */
+  private static final long WRITER_PARK_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  /** The time a logging thread waits for the writer thread when the ring is full. */
+  private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  /** The UTF-8 encoded line separator terminating each record. */
+  private static final byte[] EOL_BYTES = getBytes(EOL);
+
+  /** The wrapped Text Writer. */
+  private final MultifileTextWriter writer;
+
+  /** The number of slots of the ring. */
+  private final int capacity;
+
+  /** The buffers holding the encoded records of each slot. */
+  private final byte[][] slots;
+
+  /** The length of the encoded record held by each slot. */
+  private final int[] slotLengths;
+
+  /** The sequence number of the record last published in each slot. */
+  private final AtomicLongArray publishedSequences;
+
+  /** The sequence number of the next slot to reserve. */
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  /** The sequence number of the next record to write, only updated by the writer thread. */
+  private volatile long writtenSequence;
+
+  /** The block used by the writer thread to write consecutive records at once. */
+  private final byte[] block;
+
+  private final String name;
+  private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+  private final WriterThread writerThread;
+
+  /** Indicates whether the writer thread is parked waiting for new records. */
+  private volatile boolean writerWaiting;
+
+  /**
+   * Construct a new AsynchronousRingTextWriter wrapper.
+   *
+   * @param name      the name of the thread.
+   * @param capacity  the maximum number of records waiting to be written.
+   * @param blockSize the size in bytes of the blocks written to the wrapped
+   *                  writer.
+   * @param writer    the multi-file text writer used for output.
+   */
+  public AsynchronousRingTextWriter(String name, int capacity, int blockSize,
+                                    MultifileTextWriter writer)
+  {
+    this.name = name;
+    this.writer = writer;
+    this.capacity = capacity;
+    this.block = new byte[Math.max(blockSize, INITIAL_SLOT_SIZE)];
+
+    this.slots = new byte[capacity][];
+    this.slotLengths = new int[capacity];
+    this.publishedSequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++)
+    {
+      slots[i] = new byte[INITIAL_SLOT_SIZE];
+      publishedSequences.set(i, -1);
+    }
+
+    writerThread = new WriterThread();
+    writerThread.start();
+
+    DirectoryServer.registerShutdownListener(this);
+  }
+
+  /**
+   * The writer thread is responsible for writing the records published in the
+   * ring.
+   */
+  private class WriterThread extends DirectoryThread
+  {
+    public WriterThread()
+    {
+      super(name);
+    }
+
+    /**
+     * The run method of the writerThread. Run until the ring is empty
+     * AND we've been asked to terminate.
+     */
+    @Override
+    public void run()
+    {
+      while (!stopRequested.get() || writtenSequence != nextSequence.get())
+      {
+        if (!writePublishedRecords())
+        {
+          writerWaiting = true;
+          if (!isPublished(writtenSequence))
+          {
+            LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+          }
+          writerWaiting = false;
+        }
+      }
+    }
+  }
+
+  private boolean isPublished(long sequence)
+  {
+    return publishedSequences.get(slotIndex(sequence)) == sequence;
+  }
+
+  private int slotIndex(long sequence)
+  {
+    return (int) (sequence % capacity);
+  }
+
+  /**
+   * Writes all the consecutive records published in the ring. Must only be
+   * called by one thread at a time.
+   *
+   * @return {@code true} if at least one record was written.
+   */
+  private boolean writePublishedRecords()
+  {
+    final long firstSequence = writtenSequence;
+    long sequence = firstSequence;
+    int blockLength = 0;
+    while (isPublished(sequence))
+    {
+      final int index = slotIndex(sequence);
+      final byte[] slot = slots[index];
+      final int length = slotLengths[index];
+      if (blockLength + length > block.length && blockLength > 0)
+      {
+        writer.writeRecords(block, blockLength);
+        blockLength = 0;
+      }
+      if (length > block.length)
+      {
+        writer.writeRecords(slot, length);
+      }
+      else
+      {
+        System.arraycopy(slot, 0, block, blockLength, length);
+        blockLength += length;
+      }
+      if (slot.length > MAX_RETAINED_SLOT_SIZE)
+      {
+        slots[index] = new byte[INITIAL_SLOT_SIZE];
+      }
+
+      // Release the slot to the logging threads
+      sequence++;
+      writtenSequence = sequence;
+    }
+    if (blockLength > 0)
+    {
+      writer.writeRecords(block, blockLength);
+    }
+    return sequence != firstSequence;
+  }
+
+  /**
+   * Write the log record asynchronously.
+   *
+   * @param record the log record to write.
+   */
+  @Override
+  public void writeRecord(String record)
+  {
+    writeRecord((CharSequence) record);
+  }
+
+  /**
+   * Write the log record asynchronously. The content of the provided record is
+   * copied before this method returns, so the caller may reuse it.
+   *
+   * @param record the log record to write.
+   */
+  public void writeRecord(CharSequence record)
+  {
+    final long sequence = reserveSlot();
+    if (sequence < 0)
+    {
+      // Off to the bit bucket.
+      return;
+    }
+
+    final int index = slotIndex(sequence);
+    slotLengths[index] = encode(record, index);
+    publishedSequences.set(index, sequence);
+    if (writerWaiting)
+    {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  /**
+   * Reserves the next slot of the ring, waiting for the writer thread when the
+   * ring is full.
+   *
+   * @return the sequence number of the reserved slot, or -1 if this writer is
+   *         being shut down.
+   */
+  private long reserveSlot()
+  {
+    while (!stopRequested.get())
+    {
+      final long sequence = nextSequence.get();
+      if (sequence - writtenSequence >= capacity)
+      {
+        LockSupport.unpark(writerThread);
+        LockSupport.parkNanos(this, FULL_RING_PARK_NANOS);
+      }
+      else if (nextSequence.compareAndSet(sequence, sequence + 1))
+      {
+        return sequence;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Encodes the provided record in UTF-8 followed by the line separator in the
+   * buffer of the provided slot, growing it if needed.
+   *
+   * @return the length of the encoded record.
+   */
+  private int encode(CharSequence record, int index)
+  {
+    final int length = record.length();
+    final int encodedLength = getEncodedLength(record) + EOL_BYTES.length;
+    byte[] slot = slots[index];
+    if (slot.length < encodedLength)
+    {
+      slot = new byte[Math.max(encodedLength, slot.length * 2)];
+      slots[index] = slot;
+    }
+
+    int pos = 0;
+    for (int i = 0; i < length; i++)
+    {
+      final char c = record.charAt(i);
+      if (c < 0x80)
+      {
+        slot[pos++] = (byte) c;
+      }
+      else if (c < 0x800)
+      {
+        slot[pos++] = (byte) (0xC0 | (c >> 6));
+        slot[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else if (isSurrogatePair(record, i))
+      {
+        final int codePoint = Character.toCodePoint(c, record.charAt(++i));
+        slot[pos++] = (byte) (0xF0 | (codePoint >> 18));
+        slot[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        slot[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        slot[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      }
+      else if (Character.isSurrogate(c))
+      {
+        // Unpaired surrogate, replaced like String.getBytes() does
+        slot[pos++] = '?';
+      }
+      else
+      {
+        slot[pos++] = (byte) (0xE0 | (c >> 12));
+        slot[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        slot[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    System.arraycopy(EOL_BYTES, 0, slot, pos, EOL_BYTES.length);
+    return pos + EOL_BYTES.length;
+  }
+
+  private static int getEncodedLength(CharSequence record)
+  {
+    final int length = record.length();
+    int encodedLength = length;
+    for (int i = 0; i < length; i++)
+    {
+      final char c = record.charAt(i);
+      if (c >= 0x800)
+      {
+        if (isSurrogatePair(record, i))
+        {
+          // 4 bytes for 2 chars
+          encodedLength += 2;
+          i++;
+        }
+        else if (!Character.isSurrogate(c))
+        {
+          encodedLength += 2;
+        }
+      }
+      else if (c >= 0x80)
+      {
+        encodedLength++;
+      }
+    }
+    return encodedLength;
+  }
+
+  private static boolean isSurrogatePair(CharSequence record, int i)
+  {
+    return Character.isHighSurrogate(record.charAt(i))
+        && i + 1 < record.length()
+        && Character.isLowSurrogate(record.charAt(i + 1));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void flush()
+  {
+    writer.flush();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBytesWritten()
+  {
+    return writer.getBytesWritten();
+  }
+
+  /**
+   * Retrieves the wrapped writer.
+   *
+   * @return The wrapped writer used by this asynchronous writer.
+   */
+  public MultifileTextWriter getWrappedWriter()
+  {
+    return writer;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getShutdownListenerName()
+  {
+    return "AsynchronousRingTextWriter Thread " + name;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void processServerShutdown(LocalizableMessage reason)
+  {
+    // Don't shutdown the wrapped writer on server shutdown as it
+    // might get more write requests before the log publishers are
+    // manually shutdown just before the server process exists.
+    shutdown(false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void shutdown()
+  {
+    shutdown(true);
+  }
+
+  /**
+   * Releases any resources held by the writer.
+   *
+   * @param shutdownWrapped If the wrapped writer should be closed as well.
+   */
+  public void shutdown(boolean shutdownWrapped)
+  {
+    stopRequested.set(true);
+
+    // Wait for writer thread to terminate
+    while (writerThread.isAlive())
+    {
+      try
+      {
+        LockSupport.unpark(writerThread);
+        writerThread.join();
+      }
+      catch (InterruptedException ex)
+      {
+        // Ignore; we gotta wait..
+      }
+    }
+
+    // The writer thread SHOULD have written all the records.
+    // If not, write the records still being published ourselves.
+    while (writtenSequence != nextSequence.get())
+    {
+      if (!writePublishedRecords())
+      {
+        Thread.yield();
+      }
+    }
+
+    // Shutdown the wrapped writer.
+    if (shutdownWrapped)
+    {
+      writer.shutdown();
+    }
+
+    DirectoryServer.deregisterShutdownListener(this);
+  }
+}
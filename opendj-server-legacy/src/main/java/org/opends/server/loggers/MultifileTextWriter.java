@@ -42,6 +42,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.admin.server.ConfigurationChangeListener;
 import org.opends.server.admin.std.server.SizeLimitLogRotationPolicyCfg;
 import org.opends.server.api.DirectoryThread;
@@ -585,6 +586,35 @@ class MultifileTextWriter
     }
   }
 
+  /**
+   * Write a block of UTF-8 encoded log records to the file. Each record of the
+   * block must already be terminated by a line separator.
+   *
+   * @param records the buffer containing the encoded log records.
+   * @param length the number of bytes to write from the start of the buffer.
+   */
+  void writeRecords(byte[] records, int length)
+  {
+    synchronized(this)
+    {
+      if(sizeLimit > 0 && outputStream.written + length >= sizeLimit)
+      {
+        rotate();
+      }
+
+      try
+      {
+        // Records written as strings may still be buffered by the writer
+        writer.flush();
+        outputStream.write(records, 0, length);
+      }
+      catch(Exception e)
+      {
+        errorHandler.handleWriteError(ByteString.wrap(records, 0, length).toString(), e);
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void flush()
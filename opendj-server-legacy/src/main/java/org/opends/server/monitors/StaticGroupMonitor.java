@@ -0,0 +1,165 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.core.DirectoryServer.*;
+
+import java.util.ArrayList;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.Group;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.GroupManager;
+import org.opends.server.extensions.StaticGroup;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.InitializationException;
+
+/**
+ * This class defines a Directory Server monitor that can be used to provide
+ * information about the members of the static groups registered with the
+ * group manager, and the memory used to hold them. Note that the information
+ * reported is obtained with no locking, so it may not be entirely consistent.
+ */
+public class StaticGroupMonitor
+       extends MonitorProvider<MonitorProviderCfg>
+{
+  /** The name of the monitor attribute that provides the number of static groups. */
+  public static final String ATTR_STATIC_GROUPS = "staticGroups";
+
+  /**
+   * The name of the monitor attribute that provides the total number of members
+   * explicitly listed by the static groups.
+   */
+  public static final String ATTR_STATIC_GROUP_MEMBERS = "staticGroupMembers";
+
+  /**
+   * The name of the monitor attribute that provides the number of members of
+   * the largest static group.
+   */
+  public static final String ATTR_LARGEST_STATIC_GROUP_MEMBERS = "largestStaticGroupMembers";
+
+  /**
+   * The name of the monitor attribute that provides an estimate of the memory
+   * used to hold the members of the static groups, in bytes.
+   */
+  public static final String ATTR_STATIC_GROUP_MEMBER_MEMORY = "staticGroupMemberMemoryBytes";
+
+  /**
+   * The name of the monitor attribute that provides an estimate of the memory
+   * used per member of the static groups, in bytes.
+   */
+  public static final String ATTR_STATIC_GROUP_MEMORY_PER_MEMBER = "staticGroupMemoryBytesPerMember";
+
+
+  /** The group manager with which this monitor is associated. */
+  private final GroupManager groupManager;
+
+
+  /**
+   * Initializes this monitor provider.  Note that no initialization should be
+   * done here, since it should be performed in the
+   * <CODE>initializeMonitorProvider</CODE> class.
+   *
+   * @param  groupManager  The group manager with which this monitor is
+   *                       associated.
+   */
+  public StaticGroupMonitor(GroupManager groupManager)
+  {
+    this.groupManager = groupManager;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration)
+         throws ConfigException, InitializationException
+  {
+    // No initialization is required.
+  }
+
+
+
+  /**
+   * Retrieves the name of this monitor provider.  It should be unique among all
+   * monitor providers, including all instances of the same monitor provider.
+   *
+   * @return  The name of this monitor provider.
+   */
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return "Static Groups";
+  }
+
+
+
+  /**
+   * Retrieves a set of attributes containing monitor data that should be
+   * returned to the client if the corresponding monitor entry is requested.
+   *
+   * @return  A set of attributes containing monitor data that should be
+   *          returned to the client if the corresponding monitor entry is
+   *          requested.
+   */
+  @Override
+  public ArrayList<Attribute> getMonitorData()
+  {
+    int groups = 0;
+    long members = 0;
+    int largestGroupMembers = 0;
+    long memoryUsage = 0;
+    for (Group<?> group : groupManager.getGroupInstances())
+    {
+      if (group instanceof StaticGroup)
+      {
+        StaticGroup staticGroup = (StaticGroup) group;
+        int groupMembers = staticGroup.getMemberCount();
+        groups++;
+        members += groupMembers;
+        largestGroupMembers = Math.max(largestGroupMembers, groupMembers);
+        memoryUsage += staticGroup.getMemberMemoryUsage();
+      }
+    }
+
+    ArrayList<Attribute> monitorAttrs = new ArrayList<>();
+    putAttribute(monitorAttrs, ATTR_STATIC_GROUPS, groups);
+    putAttribute(monitorAttrs, ATTR_STATIC_GROUP_MEMBERS, members);
+    putAttribute(monitorAttrs, ATTR_LARGEST_STATIC_GROUP_MEMBERS, largestGroupMembers);
+    putAttribute(monitorAttrs, ATTR_STATIC_GROUP_MEMBER_MEMORY, memoryUsage);
+    putAttribute(monitorAttrs, ATTR_STATIC_GROUP_MEMORY_PER_MEMBER, members != 0 ? memoryUsage / members : 0);
+    return monitorAttrs;
+  }
+
+  private void putAttribute(ArrayList<Attribute> monitorAttrs, String attrName, Object value)
+  {
+    AttributeType attrType = getAttributeTypeOrDefault(attrName, attrName, getDefaultIntegerSyntax());
+    monitorAttrs.add(Attributes.create(attrType, String.valueOf(value)));
+  }
+}
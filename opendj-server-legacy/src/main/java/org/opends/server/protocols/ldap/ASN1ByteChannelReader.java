@@ -29,6 +29,7 @@ package org.opends.server.protocols.ldap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.IllegalBlockingModeException;
 import java.nio.channels.ReadableByteChannel;
 
@@ -66,6 +67,11 @@ import org.forgerock.opendj.ldap.DecodeException;
  * available, the client should call {@link #processChannelData()}
  * again to read more data (if available).
  * <p>
+ * The channel data is read into a buffer borrowed from a
+ * {@link ReadBufferPool} which is returned to the pool as soon as the
+ * channel has no more data to read, so that idle connections do not
+ * hold any read buffer.
+ * <p>
  * <b>NOTE:</b> Since this reader is non blocking, reading ASN.1
  * elements before making sure they are ready could result in
  * {@link IllegalBlockingModeException}s being thrown while reading
@@ -74,17 +80,36 @@ import org.forgerock.opendj.ldap.DecodeException;
  */
 final class ASN1ByteChannelReader implements ASN1Reader
 {
+  /** The buffer used when no buffer is borrowed from the pool. */
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+  /** The initial capacity of the save buffer, restored once it has been fully read. */
+  private static final int SAVE_BUFFER_INIT_SIZE = 32;
+
   /** The byte channel to read from. */
   private final ReadableByteChannel byteChannel;
 
+  /** The pool providing the buffer used for reading from the channel. */
+  private final ReadBufferPool bufferPool;
+
+  /** The maximum capacity of the save buffer kept once it has been fully read. */
+  private final int maxSaveBufferSize;
+
   /** The wrapped ASN.1 reader. */
   private final ASN1Reader reader;
 
   /**
-   * The NIO ByteStringBuilder that stores any immediate data read off the
-   * channel.
+   * The NIO ByteBuffer that stores any immediate data read off the
+   * channel, borrowed from the pool or {@link #EMPTY_BUFFER} if none.
    */
-  private final ByteBuffer byteBuffer;
+  private ByteBuffer byteBuffer = EMPTY_BUFFER;
+
+  /**
+   * Indicates whether this reader has been closed. The channel buffer is only
+   * returned to the pool by the thread reading from the channel, as it may
+   * still be decoding from it.
+   */
+  private volatile boolean closed;
 
   /**
    * The save buffer used to store any unprocessed data waiting to be read as
@@ -287,11 +312,31 @@ final class ASN1ByteChannelReader implements ASN1Reader
    */
   ASN1ByteChannelReader(ReadableByteChannel channel, int bufferSize,
       int maxElementSize)
+  {
+    this(channel, new ReadBufferPool(bufferSize, 1), maxElementSize);
+  }
+
+  /**
+   * Creates a new ASN.1 byte channel reader whose source is the
+   * provided readable byte channel, reading from the channel using
+   * buffers borrowed from the provided pool, and having a user
+   * defined maximum BER element size.
+   *
+   * @param channel
+   *          The readable byte channel to use.
+   * @param bufferPool
+   *          The pool providing the buffers used when reading from the
+   *          channel.
+   * @param maxElementSize
+   *          The max ASN.1 element size this reader will read.
+   */
+  ASN1ByteChannelReader(ReadableByteChannel channel, ReadBufferPool bufferPool,
+      int maxElementSize)
   {
     this.byteChannel = channel;
-    this.byteBuffer = ByteBuffer.allocate(bufferSize);
-    this.byteBuffer.flip();
-    this.saveBuffer = new ByteStringBuilder();
+    this.bufferPool = bufferPool;
+    this.maxSaveBufferSize = bufferPool.getBufferSize();
+    this.saveBuffer = new ByteStringBuilder(SAVE_BUFFER_INIT_SIZE);
     this.saveBufferReader = saveBuffer.asReader();
 
     CombinedBufferInputStream bufferStream = new CombinedBufferInputStream();
@@ -309,7 +354,9 @@ final class ASN1ByteChannelReader implements ASN1Reader
    * <li>Clear the save buffer if everything was read.
    * <li>Append any unread data from the NIO byte buffer to the save
    * buffer.
-   * <li>Clear the NIO byte buffer and read from the channel.
+   * <li>Clear the NIO byte buffer, borrowing one from the pool if
+   * needed, and read from the channel.
+   * <li>Return the NIO byte buffer to the pool if no data was read.
    * </ul>
    *
    * @return The number of bytes read from the channel or -1 if
@@ -319,10 +366,17 @@ final class ASN1ByteChannelReader implements ASN1Reader
    */
   public int processChannelData() throws IOException
   {
-    // Clear the save buffer if we have read all of it
+    if (closed)
+    {
+      releaseBuffer();
+      throw new ClosedChannelException();
+    }
+
+    // Clear the save buffer if we have read all of it, releasing the memory
+    // kept from any large element.
     if (saveBufferReader.remaining() == 0)
     {
-      saveBuffer.clear();
+      saveBuffer.clearAndTruncate(maxSaveBufferSize, SAVE_BUFFER_INIT_SIZE);
       saveBufferReader.rewind();
     }
 
@@ -332,7 +386,14 @@ final class ASN1ByteChannelReader implements ASN1Reader
       saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
     }
 
-    byteBuffer.clear();
+    if (byteBuffer == EMPTY_BUFFER)
+    {
+      byteBuffer = bufferPool.acquire();
+    }
+    else
+    {
+      byteBuffer.clear();
+    }
     try
     {
       return byteChannel.read(byteBuffer);
@@ -343,6 +404,22 @@ final class ASN1ByteChannelReader implements ASN1Reader
       // ensure that subsequent calls which query the remaining data return
       // valid results.
       byteBuffer.flip();
+
+      // Do not hold the buffer while waiting for more data.
+      if (!byteBuffer.hasRemaining())
+      {
+        releaseBuffer();
+      }
+    }
+  }
+
+  /** Returns the channel buffer to the pool, if one is borrowed. */
+  private void releaseBuffer()
+  {
+    if (byteBuffer != EMPTY_BUFFER)
+    {
+      bufferPool.release(byteBuffer);
+      byteBuffer = EMPTY_BUFFER;
     }
   }
 
@@ -358,6 +435,11 @@ final class ASN1ByteChannelReader implements ASN1Reader
   @Override
   public boolean elementAvailable() throws IOException
   {
+    if (closed)
+    {
+      releaseBuffer();
+      return false;
+    }
     return reader.elementAvailable();
   }
 
@@ -371,6 +453,11 @@ final class ASN1ByteChannelReader implements ASN1Reader
    */
   @Override
   public boolean hasNextElement() throws IOException {
+    if (closed)
+    {
+      releaseBuffer();
+      return false;
+    }
     return reader.hasNextElement();
   }
 
@@ -537,6 +624,8 @@ final class ASN1ByteChannelReader implements ASN1Reader
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
+    // The buffer is released by the reading thread on its next attempt to read.
+    closed = true;
     reader.close();
     byteChannel.close();
   }
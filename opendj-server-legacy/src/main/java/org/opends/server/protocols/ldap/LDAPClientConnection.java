@@ -301,6 +301,12 @@ public final class LDAPClientConnection extends ClientConnection implements
   /** The tracer object for the debug logger. */
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * The maximum length of time in milliseconds that search result entries and
+   * references may be held in the pending writes buffer before being written.
+   */
+  private static final long MAX_PENDING_WRITES_DELAY = 20;
+
   /**
    * Thread local ASN1Writer and buffer.
    */
@@ -440,7 +446,13 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
   private ASN1ByteChannelReader asn1Reader;
-  private final int bufferSize;
+
+  /**
+   * The encoded search result entries and references waiting to be written to
+   * the client in a single write. Also synchronizes the writes to the channel.
+   */
+  private final PendingWrites pendingWrites;
+
   private final RedirectingByteChannel saslChannel;
   private final RedirectingByteChannel tlsChannel;
   private volatile ConnectionSecurityProvider saslActiveProvider;
@@ -492,14 +504,22 @@ public final class LDAPClientConnection extends ClientConnection implements
       this.useNanoTime=DirectoryServer.getUseNanoTime();
     }
 
-    bufferSize = connectionHandler.getBufferSize();
-
     tlsChannel =
         RedirectingByteChannel.getRedirectingByteChannel(
             timeoutClientChannel);
     saslChannel =
         RedirectingByteChannel.getRedirectingByteChannel(tlsChannel);
-    this.asn1Reader = new ASN1ByteChannelReader(saslChannel, bufferSize, connectionHandler.getMaxRequestSize());
+    pendingWrites = new PendingWrites(saslChannel, MAX_PENDING_WRITES_DELAY,
+        connectionHandler.getPendingWritesFlusher(), connectionHandler.getPendingWritesWriter(), new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            flushPendingWrites();
+          }
+        });
+    this.asn1Reader = new ASN1ByteChannelReader(saslChannel,
+        connectionHandler.getReadBufferPool(), connectionHandler.getMaxRequestSize());
 
     if (connectionHandler.useSSL())
     {
@@ -720,7 +740,8 @@ public final class LDAPClientConnection extends ClientConnection implements
     // if operation processing encounters a run-time exception after sending the
     // response: the worker thread exception handling code will attempt to send
     // an error result to the client indicating that a problem occurred.
-    if (removeOperationInProgress(operation.getMessageID()))
+    // The pending writes are written together with the response.
+    if (doRemoveOperationInProgress(operation.getMessageID()))
     {
       LDAPMessage message = operationToResponseLDAPMessage(operation);
       if (message != null)
@@ -887,7 +908,7 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultEntryProtocolOp(searchEntry, ldapVersion);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchEntry.getControls()));
+        protocolOp, searchEntry.getControls()), isBatchable(searchOperation));
   }
 
 
@@ -924,7 +945,7 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultReferenceProtocolOp(searchReference);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchReference.getControls()));
+        protocolOp, searchReference.getControls()), isBatchable(searchOperation));
     return true;
   }
 
@@ -960,6 +981,19 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /**
+   * Indicates whether the search result entries and references of the provided
+   * search operation may be held in the pending writes buffer. Persistent
+   * searches notifying changes do not send a final response which would flush
+   * the buffer, so their messages are always written immediately.
+   */
+  private boolean isBatchable(SearchOperation searchOperation)
+  {
+    return searchOperation.isSendResponse();
+  }
+
+
+
   /**
    * Sends the provided LDAP message to the client.
    *
@@ -967,13 +1001,34 @@ public final class LDAPClientConnection extends ClientConnection implements
    *          The LDAP message to send to the client.
    */
   private void sendLDAPMessage(LDAPMessage message)
+  {
+    sendLDAPMessage(message, false);
+  }
+
+
+
+  /**
+   * Sends the provided LDAP message to the client, possibly holding it in the
+   * pending writes buffer so that it is written together with the next
+   * messages. The pending writes buffer is written once it exceeds the buffer
+   * size of the connection handler, once its oldest message has been held for
+   * too long, when a message which cannot be held is sent, or when an
+   * operation completes.
+   *
+   * @param message
+   *          The LDAP message to send to the client.
+   * @param batchable
+   *          Indicates whether the message may be held in the pending writes
+   *          buffer.
+   */
+  private void sendLDAPMessage(LDAPMessage message, boolean batchable)
   {
     // Use a thread local writer.
     final ASN1WriterHolder holder = getASN1Writer();
     try
     {
       message.write(holder.writer);
-      holder.buffer.copyTo(saslChannel);
+      writeMessage(holder.buffer, batchable);
 
       if (logger.isTraceEnabled())
       {
@@ -1010,6 +1065,40 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /** Writes the provided encoded message to the client, or adds it to the pending writes buffer. */
+  private void writeMessage(ByteStringBuilder encodedMessage, boolean batchable) throws IOException
+  {
+    pendingWrites.write(encodedMessage, batchable, connectionHandler.getBufferSize());
+  }
+
+  /**
+   * Writes any search result entry or reference held in the pending writes
+   * buffer to the client. This is done when an operation completes, and by
+   * the pending writes writer of the connection handler once the oldest
+   * held message has been held for {@link #MAX_PENDING_WRITES_DELAY}.
+   */
+  private void flushPendingWrites()
+  {
+    try
+    {
+      pendingWrites.flush();
+    }
+    catch (ClosedChannelException e)
+    {
+      logger.traceException(e);
+      disconnect(DisconnectReason.IO_ERROR, false,
+          ERR_IO_ERROR_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      disconnect(DisconnectReason.SERVER_ERROR, false,
+          ERR_UNEXPECTED_EXCEPTION_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+    }
+  }
+
+
+
   /**
    * Closes the connection to the client, optionally sending it a
    * message indicating the reason for the closure. Note that the
@@ -1287,6 +1376,13 @@ public final class LDAPClientConnection extends ClientConnection implements
    */
   @Override
   public boolean removeOperationInProgress(int messageID)
+  {
+    // Do not hold the responses of a completed operation.
+    flushPendingWrites();
+    return doRemoveOperationInProgress(messageID);
+  }
+
+  private boolean doRemoveOperationInProgress(int messageID)
   {
     Operation operation = operationsInProgress.remove(messageID);
     if (operation == null)
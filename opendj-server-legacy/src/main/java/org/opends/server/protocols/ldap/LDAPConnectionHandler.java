@@ -36,8 +36,12 @@ import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManager;
@@ -124,6 +128,9 @@ public final class LDAPConnectionHandler extends
   /** The current configuration state. */
   private LDAPConnectionHandlerCfg currentConfig;
 
+  /** The pool of buffers shared by the client connections for reading requests. */
+  private ReadBufferPool readBufferPool;
+
   /* Properties that cannot be modified dynamically */
 
   /** The set of addresses on which to listen for new connections. */
@@ -236,6 +243,17 @@ public final class LDAPConnectionHandler extends
   private List<Runnable> connectionFinalizerActiveJobQueue;
   private List<Runnable> connectionFinalizerPendingJobQueue;
 
+  /**
+   * Hands the search results held by the client connections to the pending
+   * writes writer once they have been held for too long.
+   */
+  private volatile ScheduledExecutorService pendingWritesFlusher;
+  /**
+   * Writes the search results held for too long, with as many threads as
+   * request handlers, since writing to a slow client may block.
+   */
+  private volatile ExecutorService pendingWritesWriter;
+
 
 
   /**
@@ -330,6 +348,7 @@ public final class LDAPConnectionHandler extends
     enabled = config.isEnabled();
     allowedClients = config.getAllowedClient();
     deniedClients = config.getDeniedClient();
+    readBufferPool.setConfiguration((int) config.getBufferSize(), config.getReadBufferPoolSize());
 
     // Reconfigure SSL if needed.
     try
@@ -418,6 +437,9 @@ public final class LDAPConnectionHandler extends
       r.run(); // Flush active queue.
       r.run(); // Flush pending queue.
     }
+
+    pendingWritesFlusher.shutdown();
+    pendingWritesWriter.shutdown();
   }
 
 
@@ -599,6 +621,19 @@ public final class LDAPConnectionHandler extends
 
 
 
+  /**
+   * Retrieves the pool of buffers shared by the client connections of this
+   * connection handler for reading requests.
+   *
+   * @return The pool of buffers used for reading requests.
+   */
+  ReadBufferPool getReadBufferPool()
+  {
+    return readBufferPool;
+  }
+
+
+
   /** {@inheritDoc} */
   @Override
   public String getProtocol()
@@ -671,6 +706,7 @@ public final class LDAPConnectionHandler extends
     requestHandlerIndex = 0;
     allowedClients = config.getAllowedClient();
     deniedClients = config.getDeniedClient();
+    readBufferPool = new ReadBufferPool((int) config.getBufferSize(), config.getReadBufferPoolSize());
 
     // Configure SSL if needed.
     try
@@ -734,6 +770,25 @@ public final class LDAPConnectionHandler extends
     connectionFinalizer.scheduleWithFixedDelay(
         new ConnectionFinalizerRunnable(), 100, 100, TimeUnit.MILLISECONDS);
 
+    // Create the threads writing the search results held by the client
+    // connections of this connection handler. The single flusher thread never
+    // writes, so that a slow client cannot delay the results held for the
+    // other clients. There are as many writer threads as request handlers, so
+    // that stalled clients cannot make it create threads without limit: the
+    // results held for too long wait in a queue when all the writer threads
+    // are busy, and are also written with the next response sent to the
+    // client. The writer threads are created on demand, and discarded after
+    // being idle for a while.
+    final ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1,
+        new DirectoryThread.Factory("LDAP Pending Writes Flusher for connection handler " + toString()));
+    flusher.setRemoveOnCancelPolicy(true);
+    pendingWritesFlusher = flusher;
+    final ThreadPoolExecutor writer = new ThreadPoolExecutor(numRequestHandlers, numRequestHandlers,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new DirectoryThread.Factory("LDAP Pending Writes Writer for connection handler " + toString()));
+    writer.allowCoreThreadTimeOut(true);
+    pendingWritesWriter = writer;
+
     // Create and start the request handlers.
     requestHandlers = new LDAPRequestHandler[numRequestHandlers];
     for (int i = 0; i < numRequestHandlers; i++)
@@ -1471,6 +1526,34 @@ public final class LDAPConnectionHandler extends
     }
   }
 
+  /**
+   * Returns the scheduler handing the search results held by the client
+   * connections of this connection handler to the pending writes writer once
+   * they have been held for too long.
+   *
+   * @return the scheduler handing the search results held by the client
+   *         connections, or {@code null} if this connection handler has not
+   *         been started
+   */
+  ScheduledExecutorService getPendingWritesFlusher()
+  {
+    return pendingWritesFlusher;
+  }
+
+  /**
+   * Returns the threads writing the search results held by the client
+   * connections of this connection handler once they have been held for too
+   * long.
+   *
+   * @return the threads writing the search results held by the client
+   *         connections, or {@code null} if this connection handler has not
+   *         been started
+   */
+  ExecutorService getPendingWritesWriter()
+  {
+    return pendingWritesWriter;
+  }
+
   /**
    * Enqueue a connection finalizer which will be invoked after a short delay.
    *
@@ -0,0 +1,191 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.protocols.ldap;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.util.TimeThread;
+
+/**
+ * Holds the encoded messages sent to a client, so that they are written to its
+ * channel in a single write. The held messages are written once they exceed
+ * the batch size, when a message which cannot be held is written, when
+ * {@link #flush()} is called, or at the latest once the oldest of them has
+ * been held for the maximum delay.
+ * <p>
+ * The maximum delay is enforced by scheduling the delayed flush task when the
+ * first message of a batch is held. Without a scheduler, it is only checked
+ * when the next message is written. The scheduler is shared by many clients, so
+ * it only hands the delayed flush task to the writer threads: writing to a slow
+ * client may block, and must not delay the held messages of the other clients.
+ */
+final class PendingWrites
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  private final WritableByteChannel channel;
+  private final long maxDelayInMillis;
+  private final ScheduledExecutorService scheduler;
+  /** Hands the delayed flush task from the scheduler to the writer threads. */
+  private final Runnable delayedFlushHandOff;
+
+  /** The held messages, or {@code null} if there is none. */
+  private ByteStringBuilder buffer;
+  /** The time at which the oldest held message was added. */
+  private long bufferTime;
+  /** The scheduled flush of the held messages, or {@code null} if there is none. */
+  private ScheduledFuture<?> scheduledFlush;
+
+  /**
+   * Creates new pending writes for the provided channel.
+   *
+   * @param channel
+   *          the channel to which the messages are written
+   * @param maxDelayInMillis
+   *          the maximum length of time in milliseconds a message may be held
+   * @param scheduler
+   *          the scheduler starting the delayed flush task, or {@code null} if
+   *          the maximum delay is only checked when writing the next message
+   * @param writer
+   *          the threads running the delayed flush task, or {@code null} if
+   *          there is no scheduler
+   * @param delayedFlush
+   *          the task flushing the held messages once the maximum delay has
+   *          elapsed, which must call {@link #flush()} and handle its errors
+   */
+  PendingWrites(WritableByteChannel channel, long maxDelayInMillis, ScheduledExecutorService scheduler,
+      final Executor writer, final Runnable delayedFlush)
+  {
+    this.channel = channel;
+    this.maxDelayInMillis = maxDelayInMillis;
+    this.scheduler = scheduler;
+    this.delayedFlushHandOff = new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          writer.execute(delayedFlush);
+        }
+        catch (RejectedExecutionException e)
+        {
+          // the connection handler is shutting down, the next write will check the delay
+          logger.traceException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes the provided encoded message to the channel, or holds it until it
+   * can be written with the next messages.
+   *
+   * @param encodedMessage
+   *          the encoded message
+   * @param batchable
+   *          indicates whether the message may be held
+   * @param batchSize
+   *          the amount of held bytes above which the messages are written
+   * @throws IOException
+   *           if the messages cannot be written to the channel
+   */
+  synchronized void write(ByteStringBuilder encodedMessage, boolean batchable, int batchSize) throws IOException
+  {
+    if (buffer == null)
+    {
+      if (!batchable || encodedMessage.length() >= batchSize)
+      {
+        encodedMessage.copyTo(channel);
+        return;
+      }
+      buffer = new ByteStringBuilder(batchSize);
+      bufferTime = TimeThread.getTime();
+      scheduleFlush();
+    }
+
+    buffer.appendBytes(encodedMessage);
+    if (!batchable
+        || buffer.length() >= batchSize
+        || TimeThread.getTime() - bufferTime >= maxDelayInMillis)
+    {
+      writeBuffer();
+    }
+  }
+
+  /**
+   * Writes the held messages to the channel, if any.
+   *
+   * @throws IOException
+   *           if the messages cannot be written to the channel
+   */
+  synchronized void flush() throws IOException
+  {
+    if (buffer != null)
+    {
+      writeBuffer();
+    }
+  }
+
+  private void scheduleFlush()
+  {
+    if (scheduler == null)
+    {
+      return;
+    }
+    try
+    {
+      scheduledFlush = scheduler.schedule(delayedFlushHandOff, maxDelayInMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // the connection handler is shutting down, the next write will check the delay
+      logger.traceException(e);
+    }
+  }
+
+  private void writeBuffer() throws IOException
+  {
+    if (scheduledFlush != null)
+    {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    // Release the buffer even if the write fails since the connection is then
+    // going to be closed.
+    final ByteStringBuilder toWrite = buffer;
+    buffer = null;
+    toWrite.copyTo(channel);
+  }
+}
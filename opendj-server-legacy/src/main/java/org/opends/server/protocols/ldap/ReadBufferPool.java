@@ -0,0 +1,165 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.protocols.ldap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers shared by the client connections of a connection
+ * handler for reading requests off their channels.
+ * <p>
+ * A client connection only holds a buffer while data is being read from its
+ * channel, so that idle connections do not hold any read buffer. Buffers are
+ * allocated on demand when the pool is empty, and released buffers are
+ * discarded when the pool already retains its maximum number of buffers.
+ */
+final class ReadBufferPool
+{
+  /** The idle buffers. */
+  private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+  /** The number of idle buffers, which may be slightly ahead of the size of the queue. */
+  private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+  /** The size in bytes of the buffers. */
+  private volatile int bufferSize;
+
+  /** The maximum number of idle buffers retained by this pool. */
+  private volatile int maxPooledBuffers;
+
+
+
+  /**
+   * Creates a new read buffer pool.
+   *
+   * @param bufferSize
+   *          The size in bytes of the buffers.
+   * @param maxPooledBuffers
+   *          The maximum number of idle buffers retained by this pool.
+   */
+  ReadBufferPool(int bufferSize, int maxPooledBuffers)
+  {
+    this.bufferSize = bufferSize;
+    this.maxPooledBuffers = maxPooledBuffers;
+  }
+
+
+
+  /**
+   * Changes the size of the buffers and the maximum number of idle buffers
+   * retained by this pool. Buffers of the previous size are discarded when
+   * they are acquired or released.
+   *
+   * @param bufferSize
+   *          The size in bytes of the buffers.
+   * @param maxPooledBuffers
+   *          The maximum number of idle buffers retained by this pool.
+   */
+  void setConfiguration(int bufferSize, int maxPooledBuffers)
+  {
+    this.bufferSize = bufferSize;
+    this.maxPooledBuffers = maxPooledBuffers;
+    while (pooledBuffers.get() > maxPooledBuffers && buffers.poll() != null)
+    {
+      pooledBuffers.decrementAndGet();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the size in bytes of the buffers provided by this pool.
+   *
+   * @return The size in bytes of the buffers provided by this pool.
+   */
+  int getBufferSize()
+  {
+    return bufferSize;
+  }
+
+
+
+  /**
+   * Retrieves a cleared buffer from this pool, allocating a new one if the
+   * pool is empty.
+   *
+   * @return A cleared buffer.
+   */
+  ByteBuffer acquire()
+  {
+    final int size = bufferSize;
+    ByteBuffer buffer;
+    while ((buffer = buffers.poll()) != null)
+    {
+      pooledBuffers.decrementAndGet();
+      if (buffer.capacity() == size)
+      {
+        buffer.clear();
+        return buffer;
+      }
+    }
+    return ByteBuffer.allocateDirect(size);
+  }
+
+
+
+  /**
+   * Returns a buffer to this pool. The buffer must no longer be used by the
+   * caller.
+   *
+   * @param buffer
+   *          The buffer to return.
+   */
+  void release(ByteBuffer buffer)
+  {
+    if (buffer.capacity() != bufferSize)
+    {
+      return;
+    }
+    if (pooledBuffers.incrementAndGet() <= maxPooledBuffers)
+    {
+      buffers.offer(buffer);
+    }
+    else
+    {
+      pooledBuffers.decrementAndGet();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of idle buffers currently retained by this pool.
+   *
+   * @return The number of idle buffers currently retained by this pool.
+   */
+  int size()
+  {
+    return pooledBuffers.get();
+  }
+}
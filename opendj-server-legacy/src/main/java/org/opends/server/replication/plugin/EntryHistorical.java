@@ -28,6 +28,7 @@ package org.opends.server.replication.plugin;
 
 import static org.opends.messages.ReplicationMessages.*;
 import static org.opends.server.replication.plugin.HistAttrModificationKey.*;
+import static org.opends.server.util.CollectionUtils.*;
 
 import java.util.*;
 
@@ -86,6 +87,13 @@ public class EntryHistorical
    */
   private long purgeDelayInMillisec = -1;
 
+  /**
+   * Whether the historical information is encoded in the compact form rather
+   * than in the String form. Values are read from either form, and written in
+   * this form when the historical information is encoded.
+   */
+  private boolean compactEncoding;
+
   /**
    * The oldest CSN stored in this entry historical attribute.
    * null when this historical object has been created from
@@ -253,12 +261,16 @@ public class EntryHistorical
    *   required here or before(in the HandleConflictResolution phase)
    *
    * @param addOperation The Operation to which the historical attribute will be added.
+   * @param compactEncoding Whether to encode the historical attribute in the compact form.
    */
-  public static void setHistoricalAttrToOperation(PreOperationAddOperation addOperation)
+  public static void setHistoricalAttrToOperation(PreOperationAddOperation addOperation, boolean compactEncoding)
   {
     AttributeType attrType = DirectoryServer.getAttributeTypeOrNull(HISTORICAL_ATTRIBUTE_NAME);
-    String attrValue = encodeHistorical(OperationContext.getCSN(addOperation), "add");
-    List<Attribute> attrs = Attributes.createAsList(attrType, attrValue);
+    CSN csn = OperationContext.getCSN(addOperation);
+    ByteString attrValue = compactEncoding
+        ? HistoricalAttributeValue.encodeCompact(csn, false)
+        : ByteString.valueOfUtf8(encodeHistorical(csn, "add"));
+    List<Attribute> attrs = newArrayList(Attributes.create(attrType, attrValue));
     addOperation.setAttribute(attrType, attrs);
   }
 
@@ -350,7 +362,6 @@ public class EntryHistorical
     for (Map.Entry<AttributeDescription, AttrHistorical> mapEntry : attributesHistorical.entrySet())
     {
       AttributeDescription attrDesc = mapEntry.getKey();
-      String options = attrDesc.toString();
       AttrHistorical attrHist = mapEntry.getValue();
 
       CSN deleteTime = attrHist.getDeleteTime();
@@ -369,8 +380,7 @@ public class EntryHistorical
             // this hist must be purged now, so skip its encoding
             continue;
           }
-          String strValue = encode(DEL, options, attrValHist.getValueDeleteTime(), value);
-          builder.add(strValue);
+          builder.add(encode(DEL, attrDesc, attrValHist.getValueDeleteTime(), value));
         }
         else if (attrValHist.getValueUpdateTime() != null)
         {
@@ -380,27 +390,27 @@ public class EntryHistorical
             continue;
           }
 
-          String strValue;
+          ByteString encodedValue;
           final CSN updateTime = attrValHist.getValueUpdateTime();
           // FIXME very suspicious use of == in the next if statement,
           // unit tests do not like changing it
           if (attrDel && updateTime == deleteTime && value != null)
           {
-            strValue = encode(REPL, options, updateTime, value);
+            encodedValue = encode(REPL, attrDesc, updateTime, value);
             attrDel = false;
           }
           else if (value != null)
           {
-            strValue = encode(ADD, options, updateTime, value);
+            encodedValue = encode(ADD, attrDesc, updateTime, value);
           }
           else
           {
             // "add" without any value is suspicious. Tests never go there.
             // Is this used to encode "add" with an empty string?
-            strValue = encode(ADD, options, updateTime);
+            encodedValue = encode(ADD, attrDesc, updateTime, null);
           }
 
-          builder.add(strValue);
+          builder.add(encodedValue);
         }
       }
 
@@ -411,7 +421,7 @@ public class EntryHistorical
           // this hist must be purged now, so skip its encoding
           continue;
         }
-        builder.add(encode(ATTRDEL, options, deleteTime));
+        builder.add(encode(ATTRDEL, attrDesc, deleteTime, null));
       }
     }
 
@@ -419,14 +429,14 @@ public class EntryHistorical
     {
       // Encode the historical information for the ADD Operation.
       // Stores the ADDDate when not older than the purge delay
-      builder.add(encodeHistorical(entryADDDate, "add"));
+      builder.add(encodeDNDate(entryADDDate, false));
     }
 
     if (entryMODDNDate != null && !needsPurge(entryMODDNDate, purgeDate))
     {
       // Encode the historical information for the MODDN Operation.
       // Stores the MODDNDate when not older than the purge delay
-      builder.add(encodeHistorical(entryMODDNDate, "moddn"));
+      builder.add(encodeDNDate(entryMODDNDate, true));
     }
 
     return builder.toAttribute();
@@ -443,14 +453,76 @@ public class EntryHistorical
     return needsPurge;
   }
 
-  private String encode(HistAttrModificationKey modKey, String options, CSN changeTime)
+  private ByteString encode(HistAttrModificationKey modKey, AttributeDescription attrDesc, CSN changeTime,
+      ByteString value)
   {
-    return options + ":" + changeTime + ":" + modKey;
+    if (compactEncoding)
+    {
+      return HistoricalAttributeValue.encodeCompact(modKey, attrDesc, changeTime, value);
+    }
+    String strValue = attrDesc + ":" + changeTime + ":" + modKey;
+    return ByteString.valueOfUtf8(value != null ? strValue + ":" + value : strValue);
   }
 
-  private String encode(HistAttrModificationKey modKey, String options, CSN changeTime, ByteString value)
+  private ByteString encodeDNDate(CSN csn, boolean isModDN)
   {
-    return options + ":" + changeTime + ":" + modKey + ":" + value;
+    if (compactEncoding)
+    {
+      return HistoricalAttributeValue.encodeCompact(csn, isModDN);
+    }
+    return ByteString.valueOfUtf8(encodeHistorical(csn, isModDN ? "moddn" : "add"));
+  }
+
+  /**
+   * Purges the values older than the purge delay from the provided historical
+   * attribute, without decoding the historical information they hold: only
+   * the CSN of each value is read, at a fixed position for values in the
+   * compact form. When the compact encoding is enabled, the values kept in the
+   * String form are converted to the compact form.
+   * <p>
+   * The oldest CSN and the purged values count of this historical object are
+   * updated from the provided values.
+   *
+   * @param histAttrs
+   *          The historical attribute of an entry, as returned by
+   *          {@link #getHistoricalAttr(Entry)}.
+   * @return The historical attribute without the purged values.
+   */
+  public Attribute purge(List<Attribute> histAttrs)
+  {
+    long purgeDate = 0;
+    this.lastPurgedValuesCount = 0;
+    if (purgeDelayInMillisec > 0)
+    {
+      purgeDate = TimeThread.getTime() - purgeDelayInMillisec;
+    }
+
+    AttributeType historicalAttrType = DirectoryServer.getAttributeTypeOrNull(HISTORICAL_ATTRIBUTE_NAME);
+    AttributeBuilder builder = new AttributeBuilder(historicalAttrType);
+    if (histAttrs != null)
+    {
+      for (Attribute histAttr : histAttrs)
+      {
+        for (ByteString value : histAttr)
+        {
+          CSN csn = HistoricalAttributeValue.getCSN(value);
+          updateOldestCSN(csn);
+          if (needsPurge(csn, purgeDate))
+          {
+            continue;
+          }
+          if (compactEncoding && !HistoricalAttributeValue.isCompact(value))
+          {
+            builder.add(HistoricalAttributeValue.valueOf(value).toCompact());
+          }
+          else
+          {
+            builder.add(value);
+          }
+        }
+      }
+    }
+    return builder.toAttribute();
   }
 
   /**
@@ -464,6 +536,18 @@ public class EntryHistorical
     this.purgeDelayInMillisec = purgeDelay;
   }
 
+  /**
+   * Set whether the historical information is encoded in the compact form
+   * rather than in the String form when it is next encoded. Values in the
+   * String form are converted to the compact form at that time.
+   *
+   * @param compactEncoding whether to use the compact encoded form
+   */
+  public void setCompactEncoding(boolean compactEncoding)
+  {
+    this.compactEncoding = compactEncoding;
+  }
+
   /**
    * Indicates if the Entry was renamed or added after the CSN that is given as
    * a parameter.
@@ -537,7 +621,7 @@ public class EntryHistorical
         for (ByteString histAttrValueFromEntry : histAttrFromEntry)
         {
           // From each value of the hist attr, create an object
-          final HistoricalAttributeValue histVal = new HistoricalAttributeValue(histAttrValueFromEntry.toString());
+          final HistoricalAttributeValue histVal = HistoricalAttributeValue.valueOf(histAttrValueFromEntry);
           final CSN csn = histVal.getCSN();
 
           // update the oldest CSN stored in the new entry historical
@@ -614,7 +698,7 @@ public class EntryHistorical
       {
         for (ByteString val : attr)
         {
-          HistoricalAttributeValue histVal = new HistoricalAttributeValue(val.toString());
+          HistoricalAttributeValue histVal = HistoricalAttributeValue.valueOf(val);
           if (histVal.isADDOperation())
           {
             // Found some historical information indicating that this entry was just added.
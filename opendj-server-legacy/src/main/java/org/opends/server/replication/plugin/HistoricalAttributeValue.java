@@ -33,7 +33,10 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.opendj.ldap.ModificationType;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.replication.common.CSN;
@@ -74,9 +77,40 @@ import org.opends.server.types.Modification;
  *  options are stored with the attribute names using; as a separator
  *  example :
  *  description;FR;France:00000108b3a65541000000000001:add:added_value
+ *
+ * In the compact encoded form, the same information is stored in binary:
+ * <pre>
+ *  version(1)  = 0x01
+ *  CSN(14)     = timestamp(8), serverId(2), seqnum(4), as in CSN#toByteString()
+ *  type(1)     = add(0), del(1), repl(2), attrDel(3), dn add(4), dn moddn(5),
+ *                with the 0x80 bit set when an attribute value follows
+ *  BER length and UTF-8 attribute description, except for dn types
+ *  attribute value bytes, up to the end of the value
+ * </pre>
+ * The CSN is stored at a fixed position, so that it can be read to order and
+ * purge the values without decoding them.
  */
 class HistoricalAttributeValue
 {
+  /**
+   * The first byte of the values in the compact encoded form. It can not start
+   * a value in the String encoded form, which starts with an attribute name.
+   */
+  static final byte COMPACT_ENCODING_VERSION = 0x01;
+  /** The offset of the CSN in the values in the compact encoded form. */
+  private static final int CSN_OFFSET = 1;
+  /** The offset of the type of the values in the compact encoded form. */
+  private static final int TYPE_OFFSET = CSN_OFFSET + CSN.BYTE_ENCODING_LENGTH;
+  /** The flag set in the type of compact values followed by an attribute value. */
+  private static final int HAS_VALUE = 0x80;
+
+  private static final int TYPE_ADD = 0;
+  private static final int TYPE_DEL = 1;
+  private static final int TYPE_REPL = 2;
+  private static final int TYPE_ATTRDEL = 3;
+  private static final int TYPE_ENTRY_ADD = 4;
+  private static final int TYPE_ENTRY_MODDN = 5;
+
   private final AttributeDescription attrDesc;
   /** The lowercase attribute string representation. */
   private final String attrString;
@@ -99,13 +133,24 @@ class HistoricalAttributeValue
    */
   HistoricalAttributeValue(String strVal)
   {
-    String[] token = strVal.split(":", 4);
+    this(strVal.split(":", 4));
+  }
 
+  private HistoricalAttributeValue(String[] token)
+  {
+    this(token[0], new CSN(token[1]), HistAttrModificationKey.decodeKey(token[2]),
+        token.length >= 3 && token[2].compareTo("moddn") == 0,
+        token.length == 4 ? ByteString.valueOfUtf8(token[3]) : null);
+  }
+
+  private HistoricalAttributeValue(String attrDescription, CSN csn, HistAttrModificationKey histKey,
+      boolean isModDN, ByteString value)
+  {
     Set<String> options;
-    if (token[0].contains(";"))
+    if (attrDescription.contains(";"))
     {
       options = new LinkedHashSet<>();
-      String[] optionsToken = token[0].split(";");
+      String[] optionsToken = attrDescription.split(";");
       int index = 1;
       while (index < optionsToken.length)
       {
@@ -117,7 +162,7 @@ class HistoricalAttributeValue
     else
     {
       options = Collections.emptySet();
-      attrString = toLowerCase(token[0]);
+      attrString = toLowerCase(attrDescription);
     }
 
     AttributeType attrType;
@@ -132,27 +177,16 @@ class HistoricalAttributeValue
       // This HistVal is used to store the date when the entry
       // was added to the directory or when it was last renamed.
       attrType = null;
-      if (token.length >= 3 && token[2].compareTo("moddn") == 0)
-      {
-        isModDN = true;
-      }
+      this.isModDN = isModDN;
     }
     this.attrDesc = attrType != null ? AttributeDescription.create(attrType, options) : null;
 
-    csn = new CSN(token[1]);
-    histKey = HistAttrModificationKey.decodeKey(token[2]);
-    if (histKey != ATTRDEL)
+    this.csn = csn;
+    this.histKey = histKey;
+    if (histKey != ATTRDEL && value != null)
     {
-      if (token.length == 4)
-      {
-        stringValue = token[3];
-        attributeValue = ByteString.valueOfUtf8(stringValue);
-      }
-      else
-      {
-        stringValue = null;
-        attributeValue = null;
-      }
+      attributeValue = value;
+      stringValue = value.toString();
     }
     else
     {
@@ -161,6 +195,171 @@ class HistoricalAttributeValue
     }
   }
 
+  /**
+   * Decodes a value of the historical attribute, in either the compact or the
+   * String encoded form.
+   *
+   * @param value
+   *          The encoded form of the historical attribute value.
+   * @return The decoded historical attribute value.
+   */
+  static HistoricalAttributeValue valueOf(ByteString value)
+  {
+    if (!isCompact(value))
+    {
+      return new HistoricalAttributeValue(value.toString());
+    }
+
+    ByteSequenceReader reader = value.asReader();
+    reader.skip(CSN_OFFSET);
+    CSN csn = CSN.valueOf(reader.readByteSequence(CSN.BYTE_ENCODING_LENGTH));
+    int type = reader.readByte() & 0xff;
+    ByteString attributeValue = null;
+    switch (type & ~HAS_VALUE)
+    {
+    case TYPE_ENTRY_ADD:
+      return new HistoricalAttributeValue("dn", csn, ADD, false, null);
+    case TYPE_ENTRY_MODDN:
+      return new HistoricalAttributeValue("dn", csn, null, true, null);
+    default:
+      String attrDescription = reader.readStringUtf8(reader.readBERLength());
+      if ((type & HAS_VALUE) != 0)
+      {
+        attributeValue = reader.readByteSequence(reader.remaining()).toByteString();
+      }
+      return new HistoricalAttributeValue(attrDescription, csn, decodeType(type & ~HAS_VALUE), false, attributeValue);
+    }
+  }
+
+  /**
+   * Indicates whether the provided value of the historical attribute is in the
+   * compact encoded form.
+   *
+   * @param value
+   *          The encoded form of the historical attribute value.
+   * @return {@code true} if the value is in the compact encoded form.
+   */
+  static boolean isCompact(ByteSequence value)
+  {
+    return value.length() > TYPE_OFFSET && value.byteAt(0) == COMPACT_ENCODING_VERSION;
+  }
+
+  /**
+   * Returns the CSN of the provided value of the historical attribute. The CSN
+   * of values in the compact encoded form is read at a fixed position, and
+   * the other values are only parsed up to their CSN.
+   *
+   * @param value
+   *          The encoded form of the historical attribute value.
+   * @return The CSN of the historical attribute value.
+   */
+  static CSN getCSN(ByteSequence value)
+  {
+    if (isCompact(value))
+    {
+      return CSN.valueOf(value.subSequence(CSN_OFFSET, CSN_OFFSET + CSN.BYTE_ENCODING_LENGTH));
+    }
+    String strVal = value.toString();
+    int csnIndex = strVal.indexOf(':') + 1;
+    return new CSN(strVal.substring(csnIndex, csnIndex + 28));
+  }
+
+  /**
+   * Encodes a modification of an attribute in the compact form.
+   *
+   * @param histKey
+   *          The type of modification.
+   * @param attrDesc
+   *          The description of the modified attribute.
+   * @param csn
+   *          The CSN of the modification.
+   * @param value
+   *          The value added, deleted or replaced, may be {@code null}.
+   * @return The compact encoded form of the historical attribute value.
+   */
+  static ByteString encodeCompact(HistAttrModificationKey histKey, AttributeDescription attrDesc, CSN csn,
+      ByteString value)
+  {
+    ByteStringBuilder builder = new ByteStringBuilder();
+    builder.appendByte(COMPACT_ENCODING_VERSION);
+    csn.toByteString(builder);
+    builder.appendByte(encodeType(histKey) | (value != null ? HAS_VALUE : 0));
+    byte[] attrDescription = getBytes(attrDesc.toString());
+    builder.appendBERLength(attrDescription.length);
+    builder.appendBytes(attrDescription);
+    if (value != null)
+    {
+      builder.appendBytes(value);
+    }
+    return builder.toByteString();
+  }
+
+  /**
+   * Encodes the date when the entry was added or last renamed in the compact
+   * form.
+   *
+   * @param csn
+   *          The CSN of the ADD or MODDN operation.
+   * @param isModDN
+   *          Whether the operation is a MODDN operation.
+   * @return The compact encoded form of the historical attribute value.
+   */
+  static ByteString encodeCompact(CSN csn, boolean isModDN)
+  {
+    ByteStringBuilder builder = new ByteStringBuilder(TYPE_OFFSET + 1);
+    builder.appendByte(COMPACT_ENCODING_VERSION);
+    csn.toByteString(builder);
+    builder.appendByte(isModDN ? TYPE_ENTRY_MODDN : TYPE_ENTRY_ADD);
+    return builder.toByteString();
+  }
+
+  /**
+   * Returns this value of the historical attribute in the compact encoded
+   * form.
+   *
+   * @return The compact encoded form of this historical attribute value.
+   */
+  ByteString toCompact()
+  {
+    if (attrDesc == null)
+    {
+      return encodeCompact(csn, isModDN);
+    }
+    return encodeCompact(histKey, attrDesc, csn, attributeValue);
+  }
+
+  private static int encodeType(HistAttrModificationKey histKey)
+  {
+    switch (histKey)
+    {
+    case ADD:
+      return TYPE_ADD;
+    case DEL:
+      return TYPE_DEL;
+    case REPL:
+      return TYPE_REPL;
+    default:
+      return TYPE_ATTRDEL;
+    }
+  }
+
+  private static HistAttrModificationKey decodeType(int type)
+  {
+    switch (type)
+    {
+    case TYPE_ADD:
+      return ADD;
+    case TYPE_DEL:
+      return DEL;
+    case TYPE_REPL:
+      return REPL;
+    case TYPE_ATTRDEL:
+      return ATTRDEL;
+    default:
+      return null;
+    }
+  }
+
   private AttributeType getAttributeType()
   {
     return attrDesc != null ? attrDesc.getAttributeType() : null;
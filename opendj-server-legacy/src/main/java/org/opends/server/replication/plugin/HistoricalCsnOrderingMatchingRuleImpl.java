@@ -94,6 +94,15 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
      */
     try
     {
+      if (HistoricalAttributeValue.isCompact(value))
+      {
+        // The compact form stores the CSN as timestamp + serverId + seqNum
+        ByteStringBuilder builder = new ByteStringBuilder(14);
+        builder.appendBytes(value.subSequence(9, 11));
+        builder.appendBytes(value.subSequence(1, 9));
+        builder.appendBytes(value.subSequence(11, 15));
+        return builder.toByteString();
+      }
       int csnIndex = value.toString().indexOf(':') + 1;
       String csn = value.subSequence(csnIndex, csnIndex + 28).toString();
       ByteStringBuilder builder = new ByteStringBuilder(14);
@@ -2393,6 +2393,9 @@ public final class LDAPReplicationDomain extends ReplicationDomain
                *  created with subtreeDelete request control when needed.
                */
               nextOp = msg.createOperation(conn);
+              // the next changes on the DN chosen by the conflict resolution
+              // must wait for this update
+              remotePendingChanges.reindex(csn);
             }
           }
           else
@@ -2448,9 +2451,54 @@ public final class LDAPReplicationDomain extends ReplicationDomain
       // dependency has been replayed, do that until no more updates of that
       // type left...
       msg = remotePendingChanges.getNextUpdate();
+      if (msg != null)
+      {
+        dispatchReadyUpdates();
+      }
     } while (msg != null);
   }
 
+  /**
+   * Hands over the other pending updates whose dependencies have been
+   * replayed to the replay threads, so that they are replayed concurrently
+   * rather than one after the other by the current thread. The updates which
+   * do not fit in the queue of updates to replay are left to the current
+   * thread.
+   */
+  private void dispatchReadyUpdates()
+  {
+    dispatchReadyUpdates(remotePendingChanges, updateToReplayQueue, this);
+  }
+
+  /**
+   * Hands over the pending updates whose dependencies have been replayed to
+   * the provided queue of updates to replay, until it is full.
+   * <p>
+   * Package private for testing.
+   *
+   * @param pendingChanges
+   *          the pending changes holding the updates ready to be replayed
+   * @param updateToReplayQueue
+   *          the queue of updates to replay
+   * @param domain
+   *          the domain replaying the updates
+   */
+  static void dispatchReadyUpdates(RemotePendingChanges pendingChanges,
+      BlockingQueue<UpdateToReplay> updateToReplayQueue, LDAPReplicationDomain domain)
+  {
+    LDAPUpdateMsg msg;
+    while (updateToReplayQueue.remainingCapacity() > 0
+        && (msg = pendingChanges.getNextUpdate()) != null)
+    {
+      if (!updateToReplayQueue.offer(new UpdateToReplay(msg, domain)))
+      {
+        // filled concurrently by another thread
+        pendingChanges.putBackNextUpdate(msg);
+        return;
+      }
+    }
+  }
+
   private String logDecodingOperationError(LDAPUpdateMsg msg, Exception e)
   {
     LocalizableMessage message =
@@ -4305,6 +4353,12 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         numUnresolvedNamingConflicts.get());
     addMonitorData(attributes, "remote-pending-changes-size",
         remotePendingChanges.getQueueSize());
+    addMonitorData(attributes, "dependent-updates",
+        remotePendingChanges.getDependentChangesSize());
+    addMonitorData(attributes, "replay-lag",
+        remotePendingChanges.getReplayLag());
+    addMonitorData(attributes, "replay-throughput",
+        remotePendingChanges.getReplayThroughput());
 
     return attributes;
   }
@@ -4902,6 +4956,18 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     return config.getConflictsHistoricalPurgeDelay() * 60 * 1000;
   }
 
+  /**
+   * Indicates whether the historical information necessary to solve conflicts
+   * is written in the compact encoded form.
+   *
+   * @return whether the historical information is written in the compact
+   *         encoded form.
+   */
+  boolean isCompactHistoricalEncoding()
+  {
+    return config.isCompactHistoricalEncoding();
+  }
+
   /**
    * Check if the operation that just happened has cleared a conflict : Clearing
    * a conflict happens if the operation has freed a DN for which another entry
@@ -4953,10 +5019,12 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
             LocalizableMessage.raw(" end date reached"));
        }
 
-       EntryHistorical entryHist = EntryHistorical.newInstanceFromEntry(entry);
-       lastCSNPurgedFromHist = entryHist.getOldestCSN();
+       // Only the CSNs of the historical values are needed to purge them
+       EntryHistorical entryHist = new EntryHistorical();
        entryHist.setPurgeDelay(getHistoricalPurgeDelay());
-       Attribute attr = entryHist.encodeAndPurge();
+       entryHist.setCompactEncoding(isCompactHistoricalEncoding());
+       Attribute attr = entryHist.purge(EntryHistorical.getHistoricalAttr(entry));
+       lastCSNPurgedFromHist = entryHist.getOldestCSN();
        count += entryHist.getLastPurgedValuesCount();
        List<Modification> mods = newArrayList(new Modification(ModificationType.REPLACE, attr));
 
@@ -492,6 +492,7 @@ public class MultimasterReplication
           historicalInformation);
     }
     historicalInformation.setPurgeDelay(domain.getHistoricalPurgeDelay());
+    historicalInformation.setCompactEncoding(domain.isCompactHistoricalEncoding());
     historicalInformation.setHistoricalAttrToOperation(modifyOperation);
 
     if (modifyOperation.getModifications().isEmpty())
@@ -543,6 +544,7 @@ public class MultimasterReplication
           historicalInformation);
     }
     historicalInformation.setPurgeDelay(domain.getHistoricalPurgeDelay());
+    historicalInformation.setCompactEncoding(domain.isCompactHistoricalEncoding());
 
     // Add to the operation the historical attribute : "dn:changeNumber:moddn"
     historicalInformation.setHistoricalAttrToOperation(modifyDNOperation);
@@ -570,7 +572,7 @@ public class MultimasterReplication
     }
 
     // Add to the operation the historical attribute : "dn:changeNumber:add"
-    EntryHistorical.setHistoricalAttrToOperation(addOperation);
+    EntryHistorical.setHistoricalAttrToOperation(addOperation, domain.isCompactHistoricalEncoding());
 
     return new SynchronizationProviderResult.ContinueProcessing();
   }
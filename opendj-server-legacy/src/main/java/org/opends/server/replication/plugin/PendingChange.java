@@ -26,10 +26,14 @@
  */
 package org.opends.server.replication.plugin;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.opends.server.replication.common.CSN;
-import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.protocol.LDAPUpdateMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.types.DN;
 import org.opends.server.types.operation.PluginOperation;
 
 /**
@@ -42,7 +46,12 @@ class PendingChange implements Comparable<PendingChange>
   private boolean committed;
   private UpdateMsg msg;
   private final PluginOperation op;
-  private ServerState dependencyState;
+  /** The number of changes that must be committed before this change can be replayed. */
+  private int pendingDependencies;
+  /** The changes that cannot be replayed before this change is committed. */
+  private List<PendingChange> dependentChanges;
+  /** The DNs under which this change is indexed while it is not committed. */
+  private DN[] indexedDNs;
 
   /**
    * Construct a new PendingChange.
@@ -129,32 +138,81 @@ class PendingChange implements Comparable<PendingChange>
   }
 
   /**
-   * Add the given CSN to the list of dependencies of this PendingChange.
+   * Records that the given PendingChange cannot be replayed before this
+   * PendingChange is committed.
    *
-   * @param csn
-   *          The CSN to add to the list of dependencies of this PendingChange.
+   * @param dependentChange
+   *          The PendingChange that depends on this PendingChange.
+   * @return {@code true} if the given PendingChange had no other pending
+   *         dependency, {@code false} otherwise.
    */
-  public void addDependency(CSN csn)
+  public boolean addDependentChange(PendingChange dependentChange)
   {
-    if (dependencyState == null)
+    if (dependentChanges == null)
+    {
+      dependentChanges = new ArrayList<>(2);
+    }
+    else if (dependentChanges.contains(dependentChange))
     {
-      dependencyState = new ServerState();
+      return false;
     }
-    dependencyState.update(csn);
+    dependentChanges.add(dependentChange);
+    return dependentChange.pendingDependencies++ == 0;
+  }
+
+  /**
+   * Removes and returns the PendingChanges that depend on this PendingChange.
+   *
+   * @return The PendingChanges that depend on this PendingChange.
+   */
+  public List<PendingChange> removeDependentChanges()
+  {
+    final List<PendingChange> result = dependentChanges;
+    dependentChanges = null;
+    return result != null ? result : Collections.<PendingChange> emptyList();
+  }
+
+  /**
+   * Records that one of the changes this PendingChange depends on has been
+   * committed.
+   *
+   * @return {@code true} if all the dependencies of this PendingChange are now
+   *         committed, {@code false} otherwise.
+   */
+  public boolean dependencyCommitted()
+  {
+    return --pendingDependencies == 0;
   }
 
   /**
-   * Check if the given ServerState covers the dependencies of this
-   * PendingChange.
+   * Check if this PendingChange depends on changes that are not committed yet.
    *
-   * @param state The ServerState for which dependencies must be checked,
+   * @return A boolean indicating if this PendingChange depends on changes
+   *         that are not committed yet.
+   */
+  public boolean hasPendingDependencies()
+  {
+    return pendingDependencies > 0;
+  }
+
+  /**
+   * Get the DNs under which this PendingChange is indexed.
+   *
+   * @return the DNs under which this PendingChange is indexed
+   */
+  public DN[] getIndexedDNs()
+  {
+    return indexedDNs;
+  }
+
+  /**
+   * Set the DNs under which this PendingChange is indexed.
    *
-   * @return A boolean indicating if the given ServerState covers the
-   *         dependencies of this PendingChange.
+   * @param indexedDNs the DNs under which this PendingChange is indexed
    */
-  public boolean dependenciesIsCovered(ServerState state)
+  public void setIndexedDNs(DN... indexedDNs)
   {
-    return state.cover(dependencyState);
+    this.indexedDNs = indexedDNs;
   }
 
   /** {@inheritDoc} */
@@ -174,7 +232,6 @@ class PendingChange implements Comparable<PendingChange>
         + ", msg=[" + msg
         + "], isOperationSynchronized="
         + (op != null ? op.isSynchronizationOperation() : "false")
-        + ", dependencyState="
-        + (dependencyState != null ? dependencyState : "");
+        + ", pendingDependencies=" + pendingDependencies;
   }
 }
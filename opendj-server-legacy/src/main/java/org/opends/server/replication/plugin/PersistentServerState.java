@@ -353,9 +353,7 @@ class PersistentServerState
       {
         for (ByteString attrValue : resEntry.getAttribute(histType).get(0))
         {
-          HistoricalAttributeValue histVal =
-              new HistoricalAttributeValue(attrValue.toString());
-          CSN csn = histVal.getCSN();
+          CSN csn = HistoricalAttributeValue.getCSN(attrValue);
           if (csn != null
               && csn.getServerId() == serverId
               && dbMaxCSN.isOlderThan(csn))
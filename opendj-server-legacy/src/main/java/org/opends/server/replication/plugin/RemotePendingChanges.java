@@ -28,6 +28,7 @@ package org.opends.server.replication.plugin;
 
 import java.util.*;
 
+import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.core.AddOperation;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.ModifyDNOperationBasis;
@@ -36,7 +37,9 @@ import org.opends.server.replication.common.CSN;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.protocol.*;
 import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Operation;
+import org.opends.server.util.TimeThread;
 
 /**
  * This class is used to store the list of remote changes received
@@ -46,6 +49,15 @@ import org.opends.server.types.Operation;
  * It is used to know when the ServerState must be updated and to compute
  * the dependencies between operations.
  *
+ * The changes that are not committed yet are indexed by the DNs they affect,
+ * so that the dependencies of a change are found by looking up its DN, the
+ * ancestors of its DN and, for a delete or a modify DN, its subtree, rather
+ * than by going through all the pending changes. The changes applying to the
+ * same entry are replayed in order, and a change waiting for other changes
+ * becomes ready to be replayed as soon as the changes it depends on are
+ * committed, so that the replay threads can replay independent changes
+ * concurrently.
+ *
  * One of this object is instantiated for each ReplicationDomain.
  */
 final class RemotePendingChanges
@@ -53,16 +65,39 @@ final class RemotePendingChanges
   /** A map used to store the pending changes. */
   private final SortedMap<CSN, PendingChange> pendingChanges = new TreeMap<>();
 
+  /**
+   * The pending changes which are not committed yet, indexed by the target DN
+   * of their update and, for a modify DN, by the new DN of the entry. DNs are
+   * sorted by their normalized form, where the descendants of a DN
+   * immediately follow it.
+   */
+  private final NavigableMap<DN, List<PendingChange>> uncommittedChanges = new TreeMap<>();
+
+  /** The CSNs of the pending changes which are not committed yet, the oldest one giving the replay lag. */
+  private final NavigableSet<CSN> uncommittedCSNs = new TreeSet<>();
+
   /**
    * A sorted set containing the list of PendingChanges that have
-   * not been replayed correctly because they are dependent on
-   * another change to be completed.
+   * not been replayed because they were dependent on other changes
+   * which are now committed.
    */
-  private final SortedSet<PendingChange> dependentChanges = new TreeSet<>();
+  private final NavigableSet<PendingChange> readyChanges = new TreeSet<>();
+
+  /** The number of PendingChanges waiting for other changes to be committed. */
+  private int dependentChanges;
 
   /** The ServerState that will be updated when LDAPUpdateMsg are fully replayed. */
   private final ServerState state;
 
+  /** The number of changes committed since this object was created. */
+  private long committedChanges;
+  /** The time when the replay throughput was last computed. */
+  private long throughputTime = TimeThread.getTime();
+  /** The number of committed changes when the replay throughput was last computed. */
+  private long throughputCommittedChanges;
+  /** The number of changes committed per second during the last period. */
+  private long replayThroughput;
+
   /**
    * Creates a new RemotePendingChanges using the provided ServerState.
    *
@@ -84,6 +119,56 @@ final class RemotePendingChanges
     return pendingChanges.size();
   }
 
+  /**
+   * Returns the number of changes waiting for other changes to be committed
+   * or waiting to be replayed after these changes were committed.
+   *
+   * @return The number of changes which were held back by their dependencies.
+   */
+  public synchronized int getDependentChangesSize()
+  {
+    return dependentChanges + readyChanges.size();
+  }
+
+  /**
+   * Returns the time elapsed in milliseconds since the oldest change which is
+   * not committed yet was applied on its originating server.
+   *
+   * @return The replay lag in milliseconds, or 0 if all the changes are
+   *         committed.
+   */
+  public synchronized long getReplayLag()
+  {
+    if (uncommittedCSNs.isEmpty())
+    {
+      return 0;
+    }
+    return Math.max(0, TimeThread.getTime() - uncommittedCSNs.first().getTime());
+  }
+
+  /**
+   * Returns the number of changes committed per second, computed over the
+   * last period of at least one second.
+   *
+   * @return The number of changes committed per second.
+   */
+  public synchronized long getReplayThroughput()
+  {
+    updateReplayThroughput(TimeThread.getTime());
+    return replayThroughput;
+  }
+
+  private void updateReplayThroughput(long now)
+  {
+    final long elapsed = now - throughputTime;
+    if (elapsed >= 1000)
+    {
+      replayThroughput = (committedChanges - throughputCommittedChanges) * 1000 / elapsed;
+      throughputTime = now;
+      throughputCommittedChanges = committedChanges;
+    }
+  }
+
   /**
    * Add a new LDAPUpdateMsg that was received from the replication server
    * to the pendingList.
@@ -96,8 +181,15 @@ final class RemotePendingChanges
   public synchronized boolean putRemoteUpdate(LDAPUpdateMsg update)
   {
     CSN csn = update.getCSN();
-    return pendingChanges.put(csn,
-        new PendingChange(csn, null, update)) == null;
+    if (pendingChanges.containsKey(csn))
+    {
+      return false;
+    }
+    final PendingChange change = new PendingChange(csn, null, update);
+    pendingChanges.put(csn, change);
+    uncommittedCSNs.add(csn);
+    index(change, update);
+    return true;
   }
 
   /**
@@ -113,7 +205,22 @@ final class RemotePendingChanges
     {
       throw new NoSuchElementException();
     }
-    curChange.setCommitted(true);
+    if (!curChange.isCommitted())
+    {
+      curChange.setCommitted(true);
+      uncommittedCSNs.remove(csn);
+      unindex(curChange);
+      for (PendingChange dependentChange : curChange.removeDependentChanges())
+      {
+        if (dependentChange.dependencyCommitted())
+        {
+          dependentChanges--;
+          readyChanges.add(dependentChange);
+        }
+      }
+      committedChanges++;
+      updateReplayThroughput(TimeThread.getTime());
+    }
 
     CSN firstCSN = pendingChanges.firstKey();
     PendingChange firstChange = pendingChanges.get(firstCSN);
@@ -139,22 +246,109 @@ final class RemotePendingChanges
   }
 
   /**
-   * Get the first update in the list that have some dependencies cleared.
+   * Get the first update in the list whose dependencies have been committed.
    *
    * @return The LDAPUpdateMsg to be handled.
    */
   public synchronized LDAPUpdateMsg getNextUpdate()
   {
-    /*
-     * Parse the list of Update with dependencies and check if the dependencies
-     * are now cleared until an Update without dependencies is found.
-     */
-    for (PendingChange change : dependentChanges)
+    final PendingChange change = readyChanges.pollFirst();
+    return change != null ? change.getLDAPUpdateMsg() : null;
+  }
+
+  /**
+   * Puts back an update returned by {@link #getNextUpdate()} which could not
+   * be handed over for replay, so that it is returned again.
+   *
+   * @param update
+   *          The LDAPUpdateMsg to put back.
+   */
+  public synchronized void putBackNextUpdate(LDAPUpdateMsg update)
+  {
+    final PendingChange change = pendingChanges.get(update.getCSN());
+    if (change != null)
     {
-      if (change.dependenciesIsCovered(state))
+      readyChanges.add(change);
+    }
+  }
+
+  /**
+   * Indexes again an update which is not committed yet under its current DNs,
+   * after the conflict resolution changed its target DN or its new DN, so that
+   * the next changes on these DNs depend on it.
+   *
+   * @param csn
+   *          The CSN of the update whose DNs have changed.
+   */
+  public synchronized void reindex(CSN csn)
+  {
+    final PendingChange change = pendingChanges.get(csn);
+    if (change != null && !change.isCommitted())
+    {
+      unindex(change);
+      index(change, change.getLDAPUpdateMsg());
+    }
+  }
+
+  private void index(PendingChange change, LDAPUpdateMsg update)
+  {
+    final DN dn = update.getDN();
+    final DN newDN = getNewDN(update);
+    if (newDN != null && !newDN.equals(dn))
+    {
+      change.setIndexedDNs(dn, newDN);
+    }
+    else
+    {
+      change.setIndexedDNs(dn);
+    }
+
+    for (DN indexedDN : change.getIndexedDNs())
+    {
+      List<PendingChange> changes = uncommittedChanges.get(indexedDN);
+      if (changes == null)
       {
-        dependentChanges.remove(change);
-        return change.getLDAPUpdateMsg();
+        changes = new ArrayList<>(1);
+        uncommittedChanges.put(indexedDN, changes);
+      }
+      changes.add(change);
+    }
+  }
+
+  private void unindex(PendingChange change)
+  {
+    final DN[] indexedDNs = change.getIndexedDNs();
+    if (indexedDNs == null)
+    {
+      return;
+    }
+    for (DN indexedDN : indexedDNs)
+    {
+      final List<PendingChange> changes = uncommittedChanges.get(indexedDN);
+      if (changes != null && changes.remove(change) && changes.isEmpty())
+      {
+        uncommittedChanges.remove(indexedDN);
+      }
+    }
+  }
+
+  /**
+   * Returns the new DN of the entry targeted by a modify DN update.
+   *
+   * @return the new DN of the entry, or null if the update is not a modify DN
+   *         or if its new DN cannot be decoded.
+   */
+  private static DN getNewDN(LDAPUpdateMsg update)
+  {
+    if (update instanceof ModifyDNMsg)
+    {
+      try
+      {
+        return ((ModifyDNMsg) update).computeNewDN();
+      }
+      catch (DirectoryException e)
+      {
+        // The modify DN cannot be replayed, nothing depends on its new DN.
       }
     }
     return null;
@@ -170,8 +364,86 @@ final class RemotePendingChanges
   private void addDependency(
       PendingChange dependentChange, PendingChange pendingChange)
   {
-    dependentChange.addDependency(pendingChange.getCSN());
-    dependentChanges.add(dependentChange);
+    if (pendingChange.addDependentChange(dependentChange))
+    {
+      dependentChanges++;
+    }
+  }
+
+  /**
+   * Makes the given change dependent on the older uncommitted changes
+   * indexed under the provided DN or, if requested, under its subtree.
+   *
+   * @return A boolean indicating if some dependencies were found.
+   */
+  private boolean addEntryDependencies(PendingChange change, DN dn, boolean subtree)
+  {
+    if (!subtree)
+    {
+      return addDependencies(change, uncommittedChanges.get(dn), false);
+    }
+
+    boolean hasDependencies = false;
+    final ByteString prefix = dn.toNormalizedByteString();
+    for (Map.Entry<DN, List<PendingChange>> entry : uncommittedChanges.tailMap(dn, true).entrySet())
+    {
+      final DN entryDN = entry.getKey();
+      if (!startsWith(entryDN.toNormalizedByteString(), prefix))
+      {
+        break;
+      }
+      if (entryDN.isDescendantOf(dn))
+      {
+        hasDependencies |= addDependencies(change, entry.getValue(), false);
+      }
+    }
+    return hasDependencies;
+  }
+
+  /**
+   * Makes the given change dependent on the older uncommitted add and modify
+   * DN changes indexed under the ancestors of the provided DN, which may be
+   * creating these ancestors.
+   *
+   * @return A boolean indicating if some dependencies were found.
+   */
+  private boolean addParentDependencies(PendingChange change, DN dn)
+  {
+    boolean hasDependencies = false;
+    for (DN parentDN = dn.parent(); parentDN != null; parentDN = parentDN.parent())
+    {
+      hasDependencies |= addDependencies(change, uncommittedChanges.get(parentDN), true);
+    }
+    return hasDependencies;
+  }
+
+  private boolean addDependencies(PendingChange change, List<PendingChange> changes, boolean namingOnly)
+  {
+    boolean hasDependencies = false;
+    if (changes != null)
+    {
+      for (PendingChange pendingChange : changes)
+      {
+        if (pendingChange.getCSN().isOlderThan(change.getCSN())
+            && (!namingOnly || isNamingChange(pendingChange.getLDAPUpdateMsg())))
+        {
+          hasDependencies = true;
+          addDependency(change, pendingChange);
+        }
+      }
+    }
+    return hasDependencies;
+  }
+
+  private static boolean isNamingChange(LDAPUpdateMsg msg)
+  {
+    return msg instanceof AddMsg || msg instanceof ModifyDNMsg;
+  }
+
+  private static boolean startsWith(ByteString bytes, ByteString prefix)
+  {
+    return bytes.length() >= prefix.length()
+        && bytes.subSequence(0, prefix.length()).equals(prefix);
   }
 
   /**
@@ -181,10 +453,10 @@ final class RemotePendingChanges
    * there are some dependencies.
    * AddOperation depends on
    *
-   * - DeleteOperation done on the same DN
-   * - ModifyDnOperation with the same target DN as the ADD DN
-   * - ModifyDnOperation with new DN equals to the ADD DN parent
-   * - AddOperation done on the parent DN of the ADD DN
+   * - any operation done on the same DN, including DeleteOperation and
+   *   ModifyDnOperation with the same target DN or new DN as the ADD DN
+   * - AddOperation done on a parent DN of the ADD DN
+   * - ModifyDnOperation with new DN equals to a parent of the ADD DN
    *
    * @param op The AddOperation to be checked.
    *
@@ -192,80 +464,15 @@ final class RemotePendingChanges
    */
   public synchronized boolean checkDependencies(AddOperation op)
   {
-    boolean hasDependencies = false;
-    final DN targetDN = op.getEntryDN();
-    final CSN csn = OperationContext.getCSN(op);
-    final PendingChange change = pendingChanges.get(csn);
+    final PendingChange change = pendingChanges.get(OperationContext.getCSN(op));
     if (change == null)
     {
       return false;
     }
 
-    for (PendingChange pendingChange : pendingChanges.values())
-    {
-      if (pendingChange.getCSN().isOlderThan(csn))
-      {
-        final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
-        if (pendingMsg != null)
-        {
-          if (pendingMsg instanceof DeleteMsg)
-          {
-            /*
-             * Check is the operation to be run is a deleteOperation on the
-             * same DN.
-             */
-            if (pendingMsg.getDN().equals(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof AddMsg)
-          {
-            /*
-             * Check if the operation to be run is an addOperation on a
-             * parent of the current AddOperation.
-             */
-            if (pendingMsg.getDN().isAncestorOf(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof ModifyDNMsg)
-          {
-            /*
-             * Check if the operation to be run is ModifyDnOperation with
-             * the same target DN as the ADD DN
-             * or a ModifyDnOperation with new DN equals to the ADD DN parent
-             */
-            if (pendingMsg.getDN().equals(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-            else
-            {
-              final ModifyDNMsg pendingModDn = (ModifyDNMsg) pendingMsg;
-              if (pendingModDn.newDNIsParent(targetDN))
-              {
-                hasDependencies = true;
-                addDependency(change, pendingChange);
-              }
-            }
-          }
-        }
-      }
-      else
-      {
-        // We reached an operation that is newer than the operation
-        // for which we are doing the dependency check so it is
-        // not possible to find another operation with some dependency.
-        // break the loop to avoid going through the potentially large
-        // list of pending changes.
-        break;
-      }
-    }
+    final DN targetDN = op.getEntryDN();
+    boolean hasDependencies = addEntryDependencies(change, targetDN, false);
+    hasDependencies |= addParentDependencies(change, targetDN);
     return hasDependencies;
   }
 
@@ -276,7 +483,7 @@ final class RemotePendingChanges
    * there are some dependencies.
    *
    * ModifyOperation depends on
-   * - AddOperation done on the same DN
+   * - any operation done on the same DN, including AddOperation
    *
    * @param op The ModifyOperation to be checked.
    *
@@ -284,41 +491,12 @@ final class RemotePendingChanges
    */
   public synchronized boolean checkDependencies(ModifyOperation op)
   {
-    boolean hasDependencies = false;
-    final DN targetDN = op.getEntryDN();
-    final CSN csn = OperationContext.getCSN(op);
-    final PendingChange change = pendingChanges.get(csn);
+    final PendingChange change = pendingChanges.get(OperationContext.getCSN(op));
     if (change == null)
     {
       return false;
     }
-
-    for (PendingChange pendingChange : pendingChanges.values())
-    {
-      if (pendingChange.getCSN().isOlderThan(csn))
-      {
-        final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
-        if (pendingMsg instanceof AddMsg)
-        {
-          // Check if the operation to be run is an addOperation on a same DN.
-          if (pendingMsg.getDN().equals(targetDN))
-          {
-            hasDependencies = true;
-            addDependency(change, pendingChange);
-          }
-        }
-      }
-      else
-      {
-        // We reached an operation that is newer than the operation
-        // for which we are doing the dependency check so it is
-        // not possible to find another operation with some dependency.
-        // break the loop to avoid going through the potentially large
-        // list of pending changes.
-        break;
-      }
-    }
-    return hasDependencies;
+    return addEntryDependencies(change, op.getEntryDN(), false);
   }
 
   /**
@@ -328,10 +506,12 @@ final class RemotePendingChanges
    * there are some dependencies.
    *
    * Modify DN Operation depends on
-   * - AddOperation done on the same DN as the target DN of the MODDN operation
-   * - AddOperation done on the new parent of the MODDN  operation
-   * - DeleteOperation done on the new DN of the MODDN operation
-   * - ModifyDNOperation done from the new DN of the MODDN operation
+   * - any operation done on the target DN of the MODDN operation or on its
+   *   children, including AddOperation done on the same DN
+   * - any operation done on the new DN of the MODDN operation, including
+   *   DeleteOperation and ModifyDNOperation done from the new DN
+   * - AddOperation or ModifyDNOperation done on the new parents of the MODDN
+   *   operation
    *
    * @param msg The ModifyDNMsg to be checked.
    *
@@ -339,71 +519,19 @@ final class RemotePendingChanges
    */
   private synchronized boolean checkDependencies(ModifyDNMsg msg)
   {
-    boolean hasDependencies = false;
-    final CSN csn = msg.getCSN();
-    final PendingChange change = pendingChanges.get(csn);
+    final PendingChange change = pendingChanges.get(msg.getCSN());
     if (change == null)
     {
       return false;
     }
 
     final DN targetDN = change.getLDAPUpdateMsg().getDN();
-
-    for (PendingChange pendingChange : pendingChanges.values())
+    boolean hasDependencies = addEntryDependencies(change, targetDN, true);
+    final DN newDN = getNewDN(msg);
+    if (newDN != null)
     {
-      if (pendingChange.getCSN().isOlderThan(csn))
-      {
-        final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
-        if (pendingMsg != null)
-        {
-          if (pendingMsg instanceof DeleteMsg)
-          {
-            // Check if the target of the Delete is the same
-            // as the new DN of this ModifyDN
-            if (msg.newDNIsEqual(pendingMsg.getDN()))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof AddMsg)
-          {
-            // Check if the Add Operation was done on the new parent of
-            // the MODDN  operation
-            if (msg.newParentIsEqual(pendingMsg.getDN()))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-            // Check if the AddOperation was done on the same DN as the
-            // target DN of the MODDN operation
-            if (pendingMsg.getDN().equals(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof ModifyDNMsg)
-          {
-            // Check if the ModifyDNOperation was done from the new DN of
-            // the MODDN operation
-            if (msg.newDNIsEqual(pendingMsg.getDN()))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-        }
-      }
-      else
-      {
-        // We reached an operation that is newer than the operation
-        // for which we are doing the dependency check so it is
-        // not possible to find another operation with some dependency.
-        // break the loop to avoid going through the potentially large
-        // list of pending changes.
-        break;
-      }
+      hasDependencies |= addEntryDependencies(change, newDN, false);
+      hasDependencies |= addParentDependencies(change, newDN);
     }
     return hasDependencies;
   }
@@ -415,10 +543,10 @@ final class RemotePendingChanges
    * there are some dependencies.
    *
    * DeleteOperation depends on
-   * - DeleteOperation done on children DN
-   * - ModifyDnOperation with target DN that are children of the DEL DN
-   * - AddOperation done on the same DN
-   *
+   * - any operation done on the same DN or on children DN, including
+   *   AddOperation done on the same DN, DeleteOperation done on children DN
+   *   and ModifyDnOperation with target DN that are children of the DEL DN
+   * - AddOperation or ModifyDnOperation done on a parent DN of the DEL DN
    *
    * @param op The DeleteOperation to be checked.
    *
@@ -426,72 +554,15 @@ final class RemotePendingChanges
    */
   public synchronized boolean checkDependencies(DeleteOperation op)
   {
-    boolean hasDependencies = false;
-    final DN targetDN = op.getEntryDN();
-    final CSN csn = OperationContext.getCSN(op);
-    final PendingChange change = pendingChanges.get(csn);
+    final PendingChange change = pendingChanges.get(OperationContext.getCSN(op));
     if (change == null)
     {
       return false;
     }
 
-    for (PendingChange pendingChange : pendingChanges.values())
-    {
-      if (pendingChange.getCSN().isOlderThan(csn))
-      {
-        final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
-        if (pendingMsg != null)
-        {
-          if (pendingMsg instanceof DeleteMsg)
-          {
-            /*
-             * Check if the operation to be run is a deleteOperation on a
-             * children of the current DeleteOperation.
-             */
-            if (pendingMsg.getDN().isDescendantOf(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof AddMsg)
-          {
-            /*
-             * Check if the operation to be run is an addOperation on a
-             * parent of the current DeleteOperation.
-             */
-            if (pendingMsg.getDN().equals(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-          else if (pendingMsg instanceof ModifyDNMsg)
-          {
-            final ModifyDNMsg pendingModDn = (ModifyDNMsg) pendingMsg;
-            /*
-             * Check if the operation to be run is an ModifyDNOperation
-             * on a children of the current DeleteOperation
-             */
-            if (pendingMsg.getDN().isDescendantOf(targetDN)
-                || pendingModDn.newDNIsParent(targetDN))
-            {
-              hasDependencies = true;
-              addDependency(change, pendingChange);
-            }
-          }
-        }
-      }
-      else
-      {
-        // We reached an operation that is newer than the operation
-        // for which we are doing the dependency check so it is
-        // not possible to find another operation with some dependency.
-        // break the loop to avoid going through the potentially large
-        // list of pending changes.
-        break;
-      }
-    }
+    final DN targetDN = op.getEntryDN();
+    boolean hasDependencies = addEntryDependencies(change, targetDN, true);
+    hasDependencies |= addParentDependencies(change, targetDN);
     return hasDependencies;
   }
 
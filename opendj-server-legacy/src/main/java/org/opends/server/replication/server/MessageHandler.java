@@ -31,7 +31,9 @@ import static org.opends.server.types.Attributes.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -70,14 +72,19 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
 
   private static final int MINIMUM_TRESHOLD_MSG_QUEUE_SIZE = 5;
 
-  /** UpdateMsg queue. */
+  /**
+   * UpdateMsg queue. Filled without locking by the threads publishing updates
+   * and consumed by the single thread calling getNextMessage().
+   */
   private final MsgQueue msgQueue = new MsgQueue();
   /**
    * Late queue. All access to the lateQueue in getNextMessage() is
-   * single-threaded. However, reads from threads calling getOlderUpdateCN()
-   * need protecting against removals performed using getNextMessage().
+   * single-threaded. Threads calling getOlderUpdateCSN() only read its first
+   * message, which the MsgQueue allows concurrently with removals.
    */
   private final MsgQueue lateQueue = new MsgQueue();
+  /** The thread waiting in getNextMessage() for updates to be published, if any. */
+  private volatile Thread waitingConsumer;
   /** Local hosting RS. */
   protected final ReplicationServer replicationServer;
   /** Specifies the related replication server domain based on baseDN. */
@@ -90,8 +97,12 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   protected final int maxQueueSize;
   /** Specifies the max queue size in bytes for this handler. */
   private final int maxQueueBytesSize;
-  /** Specifies whether the consumer is following the producer (is not late). */
-  private boolean following;
+  /**
+   * Specifies whether the consumer is following the producer (is not late).
+   * Only the consumer sets it to true, publishers set it to false when they
+   * trim the msgQueue.
+   */
+  private volatile boolean following;
   /** Specifies the current serverState of this handler. */
   private ServerState serverState;
   /** Specifies the baseDN of the domain. */
@@ -101,7 +112,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    * If not active, the handler will not return any message.
    * Called at the beginning of shutdown process.
    */
-  private boolean activeConsumer = true;
+  private volatile boolean activeConsumer = true;
   /** Set when ServerHandler is stopping. */
   private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
@@ -127,25 +138,32 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   void add(UpdateMsg update)
   {
-    synchronized (msgQueue)
+    msgQueue.add(update);
+
+    // TODO : size should be configurable and larger than max-receive-queue-size
+    while (isMsgQueueAboveThreshold())
     {
-      /*
-       * If queue was empty the writer thread was probably asleep
-       * waiting for some changes, wake it up
-       */
-      if (msgQueue.isEmpty())
+      // Stop following before trimming, so that the consumer notices that the
+      // message it took may have overtaken trimmed messages
+      following = false;
+      if (msgQueue.removeFirst() == null)
       {
-        msgQueue.notify();
+        break;
       }
+    }
 
-      msgQueue.add(update);
+    /*
+     * If the writer thread is asleep waiting for some changes, wake it up
+     */
+    wakeUpConsumer();
+  }
 
-      // TODO : size should be configurable and larger than max-receive-queue-size
-      while (isMsgQueueAboveThreshold())
-      {
-        following = false;
-        msgQueue.removeFirst();
-      }
+  private void wakeUpConsumer()
+  {
+    final Thread consumer = waitingConsumer;
+    if (consumer != null)
+    {
+      LockSupport.unpark(consumer);
     }
   }
 
@@ -277,14 +295,11 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
           {
             // we could not find any messages in the changelog
             // so the remote server is not late anymore.
-            synchronized (msgQueue)
+            // Ensure we are below threshold so this server will follow the
+            // msgQueue without fearing the msgQueue gets trimmed
+            if (isMsgQueueBelowThreshold())
             {
-              // Ensure we are below threshold so this server will follow the
-              // msgQueue without fearing the msgQueue gets trimmed
-              if (isMsgQueueBelowThreshold())
-              {
-                following = true;
-              }
+              following = true;
             }
           }
           else
@@ -293,32 +308,31 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
              * if the first change in the lateQueue is also on the regular queue,
              * we can resume the processing from the regular queue
              * -> set following to true and empty the lateQueue.
+             * following is set before looking for the change, so that a
+             * publisher trimming the msgQueue afterwards resets it to false.
              */
             UpdateMsg msg = lateQueue.first();
-            synchronized (msgQueue)
+            following = true;
+            if (msgQueue.contains(msg))
             {
-              if (msgQueue.contains(msg))
+              /* we finally catch up with the regular queue */
+              lateQueue.clear();
+              msgQueue.consumeUpTo(msg);
+              if (updateServerState(msg))
               {
-                /* we finally catch up with the regular queue */
-                following = true;
-                lateQueue.clear();
-                msgQueue.consumeUpTo(msg);
-                if (updateServerState(msg))
-                {
-                  return msg;
-                }
+                return msg;
               }
             }
+            else
+            {
+              following = false;
+            }
           }
         }
         else
         {
           // get the next change from the lateQueue
-          UpdateMsg msg;
-          synchronized (msgQueue) // TODO JNR why synchronize(msgQueue) here?
-          {
-            msg = lateQueue.removeFirst();
-          }
+          UpdateMsg msg = lateQueue.removeFirst();
           if (updateServerState(msg))
           {
             return msg;
@@ -327,34 +341,27 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
         }
       }
 
-      synchronized (msgQueue)
+      if (following)
       {
-        if (following)
+        UpdateMsg msg = msgQueue.removeFirst();
+        if (msg == null)
         {
-          try
-          {
-            while (msgQueue.isEmpty() && following)
-            {
-              msgQueue.wait(500);
-              if (!activeConsumer)
-              {
-                return null;
-              }
-            }
-          } catch (InterruptedException e)
+          if (!waitForUpdates())
           {
             return null;
           }
-          UpdateMsg msg = msgQueue.removeFirst();
-          if (updateServerState(msg))
-          {
-            /*
-             * Only push the message if it has not yet been seen
-             * by the other server.
-             * Otherwise just loop to select the next message.
-             */
-            return msg;
-          }
+        }
+        else if (following && updateServerState(msg))
+        {
+          /*
+           * Only push the message if it has not yet been seen
+           * by the other server.
+           * Otherwise just loop to select the next message.
+           * If following went to false after taking the message, publishers
+           * may have trimmed older messages: the message is not sent now and
+           * will be read again from the changelog.
+           */
+          return msg;
         }
       }
       /*
@@ -366,6 +373,30 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
     return null;
   }
 
+  /**
+   * Waits for a publisher to add updates to the msgQueue, or for the handler
+   * to stop following it.
+   *
+   * @return {@code false} if the consumer must stop, {@code true} otherwise
+   */
+  private boolean waitForUpdates()
+  {
+    waitingConsumer = Thread.currentThread();
+    try
+    {
+      // check again after registering, publishers may have added updates
+      if (msgQueue.isEmpty() && following)
+      {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(500));
+      }
+    }
+    finally
+    {
+      waitingConsumer = null;
+    }
+    return activeConsumer && !Thread.currentThread().isInterrupted();
+  }
+
   /**
    * Fills the late queue with the most recent changes, accepting only the
    * messages from provided replica ids.
@@ -393,32 +424,31 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public CSN getOlderUpdateCSN()
   {
-    synchronized (msgQueue)
+    if (following)
     {
-      if (following)
+      final UpdateMsg first = msgQueue.first();
+      if (first != null)
       {
-        if (!msgQueue.isEmpty())
-        {
-          return msgQueue.first().getCSN();
-        }
+        return first.getCSN();
+      }
+    }
+    else
+    {
+      final UpdateMsg first = lateQueue.first();
+      if (first != null)
+      {
+        return first.getCSN();
       }
       else
       {
-        if (!lateQueue.isEmpty())
-        {
-          return lateQueue.first().getCSN();
-        }
-        else
-        {
-          /*
-          following is false AND lateQueue is empty
-          We may be at the very moment when the writer has emptied the
-          lateQueue when it sent the last update. The writer will fill again
-          the lateQueue when it will send the next update but we are not yet
-          there. So let's take the last change not sent directly from the db.
-          */
-          return findOldestCSNFromReplicaDBs();
-        }
+        /*
+        following is false AND lateQueue is empty
+        We may be at the very moment when the writer has emptied the
+        lateQueue when it sent the last update. The writer will fill again
+        the lateQueue when it will send the next update but we are not yet
+        there. So let's take the last change not sent directly from the db.
+        */
+        return findOldestCSNFromReplicaDBs();
       }
     }
     return null;
@@ -459,27 +489,24 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public int getRcvMsgQueueSize()
   {
-    synchronized (msgQueue)
+    /*
+     * When the server is up to date or close to be up to date,
+     * the number of updates to be sent is the size of the receive queue.
+     */
+    if (following)
     {
-      /*
-       * When the server is up to date or close to be up to date,
-       * the number of updates to be sent is the size of the receive queue.
-       */
-      if (following)
-      {
-        return msgQueue.count();
-      }
-
-      /*
-       * When the server is not able to follow, the msgQueue may become too
-       * large and therefore won't contain all the changes. Some changes may
-       * only be stored in the backing DB of the servers.
-       * The total size of the receive queue is calculated by doing the sum of
-       * the number of missing changes for every replicaDB.
-       */
-      ServerState latestState = replicationServerDomain.getLatestServerState();
-      return ServerState.diffChanges(latestState, serverState);
+      return msgQueue.count();
     }
+
+    /*
+     * When the server is not able to follow, the msgQueue may become too
+     * large and therefore won't contain all the changes. Some changes may
+     * only be stored in the backing DB of the servers.
+     * The total size of the receive queue is calculated by doing the sum of
+     * the number of missing changes for every replicaDB.
+     */
+    ServerState latestState = replicationServerDomain.getLatestServerState();
+    return ServerState.diffChanges(latestState, serverState);
   }
 
   /**
@@ -530,6 +557,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   public void setConsumerActive(boolean active)
   {
     this.activeConsumer = active;
+    wakeUpConsumer();
   }
 
   /**
@@ -578,12 +606,8 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   /** Shutdown this handler. */
   public void shutdown()
   {
-    synchronized (msgQueue)
-    {
-      msgQueue.clear();
-      msgQueue.notify();
-      msgQueue.notifyAll();
-    }
+    msgQueue.clear();
+    wakeUpConsumer();
 
     DirectoryServer.deregisterMonitorProvider(this);
   }
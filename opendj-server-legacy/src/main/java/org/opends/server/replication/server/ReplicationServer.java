@@ -813,6 +813,19 @@ public class ReplicationServer
     return this.config.getReplicationPurgeDelay() * 1000;
   }
 
+  /**
+   * Retrieves the maximum delay after which the changes received by this
+   * replication server must be synchronized to disk (in milliseconds).
+   *
+   * @return The maximum delay after which the changes must be synchronized to
+   *         disk (in milliseconds), or 0 if they are only synchronized when
+   *         changelog files are rotated or closed.
+   */
+  public long getCommitDelay()
+  {
+    return this.config.getReplicationCommitDelay();
+  }
+
   /**
    * Check if the provided configuration is acceptable for add.
    *
@@ -864,6 +877,10 @@ public class ReplicationServer
     {
       this.changelogDB.setPurgeDelay(getPurgeDelay());
     }
+    if (config.getReplicationCommitDelay() != oldConfig.getReplicationCommitDelay())
+    {
+      this.changelogDB.setCommitDelay(getCommitDelay());
+    }
     final boolean computeCN = config.isComputeChangeNumber();
     if (computeCN != oldConfig.isComputeChangeNumber())
     {
@@ -55,6 +55,20 @@ public interface ChangelogDB
    */
   void setPurgeDelay(long delayInMillis);
 
+  /**
+   * Sets the maximum delay after which the changes added to the replication
+   * database are synchronized with the file system. Can be called while the
+   * database is running.
+   * <p>
+   * All the changes added during this delay are synchronized at once, which
+   * allows to persist bursts of changes without synchronizing each of them.
+   *
+   * @param delayInMillis
+   *          the commit delay in milliseconds, or 0 if the changes must only be
+   *          synchronized when log files are rotated or closed
+   */
+  void setCommitDelay(long delayInMillis);
+
   /**
    * Sets whether the replication database must compute change numbers for
    * replicated changes. Change numbers are computed using a separate new
@@ -33,9 +33,9 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import org.forgerock.opendj.ldap.ByteString;
-import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.util.Pair;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
@@ -53,6 +53,9 @@ import org.opends.server.util.StaticUtils;
  * <p>
  * The reader provides both sequential access, using the {@code readRecord()} method,
  * and reasonably fast random access, using the {@code seekToRecord(K, boolean)} method.
+ * <p>
+ * The log file is either read through a read-ahead buffer, or directly from
+ * memory when it is a read-only log file mapped in memory.
  *
  * @param <K>
  *          Type of the key of a record, which must be comparable.
@@ -78,7 +81,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
 
   private final RecordParser<K, V> parser;
 
-  private final RandomAccessFile reader;
+  private final LogFileInput reader;
 
   private final File file;
 
@@ -100,7 +103,29 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   static <K extends Comparable<K>, V> BlockLogReader<K, V> newReader(
       final File file, final RandomAccessFile reader, final RecordParser<K, V> parser)
   {
-    return new BlockLogReader<>(file, reader, parser, BLOCK_SIZE);
+    return new BlockLogReader<>(file, LogFileInput.newBufferedInput(reader), parser, BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a reader for the provided read-only log file mapped in memory.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param file
+   *          The log file to read.
+   * @param mappedFile
+   *          The content of the log file mapped in memory, which is not
+   *          modified by the reader.
+   * @param parser
+   *          The parser to decode the records read.
+   * @return a new log reader
+   */
+  static <K extends Comparable<K>, V> BlockLogReader<K, V> newMappedReader(
+      final File file, final ByteBuffer mappedFile, final RecordParser<K, V> parser)
+  {
+    return new BlockLogReader<>(file, LogFileInput.newMappedInput(mappedFile), parser, BLOCK_SIZE);
   }
 
   /**
@@ -126,11 +151,12 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   static <K extends Comparable<K>, V> BlockLogReader<K, V> newReaderForTests(
       final File file, final RandomAccessFile reader, final RecordParser<K, V> parser, int blockSize)
   {
-    return new BlockLogReader<>(file, reader, parser, blockSize);
+    return new BlockLogReader<>(file, reader != null ? LogFileInput.newBufferedInput(reader) : null,
+        parser, blockSize);
   }
 
   private BlockLogReader(
-      final File file, final RandomAccessFile reader, final RecordParser<K, V> parser, final int blockSize)
+      final File file, final LogFileInput reader, final RecordParser<K, V> parser, final int blockSize)
   {
     this.file = file;
     this.reader = reader;
@@ -182,14 +208,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
    */
   public void seekToPosition(final long filePosition) throws ChangelogException
   {
-    try
-    {
-      reader.seek(filePosition);
-    }
-    catch (IOException e)
-    {
-      throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_SEEK.get(filePosition, file.getPath()), e);
-    }
+    reader.seek(filePosition);
   }
 
   /**
@@ -213,15 +232,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
    */
   public long getFilePosition() throws ChangelogException
   {
-    try
-    {
-      return reader.getFilePointer();
-    }
-    catch (IOException e)
-    {
-      throw new ChangelogException(
-          ERR_CHANGELOG_UNABLE_TO_GET_CURSOR_READER_POSITION_LOG_FILE.get(file.getPath()), e);
-    }
+    return reader.getFilePointer();
   }
 
   /** {@inheritDoc} */
@@ -275,7 +286,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     if (blockStartPosition > 0)
     {
       final byte[] offsetData = new byte[SIZE_OF_BLOCK_OFFSET];
-      reader.readFully(offsetData);
+      reader.readFully(offsetData, 0, SIZE_OF_BLOCK_OFFSET);
       final int offsetToRecord = ByteString.wrap(offsetData).toInt();
       if (offsetToRecord > 0)
       {
@@ -305,31 +316,28 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
       final int recordLength = readRecordLength(distanceToBlockStart);
 
       // read the record
-      long currentPosition = reader.getFilePointer();
-      distanceToBlockStart = getDistanceToNextBlockStart(currentPosition, blockSize);
-      final ByteStringBuilder recordBytes =
-          new ByteStringBuilder(getLengthOfStoredRecord(recordLength, distanceToBlockStart));
+      distanceToBlockStart = getDistanceToNextBlockStart(reader.getFilePointer(), blockSize);
+      final byte[] recordBytes = new byte[recordLength];
       int remainingBytesToRead = recordLength;
       while (distanceToBlockStart < remainingBytesToRead)
       {
         if (distanceToBlockStart != 0)
         {
-          recordBytes.appendBytes(reader, distanceToBlockStart);
+          reader.readFully(recordBytes, recordLength - remainingBytesToRead, distanceToBlockStart);
         }
         // skip the offset
         reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
 
         // next step
-        currentPosition += distanceToBlockStart + SIZE_OF_BLOCK_OFFSET;
         remainingBytesToRead -= distanceToBlockStart;
         distanceToBlockStart = blockSize - SIZE_OF_BLOCK_OFFSET;
       }
       if (remainingBytesToRead > 0)
       {
         // last bytes of the record
-        recordBytes.appendBytes(reader, remainingBytesToRead);
+        reader.readFully(recordBytes, recordLength - remainingBytesToRead, remainingBytesToRead);
       }
-      return recordBytes.toByteString();
+      return ByteString.wrap(recordBytes);
     }
     catch (EOFException e)
     {
@@ -363,13 +371,13 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   /** Read the length of a record. */
   private int readRecordLength(final int distanceToBlockStart) throws IOException
   {
-    final ByteStringBuilder lengthBytes = new ByteStringBuilder(SIZE_OF_RECORD_SIZE);
+    final byte[] lengthBytes = new byte[SIZE_OF_RECORD_SIZE];
     if (distanceToBlockStart > 0 && distanceToBlockStart < SIZE_OF_RECORD_SIZE)
     {
-      lengthBytes.appendBytes(reader, distanceToBlockStart);
+      reader.readFully(lengthBytes, 0, distanceToBlockStart);
       // skip the offset
       reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
-      lengthBytes.appendBytes(reader, SIZE_OF_RECORD_SIZE - distanceToBlockStart);
+      reader.readFully(lengthBytes, distanceToBlockStart, SIZE_OF_RECORD_SIZE - distanceToBlockStart);
     }
     else
     {
@@ -378,9 +386,9 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
         // skip the offset
         reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
       }
-      lengthBytes.appendBytes(reader, SIZE_OF_RECORD_SIZE);
+      reader.readFully(lengthBytes, 0, SIZE_OF_RECORD_SIZE);
     }
-    return lengthBytes.toByteString().toInt();
+    return ByteString.wrap(lengthBytes).toInt();
   }
 
   /**
@@ -30,7 +30,6 @@ import static org.opends.server.replication.server.changelog.file.BlockLogReader
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.SyncFailedException;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ByteStringBuilder;
@@ -153,10 +152,10 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
   /**
    * Synchronize all modifications to the log file to the underlying device.
    *
-   * @throws SyncFailedException
+   * @throws IOException
    *           If synchronization fails.
    */
-  public void sync() throws SyncFailedException
+  public void sync() throws IOException
   {
     writer.sync();
   }
@@ -170,6 +169,9 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
 
   /**
    * Writes the provided byte string to the log file.
+   * <p>
+   * The record and the block offsets it spans are assembled before being
+   * written with a single write to the file.
    *
    * @param record
    *            The value to write.
@@ -189,6 +191,8 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
     int dataPosition = 0;
     int dataRemaining = data.length();
     final int dataSizeForOneBlock = blockSize - SIZE_OF_BLOCK_OFFSET;
+    final ByteStringBuilder storedRecord =
+        new ByteStringBuilder(data.length() + (data.length() / dataSizeForOneBlock + 1) * SIZE_OF_BLOCK_OFFSET);
 
     while (distanceToBlockStart < dataRemaining)
     {
@@ -196,19 +200,20 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
       {
         // append part of record
         final int dataEndPosition = dataPosition + distanceToBlockStart;
-        writer.write(data.subSequence(dataPosition, dataEndPosition));
+        storedRecord.appendBytes(data.subSequence(dataPosition, dataEndPosition));
         dataPosition = dataEndPosition;
         dataRemaining -= distanceToBlockStart;
       }
       // append the offset to the record
-      writer.write(ByteString.valueOfInt(cumulatedDistanceToBeginning));
+      storedRecord.appendInt(cumulatedDistanceToBeginning);
 
       // next step
       distanceToBlockStart = dataSizeForOneBlock;
       cumulatedDistanceToBeginning += blockSize;
     }
     // append the remaining bytes to finish the record
-    writer.write(data.subSequence(dataPosition, data.length()));
+    storedRecord.appendBytes(data.subSequence(dataPosition, data.length()));
+    writer.write(storedRecord.getBackingArray(), 0, storedRecord.length());
   }
 
 }
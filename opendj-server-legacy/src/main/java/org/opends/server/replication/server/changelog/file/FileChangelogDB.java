@@ -117,6 +117,13 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
   private volatile long purgeDelayInMillis;
   private final AtomicReference<ChangelogDBPurger> cnPurger = new AtomicReference<>();
 
+  /**
+   * The maximum delay (in milliseconds) after which the changes added to the
+   * replica DBs are synchronized with the file system.
+   */
+  private volatile long commitDelayInMillis;
+  private final AtomicReference<ChangelogDBSyncer> syncer = new AtomicReference<>();
+
   /** The local replication server. */
   private final ReplicationServer replicationServer;
   private final AtomicBoolean shutdown = new AtomicBoolean();
@@ -294,6 +301,7 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
         startIndexer();
       }
       setPurgeDelay(replicationServer.getPurgeDelay());
+      setCommitDelay(replicationServer.getCommitDelay());
     }
     catch (ChangelogException e)
     {
@@ -338,6 +346,7 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
 
     shutdownCNIndexerAndPurger();
+    shutdownSyncer();
 
     // Remember the first exception because :
     // - we want to try to remove everything we want to remove
@@ -601,6 +610,33 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
   }
 
+  @Override
+  public void setCommitDelay(final long commitDelayInMillis)
+  {
+    this.commitDelayInMillis = commitDelayInMillis;
+    if (commitDelayInMillis > 0)
+    {
+      final ChangelogDBSyncer newSyncer = new ChangelogDBSyncer();
+      if (syncer.compareAndSet(null, newSyncer))
+      {
+        newSyncer.start();
+      }
+    }
+    else
+    {
+      shutdownSyncer();
+    }
+  }
+
+  private void shutdownSyncer()
+  {
+    final ChangelogDBSyncer syncerToStop = syncer.getAndSet(null);
+    if (syncerToStop != null)
+    {
+      syncerToStop.initiateShutdown();
+    }
+  }
+
   @Override
   public void setComputeChangeNumber(final boolean computeChangeNumber)
       throws ChangelogException
@@ -1024,4 +1060,61 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
       }
     }
   }
+
+  /**
+   * The thread synchronizing the changes added to the replica DBs with the
+   * file system, at most every commit delay. All the changes added to a replica
+   * DB during this delay are persisted with a single synchronization.
+   */
+  private final class ChangelogDBSyncer extends DirectoryThread
+  {
+    protected ChangelogDBSyncer()
+    {
+      super("Changelog DB syncer");
+    }
+
+    @Override
+    public void run()
+    {
+      while (!isShutdownInitiated())
+      {
+        try
+        {
+          synchronized (this)
+          {
+            if (!isShutdownInitiated())
+            {
+              wait(commitDelayInMillis);
+            }
+          }
+          for (final Map<Integer, FileReplicaDB> domainMap : domainToReplicaDBs.values())
+          {
+            for (final FileReplicaDB replicaDB : domainMap.values())
+            {
+              replicaDB.syncAddedChanges();
+            }
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // shutdown initiated?
+        }
+        catch (ChangelogException e)
+        {
+          logger.traceException(e);
+          logger.error(ERR_CHANGELOG_UNABLE_TO_SYNC_CHANGES, stackTraceToSingleLineString(e));
+        }
+      }
+    }
+
+    @Override
+    public void initiateShutdown()
+    {
+      super.initiateShutdown();
+      synchronized (this)
+      {
+        notify(); // wake up the syncer thread for faster shutdown
+      }
+    }
+  }
 }
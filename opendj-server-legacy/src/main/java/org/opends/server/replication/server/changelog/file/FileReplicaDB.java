@@ -225,6 +225,18 @@ class FileReplicaDB
     return new FileReplicaDBCursor(cursor, actualStartCSN, positionStrategy);
   }
 
+  /**
+   * Synchronize the changes added since the previous synchronization with the
+   * file system.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  void syncAddedChanges() throws ChangelogException
+  {
+    log.syncAppendedRecords();
+  }
+
   /** Shutdown this ReplicaDB. */
   void shutdown()
   {
@@ -278,6 +290,12 @@ class FileReplicaDB
       {
         create(attributes, "last-change", encode(limits.newestCSN));
       }
+      final long syncCount = log.getSyncCount();
+      create(attributes, "sync-count", String.valueOf(syncCount));
+      create(attributes, "average-changes-per-sync",
+          String.valueOf(syncCount > 0 ? log.getSyncedRecordCount() / syncCount : 0));
+      create(attributes, "max-changes-per-sync", String.valueOf(log.getMaxRecordsPerSync()));
+      create(attributes, "max-sync-time", String.valueOf(log.getMaxSyncTimeInMillis()));
       return attributes;
     }
 
@@ -42,6 +42,7 @@ import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -201,6 +202,21 @@ final class Log<K extends Comparable<K>, V> implements Closeable
    */
   private final ReplicationEnvironment replicationEnv;
 
+  /** The number of records appended since the log was last synchronized with the file system. */
+  private final AtomicLong recordsAppendedSinceSync = new AtomicLong();
+
+  /** The number of synchronizations of appended records done by {@link #syncAppendedRecords()}. */
+  private volatile long syncCount;
+
+  /** The number of records persisted by {@link #syncAppendedRecords()}. */
+  private volatile long syncedRecordCount;
+
+  /** The highest number of records persisted by a single synchronization. */
+  private volatile long maxRecordsPerSync;
+
+  /** The longest time in milliseconds taken by a single synchronization. */
+  private volatile long maxSyncTimeInMillis;
+
   /**
    * Open a log with the provided log path, record parser and maximum size per
    * log file.
@@ -456,6 +472,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
       {
         headLogFile.append(record);
         lastAppendedKey = record.getKey();
+        recordsAppendedSinceSync.incrementAndGet();
         return;
       }
     }
@@ -482,6 +499,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
       }
       headLogFile.append(record);
       lastAppendedKey = record.getKey();
+      recordsAppendedSinceSync.incrementAndGet();
     }
     finally
     {
@@ -546,6 +564,97 @@ final class Log<K extends Comparable<K>, V> implements Closeable
     }
   }
 
+  /**
+   * Synchronize the records appended since the previous synchronization with
+   * the file system, if any.
+   * <p>
+   * Unlike {@link #syncToFileSystem()}, records can still be appended while the
+   * log is synchronized. This allows to call this method periodically, so that
+   * all the records appended during a period are persisted with a single
+   * synchronization.
+   * <p>
+   * This method is expected to be called by a single thread.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  public void syncAppendedRecords() throws ChangelogException
+  {
+    if (recordsAppendedSinceSync.get() == 0)
+    {
+      return;
+    }
+    sharedLock.lock();
+    try
+    {
+      if (isClosed)
+      {
+        return;
+      }
+      final long nbRecords = recordsAppendedSinceSync.getAndSet(0);
+      final long startTime = System.nanoTime();
+      try
+      {
+        getHeadLogFile().syncToFileSystem();
+      }
+      catch (ChangelogException e)
+      {
+        recordsAppendedSinceSync.addAndGet(nbRecords);
+        throw e;
+      }
+      final long syncTime = (System.nanoTime() - startTime) / 1000000;
+      syncCount++;
+      syncedRecordCount += nbRecords;
+      maxRecordsPerSync = Math.max(maxRecordsPerSync, nbRecords);
+      maxSyncTimeInMillis = Math.max(maxSyncTimeInMillis, syncTime);
+    }
+    finally
+    {
+      sharedLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of synchronizations done by {@link #syncAppendedRecords()}.
+   *
+   * @return the number of synchronizations
+   */
+  long getSyncCount()
+  {
+    return syncCount;
+  }
+
+  /**
+   * Returns the number of records persisted by {@link #syncAppendedRecords()}.
+   *
+   * @return the number of records persisted
+   */
+  long getSyncedRecordCount()
+  {
+    return syncedRecordCount;
+  }
+
+  /**
+   * Returns the highest number of records persisted by a single call to
+   * {@link #syncAppendedRecords()}.
+   *
+   * @return the highest number of records persisted by a synchronization
+   */
+  long getMaxRecordsPerSync()
+  {
+    return maxRecordsPerSync;
+  }
+
+  /**
+   * Returns the longest time taken by a single call to {@link #syncAppendedRecords()}.
+   *
+   * @return the longest synchronization time, in milliseconds
+   */
+  long getMaxSyncTimeInMillis()
+  {
+    return maxSyncTimeInMillis;
+  }
+
   /**
    * Returns a cursor that allows to retrieve the records from this log,
    * starting at the first position.
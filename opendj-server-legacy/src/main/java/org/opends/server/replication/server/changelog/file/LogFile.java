@@ -119,7 +119,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     {
       writer = null;
     }
-    readerPool = new LogReaderPool<>(logfile, parser);
+    readerPool = new LogReaderPool<>(logfile, parser, !isWriteEnabled);
 
     final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     exclusiveLock = rwLock.writeLock();
@@ -306,7 +306,8 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   void syncToFileSystem() throws ChangelogException
   {
     checkLogIsEnabledForWrite();
-    sharedLock.lock();
+    // No lock is needed: records can be appended while the file is synchronized,
+    // in which case they may or may not be persisted by this call.
     try
     {
       writer.sync();
@@ -315,10 +316,6 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     {
       throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_SYNC.get(getPath()), e);
     }
-    finally
-    {
-      sharedLock.unlock();
-    }
   }
 
   /**
@@ -0,0 +1,260 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * A random access input on a log file, used by a {@link BlockLogReader} to
+ * read the records.
+ * <p>
+ * Two implementations are provided:
+ * <ul>
+ * <li>a buffered input on a file, reading the file ahead so that sequential
+ * reads of small record chunks do not each result in a system call. Bytes
+ * already read are never modified as a log file is only appended, hence this
+ * input is suitable for the head log file.</li>
+ * <li>an input on a memory-mapped read-only log file, which may be shared by
+ * several readers without any file handle or system call.</li>
+ * </ul>
+ */
+abstract class LogFileInput implements Closeable
+{
+  /** Size of the read-ahead buffer of inputs on a file. */
+  static final int READ_AHEAD_BUFFER_SIZE = 8192;
+
+  /**
+   * Creates an input reading ahead the provided file.
+   *
+   * @param file
+   *          The file to read, which is closed when the input is closed.
+   * @return a new input
+   */
+  static LogFileInput newBufferedInput(final RandomAccessFile file)
+  {
+    return new BufferedFileInput(file);
+  }
+
+  /**
+   * Creates an input on the provided memory-mapped log file.
+   *
+   * @param mappedFile
+   *          The content of the log file. It is not modified by the input,
+   *          and may be shared by several inputs.
+   * @return a new input
+   */
+  static LogFileInput newMappedInput(final ByteBuffer mappedFile)
+  {
+    return new MappedFileInput(mappedFile.duplicate());
+  }
+
+  /**
+   * Returns the length of the log file.
+   *
+   * @return the length of the log file in bytes
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract long length() throws IOException;
+
+  /**
+   * Returns the current position of this input.
+   *
+   * @return the offset from the beginning of the file, in bytes
+   */
+  abstract long getFilePointer();
+
+  /**
+   * Sets the current position of this input, which may be beyond the end of
+   * the file.
+   *
+   * @param position
+   *          The offset from the beginning of the file, in bytes.
+   */
+  abstract void seek(long position);
+
+  /**
+   * Reads exactly the provided number of bytes from the current position.
+   *
+   * @param bytes
+   *          The array to fill.
+   * @param offset
+   *          The offset in the array of the first byte read.
+   * @param length
+   *          The number of bytes to read.
+   * @throws EOFException
+   *           If the end of file is reached before all bytes are read.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract void readFully(byte[] bytes, int offset, int length) throws IOException;
+
+  /**
+   * Skips the provided number of bytes.
+   *
+   * @param length
+   *          The number of bytes to skip.
+   */
+  void skipBytes(final int length)
+  {
+    seek(getFilePointer() + length);
+  }
+
+  /** Input reading ahead a file. */
+  private static final class BufferedFileInput extends LogFileInput
+  {
+    private final RandomAccessFile file;
+    private final byte[] buffer = new byte[READ_AHEAD_BUFFER_SIZE];
+    /** Position in the file of the first byte of the buffer. */
+    private long bufferStart;
+    /** Number of valid bytes in the buffer. */
+    private int bufferLength;
+    private long position;
+
+    private BufferedFileInput(final RandomAccessFile file)
+    {
+      this.file = file;
+    }
+
+    @Override
+    long length() throws IOException
+    {
+      return file.length();
+    }
+
+    @Override
+    long getFilePointer()
+    {
+      return position;
+    }
+
+    @Override
+    void seek(final long position)
+    {
+      this.position = position;
+    }
+
+    @Override
+    void readFully(final byte[] bytes, int offset, int length) throws IOException
+    {
+      while (length > 0)
+      {
+        if (position < bufferStart || position >= bufferStart + bufferLength)
+        {
+          fillBuffer();
+        }
+        final int bufferOffset = (int) (position - bufferStart);
+        final int count = Math.min(length, bufferLength - bufferOffset);
+        System.arraycopy(buffer, bufferOffset, bytes, offset, count);
+        position += count;
+        offset += count;
+        length -= count;
+      }
+    }
+
+    private void fillBuffer() throws IOException
+    {
+      file.seek(position);
+      final int count = file.read(buffer, 0, buffer.length);
+      if (count <= 0)
+      {
+        throw new EOFException();
+      }
+      bufferStart = position;
+      bufferLength = count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      file.close();
+    }
+
+    @Override
+    public String toString()
+    {
+      return file.toString();
+    }
+  }
+
+  /** Input on a memory-mapped file. */
+  private static final class MappedFileInput extends LogFileInput
+  {
+    private final ByteBuffer mappedFile;
+    private long position;
+
+    private MappedFileInput(final ByteBuffer mappedFile)
+    {
+      this.mappedFile = mappedFile;
+    }
+
+    @Override
+    long length()
+    {
+      return mappedFile.limit();
+    }
+
+    @Override
+    long getFilePointer()
+    {
+      return position;
+    }
+
+    @Override
+    void seek(final long position)
+    {
+      this.position = position;
+    }
+
+    @Override
+    void readFully(final byte[] bytes, final int offset, final int length) throws IOException
+    {
+      if (position + length > mappedFile.limit())
+      {
+        throw new EOFException();
+      }
+      mappedFile.position((int) position);
+      mappedFile.get(bytes, offset, length);
+      position += length;
+    }
+
+    @Override
+    public void close()
+    {
+      // Nothing to do: the mapping is owned by the log reader pool.
+    }
+
+    @Override
+    public String toString()
+    {
+      return "MappedFileInput [length=" + mappedFile.limit() + ", position=" + position + "]";
+    }
+  }
+}
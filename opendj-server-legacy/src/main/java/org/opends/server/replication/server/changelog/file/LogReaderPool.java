@@ -21,21 +21,33 @@
  * CDDL HEADER END
  *
  *
- *      Copyright 2014 ForgeRock AS.
+ *      Copyright 2014-2015 ForgeRock AS.
  */
 package org.opends.server.replication.server.changelog.file;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.util.StaticUtils;
 
+import com.forgerock.opendj.util.OperatingSystem;
+
 import static org.opends.messages.ReplicationMessages.*;
 
 /**
  * A Pool of readers to a log file.
-
+ * <p>
+ * Readers on a write-enabled log file read it through a read-ahead buffer.
+ * A read-only log file is instead mapped in memory once, when the first reader
+ * is requested, and all its readers share the mapping, so that many cursors
+ * can read and position themselves in the file without any file handle or
+ * system call. Mapping is not used on Windows, where a mapped file cannot be
+ * deleted until the mapping is garbage collected.
  *
  * @param <K>
  *          Type of the key of a record, which must be comparable.
@@ -50,6 +62,15 @@ class LogReaderPool<K extends Comparable<K>, V>
 
   private final RecordParser<K, V> parser;
 
+  /**
+   * Indicates whether the file is mapped in memory, which is given up if the
+   * file is too large to be mapped in a single buffer.
+   */
+  private volatile boolean isMapped;
+
+  /** The content of the file mapped in memory, lazily created when the file is mapped. */
+  private volatile ByteBuffer mappedFile;
+
   /**
    * Creates a pool of readers for provided file.
    *
@@ -57,11 +78,15 @@ class LogReaderPool<K extends Comparable<K>, V>
    *          The file to read.
    * @param parser
    *          The parser to decode the records read.
+   * @param isReadOnly
+   *          Indicates whether the file is a read-only log file, which is
+   *          never modified and can be mapped in memory.
    */
-  LogReaderPool(File file, RecordParser<K, V> parser)
+  LogReaderPool(File file, RecordParser<K, V> parser, boolean isReadOnly)
   {
     this.file = file;
     this.parser = parser;
+    this.isMapped = isReadOnly && !OperatingSystem.isWindows();
   }
 
   /**
@@ -76,6 +101,14 @@ class LogReaderPool<K extends Comparable<K>, V>
    */
   BlockLogReader<K, V> get() throws ChangelogException
   {
+    if (isMapped)
+    {
+      final ByteBuffer mapping = getMappedFile();
+      if (mapping != null)
+      {
+        return BlockLogReader.newMappedReader(file, mapping, parser);
+      }
+    }
     return getReader(file);
   }
 
@@ -106,13 +139,59 @@ class LogReaderPool<K extends Comparable<K>, V>
     }
   }
 
+  /**
+   * Returns the content of the file mapped in memory, mapping it on first call.
+   *
+   * @return the mapped file, or {@code null} if the file is too large to be
+   *         mapped in a single buffer
+   */
+  private ByteBuffer getMappedFile() throws ChangelogException
+  {
+    ByteBuffer mapping = mappedFile;
+    if (mapping == null)
+    {
+      synchronized (this)
+      {
+        mapping = mappedFile;
+        if (mapping == null && isMapped)
+        {
+          mapping = mapFile();
+          mappedFile = mapping;
+          isMapped = mapping != null;
+        }
+      }
+    }
+    return mapping;
+  }
+
+  /** Maps the file in memory, returning {@code null} if the file is too large to be mapped. */
+  private ByteBuffer mapFile() throws ChangelogException
+  {
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "r");
+         final FileChannel channel = raf.getChannel())
+    {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+      {
+        return null;
+      }
+      // the mapping remains valid after the channel is closed
+      return channel.map(MapMode.READ_ONLY, 0, size);
+    }
+    catch (IOException e)
+    {
+      throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_OPEN_READER_ON_LOG_FILE.get(file.getPath()), e);
+    }
+  }
+
   /**
    * Shutdown this pool, releasing all files handles opened
    * on the file.
    */
   void shutdown()
   {
-    // Nothing to do yet as no file handle is kept opened.
+    // No file handle is kept opened, the mapping is released when garbage collected.
+    mappedFile = null;
   }
 
 }
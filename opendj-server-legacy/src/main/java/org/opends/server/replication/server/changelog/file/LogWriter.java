@@ -21,16 +21,15 @@
  * CDDL HEADER END
  *
  *
- *      Copyright 2014 ForgeRock AS.
+ *      Copyright 2014-2015 ForgeRock AS.
  */
 package org.opends.server.replication.server.changelog.file;
 
 import java.io.File;
-import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.SyncFailedException;
+import java.nio.channels.FileChannel;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.loggers.MeteredStream;
@@ -50,8 +49,8 @@ class LogWriter extends OutputStream
   /** The stream to write data in the file, capable of counting bytes written. */
   private final MeteredStream stream;
 
-  /** The file descriptor on the file. */
-  private final FileDescriptor fileDescriptor;
+  /** The channel on the file, used to synchronize it. */
+  private final FileChannel channel;
 
   /**
    * Creates a writer on the provided file.
@@ -68,7 +67,7 @@ class LogWriter extends OutputStream
     {
       FileOutputStream fos = new FileOutputStream(file, true);
       this.stream = new MeteredStream(fos, file.length());
-      this.fileDescriptor = fos.getFD();
+      this.channel = fos.getChannel();
     }
     catch (Exception e)
     {
@@ -132,13 +131,16 @@ class LogWriter extends OutputStream
   }
 
   /**
-   * Synchronize all modifications to the file to the underlying device.
+   * Synchronize all modifications to the file content to the underlying device.
+   * <p>
+   * File metadata are not synchronized unless needed to read the content back,
+   * so that only the appended data are written to the device.
    *
-   * @throws SyncFailedException
+   * @throws IOException
    *            If synchronization fails.
    */
-  void sync() throws SyncFailedException {
-    fileDescriptor.sync();
+  void sync() throws IOException {
+    channel.force(false);
   }
 
   /** {@inheritDoc} */
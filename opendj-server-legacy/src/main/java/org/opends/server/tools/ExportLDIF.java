@@ -144,6 +144,7 @@ public class ExportLDIF extends TaskTool {
   private BooleanArgument encryptLDIF;
   private BooleanArgument excludeOperationalAttrs;
   private BooleanArgument signHash;
+  private IntegerArgument threadCount;
   private IntegerArgument wrapColumn;
   private StringArgument  backendID;
   private StringArgument  configClass;
@@ -299,6 +300,15 @@ public class ExportLDIF extends TaskTool {
       argParser.addArgument(signHash);
 
 
+      threadCount = new IntegerArgument("threadCount", null, "threadCount",
+              false, false, true,
+              INFO_LDIFIMPORT_THREAD_COUNT_PLACEHOLDER.get(),
+              0, null,
+              true, 0, true, Integer.MAX_VALUE,
+              INFO_LDIFEXPORT_DESCRIPTION_THREAD_COUNT.get());
+      argParser.addArgument(threadCount);
+
+
       displayUsage = CommonArguments.getShowUsage();
       argParser.addArgument(displayUsage);
       argParser.setUsageArgument(displayUsage);
@@ -380,6 +390,7 @@ public class ExportLDIF extends TaskTool {
     addAttribute(attributes, ATTR_TASK_EXPORT_INCLUDE_BRANCH, includeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_EXCLUDE_BRANCH, excludeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_WRAP_COLUMN, wrapColumn);
+    addAttribute(attributes, ATTR_TASK_EXPORT_THREAD_COUNT, threadCount);
 
     if (excludeOperationalAttrs.isPresent())
     {
@@ -757,6 +768,16 @@ public class ExportLDIF extends TaskTool {
       return 1;
     }
 
+    try
+    {
+      exportConfig.setThreadCount(threadCount.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      logger.error(ERR_LDIFEXPORT_CANNOT_PARSE_THREAD_COUNT, threadCount.getValue(), ae.getMessage());
+      return 1;
+    }
+
 
     // Get the set of base DNs for the backend as an array.
     DN[] baseDNs = new DN[baseDNList.size()];
@@ -60,6 +60,7 @@ import com.forgerock.opendj.cli.ArgumentException;
 import com.forgerock.opendj.cli.ArgumentParser;
 import com.forgerock.opendj.cli.BooleanArgument;
 import com.forgerock.opendj.cli.CommonArguments;
+import com.forgerock.opendj.cli.IntegerArgument;
 import com.forgerock.opendj.cli.StringArgument;
 
 /**
@@ -112,6 +113,7 @@ public class VerifyIndex
     StringArgument  indexList               = null;
     BooleanArgument cleanMode               = null;
     BooleanArgument countErrors             = null;
+    IntegerArgument threadCount             = null;
     BooleanArgument displayUsage            = null;
 
 
@@ -171,6 +173,15 @@ public class VerifyIndex
                                INFO_VERIFYINDEX_DESCRIPTION_COUNT_ERRORS.get());
       argParser.addArgument(countErrors);
 
+      threadCount =
+           new IntegerArgument("threadcount", null, "threadCount",
+                               false, false, true,
+                               INFO_LDIFIMPORT_THREAD_COUNT_PLACEHOLDER.get(),
+                               1, null,
+                               true, 1, false, 0,
+                               INFO_VERIFYINDEX_DESCRIPTION_THREAD_COUNT.get());
+      argParser.addArgument(threadCount);
+
       displayUsage = CommonArguments.getShowUsage();
       argParser.addArgument(displayUsage);
       argParser.setUsageArgument(displayUsage);
@@ -363,6 +374,15 @@ public class VerifyIndex
     // Initialize the verify configuration.
     VerifyConfig verifyConfig = new VerifyConfig();
     verifyConfig.setBaseDN(verifyBaseDN);
+    try
+    {
+      verifyConfig.setThreadCount(threadCount.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      argParser.displayMessageAndUsageReference(err, ERR_ERROR_PARSING_ARGS.get(ae.getMessage()));
+      return 1;
+    }
     if (cleanMode.isPresent())
     {
       for (String s : indexList.getValues())
@@ -108,6 +108,12 @@ public final class LDIFExportConfig extends OperationConfig
   /** The column number at which long lines should be wrapped. */
   private int wrapColumn;
 
+  /**
+   * The number of threads used to decode and format the entries, or 0 to use
+   * the number of available processors.
+   */
+  private int threadCount;
+
   /** The set of base DNs to exclude from the export. */
   private List<DN> excludeBranches;
 
@@ -923,6 +929,33 @@ public final class LDIFExportConfig extends OperationConfig
 
 
 
+  /**
+   * Retrieves the number of threads that backends supporting parallel export
+   * should use to decode and format the entries.
+   *
+   * @return  The number of threads to use, or 0 to use the number of
+   *          available processors.
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+
+
+  /**
+   * Specifies the number of threads that backends supporting parallel export
+   * should use to decode and format the entries.
+   *
+   * @param  threadCount  The number of threads to use, or 0 to use the
+   *                      number of available processors.
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
+
+
   /**
    * Closes any resources that this export config might have open.
    */
@@ -0,0 +1,80 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.authorization.dseecompat;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SuppressWarnings("javadoc")
+public class BindRuleTest extends DirectoryServerTestCase
+{
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startFakeServer();
+  }
+
+  @AfterClass
+  public void tearDown()
+  {
+    TestCaseUtils.shutdownFakeServer();
+  }
+
+  @DataProvider(name = "bindRules")
+  public Object[][] getBindRules()
+  {
+    return new Object[][] {
+      { "userdn=\"ldap:///anyone\"", true },
+      { "userdn=\"ldap:///all\"", true },
+      { "userdn=\"ldap:///uid=user.0,ou=people,dc=example,dc=com\"", true },
+      { "userdn=\"ldap:///uid=*,ou=people,dc=example,dc=com\"", true },
+      { "groupdn=\"ldap:///cn=admins,ou=groups,dc=example,dc=com\"", true },
+      { "userdn!=\"ldap:///all\"", true },
+      { "userdn=\"ldap:///all\" and groupdn=\"ldap:///cn=admins,dc=example,dc=com\"", true },
+      { "userdn=\"ldap:///self\"", false },
+      { "userdn=\"ldap:///parent\"", false },
+      { "userdn=\"ldap:///anyone || ldap:///self\"", false },
+      { "userdn=\"ldap:///ou=people,dc=example,dc=com??sub?(l=Austin)\"", false },
+      { "userattr=\"manager#USERDN\"", false },
+      { "ip=\"127.0.0.1\"", false },
+      { "authmethod=\"simple\"", false },
+      { "userdn=\"ldap:///all\" and ip=\"127.0.0.1\"", false },
+      { "groupdn=\"ldap:///cn=admins,dc=example,dc=com\" or ssf>=\"128\"", false }, };
+  }
+
+  @Test(dataProvider = "bindRules")
+  public void dependsOnClientIdentityOnly(String bindRule, boolean expected) throws Exception
+  {
+    assertThat(BindRule.decode(bindRule).dependsOnClientIdentityOnly()).isEqualTo(expected);
+  }
+}
@@ -42,7 +42,9 @@ import static org.testng.Assert.*;
 
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -51,6 +53,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.assertj.core.api.SoftAssertions;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -63,12 +69,15 @@ import org.opends.server.api.Backend;
 import org.opends.server.backends.ChangelogBackend.ChangeNumberRange;
 import org.opends.server.controls.EntryChangelogNotificationControl;
 import org.opends.server.controls.ExternalChangelogRequestControl;
+import org.opends.server.controls.PersistentSearchChangeType;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyDNOperationBasis;
 import org.opends.server.core.ModifyOperation;
+import org.opends.server.core.PersistentSearch;
 import org.opends.server.protocols.internal.InternalClientConnection;
+import org.opends.server.protocols.internal.InternalSearchListener;
 import org.opends.server.protocols.internal.InternalSearchOperation;
 import org.opends.server.protocols.internal.Requests;
 import org.opends.server.protocols.internal.SearchRequest;
@@ -90,6 +99,7 @@ import org.opends.server.replication.protocol.ResetGenerationIdMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
 import org.opends.server.replication.server.ReplServerFakeConfiguration;
 import org.opends.server.replication.server.ReplicationServer;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.replication.server.changelog.api.DBCursor;
 import org.opends.server.replication.server.changelog.api.DBCursor.CursorOptions;
 import org.opends.server.replication.server.changelog.api.ReplicaId;
@@ -110,6 +120,7 @@ import org.opends.server.types.Operation;
 import org.opends.server.types.RDN;
 import org.opends.server.types.SearchFilter;
 import org.opends.server.types.SearchResultEntry;
+import org.opends.server.types.SearchResultReference;
 import org.opends.server.util.LDIFWriter;
 import org.opends.server.util.TestTimer;
 import org.opends.server.util.TimeThread;
@@ -143,6 +154,15 @@ public class ChangelogBackendTestCase extends ReplicationTestCase
 
   private final int maxWindow = 100;
 
+  private final ECLEnabledDomainPredicate eclEnabledDomainPredicate = new ECLEnabledDomainPredicate()
+  {
+    @Override
+    public boolean isECLEnabledDomain(DN baseDN)
+    {
+      return baseDN.toString().startsWith("o=test");
+    }
+  };
+
   /** The replicationServer that will be used in this test. */
   private ReplicationServer replicationServer;
 
@@ -205,14 +225,7 @@ public class ChangelogBackendTestCase extends ReplicationTestCase
           null       // servers
     );
     config.setComputeChangeNumber(true);
-    replicationServer = new ReplicationServer(config, new DSRSShutdownSync(), new ECLEnabledDomainPredicate()
-    {
-      @Override
-      public boolean isECLEnabledDomain(DN baseDN)
-      {
-        return baseDN.toString().startsWith("o=test");
-      }
-    });
+    replicationServer = new ReplicationServer(config, new DSRSShutdownSync(), eclEnabledDomainPredicate);
     debugInfo("configure", "ReplicationServer created:" + replicationServer);
   }
 
@@ -618,6 +631,501 @@ public class ChangelogBackendTestCase extends ReplicationTestCase
     assertChangelogAttributesInRootDSE(1, 9);
   }
 
+  @Test
+  public void searchInChangeNumberModeOnInterleavedReplicas() throws Exception
+  {
+    String test = "CNInterleavedReplicas";
+    debugInfo(test, "Starting test\n\n");
+
+    // o=excluded is neither enabled for the changelog nor indexed with change numbers
+    final String excludedBackendId = "excluded";
+    final DN excludedBaseDN = DN.valueOf("o=" + excludedBackendId);
+    Backend<?> backendForSecondSuffix = null;
+    Backend<?> excludedBackend = null;
+    LDAPReplicationDomain excludedDomain = null;
+    try
+    {
+      backendForSecondSuffix = initializeMemoryBackend(true, TEST_BACKEND_ID2);
+      excludedBackend = initializeMemoryBackend(false, excludedBackendId);
+      DomainFakeCfg excludedDomainConf = new DomainFakeCfg(excludedBaseDN, 1206,
+          newTreeSet("localhost:" + replicationServerPort));
+      excludedDomain = startNewReplicationDomain(excludedDomainConf, null, null);
+      excludedDomainConf.setExternalChangelogDomain(new ExternalChangelogDomainFakeCfg(false, null, null));
+      excludedDomain.applyConfigurationChange(excludedDomainConf);
+
+      // interleave the changes of two replicas of o=test, of one replica of o=test2 and of the excluded domain.
+      // The last change comes from the replica which does not send heartbeats, so that all the changes get indexed.
+      final ReplicaId server3 = ReplicaId.of(DN_OTEST, 1205);
+      final ReplicaId excludedServer = ReplicaId.of(excludedBaseDN, 1206);
+      final long time = TimeThread.getTime();
+      int seqNum = 1;
+      final CSN csn1 = new CSN(time, seqNum++, server1.getServerId());
+      final CSN csn2 = new CSN(time, seqNum++, server3.getServerId());
+      final CSN csn3 = new CSN(time, seqNum++, excludedServer.getServerId());
+      final CSN csn4 = new CSN(time, seqNum++, server2.getServerId());
+      final CSN csn5 = new CSN(time, seqNum++, server1.getServerId());
+      final CSN csn6 = new CSN(time, seqNum++, excludedServer.getServerId());
+      final CSN csn7 = new CSN(time, seqNum++, server2.getServerId());
+      final CSN csn8 = new CSN(time, seqNum++, server3.getServerId());
+      publishUpdateMessagesInOTest(test, false,
+          generateDeleteMsg(server1, csn1, test, 1),
+          generateDeleteMsg(server1, csn5, test, 5));
+      publishUpdateMessages(test, excludedServer, false,
+          generateDeleteMsg(excludedServer, csn3, test, 3),
+          generateDeleteMsg(excludedServer, csn6, test, 6));
+      publishUpdateMessagesInOTest2(test,
+          generateDeleteMsg(server2, csn4, test, 4),
+          generateDeleteMsg(server2, csn7, test, 7));
+      publishUpdateMessages(test, server3, false,
+          generateDeleteMsg(server3, csn2, test, 2),
+          generateDeleteMsg(server3, csn8, test, 8));
+
+      // the replicas are positioned on the change of the first change number, older changes are skipped
+      List<SearchResultEntry> entries = searchChangelog("(changenumber>=2)", 5, SUCCESS, test).getSearchEntries();
+      assertDeleteEntries(entries, 2, csn2, csn4, csn5, csn7, csn8);
+
+      entries = searchChangelog("(changenumber>=4)", 3, SUCCESS, test).getSearchEntries();
+      assertDeleteEntries(entries, 4, csn5, csn7, csn8);
+    }
+    finally
+    {
+      removeReplicationDomains(excludedDomain);
+      removeBackend(backendForSecondSuffix, excludedBackend);
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  /** Checks the change numbers and the CSNs of the provided delete entries, in order. */
+  private void assertDeleteEntries(List<SearchResultEntry> entries, long firstChangeNumber, CSN... csns)
+  {
+    assertThat(getCSNsFromEntries(entries)).containsExactly(csns);
+    long changeNumber = firstChangeNumber;
+    for (SearchResultEntry entry : entries)
+    {
+      assertAttributeValue(entry, "changenumber", changeNumber++);
+      assertAttributeValue(entry, "changetype", "delete");
+    }
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchesSharingFilter() throws Exception
+  {
+    String test = "PSearchSharedFilter";
+    debugInfo(test, "Starting test\n\n");
+
+    // the backend is not opened: the entries are sent by the thread notifying them
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, null);
+    final String filter = "(targetdn=*" + test + "*,o=test)";
+    final PersistentSearch pSearch1 = registerCookieBasedPersistentSearch(backend, filter, null);
+    final PersistentSearch pSearch2 = registerCookieBasedPersistentSearch(backend, filter, null);
+    try
+    {
+      final CSN[] csns = generateCSNs(3, server1);
+      backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[0], test, 1));
+      backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[1], "Unrelated", 2));
+      backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[2], test, 3));
+
+      for (PersistentSearch pSearch : newArrayList(pSearch1, pSearch2))
+      {
+        final List<SearchResultEntry> entries = getSearchEntries(pSearch);
+        assertThat(getCSNsFromEntries(entries)).containsExactly(csns[0], csns[2]);
+        assertThat(getAttributeValue(entries.get(0), "changelogcookie")).contains(csns[0].toString());
+        assertThat(getAttributeValue(entries.get(1), "changelogcookie")).contains(csns[2].toString());
+      }
+      assertThat(getSearchEntries(pSearch1).get(0)).isNotSameAs(getSearchEntries(pSearch2).get(0));
+    }
+    finally
+    {
+      pSearch1.cancel();
+      pSearch2.cancel();
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchWithFilterOnCookie() throws Exception
+  {
+    String test = "PSearchCookieFilter";
+    debugInfo(test, "Starting test\n\n");
+
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, null);
+    final CSN[] csns = generateCSNs(3, server1);
+    final PersistentSearch pSearch =
+        registerCookieBasedPersistentSearch(backend, "(changelogcookie=*" + csns[1] + "*)", null);
+    final PersistentSearch pSearchAll =
+        registerCookieBasedPersistentSearch(backend, "(targetdn=*" + test + "*,o=test)", null);
+    try
+    {
+      for (int i = 0; i < csns.length; i++)
+      {
+        backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[i], test, i));
+      }
+
+      // the cookie of each entry is only known once it is sent to the persistent search
+      assertThat(getCSNsFromEntries(getSearchEntries(pSearch))).containsExactly(csns[1]);
+      assertThat(getCSNsFromEntries(getSearchEntries(pSearchAll))).containsExactly(csns);
+    }
+    finally
+    {
+      pSearch.cancel();
+      pSearchAll.cancel();
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchOverflowingItsQueueCatchesUpFromItsCookie() throws Exception
+  {
+    final String test = "PSearchOverflow";
+    debugInfo(test, "Starting test\n\n");
+
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, eclEnabledDomainPredicate);
+    final CountDownLatch sendingFirstEntry = new CountDownLatch(1);
+    final CountDownLatch clientIsBlocked = new CountDownLatch(1);
+    final List<SearchResultEntry> entries = Collections.synchronizedList(new ArrayList<SearchResultEntry>());
+    final PersistentSearch pSearch =
+        registerCookieBasedPersistentSearch(backend, "(targetdn=*" + test + "*,o=test)", new InternalSearchListener()
+        {
+          @Override
+          public void handleInternalSearchEntry(InternalSearchOperation searchOperation, SearchResultEntry searchEntry)
+          {
+            entries.add(searchEntry);
+            sendingFirstEntry.countDown();
+            try
+            {
+              clientIsBlocked.await(30, SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+              Thread.currentThread().interrupt();
+            }
+          }
+
+          @Override
+          public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+              SearchResultReference searchReference)
+          {
+            // nothing to do
+          }
+        });
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try
+    {
+      // only the first changes are persisted, the other ones are only notified to fill the queue
+      final CSN[] csns = generateCSNs(1004, server1);
+      final UpdateMsg[] persistedMsgs = new UpdateMsg[3];
+      for (int i = 0; i < persistedMsgs.length; i++)
+      {
+        persistedMsgs[i] = generateDeleteMsg(server1, csns[i], test, i);
+      }
+      publishUpdateMessagesInOTest(test, true, persistedMsgs);
+
+      // the first entry is sent by the thread notifying it, which stays blocked by the client
+      final Future<Void> sender = executor.submit(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          backend.notifyCookieEntryAdded(DN_OTEST, persistedMsgs[0]);
+          return null;
+        }
+      });
+      assertTrue(sendingFirstEntry.await(10, SECONDS));
+
+      // the other entries are queued without waiting for the client, until the queue overflows
+      for (int i = 1; i < csns.length; i++)
+      {
+        backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[i], test, i));
+      }
+
+      // the thread sending the entries drops the queued ones, and reads the changelog DB from the last cookie sent
+      clientIsBlocked.countDown();
+      sender.get(10, SECONDS);
+      assertThat(backend.getPersistentSearches()).contains(pSearch);
+      assertThat(getCSNsFromEntries(entries)).containsExactly(csns[0], csns[1], csns[2]);
+    }
+    finally
+    {
+      clientIsBlocked.countDown();
+      executor.shutdownNow();
+      pSearch.cancel();
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchCatchingUpDoesNotHoldTheOtherPersistentSearches() throws Exception
+  {
+    final String test = "PSearchCatchUp";
+    debugInfo(test, "Starting test\n\n");
+
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, eclEnabledDomainPredicate);
+    // a single thread sends the entries to all the persistent searches
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    backend.setPersistentSearchExecutor(executor);
+    final List<SearchResultEntry> otherEntries = Collections.synchronizedList(new ArrayList<SearchResultEntry>());
+    final PersistentSearch[] otherPSearch = new PersistentSearch[1];
+    final CSN otherCsn = generateCSNs(1, server2)[0];
+    final UpdateMsg otherMsg = generateDeleteMsg(server2, otherCsn, "Other" + test, 0);
+
+    // only the first changes are persisted, the other ones are only notified to fill the queue
+    final CSN[] csns = generateCSNs(1250, server1);
+    final UpdateMsg[] persistedMsgs = new UpdateMsg[250];
+    final CountDownLatch sendingFirstEntry = new CountDownLatch(1);
+    final CountDownLatch clientIsBlocked = new CountDownLatch(1);
+    final List<SearchResultEntry> entries = Collections.synchronizedList(new ArrayList<SearchResultEntry>());
+    final List<Integer> otherEntriesWhenCaughtUp = Collections.synchronizedList(new ArrayList<Integer>());
+    final PersistentSearch pSearch =
+        registerCookieBasedPersistentSearch(backend, "(targetdn=*" + test + "*,o=test)", new InternalSearchListener()
+        {
+          @Override
+          public void handleInternalSearchEntry(InternalSearchOperation searchOperation, SearchResultEntry searchEntry)
+          {
+            entries.add(searchEntry);
+            if (entries.size() == 1)
+            {
+              sendingFirstEntry.countDown();
+              try
+              {
+                clientIsBlocked.await(30, SECONDS);
+              }
+              catch (InterruptedException e)
+              {
+                Thread.currentThread().interrupt();
+              }
+            }
+            else if (entries.size() == 2)
+            {
+              // notified while this search catches up with the changelog DB
+              try
+              {
+                backend.notifyCookieEntryAdded(DN_OTEST2, otherMsg);
+              }
+              catch (ChangelogException e)
+              {
+                throw new RuntimeException(e);
+              }
+            }
+            else if (entries.size() == persistedMsgs.length)
+            {
+              otherEntriesWhenCaughtUp.add(otherEntries.size());
+            }
+          }
+
+          @Override
+          public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+              SearchResultReference searchReference)
+          {
+            // nothing to do
+          }
+        });
+    try
+    {
+      for (int i = 0; i < persistedMsgs.length; i++)
+      {
+        persistedMsgs[i] = generateDeleteMsg(server1, csns[i], test, i);
+      }
+      publishUpdateMessagesInOTest(test, false, persistedMsgs);
+      final String lastPersistedCSN = csns[persistedMsgs.length - 1].toString();
+      TestTimer timer = new TestTimer.Builder()
+        .maxSleep(10, SECONDS)
+        .sleepTimes(100, MILLISECONDS)
+        .toTimer();
+      timer.repeatUntilSuccess(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          assertThat(readLastCookieFromRootDSE()).contains(lastPersistedCSN);
+          return null;
+        }
+      });
+
+      // the first entry stays blocked by the client on the only thread
+      backend.notifyCookieEntryAdded(DN_OTEST, persistedMsgs[0]);
+      assertTrue(sendingFirstEntry.await(10, SECONDS));
+      for (int i = 1; i < csns.length; i++)
+      {
+        backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[i], test, i));
+      }
+
+      otherPSearch[0] = registerCookieBasedPersistentSearch(backend, "(targetdn=*Other" + test + "*)",
+          new InternalSearchListener()
+          {
+            @Override
+            public void handleInternalSearchEntry(InternalSearchOperation searchOperation,
+                SearchResultEntry searchEntry)
+            {
+              otherEntries.add(searchEntry);
+            }
+
+            @Override
+            public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+                SearchResultReference searchReference)
+            {
+              // nothing to do
+            }
+          });
+      clientIsBlocked.countDown();
+
+      // the overflowed search reads the changelog DB a limited number of changes at a time
+      timer.repeatUntilSuccess(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          assertThat(entries).hasSize(persistedMsgs.length);
+          return null;
+        }
+      });
+      assertThat(getCSNsFromEntries(entries)).containsExactly(Arrays.copyOf(csns, persistedMsgs.length));
+      // the other search received its change before the overflowed search had read all its changes
+      assertThat(otherEntriesWhenCaughtUp).containsExactly(1);
+      assertThat(getCSNsFromEntries(otherEntries)).containsExactly(otherCsn);
+      assertThat(backend.getPersistentSearches()).contains(pSearch, otherPSearch[0]);
+    }
+    finally
+    {
+      clientIsBlocked.countDown();
+      executor.shutdownNow();
+      pSearch.cancel();
+      if (otherPSearch[0] != null)
+      {
+        otherPSearch[0].cancel();
+      }
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchFailingToSendAnEntryIsCancelled() throws Exception
+  {
+    final String test = "PSearchSendFailure";
+    debugInfo(test, "Starting test\n\n");
+
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, null);
+    final PersistentSearch pSearch =
+        registerCookieBasedPersistentSearch(backend, "(targetdn=*" + test + "*,o=test)", new InternalSearchListener()
+        {
+          @Override
+          public void handleInternalSearchEntry(InternalSearchOperation searchOperation, SearchResultEntry searchEntry)
+          {
+            throw new RuntimeException("Client failure for " + test);
+          }
+
+          @Override
+          public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+              SearchResultReference searchReference)
+          {
+            // nothing to do
+          }
+        });
+    try
+    {
+      final CSN[] csns = generateCSNs(1, server1);
+      backend.notifyCookieEntryAdded(DN_OTEST, generateDeleteMsg(server1, csns[0], test, 0));
+      assertThat(backend.getPersistentSearches()).doesNotContain(pSearch);
+    }
+    finally
+    {
+      pSearch.cancel();
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  @Test
+  public void cookieBasedPersistentSearchDoesNotSendAgainChangesSentByItsInitialSearch() throws Exception
+  {
+    final String test = "PSearchAfterInitialSearch";
+    debugInfo(test, "Starting test\n\n");
+
+    final ChangelogBackend backend = new ChangelogBackend(replicationServer, eclEnabledDomainPredicate);
+    // the queued entries are only sent after the "initial search" phase is over
+    final CountDownLatch initialSearchIsOver = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          initialSearchIsOver.await(30, SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    backend.setPersistentSearchExecutor(executor);
+    final PersistentSearch pSearch =
+        registerCookieBasedPersistentSearch(backend, "(targetdn=*" + test + "*,o=test)", false, null);
+    try
+    {
+      final CSN[] csns = generateCSNs(2, server1);
+      final UpdateMsg firstMsg = generateDeleteMsg(server1, csns[0], test, 0);
+      publishUpdateMessagesInOTest(test, true, firstMsg);
+      backend.notifyCookieEntryAdded(DN_OTEST, firstMsg);
+
+      backend.search(pSearch.getSearchOperation());
+      assertThat(getCSNsFromEntries(getSearchEntries(pSearch))).containsExactly(csns[0]);
+
+      // a change notified while the "initial search" phase was reading it is only sent once the search is persistent
+      backend.notifyCookieEntryAdded(DN_OTEST, firstMsg);
+      final UpdateMsg secondMsg = generateDeleteMsg(server1, csns[1], test, 1);
+      publishUpdateMessagesInOTest(test, true, secondMsg);
+      backend.notifyCookieEntryAdded(DN_OTEST, secondMsg);
+      initialSearchIsOver.countDown();
+
+      TestTimer timer = new TestTimer.Builder()
+        .maxSleep(3, SECONDS)
+        .sleepTimes(100, MILLISECONDS)
+        .toTimer();
+      timer.repeatUntilSuccess(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          assertThat(getCSNsFromEntries(getSearchEntries(pSearch))).containsExactly(csns);
+          return null;
+        }
+      });
+    }
+    finally
+    {
+      initialSearchIsOver.countDown();
+      executor.shutdownNow();
+      pSearch.cancel();
+    }
+    debugInfo(test, "Ending test with success");
+  }
+
+  private PersistentSearch registerCookieBasedPersistentSearch(ChangelogBackend backend, String filterString,
+      InternalSearchListener listener) throws Exception
+  {
+    return registerCookieBasedPersistentSearch(backend, filterString, true, listener);
+  }
+
+  private PersistentSearch registerCookieBasedPersistentSearch(ChangelogBackend backend, String filterString,
+      boolean changesOnly, InternalSearchListener listener) throws Exception
+  {
+    final SearchRequest request = newSearchRequest(filterString).addControl(createCookieControl(""));
+    final InternalSearchOperation searchOp = new InternalSearchOperation(
+        connection, InternalClientConnection.nextOperationID(), InternalClientConnection.nextMessageID(), request,
+        listener);
+    final PersistentSearch pSearch =
+        new PersistentSearch(searchOp, EnumSet.allOf(PersistentSearchChangeType.class), changesOnly, true);
+    DirectoryServer.registerPersistentSearch();
+    backend.registerPersistentSearch(pSearch);
+    return pSearch;
+  }
+
+  private List<SearchResultEntry> getSearchEntries(PersistentSearch pSearch)
+  {
+    return ((InternalSearchOperation) pSearch.getSearchOperation()).getSearchEntries();
+  }
+
   /** Verifies that is not possible to read the changelog without the changelog-read privilege. */
   @Test
   public void searchingWithoutPrivilegeShouldFail() throws Exception
@@ -40,13 +40,18 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteString;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.backends.pluggable.Index.EntryIDSetChanges;
 import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
@@ -60,7 +65,7 @@ import org.testng.annotations.Test;
 public class DefaultIndexTest extends DirectoryServerTestCase
 {
   private DefaultIndex index;
-  private WriteableTransaction txn;
+  private DummyWriteableTransaction txn;
 
   @BeforeMethod
   public void setUp() {
@@ -108,6 +113,132 @@ public class DefaultIndexTest extends DirectoryServerTestCase
     assertThat(txn.read(index.getName(), valueOfUtf8("key"))).isNull();
   }
 
+  @Test
+  public void testKeyCountIsUnknownForIndexesNotCounted() {
+    update(newDefinedSet(), newDefinedSet(1, 2));
+
+    assertThat(index.getKeyCount(txn)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testKeyCount() {
+    index = newIndex("counted", 5, EnumSet.of(TRUSTED, COMPACTED, KEY_COUNTED));
+    index.open(txn, true);
+    assertThat(index.getKeyCount(txn)).isEqualTo(0);
+
+    index.update(txn, valueOfUtf8("key1"), newDefinedSet(), newDefinedSet(1, 2));
+    index.update(txn, valueOfUtf8("key2"), newDefinedSet(), newDefinedSet(3));
+    index.update(txn, valueOfUtf8("key1"), newDefinedSet(), newDefinedSet(4));
+    assertThat(index.getKeyCount(txn)).isEqualTo(2);
+
+    index.update(txn, valueOfUtf8("key2"), newDefinedSet(3), newDefinedSet());
+    assertThat(index.getKeyCount(txn)).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeyCountIgnoresAbortedAndRetriedTransactions() {
+    index = newIndex("counted", 5, EnumSet.of(TRUSTED, COMPACTED, KEY_COUNTED));
+    index.open(txn, true);
+    index.update(txn, valueOfUtf8("key1"), newDefinedSet(), newDefinedSet(1));
+
+    // aborted: the changes made by the transaction are discarded
+    index.update(new DummyWriteableTransaction(txn), valueOfUtf8("key2"), newDefinedSet(), newDefinedSet(2));
+    assertThat(index.getKeyCount(txn)).isEqualTo(1);
+
+    // retried: the changes made by the first attempt are discarded, the second attempt commits the same changes
+    index.update(new DummyWriteableTransaction(txn), valueOfUtf8("key2"), newDefinedSet(), newDefinedSet(2));
+    index.update(txn, valueOfUtf8("key2"), newDefinedSet(), newDefinedSet(2));
+    assertThat(index.getKeyCount(txn)).isEqualTo(2);
+  }
+
+  @Test
+  public void testEstimatedKeyCountIsNotReadAgainBeforeTheRefreshInterval() {
+    index = newIndex("counted", 5, EnumSet.of(TRUSTED, COMPACTED, KEY_COUNTED));
+    index.open(txn, true);
+    assertThat(index.getEstimatedKeyCount(txn)).isEqualTo(0);
+
+    index.update(txn, valueOfUtf8("key1"), newDefinedSet(), newDefinedSet(1));
+    assertThat(index.getEstimatedKeyCount(txn)).isEqualTo(0);
+    assertThat(index.getKeyCount(txn)).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeyCountIsUnknownAfterClearingDegradedState() {
+    index = newIndex("degraded", 5, EnumSet.of(COMPACTED), newEntryContainer(10));
+    index.open(txn, true);
+    assertThat(index.isTrusted()).isFalse();
+
+    // clearing the degraded state trusts the index again without rebuilding it, nor its count of keys
+    index.setTrusted(txn, true);
+    assertThat(index.isTrusted()).isTrue();
+    assertThat(index.getKeyCount(txn)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testKeyCountIsKnownAfterRebuild() {
+    index = newIndex("rebuilt", 5, EnumSet.of(COMPACTED), newEntryContainer(10));
+    index.open(txn, true);
+
+    index.setTrusted(txn, false);
+    index.importKeyCount(newImporter(txn), 3);
+    index.setTrusted(txn, true);
+    assertThat(index.getKeyCount(txn)).isEqualTo(3);
+
+    // the imported count is only used once
+    index.setTrusted(txn, false);
+    index.setTrusted(txn, true);
+    assertThat(index.getKeyCount(txn)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testUpdateMultipleKeys() {
+    put(newDefinedSet(1, 2, 3, 4));
+    final SortedMap<ByteString, EntryIDSetChanges> changes = new TreeMap<>();
+    changes.put(valueOfUtf8("key"), newChanges(newDefinedSet(2, 4), newDefinedSet(5)));
+    changes.put(valueOfUtf8("key2"), newChanges(null, newDefinedSet(6, 7)));
+    changes.put(valueOfUtf8("key3"), newChanges(null, null));
+
+    index.update(txn, changes);
+
+    assertIdsEquals(get(), 1, 3, 5);
+    assertIdsEquals(CODEC_V2.decode(valueOfUtf8("key2"), txn.read(index.getName(), valueOfUtf8("key2"))), 6, 7);
+    assertThat(txn.read(index.getName(), valueOfUtf8("key3"))).isNull();
+  }
+
+  @Test
+  public void testUpdateMultipleKeysLeavesUndefinedKeysUnchanged() {
+    put(newDefinedSet(1, 2, 3, 4));
+    update(newDefinedSet(), newDefinedSet(5, 6, 7, 8));
+    final ByteString undefinedValue = getFromDb();
+    final SortedMap<ByteString, EntryIDSetChanges> changes = new TreeMap<>();
+    changes.put(valueOfUtf8("key"), newChanges(newDefinedSet(1, 2), newDefinedSet(9)));
+    changes.put(valueOfUtf8("key2"), newChanges(null, newDefinedSet(6, 7)));
+
+    index.update(txn, changes);
+
+    assertThat(get().isDefined()).isFalse();
+    assertThat(getFromDb()).isSameAs(undefinedValue);
+    assertIdsEquals(CODEC_V2.decode(valueOfUtf8("key2"), txn.read(index.getName(), valueOfUtf8("key2"))), 6, 7);
+  }
+
+  private static EntryIDSetChanges newChanges(final EntryIDSet deletedIDs, final EntryIDSet addedIDs)
+  {
+    return new EntryIDSetChanges()
+    {
+      @Override
+      public EntryIDSet getDeletedIDs()
+      {
+        return deletedIDs;
+      }
+
+      @Override
+      public EntryIDSet getAddedIDs()
+      {
+        return addedIDs;
+      }
+    };
+  }
+
   private void update(EntryIDSet deletedIDSet, EntryIDSet addedIDSet) {
     index.update(txn, valueOfUtf8("key"), deletedIDSet, addedIDSet);
   }
@@ -126,16 +257,60 @@ public class DefaultIndexTest extends DirectoryServerTestCase
   }
 
   private static DefaultIndex newIndex(String name, int indexLimit, EnumSet<IndexFlag> indexFlags)
+  {
+    return newIndex(name, indexLimit, indexFlags, mock(EntryContainer.class));
+  }
+
+  private static DefaultIndex newIndex(String name, int indexLimit, EnumSet<IndexFlag> indexFlags,
+      EntryContainer entryContainer)
   {
     final State state = mock(State.class);
     when(state.getIndexFlags(any(ReadableTransaction.class), any(TreeName.class))).thenReturn(indexFlags);
-    return new DefaultIndex(new TreeName("dc=example,dc=com", name), state, indexLimit, mock(EntryContainer.class));
+    return new DefaultIndex(new TreeName("dc=example,dc=com", name), state, indexLimit, entryContainer);
+  }
+
+  private static EntryContainer newEntryContainer(long highestEntryID)
+  {
+    final EntryContainer entryContainer = mock(EntryContainer.class);
+    when(entryContainer.getHighestEntryID(any(ReadableTransaction.class))).thenReturn(new EntryID(highestEntryID));
+    return entryContainer;
+  }
+
+  /** Returns an importer writing into the provided transaction. */
+  private static Importer newImporter(final WriteableTransaction txn)
+  {
+    final Importer importer = mock(Importer.class);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation)
+      {
+        final Object[] args = invocation.getArguments();
+        txn.put((TreeName) args[0], (ByteSequence) args[1], (ByteSequence) args[2]);
+        return null;
+      }
+    }).when(importer).put(any(TreeName.class), any(ByteSequence.class), any(ByteSequence.class));
+    return importer;
   }
 
   static final class DummyWriteableTransaction implements WriteableTransaction {
 
     private final Map<TreeName, TreeMap<ByteString, ByteString>> storage = new HashMap<>();
 
+    DummyWriteableTransaction()
+    {
+      // empty storage
+    }
+
+    /** Starts a transaction on a copy of the storage of another transaction, which is discarded to abort it. */
+    DummyWriteableTransaction(DummyWriteableTransaction txn)
+    {
+      for (Map.Entry<TreeName, TreeMap<ByteString, ByteString>> tree : txn.storage.entrySet())
+      {
+        storage.put(tree.getKey(), new TreeMap<>(tree.getValue()));
+      }
+    }
+
     @Override
     public ByteString read(TreeName treeName, ByteSequence key)
     {
@@ -284,6 +459,15 @@ public class DefaultIndexTest extends DirectoryServerTestCase
       return newValue.equals(getTree(treeName).put(key.toByteString(), newValue.toByteString()));
     }
 
+    @Override
+    public void updateAll(TreeName treeName, SortedMap<? extends ByteSequence, ? extends UpdateFunction> updates)
+    {
+      for (Map.Entry<? extends ByteSequence, ? extends UpdateFunction> update : updates.entrySet())
+      {
+        update(treeName, update.getKey(), update.getValue());
+      }
+    }
+
     @Override
     public boolean delete(TreeName treeName, ByteSequence key)
     {
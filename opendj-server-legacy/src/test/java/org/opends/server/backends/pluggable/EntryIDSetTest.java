@@ -316,9 +316,124 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertIdsEquals(retained, 1, 3, 5, 7, 9);
   }
 
+  @Test
+  public void testCodecV3DecodesV2Records()
+  {
+    final long[] ids = sequence(1, 3, 5000);
+    assertThat(CODEC_V3.decode(KEY, CODEC_V2.encode(newDefinedSet(ids))).toLongArray()).containsExactly(ids);
+    assertThat(CODEC_V3.decode(KEY, CODEC_V2.encode(newDefinedSet(4, 6, 8))).toLongArray()).containsExactly(4, 6, 8);
+  }
+
+  @Test
+  public void testCodecV3BitmapRoundTrip()
+  {
+    // Mix of sparse and dense chunks
+    final long[] ids = concat(sequence(10, 100, 2000), sequence(1000000, 1, 70000), sequence(1L << 40, 7, 3000));
+    final EntryIDSet decoded = CODEC_V3.decode(KEY, CODEC_V3.encode(newDefinedSet(ids)));
+
+    assertThat(decoded.size()).isEqualTo(ids.length);
+    assertThat(decoded.toLongArray()).containsExactly(ids);
+    assertThat(CODEC_V3.decode(KEY, CODEC_V3.encode(decoded)).toLongArray()).containsExactly(ids);
+  }
+
+  @Test
+  public void testBitmapAddRemove()
+  {
+    final EntryIDSet set = newBitmapSet(sequence(0, 2, 5000));
+
+    assertThat(set.add(id(1))).isTrue();
+    assertThat(set.add(id(1))).isFalse();
+    assertThat(set.add(id(1L << 32))).isTrue();
+    assertThat(set.contains(id(1))).isTrue();
+    assertThat(set.contains(id(3))).isFalse();
+    assertThat(set.size()).isEqualTo(5002);
+
+    assertThat(set.remove(id(1L << 32))).isTrue();
+    assertThat(set.remove(id(3))).isFalse();
+    assertThat(set.size()).isEqualTo(5001);
+    assertIdsEquals(set.iterator(id(4)), 4, 6, 8);
+  }
+
+  @Test
+  public void testBitmapRetainAll()
+  {
+    final long[] evens = sequence(0, 2, 50000);
+    final long[] multiplesOfThree = sequence(0, 3, 50000);
+
+    EntryIDSet retained = newBitmapSet(evens);
+    retained.retainAll(newBitmapSet(multiplesOfThree));
+    assertThat(retained.toLongArray()).containsExactly(sequence(0, 6, 16667));
+
+    retained = newBitmapSet(evens);
+    retained.retainAll(newDefinedSet(1, 2, 3, 4, 5));
+    assertThat(retained.toLongArray()).containsExactly(2, 4);
+
+    retained = newDefinedSet(1, 2, 3, 4, 5);
+    retained.retainAll(newBitmapSet(evens));
+    assertThat(retained.toLongArray()).containsExactly(2, 4);
+
+    retained = newUndefinedSet();
+    retained.retainAll(newBitmapSet(evens));
+    assertThat(retained.toLongArray()).containsExactly(evens);
+  }
+
+  @Test
+  public void testBitmapAddAllAndRemoveAll()
+  {
+    final EntryIDSet set = newBitmapSet(sequence(0, 2, 5000));
+    set.addAll(newBitmapSet(sequence(1, 2, 5000)));
+    assertThat(set.toLongArray()).containsExactly(sequence(0, 1, 10000));
+
+    set.removeAll(newBitmapSet(sequence(0, 2, 5000)));
+    assertThat(set.toLongArray()).containsExactly(sequence(1, 2, 5000));
+
+    set.removeAll(newDefinedSet(1, 3));
+    assertThat(set.toLongArray()).containsExactly(sequence(5, 2, 4998));
+
+    final EntryIDSet defined = newDefinedSet(1, 2);
+    defined.addAll(newBitmapSet(sequence(3, 1, 2000)));
+    assertThat(defined.toLongArray()).containsExactly(sequence(1, 1, 2002));
+  }
+
+  @Test
+  public void testBitmapUnion()
+  {
+    final EntryIDSet union =
+        newSetFromUnion(Arrays.asList(newBitmapSet(sequence(0, 2, 5000)), newDefinedSet(1, 3), newDefinedSet()));
+    assertThat(union.size()).isEqualTo(5002);
+    assertIdsEquals(union, 0, 1, 2, 3, 4, 6);
+  }
+
+  private static EntryIDSet newBitmapSet(long... ids)
+  {
+    return CODEC_V3.decode(KEY, CODEC_V3.encode(newDefinedSet(ids)));
+  }
+
+  private static long[] sequence(long first, long step, int count)
+  {
+    final long[] ids = new long[count];
+    for (int i = 0; i < count; i++)
+    {
+      ids[i] = first + i * step;
+    }
+    return ids;
+  }
+
+  private static long[] concat(long[]... arrays)
+  {
+    long[] result = new long[0];
+    for (long[] array : arrays)
+    {
+      final int offset = result.length;
+      result = Arrays.copyOf(result, offset + array.length);
+      System.arraycopy(array, 0, result, offset, array.length);
+    }
+    return result;
+  }
+
   @DataProvider(name = "codecs")
   public static Object[][] codecs() {
-     return new Object[][] { { CODEC_V1 }, { CODEC_V2 } };
+     return new Object[][] { { CODEC_V1 }, { CODEC_V2 }, { CODEC_V3 } };
   }
 
 }
@@ -0,0 +1,206 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.backends.pluggable.EntryIDSet.*;
+import static org.opends.server.backends.pluggable.Utils.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential = true)
+public class IndexFilterTest extends DirectoryServerTestCase
+{
+  /** The filters planned as sn, mail, cn (presence, by decreasing number of keys), then description, uid. */
+  private static final String PLANNED_FILTER =
+      "(&(description:caseIgnoreMatch:=d)(cn=*)(sn=*)(uid:caseIgnoreMatch:=u)(mail=*))";
+
+  private EntryContainer entryContainer;
+  private ReadableTransaction txn;
+  /** The attributes whose index has been read, in the order of the reads. */
+  private List<String> readAttributes;
+  /** The candidates returned by the extensible filter on each attribute, undefined by default. */
+  private Map<String, long[]> candidates;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception
+  {
+    readAttributes = Collections.synchronizedList(new ArrayList<String>());
+    candidates = new HashMap<>();
+    txn = mock(ReadableTransaction.class);
+
+    final Storage storage = mock(Storage.class);
+    when(storage.read(any(ReadOperation.class))).thenAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable
+      {
+        return ((ReadOperation<?>) invocation.getArguments()[0]).run(txn);
+      }
+    });
+    final RootContainer rootContainer = mock(RootContainer.class);
+    when(rootContainer.getStorage()).thenReturn(storage);
+
+    entryContainer = mock(EntryContainer.class);
+    when(entryContainer.getRootContainer()).thenReturn(rootContainer);
+    mockAttributeIndex("cn", 1);
+    mockAttributeIndex("sn", 3);
+    mockAttributeIndex("mail", 2);
+    mockAttributeIndex("uid", -1);
+    mockAttributeIndex("description", -1);
+  }
+
+  private void mockAttributeIndex(final String attributeName, long presenceKeyCount)
+  {
+    final AttributeIndex attributeIndex = mock(AttributeIndex.class);
+    when(attributeIndex.getKeyCount(any(ReadableTransaction.class), eq(IndexFilterType.PRESENCE)))
+        .thenReturn(presenceKeyCount);
+    // Presence filters read the presence index of the attribute index, which is missing here.
+    when(attributeIndex.getNameToIndexes()).thenAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable
+      {
+        readAttributes.add(attributeName);
+        return Collections.emptyMap();
+      }
+    });
+    when(attributeIndex.evaluateExtensibleFilter(any(IndexQueryFactoryImpl.class), any(SearchFilter.class),
+        any(StringBuilder.class), any(BackendMonitor.class))).thenAnswer(new Answer<EntryIDSet>()
+    {
+      @Override
+      public EntryIDSet answer(InvocationOnMock invocation) throws Throwable
+      {
+        readAttributes.add(attributeName);
+        final long[] entryIDs = candidates.get(attributeName);
+        return entryIDs != null ? newDefinedSet(entryIDs) : newUndefinedSet();
+      }
+    });
+    when(entryContainer.getAttributeIndex(DirectoryServer.getAttributeTypeOrDefault(attributeName)))
+        .thenReturn(attributeIndex);
+  }
+
+  private EntryIDSet evaluate(String filter, Executor indexLookupExecutor) throws Exception
+  {
+    final SearchOperation searchOp = mock(SearchOperation.class);
+    when(searchOp.getFilter()).thenReturn(SearchFilter.createFilterFromString(filter));
+    return new IndexFilter(entryContainer, txn, searchOp, null, mock(BackendMonitor.class), indexLookupExecutor)
+        .evaluate();
+  }
+
+  @Test
+  public void testComponentsAreReadInPlannedOrderWithoutIndexLookupThreads() throws Exception
+  {
+    assertThat(evaluate(PLANNED_FILTER, null).isDefined()).isFalse();
+
+    assertThat(readAttributes).containsExactly("sn", "mail", "cn", "description", "uid");
+  }
+
+  @Test
+  public void testComponentsAreSubmittedInPlannedOrderAheadOfTheSearchThread() throws Exception
+  {
+    final RecordingExecutor executor = new RecordingExecutor(true);
+
+    assertThat(evaluate(PLANNED_FILTER, executor).isDefined()).isFalse();
+
+    // The lookups run as soon as they are submitted: the first component is read by the search thread once the next
+    // ones have been submitted, the others are submitted one by one as the search thread consumes them.
+    assertThat(IndexFilter.INDEX_LOOKUP_READ_AHEAD).isEqualTo(2);
+    assertThat(readAttributes).containsExactly("mail", "cn", "sn", "description", "uid");
+    assertThat(executor.tasks).hasSize(4);
+  }
+
+  @Test
+  public void testOnlyTheNextComponentsAreSubmittedBeforeTheEvaluationStops() throws Exception
+  {
+    candidates.put("cn", new long[] { 1 });
+    final RecordingExecutor executor = new RecordingExecutor(false);
+
+    final EntryIDSet results = evaluate("(&(cn:caseIgnoreMatch:=c)(sn:caseIgnoreMatch:=s)(uid:caseIgnoreMatch:=u)"
+        + "(mail:caseIgnoreMatch:=m)(description:caseIgnoreMatch:=d))", executor);
+
+    assertThat(results.size()).isEqualTo(1);
+    assertIdsEquals(results, 1);
+    assertThat(readAttributes).containsExactly("cn");
+    assertThat(executor.tasks).hasSize(IndexFilter.INDEX_LOOKUP_READ_AHEAD);
+    for (Runnable task : executor.tasks)
+    {
+      assertThat(((Future<?>) task).isCancelled()).isTrue();
+    }
+  }
+
+  /** Records the submitted index lookups, and either runs them right away or never. */
+  private static final class RecordingExecutor implements Executor
+  {
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final boolean runTasks;
+
+    RecordingExecutor(boolean runTasks)
+    {
+      this.runTasks = runTasks;
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+      tasks.add(task);
+      if (runTasks)
+      {
+        task.run();
+      }
+    }
+  }
+}
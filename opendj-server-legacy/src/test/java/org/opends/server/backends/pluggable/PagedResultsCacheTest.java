@@ -0,0 +1,225 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ModificationType;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.Modification;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential = true)
+public class PagedResultsCacheTest extends DirectoryServerTestCase
+{
+  private static final ByteString COOKIE = ByteString.valueOfUtf8("cookie");
+  private static final long TIMEOUT = 60000;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @Test
+  public void testNextPageReusesCachedCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+
+    returnFirstPage(cache, search, 1, 2, 3, 4);
+
+    assertThat(cache.remove(search, ByteString.valueOfUtf8("other"))).isNull();
+    final PagedResultsCache.Candidates candidates = cache.remove(search, COOKIE);
+    assertThat(candidates).isNotNull();
+    assertThat(candidates.getEntryIDs()).containsExactly(1, 2, 3, 4);
+    assertThat(candidates.getNextIndex()).isEqualTo(2);
+    assertThat(candidates.areCandidatesInScope()).isTrue();
+    // The candidates are checked out until the next page is returned
+    assertThat(cache.remove(search, COOKIE)).isNull();
+
+    cache.put(candidates, COOKIE, 3);
+    cache.release(search);
+    assertThat(cache.remove(search, COOKIE).getNextIndex()).isEqualTo(3);
+  }
+
+  @Test
+  public void testRelatedUpdateDiscardsCachedCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+    returnFirstPage(cache, search, 1, 2, 3);
+
+    cache.invalidate(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com"));
+
+    assertThat(cache.remove(search, COOKIE)).isNull();
+  }
+
+  @Test
+  public void testRelatedUpdateDiscardsCandidatesCachedAgain() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+    // Updates are not checked against an empty cache
+    cache.invalidate(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com"));
+    returnFirstPage(cache, search, 1, 2, 3);
+    final PagedResultsCache.Candidates candidates = cache.remove(search, COOKIE);
+    cache.put(candidates, COOKIE, 3);
+    cache.release(search);
+
+    cache.invalidate(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com"));
+
+    assertThat(cache.remove(search, COOKIE)).isNull();
+  }
+
+  @Test
+  public void testUnrelatedUpdatesKeepCachedCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+    returnFirstPage(cache, search, 1, 2, 3);
+
+    cache.invalidate(DN.valueOf("uid=user.0,ou=groups,dc=example,dc=com"));
+    cache.invalidate(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com"),
+        Collections.singletonList(newModification("description")));
+
+    assertThat(cache.remove(search, COOKIE)).isNotNull();
+  }
+
+  @Test
+  public void testRelatedUpdateOutdatesCheckedOutCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+
+    final PagedResultsCache.Candidates candidates = cache.checkOut(search);
+    cache.invalidate(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com"),
+        Collections.singletonList(newModification("cn")));
+    candidates.setEvaluation(true, new long[] { 1, 2, 3 }, Collections.<Control> emptyList());
+    cache.put(candidates, COOKIE, 2);
+    cache.release(search);
+
+    assertThat(cache.remove(search, COOKIE)).isNull();
+  }
+
+  @Test
+  public void testUnrelatedUpdateDoesNotOutdateCheckedOutCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+    final SearchOperation otherSearch = newSearch(2, "ou=groups,dc=example,dc=com", "(cn=*)");
+
+    final PagedResultsCache.Candidates candidates = cache.checkOut(search);
+    returnFirstPage(cache, otherSearch, 4, 5, 6);
+    cache.invalidate(DN.valueOf("cn=group.0,ou=groups,dc=example,dc=com"));
+    candidates.setEvaluation(true, new long[] { 1, 2, 3 }, Collections.<Control> emptyList());
+    cache.put(candidates, COOKIE, 2);
+    cache.release(search);
+
+    assertThat(cache.remove(search, COOKIE)).isNotNull();
+    assertThat(cache.remove(otherSearch, COOKIE)).isNull();
+  }
+
+  @Test
+  public void testClearOutdatesCheckedOutCandidates() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1024 * 1024, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+
+    final PagedResultsCache.Candidates candidates = cache.checkOut(search);
+    cache.clear();
+    candidates.setEvaluation(true, new long[] { 1, 2, 3 }, Collections.<Control> emptyList());
+    cache.put(candidates, COOKIE, 2);
+
+    assertThat(cache.remove(search, COOKIE)).isNull();
+  }
+
+  @Test
+  public void testLeastRecentlyCachedCandidatesAreEvicted() throws Exception
+  {
+    final long[] entryIDs = new long[100];
+    final PagedResultsCache cache = new PagedResultsCache(3000, TIMEOUT);
+    final SearchOperation search1 = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+    final SearchOperation search2 = newSearch(2, "ou=people,dc=example,dc=com", "(cn=*)");
+    final SearchOperation search3 = newSearch(3, "ou=people,dc=example,dc=com", "(cn=*)");
+
+    returnFirstPage(cache, search1, entryIDs);
+    returnFirstPage(cache, search2, entryIDs);
+    returnFirstPage(cache, search3, entryIDs);
+
+    assertThat(cache.remove(search1, COOKIE)).isNull();
+    assertThat(cache.remove(search2, COOKIE)).isNotNull();
+    assertThat(cache.remove(search3, COOKIE)).isNotNull();
+  }
+
+  @Test
+  public void testCandidatesLargerThanTheCacheAreNotCached() throws Exception
+  {
+    final PagedResultsCache cache = new PagedResultsCache(1000, TIMEOUT);
+    final SearchOperation search = newSearch(1, "ou=people,dc=example,dc=com", "(cn=*)");
+
+    returnFirstPage(cache, search, new long[1000]);
+
+    assertThat(cache.remove(search, COOKIE)).isNull();
+  }
+
+  private void returnFirstPage(PagedResultsCache cache, SearchOperation search, long... entryIDs)
+  {
+    final PagedResultsCache.Candidates candidates = cache.checkOut(search);
+    candidates.setEvaluation(true, entryIDs, Arrays.<Control> asList());
+    cache.put(candidates, COOKIE, 2);
+    cache.release(search);
+  }
+
+  private Modification newModification(String attributeName)
+  {
+    return new Modification(ModificationType.REPLACE, Attributes.create(attributeName, "value"));
+  }
+
+  private SearchOperation newSearch(long connectionID, String baseDN, String filter) throws Exception
+  {
+    final SearchOperation search = mock(SearchOperation.class);
+    when(search.getConnectionID()).thenReturn(connectionID);
+    when(search.getBaseDN()).thenReturn(DN.valueOf(baseDN));
+    when(search.getScope()).thenReturn(SearchScope.WHOLE_SUBTREE);
+    when(search.getFilter()).thenReturn(SearchFilter.createFilterFromString(filter));
+    return search;
+  }
+}
@@ -28,6 +28,8 @@ package org.opends.server.backends.pluggable;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.forgerock.opendj.ldap.ModificationType.ADD;
 import static org.mockito.Mockito.mock;
+import static org.opends.server.backends.pluggable.EntryIDSet.newDefinedSet;
+import static org.opends.server.backends.pluggable.EntryIDSet.newUndefinedSet;
 import static org.mockito.Mockito.when;
 import static org.opends.server.protocols.internal.InternalClientConnection.getRootConnection;
 import static org.opends.server.protocols.internal.Requests.newSearchRequest;
@@ -64,6 +66,7 @@ import org.opends.server.backends.RebuildConfig;
 import org.opends.server.backends.VerifyConfig;
 import org.opends.server.backends.RebuildConfig.RebuildMode;
 import org.opends.server.backends.pluggable.spi.AccessMode;
+import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOnlyStorageException;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
@@ -865,6 +868,27 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     }
   }
 
+  @Test
+  public void testExportLDIFIsIndependentOfThreadCount() throws Exception
+  {
+    assertTrue(backend.supports(BackendOperation.LDIF_EXPORT), "Export not supported");
+    byte[] serialExport = exportLDIF(1);
+    assertThat(serialExport.length).isGreaterThan(0);
+    assertThat(exportLDIF(4)).isEqualTo(serialExport);
+  }
+
+  private byte[] exportLDIF(int threadCount) throws Exception
+  {
+    ByteArrayOutputStream ldifOutputContent = new ByteArrayOutputStream();
+    try (final LDIFExportConfig exportConfig = new LDIFExportConfig(ldifOutputContent))
+    {
+      exportConfig.setIncludeOperationalAttributes(true);
+      exportConfig.setThreadCount(threadCount);
+      backend.exportLDIF(exportConfig);
+    }
+    return ldifOutputContent.toByteArray();
+  }
+
   @Test
   public void testExportLDIFAndImportLDIF() throws Exception
   {
@@ -1077,6 +1101,141 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     assertThat(backend.verifyBackend(config)).isEqualTo(1);
   }
 
+  @Test
+  public void testParallelVerify() throws Exception
+  {
+    VerifyConfig config = new VerifyConfig();
+    config.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    config.setThreadCount(4);
+    config.addCompleteIndex("dn2id");
+    for (String indexName : backendIndexes.keySet())
+    {
+      config.addCompleteIndex(indexName);
+    }
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+
+    config = new VerifyConfig();
+    config.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    config.setThreadCount(4);
+    config.addCleanIndex("sn");
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+  }
+
+  @Test
+  public void testParallelVerifyReportsMissingIndexKey() throws Exception
+  {
+    final Storage storage = backend.getRootContainer().getStorage();
+    final DefaultIndex uidIndex = getIndex("uid", IndexType.EQUALITY);
+    final ByteString key = storage.read(new ReadOperation<ByteString>()
+    {
+      @Override
+      public ByteString run(ReadableTransaction txn) throws Exception
+      {
+        try (Cursor<ByteString, EntryIDSet> cursor = uidIndex.openCursor(txn))
+        {
+          assertThat(cursor.next()).isTrue();
+          return cursor.getKey();
+        }
+      }
+    });
+    final EntryID entryID = storage.read(new ReadOperation<EntryID>()
+    {
+      @Override
+      public EntryID run(ReadableTransaction txn) throws Exception
+      {
+        return uidIndex.get(txn, key).iterator().next();
+      }
+    });
+
+    // Insert an error
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        uidIndex.update(txn, key, newDefinedSet(entryID.longValue()), null);
+      }
+    });
+    try
+    {
+      assertThat(backend.verifyBackend(newCompleteVerifyConfig("uid", 4))).isEqualTo(1);
+    }
+    finally
+    {
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          uidIndex.update(txn, key, null, newDefinedSet(entryID.longValue()));
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testParallelVerifyGathersEntryLimitStatistics() throws Exception
+  {
+    final Storage storage = backend.getRootContainer().getStorage();
+    final DefaultIndex snIndex = getIndex("sn", IndexType.PRESENCE);
+    final ByteString value = storage.read(new ReadOperation<ByteString>()
+    {
+      @Override
+      public ByteString run(ReadableTransaction txn) throws Exception
+      {
+        return txn.read(snIndex.getName(), AttributeIndex.PRESENCE_KEY);
+      }
+    });
+
+    // As if the number of entries having a sn had exceeded the index entry limit
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        txn.put(snIndex.getName(), AttributeIndex.PRESENCE_KEY, snIndex.toValue(newUndefinedSet()));
+      }
+    });
+    try
+    {
+      final VerifyJob sequentialJob = new VerifyJob(backend.getRootContainer(), newCompleteVerifyConfig("sn", 1));
+      assertThat(sequentialJob.verifyBackend()).isEqualTo(0);
+      final long referenceCount = sequentialJob.getEntryLimitExceededReferenceCount(snIndex);
+      assertThat(referenceCount).isGreaterThan(0);
+
+      final VerifyJob parallelJob = new VerifyJob(backend.getRootContainer(), newCompleteVerifyConfig("sn", 4));
+      assertThat(parallelJob.verifyBackend()).isEqualTo(0);
+      assertThat(parallelJob.getEntryLimitExceededReferenceCount(snIndex)).isEqualTo(referenceCount);
+    }
+    finally
+    {
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          txn.put(snIndex.getName(), AttributeIndex.PRESENCE_KEY, value);
+        }
+      });
+    }
+  }
+
+  private DefaultIndex getIndex(String attributeName, IndexType indexType)
+  {
+    final AttributeIndex attributeIndex = backend.getRootContainer().getEntryContainer(testBaseDN)
+        .getAttributeIndex(DirectoryServer.getAttributeTypeOrNull(attributeName));
+    return attributeIndex.getNameToIndexes().get(indexType.toString());
+  }
+
+  private VerifyConfig newCompleteVerifyConfig(String indexName, int threadCount)
+  {
+    final VerifyConfig config = new VerifyConfig();
+    config.setBaseDN(testBaseDN);
+    config.setThreadCount(threadCount);
+    config.addCompleteIndex(indexName);
+    return config;
+  }
+
   @Test
   public void testBackupAndRestore() throws Exception
   {
@@ -0,0 +1,140 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.backends.pluggable.VLVKeySorter.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class VLVKeySorterTest extends DirectoryServerTestCase
+{
+  private static final int NB_KEYS = 10000;
+
+  private File tmpDir;
+  private List<ByteString> keys;
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    tmpDir = TestCaseUtils.createTemporaryDirectory("vlvkeysorter");
+    keys = new ArrayList<>(NB_KEYS);
+    final Random random = new Random(0);
+    for (int i = 0; i < NB_KEYS; i++)
+    {
+      final byte[] key = new byte[1 + random.nextInt(32)];
+      random.nextBytes(key);
+      keys.add(ByteString.wrap(key));
+    }
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception
+  {
+    TestCaseUtils.deleteDirectory(tmpDir);
+  }
+
+  @DataProvider
+  public Object[][] sorts()
+  {
+    final int unbounded = Integer.MAX_VALUE;
+    final long inMemory = Long.MAX_VALUE;
+    final long spilled = 16 * 1024;
+    return new Object[][] {
+      { unbounded, inMemory },
+      { unbounded, spilled },
+      { 0, inMemory },
+      { 1, inMemory },
+      { 100, inMemory },
+      { 100, spilled },
+      { 5000, spilled },
+    };
+  }
+
+  @Test(dataProvider = "sorts")
+  public void testSortAscending(int maxKeys, long memoryBudget) throws Exception
+  {
+    assertSorted(maxKeys, memoryBudget, false);
+  }
+
+  @Test(dataProvider = "sorts")
+  public void testSortDescending(int maxKeys, long memoryBudget) throws Exception
+  {
+    assertSorted(maxKeys, memoryBudget, true);
+  }
+
+  @Test
+  public void testRunsAreDeletedOnClose() throws Exception
+  {
+    try (VLVKeySorter sorter = new VLVKeySorter(ASCENDING_ORDER, Integer.MAX_VALUE, 1024, tmpDir))
+    {
+      for (ByteString key : keys)
+      {
+        sorter.add(key);
+      }
+      assertThat(tmpDir.list()).isNotEmpty();
+      sorter.iterator();
+    }
+    assertThat(tmpDir.list()).isEmpty();
+  }
+
+  private void assertSorted(int maxKeys, long memoryBudget, boolean descending) throws Exception
+  {
+    final List<ByteString> expected = new ArrayList<>(keys);
+    Collections.sort(expected, descending ? DESCENDING_ORDER : ASCENDING_ORDER);
+
+    try (VLVKeySorter sorter =
+        new VLVKeySorter(descending ? DESCENDING_ORDER : ASCENDING_ORDER, maxKeys, memoryBudget, tmpDir))
+    {
+      for (ByteString key : keys)
+      {
+        sorter.add(key);
+      }
+      assertThat(sorter.size()).isEqualTo(NB_KEYS);
+
+      final List<ByteString> actual = new ArrayList<>();
+      for (Iterator<ByteString> it = sorter.iterator(); it.hasNext();)
+      {
+        actual.add(it.next());
+      }
+      assertThat(actual).isEqualTo(expected.subList(0, Math.min(maxKeys, NB_KEYS)));
+    }
+  }
+}
@@ -61,6 +61,7 @@ import org.testng.annotations.Test;
 
 import static org.opends.server.protocols.internal.InternalClientConnection.*;
 import static org.opends.server.protocols.internal.Requests.*;
+import static org.opends.server.util.CollectionUtils.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.testng.Assert.*;
 
@@ -211,6 +212,56 @@ public class GroupManagerTestCase
     assertTrue(group1Instance.isMember(user5DN));
   }
 
+  /**
+   * Tests that the group memberships resolved from the reverse membership
+   * index include the nested static and dynamic groups, and follow in place
+   * membership updates.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testGroupMemberships() throws Exception {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN group3DN = DN.valueOf("cn=group 3,ou=Groups,o=test");
+    DN group4DN = DN.valueOf("cn=group 4,ou=Groups,o=test");
+    DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+    DN user2DN = DN.valueOf("uid=user.2,ou=People,o=test");
+    DN user3DN = DN.valueOf("uid=user.3,ou=People,o=test");
+    DN user5DN = DN.valueOf("uid=user.5,ou=People,o=test");
+    Group group1Instance = groupManager.getGroupInstance(group1DN);
+    Group group2Instance = groupManager.getGroupInstance(group2DN);
+    Group group3Instance = groupManager.getGroupInstance(group3DN);
+    assertNotNull(group1Instance);
+    assertNotNull(group2Instance);
+    assertNotNull(group3Instance);
+    assertTrue(groupManager.getGroupMemberships(user1DN).isEmpty());
+
+    group1Instance.addNestedGroup(group2DN);
+    group2Instance.addNestedGroup(group3DN);
+    //Dynamic group 4 is added to nested list of group 3.
+    group3Instance.addNestedGroup(group4DN);
+    group1Instance.addMember(DirectoryServer.getEntry(user1DN));
+    group2Instance.addMember(DirectoryServer.getEntry(user2DN));
+    group3Instance.addMember(DirectoryServer.getEntry(user3DN));
+
+    assertEquals(groupManager.getGroupMemberships(user1DN), newHashSet(group1DN));
+    assertEquals(groupManager.getGroupMemberships(user2DN), newHashSet(group1DN, group2DN));
+    assertEquals(groupManager.getGroupMemberships(user3DN), newHashSet(group1DN, group2DN, group3DN));
+    //User 5 only matches the URL of the dynamic group "group 4".
+    assertEquals(groupManager.getGroupMemberships(DirectoryServer.getEntry(user5DN)),
+        newHashSet(group1DN, group2DN, group3DN, group4DN));
+
+    group2Instance.removeNestedGroup(group3DN);
+    assertEquals(groupManager.getGroupMemberships(user3DN), newHashSet(group3DN));
+    group1Instance.removeMember(user1DN);
+    assertTrue(groupManager.getGroupMemberships(user1DN).isEmpty());
+  }
+
   /**
    * Invokes membership and nested group APIs using a group instance that has
    * been changed by the group manager via ldap modify.
@@ -0,0 +1,116 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.forgerock.opendj.adapter.server3x.Converters;
+import org.forgerock.opendj.ldap.DN.CompactDn;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.extensions.StaticGroup;
+import org.opends.server.types.DN;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/** Tests the reverse index of the static group memberships. */
+@SuppressWarnings("javadoc")
+public class GroupMembershipIndexTestCase extends CoreTestCase
+{
+  private DN groupDN;
+  private DN user1DN;
+  private DN user2DN;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    groupDN = DN.valueOf("cn=group,dc=example,dc=com");
+    user1DN = DN.valueOf("uid=user.1,dc=example,dc=com");
+    user2DN = DN.valueOf("uid=user.2,dc=example,dc=com");
+  }
+
+  @Test
+  public void testAddAndRemoveMembers() throws Exception
+  {
+    final GroupMembershipIndex index = new GroupMembershipIndex();
+    index.addGroup(mockStaticGroup(user1DN));
+
+    index.addMember(groupDN, compact(user2DN));
+    assertThat(getGroups(index, user2DN)).containsExactly(groupDN);
+
+    index.removeMember(groupDN, compact(user1DN));
+    assertThat(getGroups(index, user1DN)).isEmpty();
+    assertThat(getGroups(index, user2DN)).containsExactly(groupDN);
+  }
+
+  @Test
+  public void testRemoveGroupWhoseMembersChangedSinceTheyWereIndexed() throws Exception
+  {
+    final GroupMembershipIndex index = new GroupMembershipIndex();
+    final StaticGroup group = mockStaticGroup(user1DN, user2DN);
+    index.addGroup(group);
+
+    // The member is removed in place from the group, which is deregistered
+    // before the removal is reported to the index.
+    final Set<CompactDn> remainingMembers = Collections.singleton(compact(user1DN));
+    when(group.getMemberDNs()).thenReturn(remainingMembers);
+    when(group.getMemberCount()).thenReturn(1);
+    index.removeGroup(groupDN);
+    index.removeMember(groupDN, compact(user2DN));
+
+    assertThat(getGroups(index, user1DN)).isEmpty();
+    assertThat(getGroups(index, user2DN)).isEmpty();
+  }
+
+  private StaticGroup mockStaticGroup(DN... memberDNs)
+  {
+    final Set<CompactDn> members = new HashSet<>();
+    for (DN memberDN : memberDNs)
+    {
+      members.add(compact(memberDN));
+    }
+    final StaticGroup group = mock(StaticGroup.class);
+    when(group.getGroupDN()).thenReturn(groupDN);
+    when(group.getMemberDNs()).thenReturn(members);
+    when(group.getMemberCount()).thenReturn(members.size());
+    return group;
+  }
+
+  private static Set<DN> getGroups(GroupMembershipIndex index, DN memberDN)
+  {
+    return index.getGroups(memberDN, Collections.<DN> emptySet());
+  }
+
+  private static CompactDn compact(DN dn)
+  {
+    return Converters.from(dn).compact();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.DN.CompactDn;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.DN;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * A set of test cases for the compact member set of static groups.
+ */
+public class StaticGroupMemberSetTestCase
+       extends ExtensionsTestCase
+{
+  /**
+   * Ensures that the Directory Server is running, so that DNs can be
+   * normalized.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+
+
+  /**
+   * Tests that a set built from DNs contains each distinct DN once, whatever
+   * its user provided form.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testValueOf() throws Exception
+  {
+    List<DN> dns = new ArrayList<>();
+    dns.add(DN.valueOf("uid=user.1,ou=People,o=test"));
+    dns.add(DN.valueOf("UID=User.1, ou=people,o=TEST"));
+    dns.add(DN.valueOf("uid=user.2,ou=People,o=test"));
+
+    StaticGroupMemberSet members = StaticGroupMemberSet.valueOf(dns);
+    assertEquals(members.size(), 2);
+    assertTrue(members.contains(DN.valueOf("uid=USER.1,ou=People,o=test")));
+    assertTrue(members.contains(DN.valueOf("uid=user.2,ou=People,o=test")));
+    assertFalse(members.contains(DN.valueOf("uid=user.3,ou=People,o=test")));
+    assertTrue(members.contains(org.forgerock.opendj.ldap.DN.valueOf("uid=user.2,ou=People,o=test").compact()));
+    assertEquals(StaticGroup.fromCompactDn(members.iterator().next()), DN.valueOf("uid=user.1,ou=People,o=test"));
+
+    assertSame(StaticGroupMemberSet.valueOf(new ArrayList<DN>()), StaticGroupMemberSet.EMPTY);
+    assertTrue(StaticGroupMemberSet.EMPTY.isEmpty());
+  }
+
+
+
+  /**
+   * Tests that incremental updates, including the merges of the recorded
+   * changes into the sorted members, are equivalent to updating a hash set.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testIncrementalUpdates() throws Exception
+  {
+    Random random = new Random(0);
+    Set<DN> expected = new HashSet<>();
+    StaticGroupMemberSet members = StaticGroupMemberSet.EMPTY;
+    for (int i = 0; i < 5000; i++)
+    {
+      DN dn = DN.valueOf("uid=user." + random.nextInt(1000) + ",ou=People,o=test");
+      StaticGroupMemberSet previous = members;
+      if (random.nextInt(3) == 0)
+      {
+        members = members.without(dn);
+        assertEquals(members == previous, !expected.remove(dn));
+      }
+      else
+      {
+        members = members.with(dn);
+        assertEquals(members == previous, !expected.add(dn));
+      }
+      assertEquals(members.size(), expected.size());
+      assertTrue(previous.size() == members.size() || previous.contains(dn) != members.contains(dn));
+    }
+
+    Set<DN> actual = new HashSet<>();
+    for (CompactDn compactDn : members)
+    {
+      DN dn = StaticGroup.fromCompactDn(compactDn);
+      assertTrue(members.contains(dn));
+      assertTrue(actual.add(dn));
+    }
+    assertEquals(actual, expected);
+    assertTrue(members.getMemoryUsage() > 0);
+  }
+}
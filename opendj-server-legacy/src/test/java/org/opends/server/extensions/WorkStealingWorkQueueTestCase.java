@@ -0,0 +1,233 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.server.AdminTestCaseUtils;
+import org.opends.server.admin.std.meta.WorkStealingWorkQueueCfgDefn;
+import org.opends.server.admin.std.server.WorkStealingWorkQueueCfg;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.TraditionalWorkQueueMonitor;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+import static org.testng.Assert.*;
+
+/**
+ * A set of test cases for the work stealing work queue.
+ */
+@Test(sequential = true)
+public class WorkStealingWorkQueueTestCase
+       extends ExtensionsTestCase
+{
+  /** The work queue being tested, running alongside the server work queue. */
+  private WorkStealingWorkQueue workQueue;
+
+
+
+  /**
+   * Ensures that the Directory Server is running and creates the work queue.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+
+    workQueue = new WorkStealingWorkQueue();
+    workQueue.initializeWorkQueue(getConfiguration(4, 1000));
+  }
+
+
+
+  /**
+   * Stops the work queue and restores the monitor of the server work queue.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @AfterClass
+  public void stopWorkQueue() throws Exception
+  {
+    workQueue.finalizeWorkQueue(LocalizableMessage.raw("Test finished"));
+
+    TraditionalWorkQueueMonitor monitor =
+        new TraditionalWorkQueueMonitor((TraditionalWorkQueue) DirectoryServer.getWorkQueue());
+    monitor.initializeMonitorProvider(null);
+    DirectoryServer.registerMonitorProvider(monitor);
+  }
+
+
+
+  private WorkStealingWorkQueueCfg getConfiguration(int numWorkerThreads, int maxCapacity) throws Exception
+  {
+    Entry configEntry = TestCaseUtils.makeEntry(
+      "dn: cn=Work Queue,cn=config",
+      "objectClass: ds-cfg-work-stealing-work-queue",
+      "objectClass: ds-cfg-work-queue",
+      "objectClass: top",
+      "cn: Work Queue",
+      "ds-cfg-java-class: org.opends.server.extensions.WorkStealingWorkQueue",
+      "ds-cfg-num-worker-threads: " + numWorkerThreads,
+      "ds-cfg-max-work-queue-capacity: " + maxCapacity);
+    return AdminTestCaseUtils.getConfiguration(WorkStealingWorkQueueCfgDefn.getInstance(), configEntry);
+  }
+
+
+
+  private List<InternalSearchOperation> submitSearches(int count) throws Exception
+  {
+    List<InternalSearchOperation> operations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      SearchRequest request = newSearchRequest(DN.rootDN(), SearchScope.BASE_OBJECT);
+      InternalSearchOperation searchOperation =
+          new InternalSearchOperation(getRootConnection(), nextOperationID(), nextMessageID(), request);
+      workQueue.submitOperation(searchOperation);
+      operations.add(searchOperation);
+    }
+    return operations;
+  }
+
+
+
+  /**
+   * Tests that all the submitted operations are processed, including the
+   * internal operations which all share the same connection and are therefore
+   * queued to the same worker thread.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testOperationsProcessed() throws Exception
+  {
+    long opsSubmitted = workQueue.getOpsSubmitted();
+
+    List<InternalSearchOperation> operations = submitSearches(200);
+
+    assertTrue(workQueue.waitUntilIdle(10000));
+    for (InternalSearchOperation searchOperation : operations)
+    {
+      assertEquals(searchOperation.getResultCode(), ResultCode.SUCCESS);
+    }
+    assertEquals(workQueue.getOpsSubmitted(), opsSubmitted + 200);
+    assertEquals(workQueue.size(), 0);
+    assertEquals(workQueue.getOpsRejectedDueToQueueFull(), 0);
+  }
+
+
+
+  /**
+   * Verifies that the number of worker threads and the capacity can be altered
+   * on the fly without losing any operation.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(dependsOnMethods = "testOperationsProcessed")
+  public void testChangingConfiguration() throws Exception
+  {
+    assertEquals(workQueue.getNumWorkerThreads(), 4);
+
+    List<InternalSearchOperation> operations = submitSearches(50);
+    assertEquals(workQueue.applyConfigurationChange(getConfiguration(8, 10)).getResultCode(), ResultCode.SUCCESS);
+    assertEquals(workQueue.getNumWorkerThreads(), 8);
+    operations.addAll(submitSearches(50));
+
+    assertEquals(workQueue.applyConfigurationChange(getConfiguration(2, 1000)).getResultCode(), ResultCode.SUCCESS);
+    assertEquals(workQueue.getNumWorkerThreads(), 2);
+    operations.addAll(submitSearches(50));
+
+    assertTrue(workQueue.waitUntilIdle(10000));
+    for (InternalSearchOperation searchOperation : operations)
+    {
+      assertEquals(searchOperation.getResultCode(), ResultCode.SUCCESS);
+    }
+    assertEquals(workQueue.size(), 0);
+  }
+
+
+
+  /**
+   * Verifies that the operations submitted while worker threads are being
+   * retired are processed by the remaining worker threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(dependsOnMethods = "testChangingConfiguration")
+  public void testOperationsSubmittedWhileRetiringWorkerThreads() throws Exception
+  {
+    final List<InternalSearchOperation> operations = new CopyOnWriteArrayList<>();
+    Thread submitter = new Thread("Work queue test submitter")
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          for (int i = 0; i < 100; i++)
+          {
+            operations.addAll(submitSearches(10));
+          }
+        }
+        catch (Exception e)
+        {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    submitter.start();
+    while (submitter.isAlive())
+    {
+      // The internal operations are queued to a worker thread which is
+      // retired by every other configuration change.
+      assertEquals(workQueue.applyConfigurationChange(getConfiguration(8, 1000)).getResultCode(), ResultCode.SUCCESS);
+      assertEquals(workQueue.applyConfigurationChange(getConfiguration(1, 1000)).getResultCode(), ResultCode.SUCCESS);
+    }
+    submitter.join();
+
+    assertTrue(workQueue.waitUntilIdle(10000));
+    assertEquals(operations.size(), 1000);
+    for (InternalSearchOperation searchOperation : operations)
+    {
+      assertEquals(searchOperation.getResultCode(), ResultCode.SUCCESS);
+    }
+    assertEquals(workQueue.size(), 0);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.DN;
+import org.opends.server.types.FilePermission;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class AsynchronousRingTextWriterTest extends DirectoryServerTestCase
+{
+  private static final int NB_THREADS = 4;
+  private static final int NB_RECORDS_PER_THREAD = 1000;
+
+  @BeforeClass
+  public void beforeClass() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  private MultifileTextWriter newMultifileTextWriter(File logFile) throws Exception
+  {
+    return new MultifileTextWriter("Multifile Text Writer for test", 5000, new TimeStampNaming(logFile),
+        FilePermission.decodeUNIXMode("640"), new LogPublisherErrorHandler(DN.valueOf("cn=test")),
+        "UTF-8", false, false, 1024);
+  }
+
+  private List<String> readLines(File logFile) throws Exception
+  {
+    return Files.readAllLines(logFile.toPath(), Charset.forName("UTF-8"));
+  }
+
+  @Test
+  public void writeRecordsEncodedInUTF8() throws Exception
+  {
+    final File logFile = File.createTempFile("ring-writer", ".log");
+    logFile.deleteOnExit();
+    final AsynchronousRingTextWriter writer =
+        new AsynchronousRingTextWriter("Ring writer test", 4, 64, newMultifileTextWriter(logFile));
+
+    final StringBuilder largeRecord = new StringBuilder();
+    for (int i = 0; i < 100; i++)
+    {
+      largeRecord.append("large record ");
+    }
+    final String[] records = {
+      "ascii record",
+      "caf\u00e9 \u20ac \ud83d\ude00",
+      largeRecord.toString(),
+      "",
+      "after empty record",
+    };
+    final StringBuilder buffer = new StringBuilder();
+    for (String record : records)
+    {
+      buffer.setLength(0);
+      buffer.append(record);
+      writer.writeRecord(buffer);
+    }
+    writer.shutdown();
+
+    assertThat(readLines(logFile)).containsExactly(records);
+  }
+
+  @Test
+  public void writeRecordsFromConcurrentThreads() throws Exception
+  {
+    final File logFile = File.createTempFile("ring-writer", ".log");
+    logFile.deleteOnExit();
+    final AsynchronousRingTextWriter writer =
+        new AsynchronousRingTextWriter("Ring writer test", 16, 256, newMultifileTextWriter(logFile));
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < NB_THREADS; i++)
+    {
+      final int threadNumber = i;
+      threads.add(new Thread()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < NB_RECORDS_PER_THREAD; j++)
+          {
+            writer.writeRecord("thread " + threadNumber + " record " + j);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads)
+    {
+      thread.start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    writer.shutdown();
+
+    final List<String> lines = readLines(logFile);
+    assertThat(lines).hasSize(NB_THREADS * NB_RECORDS_PER_THREAD);
+    for (int i = 0; i < NB_THREADS; i++)
+    {
+      // Records of each thread are written in the order they were logged
+      final List<String> threadLines = new ArrayList<>();
+      for (String line : lines)
+      {
+        if (line.startsWith("thread " + i + " "))
+        {
+          threadLines.add(line);
+        }
+      }
+      assertThat(threadLines).hasSize(NB_RECORDS_PER_THREAD);
+      for (int j = 0; j < NB_RECORDS_PER_THREAD; j++)
+      {
+        assertThat(threadLines.get(j)).isEqualTo("thread " + i + " record " + j);
+      }
+    }
+  }
+}
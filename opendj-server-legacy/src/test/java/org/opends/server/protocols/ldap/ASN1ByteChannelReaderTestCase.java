@@ -33,8 +33,11 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.IllegalBlockingModeException;
 
+import static org.testng.Assert.*;
+
 /**
  * Test class for ASN1ByteChannelReader.
  */
@@ -301,4 +304,86 @@ public class ASN1ByteChannelReaderTestCase extends ASN1ReaderTestCase
   {
     super.testSkipElementIncompleteRead();
   }
+
+  /**
+   * Tests that an element spanning several reads is decoded and that the
+   * pooled read buffer is returned to the pool once the channel has no more
+   * data.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testReadBufferReturnedToPool()
+      throws Exception
+  {
+    byte[] b = { 0x04, 0x0A, '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
+    ReadBufferPool pool = new ReadBufferPool(4, 2);
+    ASN1ByteChannelReader reader = new ASN1ByteChannelReader(
+        Channels.newChannel(new ByteArrayInputStream(b)), pool, 100);
+
+    while (!reader.elementAvailable())
+    {
+      assertEquals(reader.processChannelData(), 4);
+      assertEquals(pool.size(), 0);
+    }
+    assertEquals(reader.readOctetStringAsString(), "0123456789");
+    assertFalse(reader.hasRemainingData());
+
+    assertEquals(reader.processChannelData(), -1);
+    assertEquals(pool.size(), 1);
+
+    reader.close();
+    assertEquals(pool.size(), 1);
+  }
+
+  /**
+   * Tests that closing the reader from another thread leaves the read buffer
+   * to the reading thread, which returns it to the pool on its next attempt to
+   * read.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testReadBufferReturnedToPoolByReadingThreadAfterClose()
+      throws Exception
+  {
+    byte[] b = { 0x04, 0x02, '0', '1', 0x04, 0x02, '2', '3' };
+    ReadBufferPool pool = new ReadBufferPool(8, 2);
+    final ASN1ByteChannelReader reader = new ASN1ByteChannelReader(
+        Channels.newChannel(new ByteArrayInputStream(b)), pool, 100);
+
+    assertEquals(reader.processChannelData(), 8);
+    assertEquals(reader.readOctetStringAsString(), "01");
+
+    Thread closer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          reader.close();
+        }
+        catch (IOException e)
+        {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    closer.start();
+    closer.join();
+    assertEquals(pool.size(), 0);
+
+    assertFalse(reader.elementAvailable());
+    assertEquals(pool.size(), 1);
+    try
+    {
+      reader.processChannelData();
+      fail("Expected ClosedChannelException");
+    }
+    catch (ClosedChannelException expected)
+    {
+      assertEquals(pool.size(), 1);
+    }
+  }
 }
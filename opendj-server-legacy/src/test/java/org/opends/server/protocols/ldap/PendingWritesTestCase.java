@@ -0,0 +1,281 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.util.TestTimer.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.util.TestTimer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class PendingWritesTestCase extends LdapTestCase
+{
+  private static final int BATCH_SIZE = 16;
+
+  private ScheduledExecutorService scheduler;
+  private ExecutorService writer;
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    writer = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public void tearDown()
+  {
+    scheduler.shutdownNow();
+    writer.shutdownNow();
+  }
+
+  @Test
+  public void batchableMessagesAreWrittenTogether() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = new PendingWrites(channel, 60000, null, null, null);
+
+    pendingWrites.write(message("abc"), true, BATCH_SIZE);
+    pendingWrites.write(message("def"), true, BATCH_SIZE);
+    assertThat(channel.writes).isEmpty();
+
+    pendingWrites.write(message("0123456789"), true, BATCH_SIZE);
+    assertThat(channel.writes).containsExactly("abcdef0123456789");
+  }
+
+  @Test
+  public void largeMessageIsWrittenImmediately() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = new PendingWrites(channel, 60000, null, null, null);
+
+    pendingWrites.write(message("0123456789abcdefgh"), true, BATCH_SIZE);
+    assertThat(channel.writes).containsExactly("0123456789abcdefgh");
+  }
+
+  @Test
+  public void flushWritesHeldMessages() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = new PendingWrites(channel, 60000, null, null, null);
+
+    pendingWrites.flush();
+    assertThat(channel.writes).isEmpty();
+
+    pendingWrites.write(message("abc"), true, BATCH_SIZE);
+    pendingWrites.write(message("def"), true, BATCH_SIZE);
+    pendingWrites.flush();
+    assertThat(channel.writes).containsExactly("abcdef");
+
+    pendingWrites.flush();
+    assertThat(channel.writes).containsExactly("abcdef");
+  }
+
+  @Test
+  public void nonBatchableMessageIsNeverHeld() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = new PendingWrites(channel, 60000, null, null, null);
+
+    pendingWrites.write(message("abc"), false, BATCH_SIZE);
+    assertThat(channel.writes).containsExactly("abc");
+
+    // held messages are written together with the next non batchable message
+    pendingWrites.write(message("def"), true, BATCH_SIZE);
+    pendingWrites.write(message("ghi"), false, BATCH_SIZE);
+    assertThat(channel.writes).containsExactly("abc", "defghi");
+  }
+
+  @Test
+  public void heldMessagesAreWrittenAfterMaxDelay() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = newPendingWritesFlushedAfterMaxDelay(channel);
+
+    final long start = System.currentTimeMillis();
+    pendingWrites.write(message("abc"), true, BATCH_SIZE);
+    pendingWrites.write(message("def"), true, BATCH_SIZE);
+
+    // no other write or flush: the writer threads write the held messages
+    TestTimer timer = new TestTimer.Builder()
+      .maxSleep(5, SECONDS)
+      .sleepTimes(5, MILLISECONDS)
+      .toTimer();
+    timer.repeatUntilSuccess(new Callable<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        assertThat(channel.writes).containsExactly("abcdef");
+        return END_RUN;
+      }
+    });
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(20);
+  }
+
+  @Test
+  public void scheduledFlushIsCancelledWhenMessagesAreWritten() throws Exception
+  {
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites pendingWrites = new PendingWrites(channel, 20, scheduler, writer, new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        channel.writes.add("unexpected flush");
+      }
+    });
+
+    pendingWrites.write(message("abc"), true, BATCH_SIZE);
+    pendingWrites.flush();
+    Thread.sleep(100);
+    assertThat(channel.writes).containsExactly("abc");
+  }
+
+  @Test
+  public void blockedClientDoesNotDelayTheHeldMessagesOfOtherClients() throws Exception
+  {
+    final CountDownLatch clientIsBlocked = new CountDownLatch(1);
+    final RecordingChannel blockedChannel = new RecordingChannel()
+    {
+      @Override
+      public int write(ByteBuffer src)
+      {
+        try
+        {
+          clientIsBlocked.await(30, SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.write(src);
+      }
+    };
+    final RecordingChannel channel = new RecordingChannel();
+    final PendingWrites blockedPendingWrites = newPendingWritesFlushedAfterMaxDelay(blockedChannel);
+    final PendingWrites pendingWrites = newPendingWritesFlushedAfterMaxDelay(channel);
+    try
+    {
+      blockedPendingWrites.write(message("abc"), true, BATCH_SIZE);
+      Thread.sleep(50);
+      pendingWrites.write(message("def"), true, BATCH_SIZE);
+
+      // the held messages are written while the first client is still blocked
+      TestTimer timer = new TestTimer.Builder()
+        .maxSleep(5, SECONDS)
+        .sleepTimes(5, MILLISECONDS)
+        .toTimer();
+      timer.repeatUntilSuccess(new Callable<Void>()
+      {
+        @Override
+        public Void call() throws Exception
+        {
+          assertThat(channel.writes).containsExactly("def");
+          return END_RUN;
+        }
+      });
+      assertThat(blockedChannel.writes).isEmpty();
+    }
+    finally
+    {
+      clientIsBlocked.countDown();
+    }
+  }
+
+  private PendingWrites newPendingWritesFlushedAfterMaxDelay(WritableByteChannel channel)
+  {
+    final PendingWrites[] pendingWrites = new PendingWrites[1];
+    pendingWrites[0] = new PendingWrites(channel, 20, scheduler, writer, new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          pendingWrites[0].flush();
+        }
+        catch (Exception e)
+        {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    return pendingWrites[0];
+  }
+
+  private ByteStringBuilder message(String content)
+  {
+    return new ByteStringBuilder().appendBytes(ByteString.valueOfUtf8(content));
+  }
+
+  /** Records each write as a string. */
+  private static class RecordingChannel implements WritableByteChannel
+  {
+    private final List<String> writes = new CopyOnWriteArrayList<>();
+
+    @Override
+    public int write(ByteBuffer src)
+    {
+      final int length = src.remaining();
+      final byte[] bytes = new byte[length];
+      src.get(bytes);
+      writes.add(new String(bytes));
+      return length;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    @Override
+    public void close()
+    {
+      // nothing to do
+    }
+  }
+}
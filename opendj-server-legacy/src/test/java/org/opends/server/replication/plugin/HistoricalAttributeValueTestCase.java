@@ -25,6 +25,7 @@
 package org.opends.server.replication.plugin;
 
 import org.assertj.core.api.Assertions;
+import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.replication.ReplicationTestCase;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -56,4 +57,25 @@ public class HistoricalAttributeValueTestCase extends ReplicationTestCase
     HistoricalAttributeValue val = new HistoricalAttributeValue(strVal);
     Assertions.assertThat(strVal).isEqualTo(val.toString());
   }
+
+  @Test(dataProvider = "values")
+  public void testCompactEncoding(String strVal) throws Exception
+  {
+    ByteString legacyValue = ByteString.valueOfUtf8(strVal);
+    ByteString compactValue = new HistoricalAttributeValue(strVal).toCompact();
+    Assertions.assertThat(HistoricalAttributeValue.isCompact(legacyValue)).isFalse();
+    Assertions.assertThat(HistoricalAttributeValue.isCompact(compactValue)).isTrue();
+    Assertions.assertThat(compactValue.length()).isLessThan(legacyValue.length());
+
+    HistoricalAttributeValue val = HistoricalAttributeValue.valueOf(compactValue);
+    Assertions.assertThat(val.toString()).isEqualTo(strVal);
+    Assertions.assertThat(val.toCompact()).isEqualTo(compactValue);
+    Assertions.assertThat(HistoricalAttributeValue.getCSN(compactValue))
+        .isEqualTo(HistoricalAttributeValue.getCSN(legacyValue))
+        .isEqualTo(val.getCSN());
+
+    HistoricalCsnOrderingMatchingRuleImpl matchingRule = new HistoricalCsnOrderingMatchingRuleImpl();
+    Assertions.assertThat(matchingRule.normalizeAttributeValue(null, compactValue))
+        .isEqualTo(matchingRule.normalizeAttributeValue(null, legacyValue));
+  }
 }
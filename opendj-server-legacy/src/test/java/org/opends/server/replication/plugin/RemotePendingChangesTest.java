@@ -0,0 +1,289 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.TestCaseUtils.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.forgerock.opendj.ldap.ModificationType;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.common.ServerState;
+import org.opends.server.replication.protocol.AddMsg;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.opends.server.replication.protocol.ModifyDNMsg;
+import org.opends.server.replication.protocol.ModifyMsg;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Modification;
+import org.opends.server.util.TimeThread;
+import org.testng.annotations.Test;
+
+/** Test the dependencies computed between the remote pending changes. */
+@SuppressWarnings("javadoc")
+public class RemotePendingChangesTest extends ReplicationTestCase
+{
+  private final CSNGenerator csnGen = new CSNGenerator(1, 0);
+
+  @Test
+  public void testDependencies() throws Exception
+  {
+    final ServerState state = new ServerState();
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(state);
+
+    final LDAPUpdateMsg addParent = addMsg("ou=parent," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg addChild = addMsg("uid=child,ou=parent," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modifyChild = modifyMsg("uid=child,ou=parent," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modifyOther = modifyMsg("uid=other," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg deleteParent = deleteMsg("ou=parent," + TEST_ROOT_DN_STRING);
+    for (LDAPUpdateMsg msg : Arrays.asList(addParent, addChild, modifyChild, modifyOther, deleteParent))
+    {
+      assertThat(pendingChanges.putRemoteUpdate(msg)).isTrue();
+    }
+    assertThat(pendingChanges.putRemoteUpdate(addParent)).isFalse();
+
+    assertThat(hasDependencies(pendingChanges, addParent)).isFalse();
+    assertThat(hasDependencies(pendingChanges, addChild)).isTrue();
+    assertThat(hasDependencies(pendingChanges, modifyChild)).isTrue();
+    assertThat(hasDependencies(pendingChanges, modifyOther)).isFalse();
+    assertThat(hasDependencies(pendingChanges, deleteParent)).isTrue();
+    assertThat(pendingChanges.getDependentChangesSize()).isEqualTo(3);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+
+    // independent changes are released as soon as their dependencies are
+    // committed, whatever the state of the other pending changes
+    pendingChanges.commit(modifyOther.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+    pendingChanges.commit(addParent.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(addChild);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+    pendingChanges.commit(addChild.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(modifyChild);
+    pendingChanges.commit(modifyChild.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(deleteParent);
+    assertThat(pendingChanges.getDependentChangesSize()).isZero();
+
+    pendingChanges.commit(deleteParent.getCSN());
+    assertThat(pendingChanges.getQueueSize()).isZero();
+    assertThat(pendingChanges.getReplayLag()).isZero();
+    assertThat(state.getCSN(1)).isEqualTo(deleteParent.getCSN());
+  }
+
+  @Test
+  public void testModifyDNDependencies() throws Exception
+  {
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(new ServerState());
+
+    final LDAPUpdateMsg addChild = addMsg("uid=child,ou=parent," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg renameParent = modifyDNMsg("ou=parent," + TEST_ROOT_DN_STRING, "ou=renamed");
+    final LDAPUpdateMsg modifyRenamed = modifyMsg("ou=renamed," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg addUnderRenamed = addMsg("uid=new,ou=renamed," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modifyOther = modifyMsg("ou=other," + TEST_ROOT_DN_STRING);
+    for (LDAPUpdateMsg msg : Arrays.asList(addChild, renameParent, modifyRenamed, addUnderRenamed, modifyOther))
+    {
+      assertThat(pendingChanges.putRemoteUpdate(msg)).isTrue();
+    }
+
+    // the modify DN waits for the changes in the subtree of its target DN
+    assertThat(hasDependencies(pendingChanges, addChild)).isFalse();
+    assertThat(hasDependencies(pendingChanges, renameParent)).isTrue();
+    // the changes on its new DN and under its new DN wait for the modify DN
+    assertThat(hasDependencies(pendingChanges, modifyRenamed)).isTrue();
+    assertThat(hasDependencies(pendingChanges, addUnderRenamed)).isTrue();
+    assertThat(hasDependencies(pendingChanges, modifyOther)).isFalse();
+
+    pendingChanges.commit(addChild.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(renameParent);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+    pendingChanges.commit(renameParent.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(modifyRenamed);
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(addUnderRenamed);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+  }
+
+  @Test
+  public void testChangeReleasedAfterItsLastDependency() throws Exception
+  {
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(new ServerState());
+
+    final LDAPUpdateMsg addEntry = addMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modify1 = modifyMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modify2 = modifyMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    for (LDAPUpdateMsg msg : Arrays.asList(addEntry, modify1, modify2))
+    {
+      assertThat(pendingChanges.putRemoteUpdate(msg)).isTrue();
+    }
+    assertThat(hasDependencies(pendingChanges, addEntry)).isFalse();
+    assertThat(hasDependencies(pendingChanges, modify1)).isTrue();
+    // depends on both the add and the first modify
+    assertThat(hasDependencies(pendingChanges, modify2)).isTrue();
+    assertThat(pendingChanges.getDependentChangesSize()).isEqualTo(2);
+
+    pendingChanges.commit(addEntry.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(modify1);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+    assertThat(pendingChanges.getDependentChangesSize()).isEqualTo(1);
+
+    pendingChanges.commit(modify1.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(modify2);
+    assertThat(pendingChanges.getDependentChangesSize()).isZero();
+  }
+
+  @Test
+  public void testChangeReindexedAfterConflictResolution() throws Exception
+  {
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(new ServerState());
+
+    final LDAPUpdateMsg addEntry = addMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modifyConflict = modifyMsg("uid=conflict," + TEST_ROOT_DN_STRING);
+    for (LDAPUpdateMsg msg : Arrays.asList(addEntry, modifyConflict))
+    {
+      assertThat(pendingChanges.putRemoteUpdate(msg)).isTrue();
+    }
+    assertThat(hasDependencies(pendingChanges, addEntry)).isFalse();
+
+    // the conflict resolution renames the added entry while it is replayed
+    addEntry.setDN(DN.valueOf("uid=conflict," + TEST_ROOT_DN_STRING));
+    pendingChanges.reindex(addEntry.getCSN());
+    assertThat(hasDependencies(pendingChanges, modifyConflict)).isTrue();
+
+    pendingChanges.commit(addEntry.getCSN());
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(modifyConflict);
+  }
+
+  @Test
+  public void testReplayLagOfOldestUncommittedChange() throws Exception
+  {
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(new ServerState());
+    assertThat(pendingChanges.getReplayLag()).isZero();
+
+    final LDAPUpdateMsg oldest = modifyMsg(new CSN(TimeThread.getTime() - 60000, 1, 1), "uid=old," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg newest = modifyMsg(new CSN(TimeThread.getTime() - 1000, 1, 1), "uid=new," + TEST_ROOT_DN_STRING);
+    pendingChanges.putRemoteUpdate(oldest);
+    pendingChanges.putRemoteUpdate(newest);
+    assertThat(pendingChanges.getReplayLag()).isGreaterThanOrEqualTo(60000);
+
+    // the lag follows the oldest change which is not committed, even if it is not the first pending change
+    pendingChanges.commit(newest.getCSN());
+    assertThat(pendingChanges.getReplayLag()).isGreaterThanOrEqualTo(60000);
+    pendingChanges.commit(oldest.getCSN());
+    assertThat(pendingChanges.getReplayLag()).isZero();
+  }
+
+  @Test
+  public void testDispatchReadyUpdatesToFullReplayQueue() throws Exception
+  {
+    final RemotePendingChanges pendingChanges = new RemotePendingChanges(new ServerState());
+
+    final LDAPUpdateMsg addEntry = addMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg modify1 = modifyMsg("uid=entry," + TEST_ROOT_DN_STRING);
+    final LDAPUpdateMsg delete = deleteMsg("uid=other,uid=entry," + TEST_ROOT_DN_STRING);
+    for (LDAPUpdateMsg msg : Arrays.asList(addEntry, modify1, delete))
+    {
+      assertThat(pendingChanges.putRemoteUpdate(msg)).isTrue();
+    }
+    assertThat(hasDependencies(pendingChanges, addEntry)).isFalse();
+    assertThat(hasDependencies(pendingChanges, modify1)).isTrue();
+    assertThat(hasDependencies(pendingChanges, delete)).isTrue();
+    pendingChanges.commit(addEntry.getCSN());
+
+    // the queue is filled by another thread between checking its capacity and offering an update
+    final BlockingQueue<UpdateToReplay> filledQueue = new ArrayBlockingQueue<UpdateToReplay>(1)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public boolean offer(UpdateToReplay update)
+      {
+        return false;
+      }
+    };
+    LDAPReplicationDomain.dispatchReadyUpdates(pendingChanges, filledQueue, null);
+    assertThat(filledQueue).isEmpty();
+    assertThat(pendingChanges.getDependentChangesSize()).isEqualTo(2);
+
+    // the update put back is dispatched first, then the queue is full
+    final BlockingQueue<UpdateToReplay> queue = new ArrayBlockingQueue<>(1);
+    LDAPReplicationDomain.dispatchReadyUpdates(pendingChanges, queue, null);
+    assertThat(queue).hasSize(1);
+    assertThat(queue.peek().getUpdateMessage()).isSameAs(modify1);
+    assertThat(pendingChanges.getNextUpdate()).isSameAs(delete);
+    assertThat(pendingChanges.getNextUpdate()).isNull();
+  }
+
+  private boolean hasDependencies(RemotePendingChanges pendingChanges, LDAPUpdateMsg msg) throws Exception
+  {
+    return pendingChanges.checkDependencies(msg.createOperation(getRootConnection()), msg);
+  }
+
+  private LDAPUpdateMsg addMsg(String dn) throws Exception
+  {
+    final Entry entry = entryFromLdifString(
+        "dn: " + dn + "\n"
+        + "objectClass: top\n"
+        + "objectClass: extensibleObject\n");
+    return new AddMsg(newCSN(), entry.getName(), "uuid-" + dn, "parent-uuid",
+        entry.getObjectClassAttribute(), entry.getAttributes(), new ArrayList<Attribute>());
+  }
+
+  private LDAPUpdateMsg modifyMsg(String dn) throws Exception
+  {
+    return modifyMsg(newCSN(), dn);
+  }
+
+  private LDAPUpdateMsg modifyMsg(CSN csn, String dn) throws Exception
+  {
+    final List<Modification> mods = Arrays.asList(
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "new value")));
+    return new ModifyMsg(csn, DN.valueOf(dn), mods, "uuid-" + dn);
+  }
+
+  private LDAPUpdateMsg modifyDNMsg(String dn, String newRDN) throws Exception
+  {
+    return new ModifyDNMsg(DN.valueOf(dn), newCSN(), "uuid-" + dn, null, true, null, newRDN);
+  }
+
+  private LDAPUpdateMsg deleteMsg(String dn) throws Exception
+  {
+    return new DeleteMsg(DN.valueOf(dn), newCSN(), "uuid-" + dn);
+  }
+
+  private CSN newCSN()
+  {
+    return csnGen.newCSN();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.TestCaseUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.types.DN;
+import org.testng.annotations.Test;
+
+/** Test the ordering and the accounting of the replication server message queues. */
+@SuppressWarnings("javadoc")
+public class MsgQueueTest extends ReplicationTestCase
+{
+  @Test
+  public void testOrderingAndAccounting() throws Exception
+  {
+    final MsgQueue queue = new MsgQueue();
+    assertThat(queue.first()).isNull();
+    assertThat(queue.removeFirst()).isNull();
+
+    final UpdateMsg msg1 = newMsg(1, 1);
+    final UpdateMsg msg2 = newMsg(2, 2);
+    final UpdateMsg msg3 = newMsg(3, 1);
+    queue.add(msg3);
+    queue.add(msg1);
+    queue.add(msg2);
+    queue.add(msg1);
+    assertThat(queue.count()).isEqualTo(3);
+    assertThat(queue.bytesCount()).isEqualTo(msg1.size() + msg2.size() + msg3.size());
+    assertThat(queue.first()).isSameAs(msg1);
+    assertThat(queue.contains(msg2)).isTrue();
+
+    queue.consumeUpTo(msg2);
+    assertThat(queue.count()).isEqualTo(1);
+    assertThat(queue.bytesCount()).isEqualTo(msg3.size());
+    assertThat(queue.removeFirst()).isSameAs(msg3);
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.bytesCount()).isZero();
+  }
+
+  @Test
+  public void testConcurrentPublishersAndConsumer() throws Exception
+  {
+    final MsgQueue queue = new MsgQueue();
+    final int nbMsgsPerThread = 1000;
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try
+    {
+      final List<Future<?>> publishers = new ArrayList<>();
+      for (int i = 1; i <= 4; i++)
+      {
+        // two publishers per server id, so that messages with the same CSN replace each other
+        final int serverId = (i + 1) / 2;
+        publishers.add(executor.submit(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            for (int j = 1; j <= nbMsgsPerThread; j++)
+            {
+              queue.add(newMsg(j, serverId));
+            }
+          }
+        }));
+      }
+
+      // consume while the messages are published, until all of them are published and consumed
+      final long deadline = System.currentTimeMillis() + 30000;
+      while (!allDone(publishers) || !queue.isEmpty())
+      {
+        queue.removeFirst();
+        assertThat(System.currentTimeMillis()).as("queue not drained in time").isLessThan(deadline);
+      }
+      for (Future<?> publisher : publishers)
+      {
+        // rethrows the failure of a publisher
+        publisher.get();
+      }
+      assertThat(queue.count()).isZero();
+      assertThat(queue.bytesCount()).isZero();
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean allDone(List<Future<?>> futures)
+  {
+    for (Future<?> future : futures)
+    {
+      if (!future.isDone())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static UpdateMsg newMsg(int seqNum, int serverId)
+  {
+    try
+    {
+      return new DeleteMsg(DN.valueOf("uid=" + seqNum + "," + TEST_ROOT_DN_STRING),
+          new CSN(1000, seqNum, serverId), "uuid-" + seqNum);
+    }
+    catch (Exception e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+}
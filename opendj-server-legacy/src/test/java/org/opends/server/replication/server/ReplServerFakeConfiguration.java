@@ -163,6 +163,12 @@ public class ReplServerFakeConfiguration implements ReplicationServerCfg
     return purgeDelay;
   }
 
+  @Override
+  public long getReplicationCommitDelay()
+  {
+    return 1000;
+  }
+
   @Override
   public SortedSet<String> getReplicationServer()
   {
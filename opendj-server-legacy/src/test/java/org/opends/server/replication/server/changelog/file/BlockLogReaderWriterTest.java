@@ -403,6 +403,42 @@ public class BlockLogReaderWriterTest extends DirectoryServerTestCase
     assertThat(reader.getLengthOfStoredRecord(recordLength, 0)).isEqualTo(recordLength + 3 * SIZE_OF_BLOCK_OFFSET);
   }
 
+  /**
+   * Tests that readers on a read-only log file, which is mapped in memory on
+   * platforms other than Windows, find all the records.
+   */
+  @Test
+  public void testSeekToRecordOnReadOnlyLogFile() throws Exception
+  {
+    final int blockSize = BLOCK_SIZE;
+    writeRecordsToReachFileSize(blockSize, 10 * blockSize);
+    final int lastKey = 10 * blockSize / INT_RECORD_SIZE;
+    final LogReaderPool<Integer, Integer> pool = new LogReaderPool<>(TEST_FILE, RECORD_PARSER, true);
+    try
+    {
+      for (Integer key : getShuffledKeys(10 * blockSize, 50))
+      {
+        final BlockLogReader<Integer, Integer> reader = pool.get();
+        try
+        {
+          Pair<Boolean, Record<Integer, Integer>> result =
+              reader.seekToRecord(key, GREATER_THAN_OR_EQUAL_TO_KEY, ON_MATCHING_KEY);
+          assertThat(result.getFirst()).isTrue();
+          assertThat(result.getSecond()).isEqualTo(record(key));
+          assertThat(reader.readRecord()).isEqualTo(key < lastKey ? record(key + 1) : null);
+        }
+        finally
+        {
+          pool.release(reader);
+        }
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
   /**
    * This test is intended to be run only manually to check the performance between binary search
    * and sequential access.
@@ -277,6 +277,33 @@ public class LogTest extends DirectoryServerTestCase
     }
   }
 
+  /** Test that all the records appended since the previous synchronization are synchronized at once. */
+  @Test
+  public void testSyncAppendedRecords() throws Exception
+  {
+    try (Log<String, String> log = openLog(LogFileTest.RECORD_PARSER))
+    {
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(0);
+
+      for (int i = 1; i <= 5; i++)
+      {
+        log.append(Record.from(String.format("nkey%03d", i), "nvalue" + i));
+      }
+      log.syncAppendedRecords();
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(1);
+      assertThat(log.getSyncedRecordCount()).isEqualTo(5);
+      assertThat(log.getMaxRecordsPerSync()).isEqualTo(5);
+
+      log.append(Record.from("nkey006", "nvalue6"));
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(2);
+      assertThat(log.getSyncedRecordCount()).isEqualTo(6);
+      assertThat(log.getMaxRecordsPerSync()).isEqualTo(5);
+    }
+  }
+
   /**
    *  This test should be disabled.
    *  Enable it locally when you need to have an rough idea of write performance.